@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+
+/**
+ * Synthetic properties files and bundle groups used by benchmarks.  Content
+ * is generated from a fixed seed so that runs can be compared.
+ * @author Pascal Essiembre
+ */
+public final class BundleFixtures {
+
+    /** Words values are made of (a small vocabulary gives duplicates). */
+    private static final String[] WORDS = {
+        "the", "file", "cannot", "be", "saved", "open", "editor", "value",
+        "missing", "key", "please", "select", "a", "locale", "new", "name",
+        "resource", "bundle", "properties", "error", "warning", "show",
+    };
+    /** Escaped sequences inserted in values, following escape density. */
+    private static final String[] ESCAPES = {
+        "\\u00e9", "\\u00e8", "\\u4e2d", "\\u6587", "\\n", "\\t", "\\\\",
+        "\\:", "\\=",
+    };
+    /** Number of keys per key group, at each key level. */
+    private static final int GROUP_SIZE = 10;
+
+    /**
+     * Constructor.
+     */
+    private BundleFixtures() {
+        super();
+    }
+
+    /**
+     * Generates the content of a properties file.  Keys are the same for
+     * every locale, values differ.
+     * @param keyCount number of keys
+     * @param valueLength approximative value length, in characters
+     * @param escapeDensity probability for each value word to be
+     *        followed by an escaped sequence
+     * @param localeIndex index of the locale to generate values for
+     * @return properties file content
+     */
+    public static String generate(int keyCount, int valueLength,
+            double escapeDensity, int localeIndex) {
+        Random random = new Random(keyCount * 31L + localeIndex);
+        StringBuilder text = new StringBuilder(
+                keyCount * (valueLength + 40));
+        text.append("# Synthetic properties file\n\n");
+        for (int i = 0; i < keyCount; i++) {
+            if (i % GROUP_SIZE == 0) {
+                text.append("# Group ").append(i / GROUP_SIZE).append('\n');
+            }
+            text.append(getKey(i)).append(" = ");
+            int length = 0;
+            while (length < valueLength) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(word);
+                length += word.length();
+                if (random.nextDouble() < escapeDensity) {
+                    String escape = ESCAPES[random.nextInt(ESCAPES.length)];
+                    text.append(escape);
+                    length += escape.length();
+                }
+                text.append(' ');
+                length++;
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Gets a key, which parts make a three level deep key tree.
+     * @param index key index
+     * @return key
+     */
+    public static String getKey(int index) {
+        return "module" + index / (GROUP_SIZE * GROUP_SIZE)
+                + ".section" + index / GROUP_SIZE % GROUP_SIZE
+                + ".key" + index;
+    }
+
+    /**
+     * Gets the locale of a generated bundle.
+     * @param localeIndex locale index
+     * @return locale
+     */
+    public static Locale getLocale(int localeIndex) {
+        return new Locale("l" + localeIndex);
+    }
+
+    /**
+     * Generates and parses bundles for several locales.
+     * @param keyCount number of keys per bundle
+     * @param localeCount number of locales
+     * @param valueLength approximative value length, in characters
+     * @param escapeDensity probability for each value word to be
+     *        followed by an escaped sequence
+     * @return bundles (key=Locale; value=Bundle)
+     */
+    public static Map<Locale, Bundle> createBundles(int keyCount,
+            int localeCount, int valueLength, double escapeDensity) {
+        Map<Locale, Bundle> bundles = new LinkedHashMap<>();
+        for (int i = 0; i < localeCount; i++) {
+            bundles.put(getLocale(i), PropertiesParser.parse(
+                    generate(keyCount, valueLength, escapeDensity, i)));
+        }
+        return bundles;
+    }
+
+    /**
+     * Creates a bundle group holding the given bundles.
+     * @param bundles bundles (key=Locale; value=Bundle)
+     * @return bundle group
+     */
+    public static BundleGroup createBundleGroup(Map<Locale, Bundle> bundles) {
+        BundleGroup bundleGroup = new BundleGroup();
+        bundleGroup.addBundles(bundles);
+        return bundleGroup;
+    }
+}
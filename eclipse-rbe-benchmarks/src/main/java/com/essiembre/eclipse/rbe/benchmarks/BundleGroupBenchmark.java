@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+
+/**
+ * Measures adding bundles to a group, which refreshes group keys.  Bundles
+ * can only be added once, so each measurement is a single shot on bundles
+ * parsed beforehand.
+ * @author Pascal Essiembre
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BundleGroupBenchmark {
+
+    @Param({ "1000", "50000" })
+    private int keyCount;
+    @Param({ "1", "10", "60" })
+    private int localeCount;
+
+    private Map<Locale, Bundle> bundles;
+    private BundleGroup loadedGroup;
+    private Bundle reloadedBundle;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        bundles = BundleFixtures.createBundles(keyCount, localeCount, 32, 0);
+        loadedGroup = BundleFixtures.createBundleGroup(
+                BundleFixtures.createBundles(keyCount, localeCount, 32, 0));
+        reloadedBundle = BundleFixtures.createBundles(keyCount, 1, 32, 0)
+                .get(BundleFixtures.getLocale(0));
+    }
+
+    /**
+     * Adds bundles one by one, as when locales are added to a bundle.
+     */
+    @Benchmark
+    public BundleGroup addBundle() {
+        BundleGroup bundleGroup = new BundleGroup();
+        for (Map.Entry<Locale, Bundle> entry : bundles.entrySet()) {
+            bundleGroup.addBundle(entry.getKey(), entry.getValue());
+        }
+        return bundleGroup;
+    }
+
+    /**
+     * Adds all bundles at once, as when opening a bundle.
+     */
+    @Benchmark
+    public BundleGroup addBundles() {
+        return BundleFixtures.createBundleGroup(bundles);
+    }
+
+    /**
+     * Replaces a bundle already in the group, as when a file is reloaded.
+     */
+    @Benchmark
+    public BundleGroup reloadBundle() {
+        loadedGroup.addBundle(BundleFixtures.getLocale(0), reloadedBundle);
+        return loadedGroup;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+
+/**
+ * Measures unicode escape conversions of the values of a bundle, for
+ * mostly ASCII (e.g. English) and mostly CJK (e.g. Chinese) bundles.
+ * @author Pascal Essiembre
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    /** Number of values converted by each benchmark invocation. */
+    private static final int VALUE_COUNT = 10000;
+    /** First and last CJK unified ideographs. */
+    private static final char CJK_FIRST = '\u4e00';
+    private static final char CJK_LAST = '\u9fa5';
+
+    @Param({ "ascii", "cjk" })
+    private String script;
+    @Param({ "16", "128" })
+    private int valueLength;
+
+    private String[] values;
+    private String[] encodedValues;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(VALUE_COUNT * 31L + valueLength);
+        values = new String[VALUE_COUNT];
+        encodedValues = new String[VALUE_COUNT];
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            StringBuilder value = new StringBuilder(valueLength);
+            for (int j = 0; j < valueLength; j++) {
+                if ("cjk".equals(script)) {
+                    value.append((char) (CJK_FIRST
+                            + random.nextInt(CJK_LAST - CJK_FIRST + 1)));
+                } else if (j % 6 == 5) {
+                    value.append(' ');
+                } else {
+                    value.append((char) ('a' + random.nextInt(26)));
+                }
+            }
+            values[i] = value.toString();
+            encodedValues[i] =
+                    PropertiesGenerator.convertUnicodeToEncoded(values[i]);
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        for (int i = 0; i < encodedValues.length; i++) {
+            blackhole.consume(
+                    PropertiesParser.convertEncodedToUnicode(encodedValues[i]));
+        }
+    }
+
+    @Benchmark
+    public void encode(Blackhole blackhole) {
+        for (int i = 0; i < values.length; i++) {
+            blackhole.consume(
+                    PropertiesGenerator.convertUnicodeToEncoded(values[i]));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jface.preference.PreferenceStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesOptions;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+
+/**
+ * Measures generation of a properties file from a bundle, with default
+ * formatting preferences.
+ * @author Pascal Essiembre
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({ "1000", "50000", "500000" })
+    private int keyCount;
+    @Param({ "16", "128" })
+    private int valueLength;
+    @Param({ "0", "0.1" })
+    private double escapeDensity;
+
+    private Bundle bundle;
+    private PropertiesOptions wrappedOptions;
+
+    @Setup
+    public void setUp() {
+        bundle = PropertiesParser.parse(BundleFixtures.generate(
+                keyCount, valueLength, escapeDensity, 0));
+        PreferenceStore store = new PreferenceStore();
+        RBEPreferences.initializeDefaults(store);
+        store.setValue(RBEPreferences.WRAP_LINES, true);
+        store.setValue(RBEPreferences.NEW_LINE_NICE, true);
+        wrappedOptions = new PropertiesOptions(store);
+    }
+
+    @Benchmark
+    public String generate() {
+        return PropertiesGenerator.generate(bundle);
+    }
+
+    /**
+     * Generates a properties file with long lines wrapped, and line breaks
+     * inserted after escaped new lines.
+     */
+    @Benchmark
+    public String generateWrapped() {
+        return PropertiesGenerator.generate(bundle, wrappedOptions);
+    }
+
+    /**
+     * Generates and encodes a properties file to a channel, as when saving
+     * it without going through a document.
+     */
+    @Benchmark
+    public long generateToChannel() throws IOException {
+        CountingChannel channel = new CountingChannel();
+        PropertiesGenerator.generate(bundle,
+                RBEPreferences.getPropertiesOptions(), channel,
+                Charset.forName("ISO-8859-1"));
+        return channel.count;
+    }
+
+    /**
+     * Channel discarding written bytes, only counting them.
+     */
+    private static final class CountingChannel
+            implements WritableByteChannel {
+        private long count;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int remaining = src.remaining();
+            src.position(src.limit());
+            count += remaining;
+            return remaining;
+        }
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesSourceMap;
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+
+/**
+ * Measures the heap retained by loaded bundles, reported as the
+ * <code>retainedKB</code> secondary result.  Bundles are either kept on
+ * their own, each holding its own key instances, or added to a bundle
+ * group sharing key instances, storing entries in maps or in columns.
+ * When <code>sourceMaps</code> is set, bundles are loaded as the editor
+ * loads them: each file is parsed along with the source map its source
+ * editor keeps, and source maps are retained with the bundles.
+ * Retained heap is the used heap difference
+ * after garbage collections, so compare runs of the same JVM.
+ * @author Pascal Essiembre
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class HeapFootprintBenchmark {
+
+    @Param({ "20000" })
+    private int keyCount;
+    @Param({ "20" })
+    private int localeCount;
+    @Param({ "unpooled", "pooled", "columns" })
+    private String storage;
+    @Param({ "false", "true" })
+    private boolean sourceMaps;
+
+    private List<String> sources;
+
+    /**
+     * Heap retained by the loaded bundles.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedKB;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedKB = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sources = new ArrayList<>();
+        for (int i = 0; i < localeCount; i++) {
+            sources.add(BundleFixtures.generate(keyCount, 32, 0, i));
+        }
+    }
+
+    @Benchmark
+    public Object load(Footprint footprint) {
+        long before = usedMemory();
+        Object loaded = "unpooled".equals(storage) ? parse() : loadGroup();
+        footprint.retainedKB = (usedMemory() - before) / 1024;
+        return loaded;
+    }
+
+    private List<Object> parse() {
+        List<Object> loaded = new ArrayList<>();
+        for (String source : sources) {
+            if (sourceMaps) {
+                PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+                loaded.add(PropertiesParser.parse(source, sourceMap,
+                        RBEPreferences.getPropertiesOptions()));
+                loaded.add(sourceMap);
+            } else {
+                loaded.add(PropertiesParser.parse(source));
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Loads bundles in a group, as <code>BundleLoader</code> does.
+     */
+    private List<Object> loadGroup() {
+        BundleGroup bundleGroup = new BundleGroup("columns".equals(storage));
+        Map<Locale, Bundle> bundles = new LinkedHashMap<>();
+        List<PropertiesSourceMap> maps = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            Bundle bundle;
+            if (sourceMaps) {
+                PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+                bundle = PropertiesParser.parse(sources.get(i), sourceMap,
+                        RBEPreferences.getPropertiesOptions());
+                maps.add(sourceMap);
+            } else {
+                bundle = PropertiesParser.parse(sources.get(i));
+            }
+            bundles.put(BundleFixtures.getLocale(i), bundle);
+        }
+        bundleGroup.addBundles(bundles);
+        for (PropertiesSourceMap sourceMap : maps) {
+            sourceMap.internKeys(bundleGroup.getKeyPool());
+        }
+        List<Object> loaded = new ArrayList<>();
+        loaded.add(bundleGroup);
+        loaded.addAll(maps);
+        return loaded;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.tree.KeyTree;
+import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
+import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
+import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
+
+/**
+ * Measures building a key tree.  Key trees register listeners on their
+ * bundle group, so each measurement is a single shot on a new group.
+ * @author Pascal Essiembre
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class KeyTreeBenchmark {
+
+    @Param({ "1000", "50000", "500000" })
+    private int keyCount;
+    @Param({ "1", "10" })
+    private int localeCount;
+    @Param({ "flat", "grouped" })
+    private String updater;
+
+    private BundleGroup bundleGroup;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        bundleGroup = BundleFixtures.createBundleGroup(
+                BundleFixtures.createBundles(keyCount, localeCount, 16, 0));
+    }
+
+    @Benchmark
+    public KeyTree createKeyTree() {
+        KeyTreeUpdater treeUpdater;
+        if ("flat".equals(updater)) {
+            treeUpdater = new FlatKeyTreeUpdater();
+        } else {
+            treeUpdater = new GroupedKeyTreeUpdater(".");
+        }
+        return new KeyTree(bundleGroup, treeUpdater);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+
+/**
+ * Measures parsing of a properties file.
+ * @author Pascal Essiembre
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({ "1000", "50000", "500000" })
+    private int keyCount;
+    @Param({ "16", "128" })
+    private int valueLength;
+    @Param({ "0", "0.1" })
+    private double escapeDensity;
+
+    private String content;
+
+    @Setup
+    public void setUp() {
+        content = BundleFixtures.generate(
+                keyCount, valueLength, escapeDensity, 0);
+    }
+
+    @Benchmark
+    public Bundle parse() {
+        return PropertiesParser.parse(content);
+    }
+
+    @Benchmark
+    public Bundle parseReader() throws IOException {
+        return PropertiesParser.parse(new StringReader(content));
+    }
+
+    /**
+     * Parses with the regular expression based parser the scanner replaced.
+     */
+    @Benchmark
+    public Map<String, BundleEntry> parseRegex() {
+        return RegexPropertiesParser.parse(content);
+    }
+
+    /**
+     * Parses and decodes every value, as when all values end up displayed.
+     */
+    @Benchmark
+    public void parseAndDecode(Blackhole blackhole) {
+        Bundle bundle = PropertiesParser.parse(content);
+        for (Iterator<BundleEntry> iter = bundle.iterator(); iter.hasNext();) {
+            blackhole.consume(iter.next().getValue());
+        }
+    }
+}
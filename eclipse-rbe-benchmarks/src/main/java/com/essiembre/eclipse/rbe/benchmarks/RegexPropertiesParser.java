@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+
+/**
+ * Regular expression based properties parser, as it was before the
+ * single-pass scanner of <code>PropertiesParser</code>, kept to compare
+ * both.  Entries are put in a map rather than a bundle, which only the
+ * model package can fill.
+ * @author Pascal Essiembre
+ */
+public final class RegexPropertiesParser {
+
+    /**
+     * Constructor.
+     */
+    private RegexPropertiesParser() {
+        super();
+    }
+
+    private static final String SYSTEM_LINE_SEPARATOR =
+            System.getProperty("line.separator");
+    private static final Pattern PATTERN_LINE_BREAK =
+            Pattern.compile("\r\n|\r|\n");
+    private static final Pattern PATTERN_IS_REGULAR_LINE =
+            Pattern.compile("^[^#!].*");
+    private static final Pattern PATTERN_IS_COMMENTED_LINE =
+            Pattern.compile("^##[^#].*");
+    private static final Pattern PATTERN_LEADING_SPACE =
+            Pattern.compile("^\\s*");
+    private static final Pattern PATTERN_COMMENT_START = Pattern.compile("^##");
+    private static final Pattern PATTERN_BACKSLASH_R = Pattern.compile("\\\\r");
+    private static final Pattern PATTERN_BACKSLASH_N = Pattern.compile("\\\\n");
+
+    /**
+     * Parses properties the way <code>PropertiesParser</code> did before
+     * its single-pass scanner.
+     * @param properties properties file content
+     * @return parsed entries (key=key; value=BundleEntry)
+     */
+    public static Map<String, BundleEntry> parse(String properties) {
+        Map<String, BundleEntry> entries = new LinkedHashMap<>();
+        String[] lines = PATTERN_LINE_BREAK.split(properties);
+
+        boolean doneWithFileComment = false;
+        StringBuffer fileComment = new StringBuffer();
+        StringBuffer lineComment = new StringBuffer();
+        StringBuffer lineBuf = new StringBuffer();
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            lineBuf.setLength(0);
+            lineBuf.append(line);
+
+            int equalPosition = findKeyValueSeparator(line);
+            boolean isRegularLine =
+                    PATTERN_IS_REGULAR_LINE.matcher(line).matches();
+            boolean isCommentedLine = doneWithFileComment
+                    && PATTERN_IS_COMMENTED_LINE.matcher(line).matches();
+
+            if (equalPosition >= 1 && (isRegularLine || isCommentedLine)) {
+                doneWithFileComment = true;
+                String comment = "";
+                if (lineComment.length() > 0) {
+                    comment = lineComment.toString();
+                    lineComment.setLength(0);
+                }
+
+                if (isCommentedLine) {
+                    lineBuf.delete(0, 2); // remove ##
+                    equalPosition -= 2;
+                }
+                String backslash = "\\";
+                while (lineBuf.lastIndexOf(backslash) == lineBuf.length() -1) {
+                    int lineBreakPosition = lineBuf.lastIndexOf(backslash);
+                    lineBuf.replace(
+                            lineBreakPosition,
+                            lineBreakPosition + 1, "");
+                    if (++i < lines.length) {
+                        String wrappedLine = PATTERN_LEADING_SPACE.matcher(
+                                lines[i]).replaceFirst("");
+                        if (isCommentedLine) {
+                            lineBuf.append(PATTERN_COMMENT_START.matcher(
+                                    wrappedLine).replaceFirst(""));
+                        } else {
+                            lineBuf.append(wrappedLine);
+                        }
+                    }
+                }
+                String key = lineBuf.substring(0, equalPosition).trim();
+                key = unescapeKey(key);
+
+                String value = PATTERN_LEADING_SPACE.matcher(
+                        lineBuf.substring(equalPosition + 1)).replaceFirst("");
+                if (value.startsWith("\\ ")) {
+                    value = value.substring(1);
+                }
+
+                if (RBEPreferences.getConvertEncodedToUnicode()) {
+                    key = PropertiesParser.convertEncodedToUnicode(key);
+                    value = PropertiesParser.convertEncodedToUnicode(value);
+                } else {
+                    value = PATTERN_BACKSLASH_R.matcher(value).replaceAll("\r");
+                    value = PATTERN_BACKSLASH_N.matcher(value).replaceAll("\n");
+                }
+                entries.put(key,
+                        new BundleEntry(key, value, comment, isCommentedLine));
+            } else if (lineBuf.length()>0 &&
+                    (lineBuf.charAt(0) == '#' || lineBuf.charAt(0) == '!')) {
+               if (!doneWithFileComment) {
+                    fileComment.append(lineBuf);
+                    fileComment.append(SYSTEM_LINE_SEPARATOR);
+                } else {
+                    lineComment.append(lineBuf);
+                    lineComment.append(SYSTEM_LINE_SEPARATOR);
+                }
+            } else {
+                doneWithFileComment = true;
+            }
+        }
+        return entries;
+    }
+
+    private static int findKeyValueSeparator(String str) {
+        int index = -1;
+        int length = str.length();
+        for (int i = 0; i < length; i++) {
+            char currentChar = str.charAt(i);
+            if (currentChar == '\\') {
+                i++;
+            } else if ("=:".indexOf(currentChar) != -1) {
+                index = i;
+                break;
+            }
+        }
+        return index;
+    }
+
+    private static String unescapeKey(String key) {
+        int length = key.length();
+        StringBuffer buf = new StringBuffer();
+        for (int index = 0; index < length; index++) {
+            char currentChar = key.charAt(index);
+            if (currentChar != '\\') {
+                buf.append(currentChar);
+            }
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroupSnapshot;
+
+/**
+ * Measures taking a snapshot of a bundle group and then modifying an
+ * entry, as when a background job reads the group while it is edited.
+ * The first modification after a snapshot copies what the group shares
+ * with the snapshot.
+ * @author Pascal Essiembre
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({ "1000", "50000", "500000" })
+    private int keyCount;
+    @Param({ "false", "true" })
+    private boolean compactStorage;
+
+    private BundleGroup bundleGroup;
+    private Locale locale;
+    private int edit;
+
+    @Setup
+    public void setUp() {
+        bundleGroup = new BundleGroup(compactStorage);
+        bundleGroup.addBundles(BundleFixtures.createBundles(
+                keyCount, 1, 32, 0));
+        locale = BundleFixtures.getLocale(0);
+    }
+
+    /**
+     * Takes a snapshot, then modifies an entry.
+     */
+    @Benchmark
+    public BundleGroupSnapshot snapshotThenEdit() {
+        BundleGroupSnapshot snapshot = bundleGroup.snapshot();
+        edit++;
+        bundleGroup.addBundleEntry(locale, new BundleEntry(
+                BundleFixtures.getKey(edit % keyCount), "edit " + edit, null));
+        return snapshot;
+    }
+}
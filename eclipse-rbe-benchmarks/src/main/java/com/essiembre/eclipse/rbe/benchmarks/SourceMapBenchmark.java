@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesSourceMap;
+
+/**
+ * Measures reloading a source editor after a one character edit, by
+ * re-parsing the edited region only, against parsing the whole source.
+ * @author Pascal Essiembre
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SourceMapBenchmark {
+
+    @Param({ "1000", "50000" })
+    private int keyCount;
+
+    private StringBuilder text;
+    private PropertiesSourceMap sourceMap;
+    private BundleGroup bundleGroup;
+    private int editCount;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        text = new StringBuilder(BundleFixtures.generate(keyCount, 32, 0, 0));
+        sourceMap = new PropertiesSourceMap();
+        bundleGroup = new BundleGroup();
+        bundleGroup.addBundle(Locale.ENGLISH,
+                PropertiesParser.parse(text, sourceMap));
+        editCount = 0;
+    }
+
+    /**
+     * Inserts a character and re-parses the edited region.
+     */
+    @Benchmark
+    public BundleGroup reparseEdit() {
+        int offset = (text.length() / 2 + editCount++ * 40) % text.length();
+        text.insert(offset, 'x');
+        PropertiesSourceMap.Region region = sourceMap.reparse(
+                text, offset, text.length() - offset - 1);
+        if (region != null) {
+            bundleGroup.updateBundle(Locale.ENGLISH,
+                    region.getReplacedKeys(), region.getEntries());
+        } else {
+            bundleGroup.addBundle(Locale.ENGLISH,
+                    PropertiesParser.parse(text, sourceMap));
+        }
+        return bundleGroup;
+    }
+
+    /**
+     * Parses the whole source, as before regions were re-parsed.
+     */
+    @Benchmark
+    public Bundle fullParse() {
+        return PropertiesParser.parse(text, new PropertiesSourceMap());
+    }
+}
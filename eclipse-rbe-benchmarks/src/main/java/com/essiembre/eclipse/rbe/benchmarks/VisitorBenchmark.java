@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.bundle.visitors.DuplicateValuesVisitor;
+import com.essiembre.eclipse.rbe.model.bundle.visitors.SimilarValuesVisitor;
+import com.essiembre.eclipse.rbe.model.utils.LevenshteinDistanceAnalyzer;
+import com.essiembre.eclipse.rbe.model.utils.WordCountAnalyzer;
+
+/**
+ * Measures the scans looking for values duplicate or similar to the value
+ * of one entry, as done for each entry shown in the editor.
+ * @author Pascal Essiembre
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VisitorBenchmark {
+
+    @Param({ "1000", "50000", "500000" })
+    private int keyCount;
+    @Param({ "16", "128" })
+    private int valueLength;
+
+    private Bundle bundle;
+    private BundleEntry entry;
+
+    @Setup
+    public void setUp() {
+        bundle = PropertiesParser.parse(BundleFixtures.generate(
+                keyCount, valueLength, 0.05, 0));
+        entry = bundle.getEntry(BundleFixtures.getKey(keyCount / 2));
+    }
+
+    @Benchmark
+    public Collection<BundleEntry> duplicateValues() {
+        DuplicateValuesVisitor visitor = new DuplicateValuesVisitor();
+        bundle.accept(visitor, entry);
+        return visitor.getDuplicates();
+    }
+
+    @Benchmark
+    public Collection<BundleEntry> similarValuesWordCount() {
+        SimilarValuesVisitor visitor = new SimilarValuesVisitor();
+        visitor.setProximityAnalyzer(WordCountAnalyzer.getInstance());
+        bundle.accept(visitor, entry);
+        return visitor.getSimilars();
+    }
+
+    @Benchmark
+    public Collection<BundleEntry> similarValuesLevenshtein() {
+        SimilarValuesVisitor visitor = new SimilarValuesVisitor();
+        visitor.setProximityAnalyzer(
+                LevenshteinDistanceAnalyzer.getInstance());
+        bundle.accept(visitor, entry);
+        return visitor.getSimilars();
+    }
+}
@@ -81,8 +81,9 @@ public class RBEPlugin extends AbstractUIPlugin {
      * @return localized string corresponding to key
      */
     public static String getString(String key) {
-        ResourceBundle bundle = 
-                RBEPlugin.getDefault().getResourceBundle();
+        // plugin is not running when the model is used outside Eclipse
+        ResourceBundle bundle = (plugin != null)
+                ? plugin.getResourceBundle() : null;
         try {
             return (bundle != null) ? bundle.getString(key) : key;
         } catch (MissingResourceException e) {
@@ -15,21 +15,51 @@
  */
 package com.essiembre.eclipse.rbe.model;
 
+import java.util.Locale;
+
 /**
- * Generic event for listeners.
+ * Generic event for listeners.  Events about a bundle entry also carry its
+ * former and new values, the locale of its bundle and its key.
  * @author Pascal Essiembre
  */
 public class DeltaEvent {
     
     /** Object acted upon. */
     protected Object actedUpon;
+    /** Value before the change, if known. */
+    private final Object oldValue;
+    /** Value after the change, if known. */
+    private final Object newValue;
+    /** Locale of the changed bundle, if any. */
+    private final Locale locale;
+    /** Key of the changed entry, if any. */
+    private final String key;
 
     /**
      * Constructor.
      * @param receiver object acted upon
      */
     public DeltaEvent(Object receiver) {
+        this(receiver, null, null, null, null);
+    }
+
+    /**
+     * Constructor.
+     * @param receiver object acted upon
+     * @param oldValue value before the change, <code>null</code> if added
+     *        or unknown
+     * @param newValue value after the change, <code>null</code> if removed
+     *        or unknown
+     * @param locale locale of the changed bundle, or <code>null</code>
+     * @param key key of the changed entry, or <code>null</code>
+     */
+    public DeltaEvent(Object receiver, Object oldValue, Object newValue,
+            Locale locale, String key) {
         actedUpon = receiver;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.locale = locale;
+        this.key = key;
     }
     
     /**
@@ -39,4 +69,36 @@ public class DeltaEvent {
     public Object receiver() {
         return actedUpon;
     }
+
+    /**
+     * Gets the value before the change.
+     * @return former value, or <code>null</code> if added or unknown
+     */
+    public Object oldValue() {
+        return oldValue;
+    }
+
+    /**
+     * Gets the value after the change.
+     * @return new value, or <code>null</code> if removed or unknown
+     */
+    public Object newValue() {
+        return newValue;
+    }
+
+    /**
+     * Gets the locale of the changed bundle.
+     * @return locale, or <code>null</code> if not about a bundle
+     */
+    public Locale locale() {
+        return locale;
+    }
+
+    /**
+     * Gets the key of the changed entry.
+     * @return key, or <code>null</code> if not about a single entry
+     */
+    public String key() {
+        return key;
+    }
 }
@@ -15,12 +15,8 @@
  */
 package com.essiembre.eclipse.rbe.model;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-
-//import org.eclipse.core.internal.runtime.ListenerList; >= Eclipse 3.2
-//import org.eclipse.core.runtime.ListenerList;           < Eclipse 3.2
+import java.lang.ref.WeakReference;
+import java.util.Locale;
 
 /**
  * Base class for core model objects.
@@ -28,24 +24,39 @@ import java.util.List;
  */
 public abstract class Model {
 
-    /* The holder for listeners was changed from ListenerList to ArrayList
-     * to support both Eclipse 3.1 and 3.2.  The ListenerList location changed
-     * from 3.1 to 3.2 as described here:
-     * https://bugs.eclipse.org/bugs/show_bug.cgi?format=multiple&id=94156
+    /** Kinds of events, matching listener methods. */
+    private static final int ADD = 0;
+    private static final int REMOVE = 1;
+    private static final int MODIFY = 2;
+    private static final int SELECT = 3;
+    /** Listener registrations of a model without listeners. */
+    private static final Registration[] NO_REGISTRATIONS =
+            new Registration[0];
+
+    /* Listeners are held in an array replaced on each change rather than
+     * in a list (or an Eclipse ListenerList, which location changed from
+     * 3.1 to 3.2), so that events are dispatched to a snapshot of them
+     * without locking, and listeners can be removed while notified.
      */
-    /** Listeners for this object. */
-    private final List<IDeltaListener> listeners = new ArrayList<>();
+    /** Registrations of listeners for this object, most recent first. */
+    private volatile Registration[] registrations = NO_REGISTRATIONS;
     
     /**
      * Fires an "add" event.
      * @param added object added
      */
     protected void fireAdd(Object added) {
-        for (Iterator<IDeltaListener> iter = 
-                listeners.iterator(); iter.hasNext();) {
-            IDeltaListener listener = iter.next();
-            listener.add(new DeltaEvent(added));
-        }
+        fire(ADD, added, null, null, null, null);
+    }
+
+    /**
+     * Fires an "add" event about a bundle entry.
+     * @param added entry added
+     * @param locale locale of the bundle
+     * @param key entry key
+     */
+    protected void fireAdd(Object added, Locale locale, String key) {
+        fire(ADD, added, null, added, locale, key);
     }
 
     /**
@@ -53,11 +64,17 @@ public abstract class Model {
      * @param removed object removed
      */
     protected void fireRemove(Object removed) {
-        for (Iterator<IDeltaListener> iter = 
-                listeners.iterator(); iter.hasNext();) {
-            IDeltaListener listener = iter.next();
-            listener.remove(new DeltaEvent(removed));
-        }
+        fire(REMOVE, removed, null, null, null, null);
+    }
+
+    /**
+     * Fires a "remove" event about a bundle entry.
+     * @param removed entry removed
+     * @param locale locale of the bundle
+     * @param key entry key
+     */
+    protected void fireRemove(Object removed, Locale locale, String key) {
+        fire(REMOVE, removed, removed, null, locale, key);
     }
     
     /**
@@ -65,11 +82,20 @@ public abstract class Model {
      * @param modified object modified
      */
     protected void fireModify(Object modified) {
-        for (Iterator<IDeltaListener> iter = 
-                listeners.iterator(); iter.hasNext();) {
-            IDeltaListener listener = iter.next();
-            listener.modify(new DeltaEvent(modified));
-        }
+        fire(MODIFY, modified, null, null, null, null);
+    }
+
+    /**
+     * Fires a "modify" event about a bundle entry, which receiver is the
+     * former entry.
+     * @param oldValue entry before the change
+     * @param newValue entry after the change
+     * @param locale locale of the bundle
+     * @param key entry key
+     */
+    protected void fireModify(Object oldValue, Object newValue,
+            Locale locale, String key) {
+        fire(MODIFY, oldValue, oldValue, newValue, locale, key);
     }
     
     /**
@@ -77,10 +103,45 @@ public abstract class Model {
      * @param selected the selected object.
      */
     protected void fireSelect(Object selected) {
-        for (Iterator<IDeltaListener> iter = 
-                listeners.iterator(); iter.hasNext();) {
-            IDeltaListener listener = iter.next();
-            listener.select(new DeltaEvent(selected));
+        fire(SELECT, selected, null, null, null, null);
+    }
+
+    /**
+     * Notifies listeners of an event, creating the event only once a
+     * listener is found.
+     */
+    private void fire(int kind, Object receiver, Object oldValue,
+            Object newValue, Locale locale, String key) {
+        Registration[] snapshot = registrations;
+        DeltaEvent event = null;
+        boolean collected = false;
+        for (int i = 0; i < snapshot.length; i++) {
+            IDeltaListener listener = snapshot[i].getListener();
+            if (listener == null) {
+                collected = true;
+                continue;
+            }
+            if (event == null) {
+                event = new DeltaEvent(
+                        receiver, oldValue, newValue, locale, key);
+            }
+            switch (kind) {
+            case ADD:
+                listener.add(event);
+                break;
+            case REMOVE:
+                listener.remove(event);
+                break;
+            case MODIFY:
+                listener.modify(event);
+                break;
+            default:
+                listener.select(event);
+            }
+        }
+        if (collected) {
+            // removes only the registrations of collected listeners
+            removeListener(null);
         }
     }
 
@@ -89,13 +150,81 @@ public abstract class Model {
      * @param listener listener to add
      */
     public void addListener(IDeltaListener listener) {
-        listeners.add(0, listener);
+        register(new Registration(listener));
+    }
+
+    /**
+     * Adds a listener to this instance without keeping it from being
+     * garbage collected, for listeners of parts that may be closed without
+     * removing them.  The caller must hold the listener as long as it is
+     * to be notified.
+     * @param listener listener to add
+     */
+    public void addWeakListener(IDeltaListener listener) {
+        register(new WeakRegistration(listener));
     }
+
     /**
      * Removes a listener from this instance.
      * @param listener listener to remove
      */
-    public void removeListener(IDeltaListener listener) {
-        listeners.remove(listener);
+    public synchronized void removeListener(IDeltaListener listener) {
+        Registration[] oldRegistrations = registrations;
+        Registration[] newRegistrations =
+                new Registration[oldRegistrations.length];
+        int count = 0;
+        for (Registration registration : oldRegistrations) {
+            IDeltaListener registered = registration.getListener();
+            if (registered != null && registered != listener) {
+                newRegistrations[count++] = registration;
+            }
+        }
+        if (count < oldRegistrations.length) {
+            Registration[] trimmed = new Registration[count];
+            System.arraycopy(newRegistrations, 0, trimmed, 0, count);
+            registrations = count == 0 ? NO_REGISTRATIONS : trimmed;
+        }
+    }
+
+    private synchronized void register(Registration registration) {
+        Registration[] oldRegistrations = registrations;
+        Registration[] newRegistrations =
+                new Registration[oldRegistrations.length + 1];
+        newRegistrations[0] = registration;
+        System.arraycopy(oldRegistrations, 0,
+                newRegistrations, 1, oldRegistrations.length);
+        registrations = newRegistrations;
+    }
+
+    /**
+     * Listener registration.
+     */
+    private static class Registration {
+        private final IDeltaListener listener;
+
+        /*default*/ Registration(IDeltaListener listener) {
+            this.listener = listener;
+        }
+
+        /*default*/ IDeltaListener getListener() {
+            return listener;
+        }
+    }
+
+    /**
+     * Registration of a listener held weakly.
+     */
+    private static class WeakRegistration extends Registration {
+        private final WeakReference<IDeltaListener> reference;
+
+        /*default*/ WeakRegistration(IDeltaListener listener) {
+            super(null);
+            this.reference = new WeakReference<>(listener);
+        }
+
+        @Override
+        /*default*/ IDeltaListener getListener() {
+            return reference.get();
+        }
     }
 }
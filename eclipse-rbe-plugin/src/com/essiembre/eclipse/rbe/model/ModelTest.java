@@ -0,0 +1,100 @@
+package com.essiembre.eclipse.rbe.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+
+/**
+ * Checks that entry events carry their values and that listeners can be
+ * removed while notified or collected.
+ */
+public class ModelTest {
+
+    @Test
+    public void testEntryEvents() {
+        BundleGroup group = new BundleGroup();
+        group.addBundle(Locale.ENGLISH, PropertiesParser.parse("a.b = 1\n"));
+        List<DeltaEvent> all = new ArrayList<>();
+        List<DeltaEvent> other = new ArrayList<>();
+        Model bundle = group.getBundle(Locale.ENGLISH);
+        bundle.addListener(new EventRecorder(all));
+        bundle.addListener(new EventRecorder(other));
+
+        group.addBundleEntry(Locale.ENGLISH, new BundleEntry("a.b", "2", null));
+        group.addBundleEntry(Locale.ENGLISH, new BundleEntry("c", "3", null));
+
+        Assert.assertEquals(2, all.size());
+        Assert.assertEquals(all, other);
+        DeltaEvent event = all.get(0);
+        Assert.assertSame(Locale.ENGLISH, event.locale());
+        Assert.assertEquals("a.b", event.key());
+        Assert.assertEquals("1", ((BundleEntry) event.oldValue()).getValue());
+        Assert.assertEquals("2", ((BundleEntry) event.newValue()).getValue());
+        Assert.assertSame(other.get(0), event);
+        Assert.assertNull(all.get(1).oldValue());
+    }
+
+    @Test
+    public void testRemoveDuringDispatch() {
+        final BundleGroup group = new BundleGroup();
+        final List<DeltaEvent> events = new ArrayList<>();
+        group.addListener(new EventRecorder(events));
+        group.addListener(new EventRecorder(events) {
+            @Override
+            public void add(DeltaEvent event) {
+                group.removeListener(this);
+            }
+        });
+        group.addBundle(Locale.ENGLISH, PropertiesParser.parse("a = 1\n"));
+        group.addBundle(Locale.FRENCH, PropertiesParser.parse("a = 1\n"));
+        Assert.assertEquals(2, events.size());
+    }
+
+    @Test
+    public void testWeakListener() {
+        BundleGroup group = new BundleGroup();
+        List<DeltaEvent> events = new ArrayList<>();
+        EventRecorder listener = new EventRecorder(events);
+        group.addWeakListener(listener);
+        group.addBundle(Locale.ENGLISH, PropertiesParser.parse("a = 1\n"));
+        Assert.assertEquals(1, events.size());
+
+        listener = null;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        group.addBundle(Locale.FRENCH, PropertiesParser.parse("a = 1\n"));
+        Assert.assertEquals(1, events.size());
+    }
+
+    private static class EventRecorder implements IDeltaListener {
+        private final List<DeltaEvent> events;
+
+        private EventRecorder(List<DeltaEvent> events) {
+            this.events = events;
+        }
+
+        public void add(DeltaEvent event) {
+            events.add(event);
+        }
+
+        public void remove(DeltaEvent event) {
+            events.add(event);
+        }
+
+        public void modify(DeltaEvent event) {
+            events.add(event);
+        }
+
+        public void select(DeltaEvent event) {
+            events.add(event);
+        }
+    }
+}
@@ -16,12 +16,11 @@
 package com.essiembre.eclipse.rbe.model.bundle;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeSet;
 
 import com.essiembre.eclipse.rbe.model.Model;
@@ -37,8 +36,18 @@ public class Bundle extends Model implements IBundleVisitable {
     private String comment;
     /** Bundle locale. */
     private Locale locale;
-    /** Bundle entries (key=key value=BundleEntry). */
-    private final Map<String, BundleEntry> entries = new HashMap<>();
+    /** Bundle entries. */
+    private EntryStore entries = new MapEntryStore();
+    /**
+     * Bundle entry keys, sorted, or <code>null</code> when entries are
+     * stored in columns and sorted with group keys.
+     */
+    private SortedSet<String> keys = new TreeSet<>();
+    /** Read-only view of sorted keys. */
+    private SortedSet<String> keysView =
+            Collections.unmodifiableSortedSet(keys);
+    /** Keys of commented entries and of entries with duplicate values. */
+    private EntryIndex entryIndex = new EntryIndex(entries);
     /** Bundle group (parent). */
     private BundleGroup bundleGroup;
     
@@ -54,7 +63,7 @@ public class Bundle extends Model implements IBundleVisitable {
      */
     public void accept(IBundleVisitor visitor, Object passAlongArgument) {
         for (Iterator<BundleEntry> iter = 
-                entries.values().iterator(); iter.hasNext();) {
+                entries.iterator(); iter.hasNext();) {
             visitor.visitBundleEntry(iter.next(), passAlongArgument);
         }
         visitor.visitBundle(this, passAlongArgument);
@@ -97,7 +106,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @return the matching bundle entry, or <code>null</code>
      */
     public BundleEntry getEntry(String key) {
-        return (BundleEntry) entries.get(key);    
+        return entries.get(key);    
     }
     
     /**
@@ -105,19 +114,37 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param entry the bundle entry to add
      */
     protected void addEntry(BundleEntry entry) {
-        BundleEntry oldEntry = (BundleEntry) entries.get(entry.getKey());
+        BundleEntry oldEntry = entries.get(entry.getKey());
         if (oldEntry != null) {
             if (!oldEntry.equals(entry)) {
-                entries.put(entry.getKey(), entry);
+                entry.setCanonicalKey(oldEntry.getKey());
+                entryIndex.remove(oldEntry);
+                entries.put(entry);
+                entryIndex.add(entry);
                 entry.setBundle(this);
                 entry.setLocale(locale);
-                fireModify(oldEntry);
+                if (!isBatched(entry.getKey(), oldEntry, entry)) {
+                    fireModify(oldEntry, entry, locale, entry.getKey());
+                }
             }
         } else if (entry.getKey().trim().length() > 0) {
-            entries.put(entry.getKey(), entry);
+            if (bundleGroup != null) {
+                entry.setCanonicalKey(
+                        bundleGroup.getKeyPool().intern(entry.getKey()));
+            }
+            entries.put(entry);
+            if (keys != null) {
+                keys.add(entry.getKey());
+            }
+            entryIndex.add(entry);
             entry.setBundle(this);
             entry.setLocale(locale);
-            fireAdd(entry);
+            if (bundleGroup != null) {
+                bundleGroup.keyAdded(locale, entry.getKey());
+            }
+            if (!isBatched(entry.getKey(), null, entry)) {
+                fireAdd(entry, locale, entry.getKey());
+            }
         }
     }
     
@@ -126,9 +153,35 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param entry the bundle entry to remove
      */
     protected void removeEntry(BundleEntry entry) {
-        BundleEntry removedEntry = (BundleEntry) entries.get(entry.getKey());
-        entries.remove(entry.getKey());
-        fireRemove(removedEntry);
+        BundleEntry removedEntry = entries.get(entry.getKey());
+        if (removedEntry != null) {
+            entryIndex.remove(removedEntry);
+            entries.remove(entry.getKey());
+            if (keys != null) {
+                keys.remove(entry.getKey());
+            }
+            if (bundleGroup != null) {
+                bundleGroup.keyRemoved(locale, removedEntry.getKey());
+            }
+        }
+        if (!isBatched(entry.getKey(), removedEntry, null)) {
+            fireRemove(removedEntry, locale, entry.getKey());
+        }
+    }
+
+    /**
+     * Records a change to an entry in the bundle group undo history, and
+     * when the group is making changes in a batch, rather than notifying it.
+     * @param key key of the added, modified or removed entry
+     * @param oldEntry entry before the change, <code>null</code> if none
+     * @param newEntry entry after the change, <code>null</code> if none
+     * @return <code>true</code> if recorded, the change not to be notified
+     * @see BundleGroup#beginBatch()
+     */
+    private boolean isBatched(
+            String key, BundleEntry oldEntry, BundleEntry newEntry) {
+        return bundleGroup != null && bundleGroup.recordChange(
+                locale, key, oldEntry, newEntry);
     }
     
     /**
@@ -137,7 +190,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param newKey the new name for the bundle entry
      */
     protected void renameKey(String oldKey, String newKey) {
-        BundleEntry oldEntry = (BundleEntry) entries.get(oldKey);
+        BundleEntry oldEntry = entries.get(oldKey);
         if (oldEntry != null) {
             BundleEntry newEntry = new BundleEntry(
                     newKey, oldEntry.getValue(), oldEntry.getComment());
@@ -151,7 +204,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param key key of bundle entry to be commented
      */
     protected void commentKey(String key) {
-        BundleEntry entry = (BundleEntry) entries.get(key);
+        BundleEntry entry = entries.get(key);
         if (entry != null) {
             BundleEntry newEntry = new BundleEntry(
                     key, entry.getValue(), entry.getComment(), true);
@@ -163,7 +216,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param key key of bundle entry to be uncommented
      */
     protected void uncommentKey(String key) {
-        BundleEntry entry = (BundleEntry) entries.get(key);
+        BundleEntry entry = entries.get(key);
         if (entry != null) {
             BundleEntry newEntry = new BundleEntry(
                     key, entry.getValue(), entry.getComment(), false);
@@ -177,7 +230,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param newKey key for the copied bundle entry
      */
     protected void copyKey(String origKey, String newKey) {
-        BundleEntry origEntry = (BundleEntry) entries.get(origKey);
+        BundleEntry origEntry = entries.get(origKey);
         if (origEntry != null) {
             BundleEntry newEntry = new BundleEntry(
                     newKey, origEntry.getValue(), origEntry.getComment());
@@ -190,7 +243,7 @@ public class Bundle extends Model implements IBundleVisitable {
      * @return an iterator
      */
     public Iterator<BundleEntry> iterator() {
-        return entries.values().iterator();
+        return entries.iterator();
     }
 
     /**
@@ -209,14 +262,85 @@ public class Bundle extends Model implements IBundleVisitable {
     }
     
     /**
-     * Gets sorted resource bundle keys for this bundle.
+     * Replaces entry keys with their canonical instance from the given
+     * pool, pooling them if not already.  Entries are moved to columns
+     * when the bundle group stores them so.
+     * @param keyPool key pool
+     */
+    /*default*/ void internKeys(KeyPool keyPool) {
+        List<BundleEntry> internedEntries = new ArrayList<>(entries.size());
+        for (Iterator<BundleEntry> iter = iterator(); iter.hasNext();) {
+            internedEntries.add(iter.next());
+        }
+        ColumnarEntryStore columns = null;
+        if (bundleGroup != null && bundleGroup.isCompactStorage()) {
+            columns = new ColumnarEntryStore(this, keyPool);
+            entries = columns;
+            keys = null;
+            keysView = new StoredKeySet(bundleGroup.getSortedKeys(), entries);
+        } else {
+            entries = new MapEntryStore();
+            keys = new TreeSet<>();
+            keysView = Collections.unmodifiableSortedSet(keys);
+        }
+        entryIndex = new EntryIndex(entries);
+        for (BundleEntry entry : internedEntries) {
+            entry.setCanonicalKey(keyPool.intern(entry.getKey()));
+            entries.put(entry);
+            if (keys != null) {
+                keys.add(entry.getKey());
+            }
+            entryIndex.add(entry);
+        }
+        if (columns != null) {
+            columns.trimToSize();
+        }
+    }
+
+    /**
+     * Iterates through the keys of entries in this bundle, in no particular
+     * order.
+     * @return an iterator
+     */
+    /*default*/ Iterator<String> keyIterator() {
+        return entries.keyIterator();
+    }
+
+    /**
+     * Gets a read-only snapshot of the entries in this bundle.
+     * @return entry store snapshot
+     */
+    /*default*/ EntryStore snapshotEntries() {
+        return entries.snapshot();
+    }
+
+    /**
+     * Gets the keys of commented entries and of entries with duplicate
+     * values.
+     * @return entry index
+     */
+    /*default*/ EntryIndex getEntryIndex() {
+        return entryIndex;
+    }
+
+    /**
+     * Gets sorted resource bundle keys for this bundle.  The returned set
+     * is a read-only view, reflecting later changes to this bundle, and
+     * its sub-sets are views as well.
      * @return resource bundle keys
      */
-    public Set<String> getKeys() {
-        Set<String> keys = new TreeSet<String>();
-        keys.addAll(entries.keySet());
-        return keys;
-        //        return Collections.unmodifiableSet(keys);
+    public SortedSet<String> getKeys() {
+        return keysView;
+    }
+
+    /**
+     * Gets sorted resource bundle keys for this bundle starting with the
+     * given prefix, as a read-only view of {@link #getKeys()}.
+     * @param prefix key prefix
+     * @return resource bundle keys starting with the prefix
+     */
+    public SortedSet<String> getKeys(String prefix) {
+        return KeyIndex.subSet(keysView, prefix);
     }
 
     /**
@@ -31,8 +31,12 @@ public final class BundleEntry implements IBundleVisitable {
     private String comment;
     /** Whehter this entry is commented out or not. */
     private boolean commented;
-    /** Entry value. */
+    /** Entry value, <code>null</code> until the raw value is decoded. */
     private String value;
+    /** Escaped value as found in a properties file, if any. */
+    private String rawValue;
+    /** Whether decoding the raw value converts encoded characters. */
+    private boolean convertEncoded;
     /** Associated bundle (parent). */
     private Bundle bundle;
 
@@ -69,6 +73,27 @@ public final class BundleEntry implements IBundleVisitable {
         this(key, value, comment, false);
     }
 
+    /**
+     * Constructor for entries read from a properties file, which value
+     * is only decoded the first time it is requested.
+     * @param key unique identifier within bundle
+     * @param rawValue escaped entry value, as found in a properties file
+     * @param convertEncoded whether encoded characters are converted, or
+     *        only escaped line breaks
+     * @param comment entry comment
+     * @param commented if this whole entry is considered commented out
+     */
+    /*default*/ BundleEntry(String key, String rawValue,
+            boolean convertEncoded, String comment, boolean commented) {
+        this(key, null, comment, commented);
+        this.value = null;
+        this.rawValue = rawValue;
+        this.convertEncoded = convertEncoded;
+        if (rawValue == null) {
+            this.rawValue = "";
+        }
+    }
+
     /**
      * @see IBundleVisitable#accept(IBundleVisitor, Object)
      */
@@ -96,12 +121,55 @@ public final class BundleEntry implements IBundleVisitable {
         return key;
     }
         
+    /**
+     * Replaces the key with its canonical instance.
+     * @param canonicalKey key equal to this entry key
+     */
+    /*default*/ void setCanonicalKey(String canonicalKey) {
+        this.key = canonicalKey;
+    }
+        
     /**
      * Gets the "value" attribute.
      * @return Returns the value.
      */
     public String getValue() {
-        return value;
+        // concurrent first calls decode the same value, which is harmless
+        String decoded = value;
+        if (decoded == null) {
+            if (convertEncoded) {
+                decoded = PropertiesParser.convertEncodedToUnicode(rawValue);
+            } else {
+                decoded = PropertiesParser.convertEscapedLineBreaks(rawValue);
+            }
+            value = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * Whether the value is empty.  A value read from a properties file is
+     * only decoded if its escaped form holds escaped characters, which
+     * might all decode to nothing.
+     * @return <code>true</code> if empty
+     */
+    public boolean hasEmptyValue() {
+        String decoded = value;
+        if (decoded != null) {
+            return decoded.length() == 0;
+        }
+        if (rawValue.indexOf('\\') == -1) {
+            return rawValue.length() == 0;
+        }
+        return getValue().length() == 0;
+    }
+
+    /**
+     * Whether the value is decoded, or was given decoded.
+     * @return <code>true</code> if decoded
+     */
+    /*default*/ boolean isValueDecoded() {
+        return value != null;
     }
 
     /**
@@ -152,11 +220,41 @@ public final class BundleEntry implements IBundleVisitable {
         BundleEntry entry = (BundleEntry) obj;
         return key.equals(entry.getKey())
                 && commented == entry.isCommented()
-                && value.equals(entry.getValue())
+                && valueEquals(entry)
                 && (comment == null && entry.getComment() == null
                         || comment != null && comment.equals(
                                 entry.getComment()));
     }
+
+    /**
+     * Whether the given entry is the same bundle entry as this one, having
+     * the same key in the same bundle.  Entries of bundles storing them in
+     * columns are created each time they are read, so the same bundle entry
+     * can be held by distinct objects.
+     * @param entry another entry
+     * @return <code>true</code> if the same bundle entry
+     */
+    public boolean isSameEntry(BundleEntry entry) {
+        return entry == this || entry != null && bundle == entry.getBundle()
+                && key.equals(entry.getKey());
+    }
+
+    /**
+     * Compares values, without decoding them when both entries hold the
+     * same raw value.
+     * @param entry entry to compare
+     * @return <code>true</code> if values are equal
+     */
+    private boolean valueEquals(BundleEntry entry) {
+        String raw = rawValue;
+        String otherRaw = entry.rawValue;
+        if (raw != null && otherRaw != null
+                && convertEncoded == entry.convertEncoded
+                && raw.equals(otherRaw)) {
+            return true;
+        }
+        return getValue().equals(entry.getValue());
+    }
     
     
     /**
@@ -165,7 +263,7 @@ public final class BundleEntry implements IBundleVisitable {
     public String toString() {
         return super.toString() 
                 + "[[key=" + key
-                + "][value=" + value
+                + "][value=" + getValue()
                 + "][comment=" + comment
                 + "][commented=" + commented
                 + "][locale=" + locale + "]]";
@@ -0,0 +1,126 @@
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Assert;
+
+/**
+ * Properties files and assertions shared by the bundle tests.
+ */
+/*default*/ final class BundleFixtures {
+
+    private BundleFixtures() {
+        super();
+    }
+
+    /**
+     * Generates a small properties file laid out by hand: comments, blank
+     * lines, commented entries, continuation lines and mixed line breaks.
+     */
+    /*default*/ static String generateLayout(Random random) {
+        StringBuilder text = new StringBuilder("# header\n\n");
+        int count = random.nextInt(15);
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(3) == 0) {
+                text.append("# comment ").append(i).append('\n');
+            }
+            if (random.nextInt(4) == 0) {
+                text.append('\n');
+            }
+            if (random.nextInt(5) == 0) {
+                text.append("##");
+            }
+            text.append("key").append(i).append(" = v");
+            if (random.nextInt(4) == 0) {
+                text.append("\\\n    ");
+            }
+            text.append(i).append(random.nextInt(4) == 0 ? "\r\n" : "\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Generates a properties file as the editor writes it, which keys are
+     * grouped and the same whatever the random values.
+     */
+    /*default*/ static String generateGrouped(int keyCount, Random random) {
+        StringBuilder text = new StringBuilder();
+        text.append("#Generated by ResourceBundle Editor\n# header\n\n");
+        for (int i = 0; i < keyCount; i++) {
+            if (i % 10 == 0) {
+                text.append("# comment for group ").append(i).append('\n');
+            }
+            if (i % 25 == 0) {
+                text.append("##");
+            }
+            text.append("group").append(i / 10).append(".key").append(i);
+            text.append(" = ");
+            int words = 1 + random.nextInt(12);
+            for (int j = 0; j < words; j++) {
+                text.append("value").append(j).append(' ');
+                if (j == 5 && i % 3 == 0) {
+                    text.append("\\\n        ");
+                    if (i % 25 == 0) {
+                        text.append("##");
+                    }
+                }
+            }
+            if (i % 7 == 0) {
+                text.append("\\u00e9\\n\\u4e2d");
+            }
+            text.append(i % 50 == 0 ? "\r\n" : "\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Generates a properties file defining about half of the keys
+     * <code>key0</code> to <code>key{keyCount - 1}</code>, with values
+     * often shared by several keys.
+     */
+    /*default*/ static String generateSparse(Random random, int keyCount) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < keyCount; i++) {
+            if (random.nextBoolean()) {
+                text.append("key").append(i).append(" = v")
+                        .append(random.nextInt(20)).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Asserts that bundles have the same comment and entries.
+     * @param text message identifying the bundles, may be <code>null</code>
+     */
+    /*default*/ static void assertSameBundle(
+            String text, Bundle expected, Bundle actual) {
+        Assert.assertEquals(text, expected.getComment(), actual.getComment());
+        Assert.assertEquals(text, expected.getKeys(), actual.getKeys());
+        for (Iterator<BundleEntry> iter = expected.iterator();
+                iter.hasNext();) {
+            BundleEntry entry = iter.next();
+            Assert.assertEquals(text, entry, actual.getEntry(entry.getKey()));
+        }
+    }
+
+    /**
+     * Asserts that bundles have the same keys, values and commented
+     * entries, whatever their comments.
+     * @param text message identifying the bundles, may be <code>null</code>
+     */
+    /*default*/ static void assertSameValues(
+            String text, Bundle expected, Bundle actual) {
+        Assert.assertEquals(text, expected.getKeys(), actual.getKeys());
+        for (Iterator<BundleEntry> iter = expected.iterator();
+                iter.hasNext();) {
+            BundleEntry entry = iter.next();
+            BundleEntry actualEntry = actual.getEntry(entry.getKey());
+            Assert.assertEquals(text, entry.getValue(),
+                    actualEntry.getValue());
+            Assert.assertEquals(text, entry.isCommented(),
+                    actualEntry.isCommented());
+        }
+    }
+}
@@ -18,12 +18,14 @@ package com.essiembre.eclipse.rbe.model.bundle;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeSet;
 
 import com.essiembre.eclipse.rbe.model.Model;
 
@@ -35,16 +37,258 @@ import com.essiembre.eclipse.rbe.model.Model;
  */
 public class BundleGroup extends Model implements IBundleVisitable {
 
+    /** Key status flag: some bundles do not define the key. */
+    public static final int KEY_MISSING = 1;
+    /** Key status flag: some bundles have an empty value for the key. */
+    public static final int KEY_EMPTY = 1 << 1;
+    /** Key status flag: some bundles comment the key out. */
+    public static final int KEY_COMMENTED = 1 << 2;
+    /** Key status flag: commented out by some, not all, bundles defining it. */
+    public static final int KEY_PARTIALLY_COMMENTED = 1 << 3;
+
     /** Bundles forming the group (key=Locale; value=Bundle). */
     private final Map<Locale, Bundle> bundles = new HashMap<>();
     
-    private final SortedSet<String> keys = new TreeSet<String>();
+    /** Keys of all bundles, with the number of bundles defining them. */
+    private final KeyIndex keyIndex = new KeyIndex();
+    /** Canonical key instances, shared by all bundles. */
+    private final KeyPool keyPool = new KeyPool();
+    /** Whether bundles store their entries in columns. */
+    private final boolean compactStorage;
+    /** Changes made in the current batch, <code>null</code> outside one. */
+    private BundleGroupDelta batchDelta;
+    /** Number of batches begun and not ended yet. */
+    private int batchDepth;
+    /** Number of changes made to bundles, read by snapshot readers. */
+    private volatile long version;
+    /** Entry changes that can be undone and redone. */
+    private final BundleGroupHistory history = new BundleGroupHistory();
+    /** Whether entry changes are undone or redone, not to be recorded. */
+    private boolean replaying;
+    /** Whether entries are reloaded, discarding the history if changed. */
+    private boolean reloading;
     
     /**
      * Constructor.
      */
     public BundleGroup() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     * @param compactStorage whether bundles added to this group store their
+     *        entries in columns, holding much less memory for large bundles
+     *        but creating entries each time they are read
+     */
+    public BundleGroup(boolean compactStorage) {
         super();
+        this.compactStorage = compactStorage;
+    }
+
+    /**
+     * Gets whether bundles of this group store their entries in columns.
+     * @return <code>true</code> if entries are stored in columns
+     */
+    public boolean isCompactStorage() {
+        return compactStorage;
+    }
+
+    /**
+     * Begins a batch: changes made until the matching call to
+     * {@link #endBatch()} are applied right away, but listeners are
+     * notified once, at the end of the outermost batch, with a single
+     * "modify" event which receiver is a {@link BundleGroupDelta}.  Bundle
+     * and entry events are not fired for changes made in a batch.  Bundles
+     * added to the group are still notified right away.  Changes made in
+     * a batch are undone and redone in a single step.
+     */
+    public void beginBatch() {
+        if (batchDepth++ == 0) {
+            batchDelta = new BundleGroupDelta();
+            history.beginStep();
+        }
+    }
+
+    /**
+     * Ends a batch, notifying listeners of the changes made since the
+     * outermost batch began, if any.
+     */
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("No batch to end.");
+        }
+        if (--batchDepth == 0) {
+            BundleGroupDelta delta = batchDelta;
+            batchDelta = null;
+            history.endStep();
+            if (!delta.isEmpty()) {
+                fireModify(delta);
+            }
+        }
+    }
+
+    /**
+     * Makes the given changes in a batch.
+     * @param changes changes to this group
+     * @see #beginBatch()
+     */
+    public void batch(Runnable changes) {
+        beginBatch();
+        try {
+            changes.run();
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Takes a read-only snapshot of the bundles of this group, which other
+     * threads can read while this group keeps being modified.  Only the
+     * thread modifying this group may take snapshots.  Taking a snapshot
+     * does not copy entries, nor does taking another one before this group
+     * is modified.
+     * @return snapshot of bundles
+     */
+    public BundleGroupSnapshot snapshot() {
+        Map<Locale, EntryStore> stores = new HashMap<>();
+        for (Bundle bundle : bundles.values()) {
+            stores.put(bundle.getLocale(), bundle.snapshotEntries());
+        }
+        return new BundleGroupSnapshot(version, stores);
+    }
+
+    /**
+     * Gets the version of this group, changing each time a bundle is added
+     * or a bundle entry is added, modified or removed.
+     * @return group version
+     * @see BundleGroupSnapshot#getVersion()
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Checks whether there is a change to undo.
+     * @return <code>true</code> if {@link #undo()} changes entries
+     */
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    /**
+     * Checks whether there is an undone change to redo.
+     * @return <code>true</code> if {@link #redo()} changes entries
+     */
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Undoes the last change made to bundle entries, or the last batch of
+     * changes, restoring the entries it changed in all bundles.  Listeners
+     * are notified once, as for a batch.  Changes reloaded from a source
+     * (see {@link #updateBundle(Locale, Collection, Collection)}) cannot be
+     * undone, and discard the changes made before them.
+     * @throws IllegalStateException if called in a batch
+     * @see #beginBatch()
+     */
+    public void undo() {
+        checkNoBatch();
+        List<BundleGroupHistory.Change> step = history.undo();
+        if (step != null) {
+            replay(step, true);
+        }
+    }
+
+    /**
+     * Redoes the last undone change, or batch of changes.  Making any other
+     * change first discards the undone changes.
+     * @throws IllegalStateException if called in a batch
+     */
+    public void redo() {
+        checkNoBatch();
+        List<BundleGroupHistory.Change> step = history.redo();
+        if (step != null) {
+            replay(step, false);
+        }
+    }
+
+    private void checkNoBatch() {
+        if (batchDepth > 0) {
+            throw new IllegalStateException("Cannot undo or redo in a batch.");
+        }
+    }
+
+    /**
+     * Sets back the entries changed by an history step, in a batch.
+     * @param step changes to replay
+     * @param undo <code>true</code> to restore the entries as they were
+     *        before the step, in reverse order, <code>false</code> to
+     *        restore them as they were after
+     */
+    private void replay(List<BundleGroupHistory.Change> step, boolean undo) {
+        replaying = true;
+        beginBatch();
+        try {
+            for (int i = 0; i < step.size(); i++) {
+                BundleGroupHistory.Change change =
+                        step.get(undo ? step.size() - 1 - i : i);
+                Bundle bundle = getBundle(change.locale);
+                BundleEntry entry = undo ? change.oldEntry : change.newEntry;
+                if (entry != null) {
+                    bundle.addEntry(new BundleEntry(entry.getKey(),
+                            entry.getValue(), entry.getComment(),
+                            entry.isCommented()));
+                } else if (bundle.getEntry(change.key) != null) {
+                    bundle.removeEntry(bundle.getEntry(change.key));
+                }
+            }
+        } finally {
+            endBatch();
+            replaying = false;
+        }
+    }
+
+    /**
+     * Records a change to a bundle entry, in the current batch if any, and
+     * in the undo history.
+     * @param locale locale of the modified bundle
+     * @param key key of the added, modified or removed entry
+     * @param oldEntry entry before the change, <code>null</code> if none
+     * @param newEntry entry after the change, <code>null</code> if none
+     * @return <code>true</code> if recorded in a batch, the change not to
+     *         be notified
+     */
+    /*default*/ boolean recordChange(Locale locale, String key,
+            BundleEntry oldEntry, BundleEntry newEntry) {
+        version++;
+        keyIndex.updateStatus(oldEntry, newEntry);
+        if (reloading) {
+            if (oldEntry != null || newEntry != null) {
+                history.clear();
+            }
+        } else if (!replaying) {
+            history.record(locale, key, oldEntry, newEntry);
+        }
+        if (batchDelta == null) {
+            return false;
+        }
+        batchDelta.addChange(locale, key);
+        return true;
+    }
+
+    /**
+     * Notifies listeners that a bundle was modified, unless a batch is in
+     * progress.
+     * @param bundle modified bundle
+     */
+    private void fireBundleModified(Bundle bundle) {
+        if (batchDelta != null) {
+            batchDelta.addChange(bundle.getLocale());
+        } else {
+            fireModify(bundle);
+        }
     }
 
     /**
@@ -78,13 +322,106 @@ public class BundleGroup extends Model implements IBundleVisitable {
         bundle.setLocale(locale);
         bundle.setBundleGroup(this);
         if (localBundle == null) {
+            bundle.internKeys(keyPool);
             bundles.put(locale, bundle);
-            refreshKeys();
+            indexKeys(bundle);
+            version++;
             fireAdd(bundle);
         } else { // TODO if (!localBundle.equals(bundle)) {
+            reload(localBundle, bundle);
+            fireBundleModified(bundle);
+        }
+    }
+
+    /**
+     * Adds several bundles to this group in one step, notifying listeners
+     * only once all bundles are added.
+     * @param newBundles bundles to add (key=Locale; value=Bundle)
+     */
+    public void addBundles(Map<Locale, Bundle> newBundles) {
+        List<Bundle> addedBundles = new ArrayList<>();
+        List<Bundle> modifiedBundles = new ArrayList<>();
+        for (Map.Entry<Locale, Bundle> entry : newBundles.entrySet()) {
+            Locale locale = entry.getKey();
+            Bundle bundle = entry.getValue();
+            Bundle localBundle = (Bundle) bundles.get(locale);
+            bundle.setLocale(locale);
+            bundle.setBundleGroup(this);
+            if (localBundle == null) {
+                bundle.internKeys(keyPool);
+                bundles.put(locale, bundle);
+                indexKeys(bundle);
+                version++;
+                addedBundles.add(bundle);
+            } else {
+                reload(localBundle, bundle);
+                modifiedBundles.add(bundle);
+            }
+        }
+        for (Bundle bundle : addedBundles) {
+            fireAdd(bundle);
+        }
+        for (Bundle bundle : modifiedBundles) {
+            fireBundleModified(bundle);
+        }
+    }
+
+    /**
+     * Updates the bundle matching the given locale with entries re-parsed
+     * from a region of its source.  Entries previously found in the region
+     * but no longer part of it are removed, others are added or modified.
+     * Unlike {@link #addBundle(Locale, Bundle)}, entries outside the region
+     * are not looked at.
+     * @param locale bundle locale
+     * @param replacedKeys keys of the entries previously in the region
+     * @param entries entries now in the region
+     */
+    public void updateBundle(Locale locale, Collection<String> replacedKeys,
+            Collection<BundleEntry> entries) {
+        Bundle bundle = getBundle(locale);
+        if (bundle == null) {
+            return;
+        }
+        boolean modified = false;
+        Set<String> newKeys = new HashSet<>();
+        for (BundleEntry entry : entries) {
+            newKeys.add(entry.getKey());
+        }
+        reloading = true;
+        try {
+            for (String key : replacedKeys) {
+                BundleEntry entry = bundle.getEntry(key);
+                if (entry != null && !newKeys.contains(key)) {
+                    bundle.removeEntry(entry);
+                    modified = true;
+                }
+            }
+            for (BundleEntry entry : entries) {
+                if (!entry.equals(bundle.getEntry(entry.getKey()))) {
+                    bundle.addEntry(entry);
+                    modified = true;
+                }
+            }
+        } finally {
+            reloading = false;
+        }
+        if (modified) {
+            fireBundleModified(bundle);
+        }
+    }
+
+    /**
+     * Replaces the entries of a bundle of this group with the entries of
+     * another bundle, discarding the undo history if entries change.
+     * @param localBundle bundle of this group
+     * @param bundle bundle to copy
+     */
+    private void reload(Bundle localBundle, Bundle bundle) {
+        reloading = true;
+        try {
             localBundle.copyFrom(bundle);
-            refreshKeys();
-            fireModify(bundle);
+        } finally {
+            reloading = false;
         }
     }
 
@@ -97,6 +434,15 @@ public class BundleGroup extends Model implements IBundleVisitable {
         return (Bundle) bundles.get(locale);
     }
     
+    /**
+     * Gets the pool of canonical key instances shared by all bundles in
+     * this group.
+     * @return key pool
+     */
+    public KeyPool getKeyPool() {
+        return keyPool;
+    }
+    
     /**
      * Adds a bundle entry to the bundle in this group matching the given
      * locale.
@@ -112,8 +458,7 @@ public class BundleGroup extends Model implements IBundleVisitable {
                 bundleEntry.setBundle(bundle);
                 bundleEntry.setLocale(locale);
                 bundle.addEntry(bundleEntry);
-                refreshKeys();
-                fireModify(bundle);
+                fireBundleModified(bundle);
             }
         }
     }
@@ -124,11 +469,16 @@ public class BundleGroup extends Model implements IBundleVisitable {
      * @param key
      */
     public void addKey(String key) {
-        for (Iterator<Locale> iter = bundles.keySet().iterator(); 
-                iter.hasNext();) {
-            Locale locale = iter.next();
-            BundleEntry entry = new BundleEntry(key, null, null);
-            addBundleEntry(locale, entry);
+        beginBatch();
+        try {
+            for (Iterator<Locale> iter = bundles.keySet().iterator(); 
+                    iter.hasNext();) {
+                Locale locale = iter.next();
+                BundleEntry entry = new BundleEntry(key, null, null);
+                addBundleEntry(locale, entry);
+            }
+        } finally {
+            endBatch();
         }
     }
 
@@ -142,17 +492,21 @@ public class BundleGroup extends Model implements IBundleVisitable {
         if (oldKey.equals(newKey)) {
             return;
         }
-        for (Iterator<Locale> iter = bundles.keySet().iterator(); 
-                iter.hasNext();) {
-            Locale locale = iter.next();
-            Bundle bundle = getBundle(locale);
-            BundleEntry entry = getBundleEntry(locale, oldKey);
-            if (entry != null) {
-                bundle.renameKey(oldKey, newKey);
-                refreshKeys();
-                fireModify(bundle);
-            }
+        beginBatch();
+        try {
+            for (Iterator<Locale> iter = bundles.keySet().iterator(); 
+                    iter.hasNext();) {
+                Locale locale = iter.next();
+                Bundle bundle = getBundle(locale);
+                BundleEntry entry = getBundleEntry(locale, oldKey);
+                if (entry != null) {
+                    bundle.renameKey(oldKey, newKey);
+                    fireBundleModified(bundle);
+                }
             
+            }
+        } finally {
+            endBatch();
         }
     }
 
@@ -162,15 +516,20 @@ public class BundleGroup extends Model implements IBundleVisitable {
      * @param key key to comment
      */
     public void commentKey(String key) {
-        for (Iterator<Locale> iter = bundles.keySet().iterator(); 
-                iter.hasNext();) {
-            Locale locale = iter.next();
-            Bundle bundle = getBundle(locale);
-            BundleEntry entry = getBundleEntry(locale, key);
-            if (entry != null) {
-                bundle.commentKey(key);
-                fireModify(bundle);
+        beginBatch();
+        try {
+            for (Iterator<Locale> iter = bundles.keySet().iterator(); 
+                    iter.hasNext();) {
+                Locale locale = iter.next();
+                Bundle bundle = getBundle(locale);
+                BundleEntry entry = getBundleEntry(locale, key);
+                if (entry != null) {
+                    bundle.commentKey(key);
+                    fireBundleModified(bundle);
+                }
             }
+        } finally {
+            endBatch();
         }
     }
 
@@ -179,15 +538,20 @@ public class BundleGroup extends Model implements IBundleVisitable {
      * @param key key to comment
      */
     public void uncommentKey(String key) {
-        for (Iterator<Locale> iter = bundles.keySet().iterator(); 
-                iter.hasNext();) {
-            Locale locale = iter.next();
-            Bundle bundle = getBundle(locale);
-            BundleEntry entry = getBundleEntry(locale, key);
-            if (entry != null) {
-                bundle.uncommentKey(key);
-                fireModify(bundle);
+        beginBatch();
+        try {
+            for (Iterator<Locale> iter = bundles.keySet().iterator(); 
+                    iter.hasNext();) {
+                Locale locale = iter.next();
+                Bundle bundle = getBundle(locale);
+                BundleEntry entry = getBundleEntry(locale, key);
+                if (entry != null) {
+                    bundle.uncommentKey(key);
+                    fireBundleModified(bundle);
+                }
             }
+        } finally {
+            endBatch();
         }
     }
     
@@ -201,17 +565,21 @@ public class BundleGroup extends Model implements IBundleVisitable {
         if (origKey.equals(newKey)) {
             return;
         }
-        for (Iterator<Locale> iter = bundles.keySet().iterator(); 
-                iter.hasNext();) {
-            Locale locale = iter.next();
-            Bundle bundle = getBundle(locale);
-            BundleEntry origEntry = getBundleEntry(locale, origKey);
-            if (origEntry != null) {
-                bundle.copyKey(origKey, newKey);
-                refreshKeys();
-                fireModify(bundle);
-            }
+        beginBatch();
+        try {
+            for (Iterator<Locale> iter = bundles.keySet().iterator(); 
+                    iter.hasNext();) {
+                Locale locale = iter.next();
+                Bundle bundle = getBundle(locale);
+                BundleEntry origEntry = getBundleEntry(locale, origKey);
+                if (origEntry != null) {
+                    bundle.copyKey(origKey, newKey);
+                    fireBundleModified(bundle);
+                }
             
+            }
+        } finally {
+            endBatch();
         }
     }
 
@@ -220,16 +588,20 @@ public class BundleGroup extends Model implements IBundleVisitable {
      * @param key key to remove
      */
     public void removeKey(String key) {
-        for (Iterator<Locale> iter = bundles.keySet().iterator(); 
-                iter.hasNext();) {
-            Locale locale = iter.next();
-            Bundle bundle = getBundle(locale);
-            BundleEntry entry = getBundleEntry(locale, key);
-            if (entry != null) {
-                bundle.removeEntry(entry);
-                refreshKeys();
-                fireModify(bundle);
+        beginBatch();
+        try {
+            for (Iterator<Locale> iter = bundles.keySet().iterator(); 
+                    iter.hasNext();) {
+                Locale locale = iter.next();
+                Bundle bundle = getBundle(locale);
+                BundleEntry entry = getBundleEntry(locale, key);
+                if (entry != null) {
+                    bundle.removeEntry(entry);
+                    fireBundleModified(bundle);
+                }
             }
+        } finally {
+            endBatch();
         }
     }
     
@@ -274,15 +646,16 @@ public class BundleGroup extends Model implements IBundleVisitable {
      * @return  true <=> The key is already existing.
      */
     public boolean containsKey(String key) {
-        for (Iterator<Locale> iter = bundles.keySet().iterator(); 
-                iter.hasNext();) {
-            Locale locale = iter.next();
-            BundleEntry entry = getBundleEntry(locale, key);
-            if (entry != null) {
-                return (true);
-            }
-        }
-        return (false);
+        return keyIndex.contains(key);
+    }
+
+    /**
+     * Gets the number of bundles in this group defining the given key.
+     * @param key a key
+     * @return number of bundles
+     */
+    public int getKeyBundleCount(String key) {
+        return keyIndex.getCount(key);
     }
     
     /**
@@ -304,23 +677,72 @@ public class BundleGroup extends Model implements IBundleVisitable {
 
     /**
      * Gets all resource bundle keys.
-     * @return <code>List</code> of resource bundle keys.
+     * @return read-only sorted set of resource bundle keys, reflecting
+     *         later changes
      */
     public SortedSet<String> getKeys() {
-        return keys;
+        return keyIndex.getKeys();
     }
 
     /**
-     * Gets all resource bundle keys.
-     * @return <code>List</code> of resource bundle keys.
+     * Gets all resource bundle keys starting with the given prefix.
+     * @param prefix key prefix
+     * @return read-only sorted set of resource bundle keys starting with
+     *         the prefix, reflecting later changes
+     */
+    public SortedSet<String> getKeys(String prefix) {
+        return KeyIndex.subSet(keyIndex.getKeys(), prefix);
+    }
+
+    /**
+     * Indexes the keys of a bundle added to this group.
+     * @param bundle added bundle
      */
-    private Set<String> refreshKeys() {
-        //Set keys = new TreeSet();
-        keys.clear();
-        for (Iterator<Bundle> iter = iterator(); iter.hasNext();) {
-            keys.addAll((iter.next()).getKeys());
+    private void indexKeys(Bundle bundle) {
+        keyIndex.addLocale(bundle.getLocale(), bundle.keyIterator());
+        for (Iterator<BundleEntry> iter = bundle.iterator(); iter.hasNext();) {
+            keyIndex.updateStatus(null, iter.next());
         }
-        return keys;
+    }
+
+    /**
+     * Gets all resource bundle keys, which are not to be modified.
+     * @return sorted keys
+     */
+    /*default*/ NavigableSet<String> getSortedKeys() {
+        return keyIndex.getSortedKeys();
+    }
+
+    /**
+     * Records a key added to a bundle of this group.
+     * @param locale bundle locale
+     * @param key added key
+     */
+    /*default*/ void keyAdded(Locale locale, String key) {
+        keyIndex.add(locale, key);
+    }
+
+    /**
+     * Records a key removed from a bundle of this group, forgetting its
+     * canonical instance if no bundle defines it anymore.
+     * @param locale bundle locale
+     * @param key removed key
+     */
+    /*default*/ void keyRemoved(Locale locale, String key) {
+        if (keyIndex.remove(locale, key)) {
+            keyPool.remove(key);
+        }
+    }
+
+    /**
+     * Gets the status of a key in all bundles of this group, kept up to
+     * date as entries change: getting it does not look at entries.
+     * @param key a key
+     * @return status flags (see <code>KEY_*</code> constants), or
+     *         <code>0</code> if not a key
+     */
+    public int getKeyStatus(String key) {
+        return keyIndex.getStatus(key);
     }
 
     /**
@@ -329,31 +751,104 @@ public class BundleGroup extends Model implements IBundleVisitable {
      * @return <code>true</code> if the key exists in this bundle group.
      */
     public boolean isKey(String key) {
-        return getKeys().contains(key);
+        return keyIndex.contains(key);
     }
-    
+
+    /**
+     * Gets the key following the given one.
+     * @param currentKey a key, not necessarily in this group anymore
+     * @return next key, or <code>null</code> if none
+     */
     public String getNextKey(String currentKey) {
-        boolean returnNextKey = false;
-        for (String key : keys) {
-            if (returnNextKey) {
-                return key;
-            }
-            if (key.equals(currentKey)) {
-                returnNextKey = true;
-            }
-        }
-        return null;
+        return currentKey != null ? keyIndex.higher(currentKey) : null;
     }
-    
+
+    /**
+     * Gets the key preceding the given one.
+     * @param currentKey a key, not necessarily in this group anymore
+     * @return previous key, or <code>null</code> if none
+     */
     public String getPreviousKey(String currentKey) {
-        String previousKey = null;
-        for (String key : keys) {
-            if (key.equals(currentKey)) {
-                return previousKey;
-            }
-            previousKey = key;
-        }
-        return null;
+        return currentKey != null ? keyIndex.lower(currentKey) : null;
+    }
+
+    /**
+     * Gets the next key found in other bundles but missing in the bundle of
+     * the given locale.
+     * @param locale bundle locale
+     * @param currentKey key to start after, or <code>null</code> to start
+     *        from the first key
+     * @return next missing key, or <code>null</code> if none
+     */
+    public String getNextMissingKey(Locale locale, String currentKey) {
+        return KeyIndex.higher(keyIndex.getMissingKeys(locale), currentKey);
+    }
+
+    /**
+     * Gets the previous key found in other bundles but missing in the
+     * bundle of the given locale.
+     * @param locale bundle locale
+     * @param currentKey key to start before, or <code>null</code> to start
+     *        from the last key
+     * @return previous missing key, or <code>null</code> if none
+     */
+    public String getPreviousMissingKey(Locale locale, String currentKey) {
+        return KeyIndex.lower(keyIndex.getMissingKeys(locale), currentKey);
+    }
+
+    /**
+     * Gets the next key commented in the bundle of the given locale.
+     * @param locale bundle locale
+     * @param currentKey key to start after, or <code>null</code> to start
+     *        from the first key
+     * @return next commented key, or <code>null</code> if none
+     */
+    public String getNextCommentedKey(Locale locale, String currentKey) {
+        Bundle bundle = getBundle(locale);
+        return bundle != null ? KeyIndex.higher(
+                bundle.getEntryIndex().getCommentedKeys(), currentKey) : null;
+    }
+
+    /**
+     * Gets the previous key commented in the bundle of the given locale.
+     * @param locale bundle locale
+     * @param currentKey key to start before, or <code>null</code> to start
+     *        from the last key
+     * @return previous commented key, or <code>null</code> if none
+     */
+    public String getPreviousCommentedKey(Locale locale, String currentKey) {
+        Bundle bundle = getBundle(locale);
+        return bundle != null ? KeyIndex.lower(
+                bundle.getEntryIndex().getCommentedKeys(), currentKey) : null;
+    }
+
+    /**
+     * Gets the next key whose value is the same as the value of other keys
+     * in the bundle of the given locale.
+     * @param locale bundle locale
+     * @param currentKey key to start after, or <code>null</code> to start
+     *        from the first key
+     * @return next key with a duplicate value, or <code>null</code> if none
+     */
+    public String getNextDuplicateKey(Locale locale, String currentKey) {
+        Bundle bundle = getBundle(locale);
+        return bundle != null ? KeyIndex.higher(
+                bundle.getEntryIndex().getDuplicateKeys(), currentKey) : null;
+    }
+
+    /**
+     * Gets the previous key whose value is the same as the value of other
+     * keys in the bundle of the given locale.
+     * @param locale bundle locale
+     * @param currentKey key to start before, or <code>null</code> to start
+     *        from the last key
+     * @return previous key with a duplicate value, or <code>null</code> if
+     *         none
+     */
+    public String getPreviousDuplicateKey(Locale locale, String currentKey) {
+        Bundle bundle = getBundle(locale);
+        return bundle != null ? KeyIndex.lower(
+                bundle.getEntryIndex().getDuplicateKeys(), currentKey) : null;
     }
 
 }
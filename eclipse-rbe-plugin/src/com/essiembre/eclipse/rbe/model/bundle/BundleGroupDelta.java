@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Changes made to a bundle group during a batch, notified to group
+ * listeners as the receiver of a single "modify" event once the batch
+ * ends, instead of one event per bundle and entry.
+ * @author Pascal Essiembre
+ * @see BundleGroup#beginBatch()
+ */
+public class BundleGroupDelta {
+
+    /** Keys added, modified or removed in any bundle. */
+    private final SortedSet<String> keys = new TreeSet<>();
+    /** Locales of modified bundles. */
+    private final Set<Locale> locales = new HashSet<>();
+
+    /**
+     * Constructor.
+     */
+    /*default*/ BundleGroupDelta() {
+        super();
+    }
+
+    /**
+     * Records a change to a bundle entry.
+     * @param locale locale of the modified bundle
+     * @param key key of the added, modified or removed entry
+     */
+    /*default*/ void addChange(Locale locale, String key) {
+        keys.add(key);
+        locales.add(locale);
+    }
+
+    /**
+     * Records a change to a bundle.
+     * @param locale locale of the modified bundle
+     */
+    /*default*/ void addChange(Locale locale) {
+        locales.add(locale);
+    }
+
+    /**
+     * Gets the sorted keys added, modified or removed in any bundle.  Keys
+     * no longer in the group were removed from all bundles.
+     * @return affected keys
+     */
+    public SortedSet<String> getKeys() {
+        return Collections.unmodifiableSortedSet(keys);
+    }
+
+    /**
+     * Gets the locales of modified bundles.
+     * @return affected locales
+     */
+    public Set<Locale> getLocales() {
+        return Collections.unmodifiableSet(locales);
+    }
+
+    /**
+     * Whether no change was made.
+     * @return <code>true</code> if empty
+     */
+    public boolean isEmpty() {
+        return locales.isEmpty();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Undo and redo history of the changes made to the entries of a bundle
+ * group.  Each step holds the entries changed between two versions of the
+ * group, before and after the change, rather than a copy of the group:
+ * recording, undoing and redoing a step is proportional to the number of
+ * entries it changed.  Changes made in a batch form a single step.
+ * @author Pascal Essiembre
+ * @see BundleGroup#undo()
+ */
+/*default*/ final class BundleGroupHistory {
+
+    /** Maximum number of steps that can be undone. */
+    private static final int MAX_STEPS = 100;
+
+    /** Steps that can be undone, most recent first. */
+    private final Deque<List<Change>> undoSteps = new ArrayDeque<>();
+    /** Steps that can be redone, most recently undone first. */
+    private final Deque<List<Change>> redoSteps = new ArrayDeque<>();
+    /** Step being recorded, <code>null</code> if none. */
+    private List<Change> step;
+
+    /**
+     * Begins recording changes in a single step.
+     */
+    /*default*/ void beginStep() {
+        step = new ArrayList<>();
+    }
+
+    /**
+     * Ends the step being recorded, kept only if it changed entries.
+     */
+    /*default*/ void endStep() {
+        if (step != null && !step.isEmpty()) {
+            push(step);
+        }
+        step = null;
+    }
+
+    /**
+     * Records a change to an entry, in the step being recorded if any, else
+     * in a step of its own.
+     * @param locale locale of the modified bundle
+     * @param key key of the changed entry
+     * @param oldEntry entry before the change, <code>null</code> if added
+     * @param newEntry entry after the change, <code>null</code> if removed
+     */
+    /*default*/ void record(Locale locale, String key,
+            BundleEntry oldEntry, BundleEntry newEntry) {
+        if (oldEntry == null && newEntry == null) {
+            return;
+        }
+        Change change = new Change(locale, key, oldEntry, newEntry);
+        if (step != null) {
+            step.add(change);
+        } else {
+            push(Collections.singletonList(change));
+        }
+    }
+
+    private void push(List<Change> newStep) {
+        undoSteps.push(newStep);
+        if (undoSteps.size() > MAX_STEPS) {
+            undoSteps.removeLast();
+        }
+        redoSteps.clear();
+    }
+
+    /**
+     * Drops all steps, which can no longer be undone nor redone.
+     */
+    /*default*/ void clear() {
+        undoSteps.clear();
+        redoSteps.clear();
+        if (step != null) {
+            step.clear();
+        }
+    }
+
+    /*default*/ boolean canUndo() {
+        return !undoSteps.isEmpty();
+    }
+
+    /*default*/ boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    /**
+     * Moves the most recent step to the redo steps.
+     * @return step to undo, <code>null</code> if none
+     */
+    /*default*/ List<Change> undo() {
+        List<Change> undone = undoSteps.poll();
+        if (undone != null) {
+            redoSteps.push(undone);
+        }
+        return undone;
+    }
+
+    /**
+     * Moves the most recently undone step back to the undo steps.
+     * @return step to redo, <code>null</code> if none
+     */
+    /*default*/ List<Change> redo() {
+        List<Change> redone = redoSteps.poll();
+        if (redone != null) {
+            undoSteps.push(redone);
+        }
+        return redone;
+    }
+
+    /**
+     * Change to a single entry.
+     */
+    /*default*/ static final class Change {
+        /*default*/ final Locale locale;
+        /*default*/ final String key;
+        /*default*/ final BundleEntry oldEntry;
+        /*default*/ final BundleEntry newEntry;
+
+        private Change(Locale locale, String key,
+                BundleEntry oldEntry, BundleEntry newEntry) {
+            this.locale = locale;
+            this.key = key;
+            this.oldEntry = oldEntry;
+            this.newEntry = newEntry;
+        }
+    }
+}
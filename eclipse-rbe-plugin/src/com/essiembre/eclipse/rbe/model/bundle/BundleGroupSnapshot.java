@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Read-only view of the bundles of a group as they were when the snapshot
+ * was taken, which any thread can read while the group keeps being
+ * modified.  Taking a snapshot does not copy entries: the group copies
+ * the parts of the structures it shares with snapshots as it modifies
+ * them.
+ * Snapshots are meant for validation, search, statistics or export jobs
+ * running outside the UI thread.
+ * @author Pascal Essiembre
+ * @see BundleGroup#snapshot()
+ */
+public final class BundleGroupSnapshot {
+
+    /** Version of the group when the snapshot was taken. */
+    private final long version;
+    /** Read-only entry stores, by locale. */
+    private final Map<Locale, EntryStore> stores;
+    /** Sorted keys of all bundles, computed the first time requested. */
+    private SortedSet<String> keys;
+
+    /**
+     * Constructor.
+     * @param version version of the group
+     * @param stores read-only entry stores, by locale
+     */
+    /*default*/ BundleGroupSnapshot(
+            long version, Map<Locale, EntryStore> stores) {
+        super();
+        this.version = version;
+        this.stores = stores;
+    }
+
+    /**
+     * Gets the version of the bundle group when this snapshot was taken.
+     * The snapshot is outdated once the group version differs.
+     * @return group version
+     * @see BundleGroup#getVersion()
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the locales of the bundles.
+     * @return locales
+     */
+    public Set<Locale> getLocales() {
+        return Collections.unmodifiableSet(stores.keySet());
+    }
+
+    /**
+     * Gets the sorted keys of all bundles.  They are sorted the first time
+     * requested, by the calling thread.
+     * @return keys
+     */
+    public synchronized SortedSet<String> getKeys() {
+        if (keys == null) {
+            SortedSet<String> sortedKeys = new TreeSet<>();
+            for (EntryStore store : stores.values()) {
+                for (Iterator<String> iter = store.keyIterator();
+                        iter.hasNext();) {
+                    sortedKeys.add(iter.next());
+                }
+            }
+            keys = Collections.unmodifiableSortedSet(sortedKeys);
+        }
+        return keys;
+    }
+
+    /**
+     * Gets the entry of the given key in the bundle of the given locale.
+     * @param locale bundle locale
+     * @param key entry key
+     * @return entry, or <code>null</code> if none
+     */
+    public BundleEntry getBundleEntry(Locale locale, String key) {
+        EntryStore store = stores.get(locale);
+        return store != null ? store.get(key) : null;
+    }
+
+    /**
+     * Gets the entries of the given key in all bundles.
+     * @param key entry key
+     * @return entries
+     */
+    public Collection<BundleEntry> getBundleEntries(String key) {
+        Collection<BundleEntry> entries = new ArrayList<>();
+        for (EntryStore store : stores.values()) {
+            BundleEntry entry = store.get(key);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the number of entries in the bundle of the given locale.
+     * @param locale bundle locale
+     * @return entry count
+     */
+    public int getEntryCount(Locale locale) {
+        EntryStore store = stores.get(locale);
+        return store != null ? store.size() : 0;
+    }
+
+    /**
+     * Iterates through the entries of the bundle of the given locale, in no
+     * particular order.
+     * @param locale bundle locale
+     * @return an iterator
+     */
+    public Iterator<BundleEntry> iterator(Locale locale) {
+        EntryStore store = stores.get(locale);
+        if (store == null) {
+            return Collections.<BundleEntry>emptyList().iterator();
+        }
+        final Iterator<BundleEntry> iter = store.iterator();
+        return new Iterator<BundleEntry>() {
+            @Override
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+            @Override
+            public BundleEntry next() {
+                return iter.next();
+            }
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
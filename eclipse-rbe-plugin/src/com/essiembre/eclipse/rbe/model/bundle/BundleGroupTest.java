@@ -0,0 +1,279 @@
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.essiembre.eclipse.rbe.model.DeltaEvent;
+import com.essiembre.eclipse.rbe.model.IDeltaListener;
+
+/**
+ * Checks that changes made to a bundle group in a batch are notified once,
+ * with the affected keys and locales, that snapshots of a group do not
+ * change as the group does, that changes are undone and redone, and that
+ * duplicate values are found without decoding values while loading.
+ */
+public class BundleGroupTest {
+
+    @Test
+    public void testBatchFiresOneDelta() {
+        final BundleGroup group = new BundleGroup();
+        group.addBundle(Locale.ENGLISH, PropertiesParser.parse(
+                "a = 1\nb = 2\n"));
+        group.addBundle(Locale.FRENCH, PropertiesParser.parse("a = un\n"));
+        final List<Object> groupEvents = new ArrayList<>();
+        final List<Object> bundleEvents = new ArrayList<>();
+        group.addListener(new EventRecorder(groupEvents));
+        group.getBundle(Locale.ENGLISH).addListener(
+                new EventRecorder(bundleEvents));
+        group.getBundle(Locale.FRENCH).addListener(
+                new EventRecorder(bundleEvents));
+
+        group.beginBatch();
+        for (int i = 0; i < 100; i++) {
+            group.addKey("new" + i);
+        }
+        group.renameKey("a", "c");
+        group.batch(new Runnable() {
+            public void run() {
+                group.removeKey("b");
+            }
+        });
+        Assert.assertTrue(groupEvents.isEmpty());
+        group.endBatch();
+
+        Assert.assertTrue(bundleEvents.isEmpty());
+        Assert.assertEquals(1, groupEvents.size());
+        BundleGroupDelta delta = (BundleGroupDelta) groupEvents.get(0);
+        Assert.assertEquals(103, delta.getKeys().size());
+        Assert.assertTrue(delta.getKeys().containsAll(
+                Arrays.asList("a", "b", "c", "new0", "new99")));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(
+                Locale.ENGLISH, Locale.FRENCH)), delta.getLocales());
+        Assert.assertNull(group.getBundleEntry(Locale.ENGLISH, "b"));
+        Assert.assertEquals(101, group.getKeys().size());
+
+        group.batch(new Runnable() {
+            public void run() {
+                // no change
+            }
+        });
+        Assert.assertEquals(1, groupEvents.size());
+    }
+
+    @Test
+    public void testSnapshots() throws InterruptedException {
+        testSnapshots(false, 100);
+        testSnapshots(true, 100);
+        // enough keys for stores to be split in several chunks
+        testSnapshots(false, 3000);
+        testSnapshots(true, 3000);
+    }
+
+    private void testSnapshots(boolean compactStorage, int keyCount)
+            throws InterruptedException {
+        Locale[] locales = { Locale.ENGLISH, Locale.FRENCH };
+        Random random = new Random(42);
+        BundleGroup group = new BundleGroup(compactStorage);
+        for (Locale locale : locales) {
+            group.addBundle(locale, PropertiesParser.parse("a = 1\n"
+                    + BundleFixtures.generateSparse(random, keyCount)));
+        }
+        final AtomicReference<BundleGroupSnapshot> latest =
+                new AtomicReference<>(group.snapshot());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread() {
+            public void run() {
+                try {
+                    while (latest.get() != null) {
+                        BundleGroupSnapshot snapshot = latest.get();
+                        if (snapshot != null) {
+                            contents(snapshot);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        reader.start();
+
+        List<BundleGroupSnapshot> snapshots = new ArrayList<>();
+        List<Map<Locale, Map<String, BundleEntry>>> expected =
+                new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String key = "key" + random.nextInt(keyCount);
+            Locale locale = locales[random.nextInt(locales.length)];
+            switch (random.nextInt(4)) {
+            case 0:
+                group.removeKey(key);
+                break;
+            case 1:
+                group.renameKey(key, "key" + random.nextInt(keyCount));
+                break;
+            default:
+                group.addBundleEntry(locale, new BundleEntry(
+                        key, "v" + random.nextInt(10), null));
+            }
+            if (i % 100 == 0) {
+                BundleGroupSnapshot snapshot = group.snapshot();
+                Assert.assertEquals(group.getVersion(), snapshot.getVersion());
+                Assert.assertEquals(group.getKeys(), snapshot.getKeys());
+                snapshots.add(snapshot);
+                expected.add(contents(snapshot));
+                latest.set(snapshot);
+            }
+        }
+        latest.set(null);
+        reader.join();
+        Assert.assertNull(failure.get());
+        for (int i = 0; i < snapshots.size(); i++) {
+            Assert.assertEquals(expected.get(i), contents(snapshots.get(i)));
+        }
+    }
+
+    private static Map<Locale, Map<String, BundleEntry>> contents(
+            BundleGroupSnapshot snapshot) {
+        Map<Locale, Map<String, BundleEntry>> contents = new HashMap<>();
+        for (Locale locale : snapshot.getLocales()) {
+            Map<String, BundleEntry> entries = new HashMap<>();
+            for (Iterator<BundleEntry> iter = snapshot.iterator(locale);
+                    iter.hasNext();) {
+                BundleEntry entry = iter.next();
+                entries.put(entry.getKey(), entry);
+                Assert.assertEquals(entry,
+                        snapshot.getBundleEntry(locale, entry.getKey()));
+            }
+            Assert.assertEquals(snapshot.getEntryCount(locale), entries.size());
+            contents.put(locale, entries);
+        }
+        return contents;
+    }
+
+    @Test
+    public void testUndoRedo() {
+        testUndoRedo(false);
+        testUndoRedo(true);
+    }
+
+    private void testUndoRedo(boolean compactStorage) {
+        BundleGroup group = new BundleGroup(compactStorage);
+        group.addBundle(Locale.ENGLISH, PropertiesParser.parse(
+                "a = 1\nb = 2\n"));
+        group.addBundle(Locale.FRENCH, PropertiesParser.parse(
+                "a = un\nb = deux\n"));
+        Assert.assertFalse(group.canUndo());
+        BundleGroupSnapshot initial = group.snapshot();
+
+        group.renameKey("a", "c");
+        group.addBundleEntry(Locale.FRENCH, new BundleEntry("b", "2", null));
+        group.commentKey("b");
+        BundleGroupSnapshot modified = group.snapshot();
+
+        List<Object> events = new ArrayList<>();
+        group.addListener(new EventRecorder(events));
+        group.undo();
+        Assert.assertEquals(1, events.size());
+        BundleGroupDelta delta = (BundleGroupDelta) events.get(0);
+        Assert.assertEquals(Arrays.asList("b"),
+                new ArrayList<>(delta.getKeys()));
+        Assert.assertFalse(group.getBundleEntry(Locale.FRENCH, "b")
+                .isCommented());
+        group.undo();
+        group.undo();
+        Assert.assertEquals(contents(initial), contents(group.snapshot()));
+        Assert.assertFalse(group.canUndo());
+        Assert.assertTrue(group.getKeys().contains("a"));
+
+        group.redo();
+        group.redo();
+        group.redo();
+        Assert.assertFalse(group.canRedo());
+        Assert.assertEquals(contents(modified), contents(group.snapshot()));
+
+        group.undo();
+        group.removeKey("c");
+        Assert.assertFalse(group.canRedo());
+        group.undo();
+        Assert.assertEquals("1",
+                group.getBundleEntry(Locale.ENGLISH, "c").getValue());
+
+        group.addBundle(Locale.ENGLISH, PropertiesParser.parse("c = 3\n"));
+        Assert.assertFalse(group.canUndo());
+    }
+
+    @Test
+    public void testDuplicatesIndexedOnDemand() {
+        Bundle bundle = PropertiesParser.parse(
+                "a = same\nb = other\nc = s\\u0061me\nd =\ne = other\n");
+        for (Iterator<BundleEntry> iter = bundle.iterator();
+                iter.hasNext();) {
+            Assert.assertFalse(iter.next().isValueDecoded());
+        }
+        BundleGroup group = new BundleGroup();
+        group.addBundle(Locale.ENGLISH, bundle);
+        Assert.assertFalse(bundle.getEntry("a").isValueDecoded());
+        Assert.assertFalse(bundle.getEntry("d").isValueDecoded());
+        Assert.assertEquals(BundleGroup.KEY_EMPTY,
+                group.getKeyStatus("d") & BundleGroup.KEY_EMPTY);
+        Assert.assertEquals(0,
+                group.getKeyStatus("a") & BundleGroup.KEY_EMPTY);
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "e"),
+                getDuplicateKeys(group));
+        group.addBundleEntry(Locale.ENGLISH,
+                new BundleEntry("c", "changed", null));
+        group.addBundleEntry(Locale.ENGLISH,
+                new BundleEntry("d", "changed", null));
+        Assert.assertEquals(Arrays.asList("b", "c", "d", "e"),
+                getDuplicateKeys(group));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEndBatchWithoutBegin() {
+        new BundleGroup().endBatch();
+    }
+
+    private static List<String> getDuplicateKeys(BundleGroup group) {
+        List<String> keys = new ArrayList<>();
+        for (String key = group.getNextDuplicateKey(Locale.ENGLISH, null);
+                key != null;
+                key = group.getNextDuplicateKey(Locale.ENGLISH, key)) {
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static class EventRecorder implements IDeltaListener {
+        private final List<Object> events;
+
+        private EventRecorder(List<Object> events) {
+            this.events = events;
+        }
+
+        public void add(DeltaEvent event) {
+            events.add(event.receiver());
+        }
+
+        public void remove(DeltaEvent event) {
+            events.add(event.receiver());
+        }
+
+        public void modify(DeltaEvent event) {
+            events.add(event.receiver());
+        }
+
+        public void select(DeltaEvent event) {
+            events.add(event.receiver());
+        }
+    }
+}
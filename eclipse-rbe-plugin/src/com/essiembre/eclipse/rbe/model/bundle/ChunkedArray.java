@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Arrays;
+
+/**
+ * Array of objects split in chunks, so that a snapshot of it shares the
+ * chunks and only copies their list.  A chunk shared with snapshots is
+ * copied the first time one of its elements is set.
+ * @param <E> type of elements
+ * @author Pascal Essiembre
+ * @see ChunkedIntArray
+ */
+/*default*/ final class ChunkedArray<E> {
+
+    /** Number of bits of an index within a chunk. */
+    private static final int CHUNK_BITS = 10;
+    /** Number of elements in a full chunk. */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    /** Mask of an index within a chunk. */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Chunks of elements. */
+    private Object[][] chunks;
+    /** Whether each chunk is shared with snapshots. */
+    private boolean[] shared;
+    /** Number of elements. */
+    private int length;
+
+    /**
+     * Constructor.
+     * @param length number of elements, all <code>null</code>
+     */
+    /*default*/ ChunkedArray(int length) {
+        super();
+        chunks = new Object[0][];
+        shared = new boolean[0];
+        setLength(length);
+    }
+
+    private ChunkedArray(Object[][] chunks, int length) {
+        super();
+        this.chunks = chunks;
+        this.length = length;
+        shared = new boolean[chunks.length];
+        Arrays.fill(shared, true);
+    }
+
+    /**
+     * Gets the number of elements.
+     * @return array length
+     */
+    /*default*/ int length() {
+        return length;
+    }
+
+    /**
+     * Gets an element.
+     * @param index element index
+     * @return element
+     */
+    @SuppressWarnings("unchecked")
+    /*default*/ E get(int index) {
+        return (E) chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    /**
+     * Sets an element, copying its chunk first if shared.
+     * @param index element index
+     * @param element element
+     */
+    /*default*/ void set(int index, E element) {
+        int chunk = index >>> CHUNK_BITS;
+        if (shared[chunk]) {
+            chunks[chunk] = chunks[chunk].clone();
+            shared[chunk] = false;
+        }
+        chunks[chunk][index & CHUNK_MASK] = element;
+    }
+
+    /**
+     * Grows or shrinks the array.  Added elements are <code>null</code>.
+     * @param newLength number of elements
+     */
+    /*default*/ void setLength(int newLength) {
+        int chunkCount = (newLength + CHUNK_MASK) >>> CHUNK_BITS;
+        int oldCount = chunks.length;
+        if (chunkCount != oldCount) {
+            chunks = Arrays.copyOf(chunks, chunkCount);
+            shared = Arrays.copyOf(shared, chunkCount);
+        }
+        for (int i = Math.max(0, Math.min(oldCount, chunkCount) - 1);
+                i < chunkCount; i++) {
+            int chunkLength = i < chunkCount - 1
+                    ? CHUNK_SIZE : newLength - (i << CHUNK_BITS);
+            Object[] chunk = chunks[i];
+            if (chunk == null) {
+                chunks[i] = new Object[chunkLength];
+            } else if (chunk.length < chunkLength) {
+                // the last chunk grows by halves, up to a full chunk
+                chunks[i] = Arrays.copyOf(chunk, Math.min(CHUNK_SIZE,
+                        Math.max(chunkLength, chunk.length * 3 / 2)));
+                shared[i] = false;
+            } else if (newLength < length && chunk.length > chunkLength) {
+                // elements dropped must read as null once grown again
+                chunks[i] = Arrays.copyOf(chunk, chunkLength);
+                shared[i] = false;
+            }
+        }
+        length = newLength;
+    }
+
+    /**
+     * Gets an array sharing the chunks of this one, which is never modified
+     * afterwards.  Chunks are copied by whichever array is next modified.
+     * @return read-only array
+     */
+    /*default*/ ChunkedArray<E> snapshot() {
+        Arrays.fill(shared, true);
+        return new ChunkedArray<>(chunks.clone(), length);
+    }
+}
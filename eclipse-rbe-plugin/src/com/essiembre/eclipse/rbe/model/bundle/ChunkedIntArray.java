@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Arrays;
+
+/**
+ * Array of integers split in chunks, so that a snapshot of it shares the
+ * chunks and only copies their list.  A chunk shared with snapshots is
+ * copied the first time one of its integers is set, which costs no more
+ * than the chunk size whatever the array length.  All chunks are full but
+ * the last one, which grows with the array.  Integers can also be used as
+ * bits, as a <code>BitSet</code> would.
+ * @author Pascal Essiembre
+ */
+/*default*/ final class ChunkedIntArray {
+
+    /** Number of bits of an index within a chunk. */
+    private static final int CHUNK_BITS = 10;
+    /** Number of integers in a full chunk. */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    /** Mask of an index within a chunk. */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Chunks of integers. */
+    private int[][] chunks;
+    /** Whether each chunk is shared with snapshots. */
+    private boolean[] shared;
+    /** Number of integers. */
+    private int length;
+
+    /**
+     * Constructor.
+     * @param length number of integers, all zero
+     */
+    /*default*/ ChunkedIntArray(int length) {
+        super();
+        chunks = new int[0][];
+        shared = new boolean[0];
+        setLength(length);
+    }
+
+    private ChunkedIntArray(int[][] chunks, int length) {
+        super();
+        this.chunks = chunks;
+        this.length = length;
+        shared = new boolean[chunks.length];
+        Arrays.fill(shared, true);
+    }
+
+    /**
+     * Gets the number of integers.
+     * @return array length
+     */
+    /*default*/ int length() {
+        return length;
+    }
+
+    /**
+     * Gets an integer.
+     * @param index integer index
+     * @return integer
+     */
+    /*default*/ int get(int index) {
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    /**
+     * Sets an integer, copying its chunk first if shared.
+     * @param index integer index
+     * @param value integer
+     */
+    /*default*/ void set(int index, int value) {
+        int chunk = index >>> CHUNK_BITS;
+        if (shared[chunk]) {
+            chunks[chunk] = chunks[chunk].clone();
+            shared[chunk] = false;
+        }
+        chunks[chunk][index & CHUNK_MASK] = value;
+    }
+
+    /**
+     * Gets a bit.
+     * @param bit bit index
+     * @return <code>true</code> if set
+     */
+    /*default*/ boolean getBit(int bit) {
+        int word = bit >>> 5;
+        return word < length && (get(word) & (1 << bit)) != 0;
+    }
+
+    /**
+     * Sets or clears a bit, growing the array if needed.
+     * @param bit bit index
+     * @param value <code>true</code> to set the bit
+     */
+    /*default*/ void setBit(int bit, boolean value) {
+        int word = bit >>> 5;
+        if (word >= length) {
+            if (!value) {
+                return;
+            }
+            setLength(word + 1);
+        }
+        int bits = get(word);
+        int newBits = value ? bits | (1 << bit) : bits & ~(1 << bit);
+        if (newBits != bits) {
+            set(word, newBits);
+        }
+    }
+
+    /**
+     * Finds the first bit set from the given bit index.
+     * @param fromBit bit index where to start looking
+     * @return bit index, or -1 if none
+     */
+    /*default*/ int nextSetBit(int fromBit) {
+        int word = fromBit >>> 5;
+        if (word >= length) {
+            return -1;
+        }
+        int bits = get(word) & (-1 << fromBit);
+        while (bits == 0) {
+            if (++word == length) {
+                return -1;
+            }
+            bits = get(word);
+        }
+        return (word << 5) + Integer.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Gets the number of bits up to the highest bit set.
+     * @return index of the highest bit set plus one, or zero if none
+     */
+    /*default*/ int bitLength() {
+        for (int word = length - 1; word >= 0; word--) {
+            int bits = get(word);
+            if (bits != 0) {
+                return (word << 5) + 32 - Integer.numberOfLeadingZeros(bits);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Grows or shrinks the array.  Added integers are zero.
+     * @param newLength number of integers
+     */
+    /*default*/ void setLength(int newLength) {
+        int chunkCount = (newLength + CHUNK_MASK) >>> CHUNK_BITS;
+        int oldCount = chunks.length;
+        if (chunkCount != oldCount) {
+            chunks = Arrays.copyOf(chunks, chunkCount);
+            shared = Arrays.copyOf(shared, chunkCount);
+        }
+        for (int i = Math.max(0, Math.min(oldCount, chunkCount) - 1);
+                i < chunkCount; i++) {
+            int chunkLength = i < chunkCount - 1
+                    ? CHUNK_SIZE : newLength - (i << CHUNK_BITS);
+            int[] chunk = chunks[i];
+            if (chunk == null) {
+                chunks[i] = new int[chunkLength];
+            } else if (chunk.length < chunkLength) {
+                // the last chunk grows by halves, up to a full chunk
+                chunks[i] = Arrays.copyOf(chunk, Math.min(CHUNK_SIZE,
+                        Math.max(chunkLength, chunk.length * 3 / 2)));
+                shared[i] = false;
+            } else if (newLength < length && chunk.length > chunkLength) {
+                // integers dropped must read as zero once grown again
+                chunks[i] = Arrays.copyOf(chunk, chunkLength);
+                shared[i] = false;
+            }
+        }
+        length = newLength;
+    }
+
+    /**
+     * Gets an array sharing the chunks of this one, which is never modified
+     * afterwards.  Chunks are copied by whichever array is next modified.
+     * @return read-only array
+     */
+    /*default*/ ChunkedIntArray snapshot() {
+        Arrays.fill(shared, true);
+        return new ChunkedIntArray(chunks.clone(), length);
+    }
+}
@@ -0,0 +1,611 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Stores the entries of a bundle in columns indexed by the ids the group
+ * key pool gives to keys.  The characters of all values follow one another
+ * in a single array, and only a few integers and bits are kept per entry,
+ * instead of an entry object, a map node and a string.  Entries are views
+ * created on demand.  Characters are stored as Latin-1 bytes until a value
+ * holds another character.
+ * <p>
+ * Entries with the same non-empty value are linked in a ring, whose
+ * members are found through a hash table of value rings.  Characters of
+ * replaced or removed values are reclaimed once they amount to half of the
+ * value characters.
+ * <p>
+ * Columns are split in chunks, so that modifying a store shared with a
+ * snapshot only copies the chunks modified.  Value characters are only
+ * appended to while shared, and are copied when next reclaimed.
+ * @author Pascal Essiembre
+ * @see KeyPool#getId(String)
+ * @see ChunkedIntArray
+ */
+/*default*/ final class ColumnarEntryStore implements EntryStore {
+
+    /** Fewest characters worth reclaiming. */
+    private static final int MIN_RECLAIMED = 4096;
+
+    /** Bundle of stored entries. */
+    private final Bundle bundle;
+    /** Pool giving ids to keys. */
+    private final KeyPool keyPool;
+    /** Latin-1 characters of values, one after the other. */
+    private byte[] bytes = new byte[256];
+    /**
+     * Characters of values, one after the other, once a value holds a
+     * character other than Latin-1, <code>null</code> until then.
+     */
+    private char[] chars;
+    /** Number of characters used. */
+    private int charCount;
+    /** Number of characters of replaced or removed values. */
+    private int garbageCount;
+    /**
+     * Whether value characters are shared with snapshots, which only read
+     * the characters used when they were taken.
+     */
+    private boolean valuesShared;
+    /** Value offsets, by key id. */
+    private ChunkedIntArray valueStarts = new ChunkedIntArray(0);
+    /** Value lengths, by key id. */
+    private ChunkedIntArray valueLengths = new ChunkedIntArray(0);
+    /** Value hash codes, by key id. */
+    private ChunkedIntArray valueHashes = new ChunkedIntArray(0);
+    /** Next key id in the ring of ids with the same value, by key id. */
+    private ChunkedIntArray sameValueIds = new ChunkedIntArray(0);
+    /** Comments by key id, allocated with the first comment. */
+    private ChunkedArray<String> comments;
+    /** Bits of the ids of stored keys. */
+    private ChunkedIntArray present = new ChunkedIntArray(0);
+    /** Bits of the ids of commented entries. */
+    private ChunkedIntArray commented = new ChunkedIntArray(0);
+    /** Number of entries. */
+    private int size;
+    /** Linear probing table of value rings, holding a ring id plus one. */
+    private ChunkedIntArray valueTable = new ChunkedIntArray(16);
+    /** Number of value rings. */
+    private int valueCount;
+    /** Snapshot sharing the columns, <code>null</code> if not shared. */
+    private ColumnarEntryStore snapshot;
+
+    /**
+     * Constructor.
+     * @param bundle bundle of stored entries
+     * @param keyPool pool giving ids to keys
+     */
+    /*default*/ ColumnarEntryStore(Bundle bundle, KeyPool keyPool) {
+        super();
+        this.bundle = bundle;
+        this.keyPool = keyPool;
+    }
+
+    /**
+     * Constructor of a snapshot, sharing the columns of a store.
+     * @param store store to share columns with
+     * @param keyPool snapshot of the key pool
+     */
+    private ColumnarEntryStore(ColumnarEntryStore store, KeyPool keyPool) {
+        this(store.bundle, keyPool);
+        bytes = store.bytes;
+        chars = store.chars;
+        charCount = store.charCount;
+        garbageCount = store.garbageCount;
+        valuesShared = true;
+        valueStarts = store.valueStarts.snapshot();
+        valueLengths = store.valueLengths.snapshot();
+        valueHashes = store.valueHashes.snapshot();
+        sameValueIds = store.sameValueIds.snapshot();
+        if (store.comments != null) {
+            comments = store.comments.snapshot();
+        }
+        present = store.present.snapshot();
+        commented = store.commented.snapshot();
+        size = store.size;
+        valueTable = store.valueTable.snapshot();
+        valueCount = store.valueCount;
+    }
+
+    @Override
+    public BundleEntry get(String key) {
+        int id = keyPool.getId(key);
+        return id != -1 && present.getBit(id) ? getEntry(id) : null;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        int id = keyPool.getId(key);
+        return id != -1 && present.getBit(id);
+    }
+
+    @Override
+    public void put(BundleEntry entry) {
+        unshare();
+        keyPool.intern(entry.getKey());
+        int id = keyPool.getId(entry.getKey());
+        boolean added = !present.getBit(id);
+        if (!added) {
+            removeValue(id);
+        }
+        String value = entry.getValue();
+        int length = value.length();
+        if (chars == null && !isLatin1(value)) {
+            chars = new char[bytes.length];
+            for (int i = 0; i < charCount; i++) {
+                chars[i] = (char) (bytes[i] & 0xff);
+            }
+            bytes = null;
+            valuesShared = false;
+        }
+        if (charCount + length > getCapacity()) {
+            reclaim(length);
+        }
+        if (added) {
+            // marked once values are reclaimed, its offset being stale
+            ensureCapacity(id + 1);
+            present.setBit(id, true);
+            size++;
+        }
+        if (chars != null) {
+            value.getChars(0, length, chars, charCount);
+        } else {
+            for (int i = 0; i < length; i++) {
+                bytes[charCount + i] = (byte) value.charAt(i);
+            }
+        }
+        valueStarts.set(id, charCount);
+        valueLengths.set(id, length);
+        valueHashes.set(id, value.hashCode());
+        charCount += length;
+        sameValueIds.set(id, id);
+        if (length > 0) {
+            linkValue(id);
+        }
+        commented.setBit(id, entry.isCommented());
+        String comment = entry.getComment();
+        if (comment != null && comments == null) {
+            comments = new ChunkedArray<>(valueStarts.length());
+        }
+        if (comments != null) {
+            comments.set(id, comment);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        int id = keyPool.getId(key);
+        if (id == -1 || !present.getBit(id)) {
+            return;
+        }
+        unshare();
+        removeValue(id);
+        present.setBit(id, false);
+        commented.setBit(id, false);
+        if (comments != null) {
+            comments.set(id, null);
+        }
+        size--;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<BundleEntry> iterator() {
+        return new IdIterator<BundleEntry>() {
+            @Override
+            BundleEntry get(int id) {
+                return getEntry(id);
+            }
+        };
+    }
+
+    @Override
+    public Iterator<String> keyIterator() {
+        return new IdIterator<String>() {
+            @Override
+            String get(int id) {
+                return keyPool.getKey(id);
+            }
+        };
+    }
+
+    @Override
+    public int getSameValueCount(String key) {
+        int id = keyPool.getId(key);
+        if (id == -1 || !present.getBit(id)) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = sameValueIds.get(id); i != id; i = sameValueIds.get(i)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public String getSameValueKey(String key) {
+        int id = keyPool.getId(key);
+        if (id == -1 || !present.getBit(id) || sameValueIds.get(id) == id) {
+            return null;
+        }
+        return keyPool.getKey(sameValueIds.get(id));
+    }
+
+    /**
+     * Releases the room held for values and entries to come, once the
+     * bundle is loaded.
+     */
+    /*default*/ void trimToSize() {
+        unshare();
+        reclaim(0);
+        int capacity = present.bitLength();
+        setCapacity(capacity);
+        present.setLength((capacity + 31) >>> 5);
+        commented.setLength(Math.min(
+                commented.length(), (capacity + 31) >>> 5));
+    }
+
+    @Override
+    public EntryStore snapshot() {
+        if (snapshot == null) {
+            valuesShared = true;
+            snapshot = new ColumnarEntryStore(this, keyPool.snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forgets the snapshot sharing the columns, before modifying them.
+     * Columns copy the chunks they share with it as they are modified.
+     */
+    private void unshare() {
+        snapshot = null;
+    }
+
+    /**
+     * Creates a view of a stored entry.
+     * @param id key id
+     * @return entry
+     */
+    private BundleEntry getEntry(int id) {
+        int start = valueStarts.get(id);
+        int length = valueLengths.get(id);
+        String value;
+        if (chars != null) {
+            value = new String(chars, start, length);
+        } else {
+            value = new String(
+                    bytes, start, length, StandardCharsets.ISO_8859_1);
+        }
+        BundleEntry entry = new BundleEntry(keyPool.getKey(id), value,
+                comments != null ? comments.get(id) : null,
+                commented.getBit(id));
+        entry.setBundle(bundle);
+        entry.setLocale(bundle.getLocale());
+        return entry;
+    }
+
+    /**
+     * Forgets the value of a key id, before it is replaced or removed.
+     * @param id key id
+     */
+    private void removeValue(int id) {
+        garbageCount += valueLengths.get(id);
+        if (valueLengths.get(id) > 0) {
+            unlinkValue(id);
+        }
+        valueLengths.set(id, 0);
+    }
+
+    /**
+     * Makes room for a value, reclaiming the characters of replaced or
+     * removed values if they are many enough, growing the array otherwise.
+     * Without a value to add, the array is trimmed to the characters used.
+     * @param length length of the value to add
+     */
+    private void reclaim(int length) {
+        int liveCount = charCount - garbageCount;
+        Object oldArray = chars != null ? chars : bytes;
+        Object newArray = oldArray;
+        if (length == 0) {
+            newArray = newArray(liveCount);
+        } else if (garbageCount < MIN_RECLAIMED || garbageCount < liveCount
+                || liveCount + length > getCapacity() || valuesShared) {
+            newArray = newArray(Math.max(
+                    liveCount + length, (liveCount + length) * 3 / 2));
+        }
+        if (garbageCount == 0) {
+            System.arraycopy(oldArray, 0, newArray, 0, charCount);
+        } else {
+            // values are moved by increasing offset, so that moving them
+            // down within the same array never overwrites values not moved
+            int count = 0;
+            for (int id : sortByStart()) {
+                int valueLength = valueLengths.get(id);
+                System.arraycopy(oldArray, valueStarts.get(id),
+                        newArray, count, valueLength);
+                valueStarts.set(id, count);
+                count += valueLength;
+            }
+            charCount = count;
+            garbageCount = 0;
+        }
+        if (chars != null) {
+            chars = (char[]) newArray;
+        } else {
+            bytes = (byte[]) newArray;
+        }
+        valuesShared = false;
+    }
+
+    /**
+     * Creates an array of the type holding value characters.
+     * @param capacity array length
+     * @return array
+     */
+    private Object newArray(int capacity) {
+        return chars != null ? new char[capacity] : new byte[capacity];
+    }
+
+    /**
+     * Gets the number of characters the value array can hold.
+     * @return array length
+     */
+    private int getCapacity() {
+        return chars != null ? chars.length : bytes.length;
+    }
+
+    /**
+     * Gets a value character.
+     * @param offset character offset
+     * @return character
+     */
+    private char charAt(int offset) {
+        return chars != null ? chars[offset] : (char) (bytes[offset] & 0xff);
+    }
+
+    /**
+     * Gets stored key ids, by increasing value offset.
+     * @return key ids
+     */
+    private int[] sortByStart() {
+        long[] starts = new long[size];
+        int count = 0;
+        for (int id = present.nextSetBit(0); id >= 0;
+                id = present.nextSetBit(id + 1)) {
+            starts[count++] = ((long) valueStarts.get(id) << 32) | id;
+        }
+        Arrays.sort(starts);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = (int) starts[i];
+        }
+        return ids;
+    }
+
+    /**
+     * Grows columns so that they can hold the given number of key ids.
+     * @param idCount number of key ids
+     */
+    private void ensureCapacity(int idCount) {
+        if (idCount > valueStarts.length()) {
+            setCapacity(idCount);
+        }
+    }
+
+    /**
+     * Grows or shrinks columns to hold the given number of key ids.
+     * @param idCount number of key ids
+     */
+    private void setCapacity(int idCount) {
+        valueStarts.setLength(idCount);
+        valueLengths.setLength(idCount);
+        valueHashes.setLength(idCount);
+        sameValueIds.setLength(idCount);
+        if (comments != null) {
+            comments.setLength(idCount);
+        }
+    }
+
+    /**
+     * Adds a key id to the ring of ids with the same value.
+     * @param id key id
+     */
+    private void linkValue(int id) {
+        int slot = findValue(id);
+        if (slot >= 0) {
+            int ringId = valueTable.get(slot) - 1;
+            sameValueIds.set(id, sameValueIds.get(ringId));
+            sameValueIds.set(ringId, id);
+            return;
+        }
+        valueTable.set(~slot, id + 1);
+        valueCount++;
+        if (valueCount * 2 > valueTable.length()) {
+            rehash(valueTable.length() * 2);
+        }
+    }
+
+    /**
+     * Removes a key id from the ring of ids with the same value.
+     * @param id key id
+     */
+    private void unlinkValue(int id) {
+        int slot = findValue(id);
+        int next = sameValueIds.get(id);
+        if (next == id) {
+            deleteSlot(slot);
+            valueCount--;
+            return;
+        }
+        int previous = next;
+        while (sameValueIds.get(previous) != id) {
+            previous = sameValueIds.get(previous);
+        }
+        sameValueIds.set(previous, next);
+        sameValueIds.set(id, id);
+        if (valueTable.get(slot) == id + 1) {
+            valueTable.set(slot, next + 1);
+        }
+    }
+
+    /**
+     * Finds the table slot of the ring of ids having the same value as the
+     * given key id.
+     * @param id key id
+     * @return slot, or the complement of the free slot where the ring
+     *         would be
+     */
+    private int findValue(int id) {
+        int mask = valueTable.length() - 1;
+        int slot = spread(valueHashes.get(id)) & mask;
+        while (valueTable.get(slot) != 0) {
+            int ringId = valueTable.get(slot) - 1;
+            if (ringId == id || isSameValue(ringId, id)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ~slot;
+    }
+
+    /**
+     * Empties a table slot, moving down following rings which would not be
+     * found anymore.
+     * @param slot slot to empty
+     */
+    private void deleteSlot(int slot) {
+        int mask = valueTable.length() - 1;
+        int hole = slot;
+        int next = slot;
+        valueTable.set(hole, 0);
+        while (true) {
+            next = (next + 1) & mask;
+            if (valueTable.get(next) == 0) {
+                return;
+            }
+            int home = spread(valueHashes.get(valueTable.get(next) - 1)) & mask;
+            // move the ring unless its home lies cyclically in (hole, next]
+            boolean stays = hole <= next
+                    ? hole < home && home <= next
+                    : hole < home || home <= next;
+            if (!stays) {
+                valueTable.set(hole, valueTable.get(next));
+                valueTable.set(next, 0);
+                hole = next;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the table of value rings with the given capacity.
+     * @param capacity table capacity, a power of two
+     */
+    private void rehash(int capacity) {
+        ChunkedIntArray oldTable = valueTable;
+        valueTable = new ChunkedIntArray(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldTable.length(); i++) {
+            int ring = oldTable.get(i);
+            if (ring != 0) {
+                int slot = spread(valueHashes.get(ring - 1)) & mask;
+                while (valueTable.get(slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                valueTable.set(slot, ring);
+            }
+        }
+    }
+
+    /**
+     * Whether two key ids have the same value.
+     * @param id1 a key id
+     * @param id2 another key id
+     * @return <code>true</code> if values are equal
+     */
+    private boolean isSameValue(int id1, int id2) {
+        int length = valueLengths.get(id1);
+        if (valueHashes.get(id1) != valueHashes.get(id2)
+                || length != valueLengths.get(id2)) {
+            return false;
+        }
+        int start1 = valueStarts.get(id1);
+        int start2 = valueStarts.get(id2);
+        for (int i = 0; i < length; i++) {
+            if (charAt(start1 + i) != charAt(start2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether all characters of a value are Latin-1 characters.
+     * @param value a value
+     * @return <code>true</code> if Latin-1
+     */
+    private static boolean isLatin1(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Iterates through stored key ids, by increasing id.
+     * @param <T> type of iterated elements
+     */
+    private abstract class IdIterator<T> implements Iterator<T> {
+        private int nextId = present.nextSetBit(0);
+
+        abstract T get(int id);
+
+        @Override
+        public boolean hasNext() {
+            return nextId >= 0;
+        }
+
+        @Override
+        public T next() {
+            if (nextId < 0) {
+                throw new NoSuchElementException();
+            }
+            int id = nextId;
+            nextId = present.nextSetBit(id + 1);
+            return get(id);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
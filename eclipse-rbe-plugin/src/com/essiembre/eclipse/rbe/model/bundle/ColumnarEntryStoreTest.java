@@ -0,0 +1,131 @@
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.essiembre.eclipse.rbe.model.bundle.visitors.DuplicateValuesVisitor;
+
+/**
+ * Checks that bundles storing entries in columns behave as bundles storing
+ * them in maps.
+ */
+public class ColumnarEntryStoreTest {
+
+    private static final Locale[] LOCALES = {
+            Locale.ENGLISH, Locale.FRENCH, Locale.GERMAN };
+
+    @Test
+    public void testSameAsMapStore() {
+        Random random = new Random(42);
+        BundleGroup mapGroup = new BundleGroup();
+        BundleGroup columnGroup = new BundleGroup(true);
+        for (int i = 0; i < LOCALES.length; i++) {
+            String source = BundleFixtures.generateSparse(random, 200);
+            mapGroup.addBundle(LOCALES[i], PropertiesParser.parse(source));
+            columnGroup.addBundle(LOCALES[i], PropertiesParser.parse(source));
+        }
+        assertSameGroups(mapGroup, columnGroup);
+
+        for (int i = 0; i < 3000; i++) {
+            String key = "key" + random.nextInt(300);
+            Locale locale = LOCALES[random.nextInt(LOCALES.length)];
+            String value = "v" + random.nextInt(20);
+            if (random.nextInt(10) == 0) {
+                value = "";
+            } else if (i > 1500 && random.nextInt(10) == 0) {
+                value = "\u4e2d" + random.nextInt(3);
+            }
+            BundleEntry entry = new BundleEntry(key, value,
+                    random.nextInt(5) == 0 ? "# comment" + i : null,
+                    random.nextInt(4) == 0);
+            String newKey = "key" + random.nextInt(300);
+            for (BundleGroup group : new BundleGroup[] {
+                    mapGroup, columnGroup }) {
+                switch (i % 6) {
+                case 0:
+                    group.removeKey(key);
+                    break;
+                case 1:
+                    group.renameKey(key, newKey);
+                    break;
+                case 2:
+                    group.commentKey(key);
+                    break;
+                default:
+                    group.addBundleEntry(locale, entry);
+                }
+            }
+            if (i % 7 == 0) {
+                // stores copy what they share with snapshots on next change
+                mapGroup.snapshot();
+                columnGroup.snapshot();
+            }
+            if (i % 100 == 0) {
+                String source = BundleFixtures.generateSparse(random, 300);
+                mapGroup.addBundle(locale, PropertiesParser.parse(source));
+                columnGroup.addBundle(locale, PropertiesParser.parse(source));
+            }
+            assertSameGroups(mapGroup, columnGroup);
+        }
+    }
+
+    private static void assertSameGroups(
+            BundleGroup expected, BundleGroup actual) {
+        Assert.assertEquals(expected.getKeys(), actual.getKeys());
+        for (Locale locale : LOCALES) {
+            Bundle expectedBundle = expected.getBundle(locale);
+            Bundle actualBundle = actual.getBundle(locale);
+            BundleFixtures.assertSameBundle(
+                    locale.toString(), expectedBundle, actualBundle);
+            Assert.assertEquals(new ArrayList<>(expectedBundle.getKeys()),
+                    new ArrayList<>(actualBundle.getKeys()));
+            Assert.assertEquals(
+                    new ArrayList<>(expectedBundle.getKeys("key1")),
+                    new ArrayList<>(actualBundle.getKeys("key1")));
+            int count = 0;
+            for (Iterator<BundleEntry> iter = actualBundle.iterator();
+                    iter.hasNext();) {
+                Assert.assertSame(locale, iter.next().getLocale());
+                count++;
+            }
+            Assert.assertEquals(expectedBundle.getKeys().size(), count);
+            Assert.assertEquals(
+                    toList(expected, locale), toList(actual, locale));
+
+            if (!actualBundle.getKeys().isEmpty()) {
+                BundleEntry entry = actualBundle.getEntry(
+                        actualBundle.getKeys().first());
+                DuplicateValuesVisitor visitor = new DuplicateValuesVisitor();
+                actualBundle.accept(visitor, entry);
+                Assert.assertEquals(actualBundle.getEntryIndex()
+                        .getDuplicateKeys().contains(entry.getKey()),
+                        !visitor.getDuplicates().isEmpty());
+            }
+        }
+    }
+
+    private static List<String> toList(BundleGroup group, Locale locale) {
+        List<String> keys = new ArrayList<>();
+        for (String key = group.getNextDuplicateKey(locale, null);
+                key != null; key = group.getNextDuplicateKey(locale, key)) {
+            keys.add(key);
+        }
+        keys.add("--");
+        for (String key = group.getNextCommentedKey(locale, null);
+                key != null; key = group.getNextCommentedKey(locale, key)) {
+            keys.add(key);
+        }
+        keys.add("--");
+        for (String key = group.getNextMissingKey(locale, null);
+                key != null; key = group.getNextMissingKey(locale, key)) {
+            keys.add(key);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Sorted keys of the entries of a bundle needing attention: commented
+ * entries, and entries having the same value as other entries of the
+ * bundle.  The index is updated as entries are added or removed, so that
+ * finding the next such key is a tree lookup.  Keys with duplicate values
+ * are only indexed once first looked up, so that values read from files
+ * are not decoded while loading.
+ * @author Pascal Essiembre
+ * @see com.essiembre.eclipse.rbe.model.bundle.visitors
+ *      .DuplicateValuesVisitor
+ */
+/*default*/ final class EntryIndex {
+
+    /** Store of indexed entries, finding entries with the same value. */
+    private final EntryStore store;
+    /** Keys of commented entries. */
+    private final NavigableSet<String> commentedKeys = new TreeSet<>();
+    /**
+     * Keys of entries whose value is shared with other entries,
+     * <code>null</code> until looked up.
+     */
+    private NavigableSet<String> duplicateKeys;
+
+    /**
+     * Constructor.
+     * @param store store of indexed entries
+     */
+    /*default*/ EntryIndex(EntryStore store) {
+        super();
+        this.store = store;
+    }
+
+    /**
+     * Indexes an entry, once added to the store.
+     * @param entry added entry
+     */
+    /*default*/ void add(BundleEntry entry) {
+        String key = entry.getKey();
+        if (entry.isCommented()) {
+            commentedKeys.add(key);
+        }
+        if (duplicateKeys == null) {
+            return;
+        }
+        int sameValueCount = store.getSameValueCount(key);
+        if (sameValueCount == 1) {
+            duplicateKeys.add(store.getSameValueKey(key));
+        }
+        if (sameValueCount > 0) {
+            duplicateKeys.add(key);
+        }
+    }
+
+    /**
+     * Forgets an entry, before it is removed from the store.
+     * @param entry removed entry
+     */
+    /*default*/ void remove(BundleEntry entry) {
+        String key = entry.getKey();
+        commentedKeys.remove(key);
+        if (duplicateKeys != null && duplicateKeys.remove(key)
+                && store.getSameValueCount(key) == 1) {
+            duplicateKeys.remove(store.getSameValueKey(key));
+        }
+    }
+
+    /**
+     * Gets the sorted keys of commented entries.
+     * @return commented keys
+     */
+    /*default*/ NavigableSet<String> getCommentedKeys() {
+        return commentedKeys;
+    }
+
+    /**
+     * Gets the sorted keys of entries whose value is shared with other
+     * entries.
+     * @return keys with duplicate values
+     */
+    /*default*/ NavigableSet<String> getDuplicateKeys() {
+        if (duplicateKeys == null) {
+            duplicateKeys = new TreeSet<>();
+            for (Iterator<String> iter = store.keyIterator();
+                    iter.hasNext();) {
+                String key = iter.next();
+                if (store.getSameValueCount(key) > 0) {
+                    duplicateKeys.add(key);
+                }
+            }
+        }
+        return duplicateKeys;
+    }
+}
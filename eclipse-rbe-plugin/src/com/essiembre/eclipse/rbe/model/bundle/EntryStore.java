@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Iterator;
+
+/**
+ * Storage of the entries of a bundle.  Entries returned may be views
+ * created on demand, so they are to be compared with
+ * {@link BundleEntry#equals(Object)} rather than by identity.  Stores are
+ * not thread-safe, but their snapshots are.
+ * @author Pascal Essiembre
+ * @see MapEntryStore
+ * @see ColumnarEntryStore
+ */
+/*default*/ interface EntryStore extends Iterable<BundleEntry> {
+
+    /**
+     * Gets the entry of the given key.
+     * @param key entry key
+     * @return entry, or <code>null</code> if none
+     */
+    BundleEntry get(String key);
+
+    /**
+     * Whether an entry has the given key.
+     * @param key entry key
+     * @return <code>true</code> if an entry has the key
+     */
+    boolean contains(String key);
+
+    /**
+     * Stores an entry, replacing the entry of the same key if any.
+     * @param entry entry to store
+     */
+    void put(BundleEntry entry);
+
+    /**
+     * Removes the entry of the given key, if any.
+     * @param key entry key
+     */
+    void remove(String key);
+
+    /**
+     * Gets the number of entries.
+     * @return entry count
+     */
+    int size();
+
+    /**
+     * Iterates through the keys of entries, in no particular order.
+     * @return an iterator
+     */
+    Iterator<String> keyIterator();
+
+    /**
+     * Gets the number of other entries having the same non-empty value as
+     * the entry of the given key.
+     * @param key entry key
+     * @return number of other entries with the same value
+     */
+    int getSameValueCount(String key);
+
+    /**
+     * Gets the key of another entry having the same non-empty value as the
+     * entry of the given key.
+     * @param key entry key
+     * @return key of an entry with the same value, or <code>null</code> if
+     *         none
+     */
+    String getSameValueKey(String key);
+
+    /**
+     * Gets a store holding the entries as they are now, never modified
+     * afterwards and so readable from any thread.  Structures are shared
+     * with the snapshot, and split in parts so that this store only copies
+     * the parts it modifies.
+     * @return read-only store
+     */
+    EntryStore snapshot();
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Keys of all bundles in a group, each with the number of bundles defining
+ * it, commenting it and having an empty value for it, and the keys missing
+ * in each bundle.  The index is updated as entries are added to, modified
+ * in or removed from bundles, rather than rebuilt from all bundles on each
+ * change.
+ * @author Pascal Essiembre
+ * @see BundleGroup#getKeys()
+ */
+/*default*/ final class KeyIndex {
+
+    /** Sorted keys. */
+    private final NavigableSet<String> keys = new TreeSet<>();
+    /** Read-only view of sorted keys. */
+    private final SortedSet<String> keysView =
+            Collections.unmodifiableSortedSet(keys);
+    /** Number of bundles defining each key. */
+    private final Map<String, Count> counts = new HashMap<>();
+    /** Sorted keys not defined by the bundle of each locale. */
+    private final Map<Locale, NavigableSet<String>> missingKeys =
+            new HashMap<>();
+
+    /**
+     * Constructor.
+     */
+    /*default*/ KeyIndex() {
+        super();
+    }
+
+    /**
+     * Records the bundle of a new locale, and the keys it defines.
+     * @param locale bundle locale
+     * @param localeKeys keys defined by the bundle
+     */
+    /*default*/ void addLocale(Locale locale, Iterator<String> localeKeys) {
+        missingKeys.put(locale, new TreeSet<>(keys));
+        while (localeKeys.hasNext()) {
+            add(locale, localeKeys.next());
+        }
+    }
+
+    /**
+     * Records a bundle defining the given key.
+     * @param locale bundle locale
+     * @param key a key
+     * @return <code>true</code> if the key was not defined by any bundle
+     */
+    /*default*/ boolean add(Locale locale, String key) {
+        NavigableSet<String> missing = missingKeys.get(locale);
+        Count count = counts.get(key);
+        if (count != null) {
+            count.value++;
+            if (missing != null) {
+                missing.remove(key);
+            }
+            return false;
+        }
+        counts.put(key, new Count());
+        keys.add(key);
+        for (NavigableSet<String> otherMissing : missingKeys.values()) {
+            if (otherMissing != missing) {
+                otherMissing.add(key);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records a bundle no longer defining the given key.
+     * @param locale bundle locale
+     * @param key a key
+     * @return <code>true</code> if the key is no longer defined by any
+     *         bundle
+     */
+    /*default*/ boolean remove(Locale locale, String key) {
+        Count count = counts.get(key);
+        if (count == null) {
+            return false;
+        }
+        if (--count.value > 0) {
+            NavigableSet<String> missing = missingKeys.get(locale);
+            if (missing != null) {
+                missing.add(key);
+            }
+            return false;
+        }
+        counts.remove(key);
+        keys.remove(key);
+        for (NavigableSet<String> missing : missingKeys.values()) {
+            missing.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Whether a key is defined by any bundle.
+     * @param key a key
+     * @return <code>true</code> if defined
+     */
+    /*default*/ boolean contains(String key) {
+        return counts.containsKey(key);
+    }
+
+    /**
+     * Gets the number of bundles defining a key.
+     * @param key a key
+     * @return bundle count
+     */
+    /*default*/ int getCount(String key) {
+        Count count = counts.get(key);
+        return count != null ? count.value : 0;
+    }
+
+    /**
+     * Records the status of an entry of a bundle defining its key, or of
+     * the entry it replaces, once the key is added to or before it is
+     * removed from the index.
+     * @param oldEntry entry before the change, <code>null</code> if none
+     * @param newEntry entry after the change, <code>null</code> if none
+     */
+    /*default*/ void updateStatus(BundleEntry oldEntry, BundleEntry newEntry) {
+        if (oldEntry != null) {
+            Count count = counts.get(oldEntry.getKey());
+            if (count != null) {
+                count.add(oldEntry, -1);
+            }
+        }
+        if (newEntry != null) {
+            Count count = counts.get(newEntry.getKey());
+            if (count != null) {
+                count.add(newEntry, 1);
+            }
+        }
+    }
+
+    /**
+     * Gets the status of a key in all bundles.
+     * @param key a key
+     * @return status flags, <code>0</code> if not a key
+     * @see BundleGroup#getKeyStatus(String)
+     */
+    /*default*/ int getStatus(String key) {
+        Count count = counts.get(key);
+        if (count == null) {
+            return 0;
+        }
+        int status = 0;
+        if (count.value < missingKeys.size()) {
+            status |= BundleGroup.KEY_MISSING;
+        }
+        if (count.empty > 0) {
+            status |= BundleGroup.KEY_EMPTY;
+        }
+        if (count.commented > 0) {
+            status |= BundleGroup.KEY_COMMENTED;
+            if (count.commented < count.value) {
+                status |= BundleGroup.KEY_PARTIALLY_COMMENTED;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Gets a read-only view of sorted keys, reflecting later changes.
+     * @return sorted keys
+     */
+    /*default*/ SortedSet<String> getKeys() {
+        return keysView;
+    }
+
+    /**
+     * Gets sorted keys, which are not to be modified.
+     * @return sorted keys
+     */
+    /*default*/ NavigableSet<String> getSortedKeys() {
+        return keys;
+    }
+
+    /**
+     * Gets the sorted keys defined by some bundles but not by the bundle of
+     * the given locale.
+     * @param locale bundle locale
+     * @return missing keys, or <code>null</code> if no such bundle
+     */
+    /*default*/ NavigableSet<String> getMissingKeys(Locale locale) {
+        return missingKeys.get(locale);
+    }
+
+    /**
+     * Gets the key following the given one in a sorted set.
+     * @param keys sorted keys
+     * @param key a key, not necessarily in the set, or <code>null</code>
+     *        to get the first key
+     * @return next key, or <code>null</code> if none
+     */
+    /*default*/ static String higher(NavigableSet<String> keys, String key) {
+        if (keys == null || keys.isEmpty()) {
+            return null;
+        }
+        return key == null ? keys.first() : keys.higher(key);
+    }
+
+    /**
+     * Gets the key preceding the given one in a sorted set.
+     * @param keys sorted keys
+     * @param key a key, not necessarily in the set, or <code>null</code>
+     *        to get the last key
+     * @return previous key, or <code>null</code> if none
+     */
+    /*default*/ static String lower(NavigableSet<String> keys, String key) {
+        if (keys == null || keys.isEmpty()) {
+            return null;
+        }
+        return key == null ? keys.last() : keys.lower(key);
+    }
+
+    /**
+     * Gets the key following the given one.
+     * @param key a key
+     * @return next key, or <code>null</code> if none
+     */
+    /*default*/ String higher(String key) {
+        return keys.higher(key);
+    }
+
+    /**
+     * Gets the key preceding the given one.
+     * @param key a key
+     * @return previous key, or <code>null</code> if none
+     */
+    /*default*/ String lower(String key) {
+        return keys.lower(key);
+    }
+
+    /**
+     * Gets the keys of a sorted set starting with the given prefix, as a
+     * view of that set.
+     * @param keys sorted keys
+     * @param prefix key prefix
+     * @return keys starting with the prefix
+     */
+    /*default*/ static SortedSet<String> subSet(
+            SortedSet<String> keys, String prefix) {
+        // first string greater than all those starting with the prefix
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return keys.tailSet(prefix);
+        }
+        String limit = prefix.substring(0, end - 1)
+                + (char) (prefix.charAt(end - 1) + 1);
+        return keys.subSet(prefix, limit);
+    }
+
+    /**
+     * Number of bundles defining a key, commenting it and having an empty
+     * value for it.
+     */
+    private static final class Count {
+        private int value = 1;
+        private int commented;
+        private int empty;
+
+        private void add(BundleEntry entry, int increment) {
+            if (entry.isCommented()) {
+                commented += increment;
+            }
+            if (entry.hasEmptyValue()) {
+                empty += increment;
+            }
+        }
+    }
+}
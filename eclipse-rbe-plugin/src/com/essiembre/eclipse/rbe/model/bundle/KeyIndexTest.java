@@ -0,0 +1,159 @@
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the keys of a bundle group stay the same as if computed from
+ * all bundles, as entries are added, renamed and removed.
+ */
+public class KeyIndexTest {
+
+    private static final Locale[] LOCALES = {
+            Locale.ENGLISH, Locale.FRENCH, Locale.GERMAN };
+
+    @Test
+    public void testSameAsBundles() {
+        Random random = new Random(42);
+        BundleGroup group = new BundleGroup();
+        group.addBundle(Locale.ENGLISH, PropertiesParser.parse(
+                "key1 = a\nkey2 = b\n"));
+        group.addBundles(Collections.singletonMap(Locale.FRENCH,
+                PropertiesParser.parse("key2 = c\nkey3 = d\n")));
+        group.addBundle(Locale.GERMAN, new Bundle());
+        assertSameKeys(group);
+
+        for (int i = 0; i < 2000; i++) {
+            String key = "key" + random.nextInt(30);
+            Locale locale = LOCALES[random.nextInt(LOCALES.length)];
+            switch (random.nextInt(8)) {
+            case 0:
+                group.removeKey(key);
+                break;
+            case 1:
+                group.renameKey(key, "key" + random.nextInt(30));
+                break;
+            case 2:
+                group.copyKey(key, "key" + random.nextInt(30));
+                break;
+            case 3:
+                group.commentKey(key);
+                break;
+            case 4:
+                group.uncommentKey(key);
+                break;
+            case 5:
+                group.addBundle(locale, PropertiesParser.parse(
+                        key + " = " + i + "\nkey" + random.nextInt(30)
+                                + " = x\n"));
+                break;
+            default:
+                group.addBundleEntry(locale, new BundleEntry(
+                        key, "value " + random.nextInt(10), null));
+            }
+            assertSameKeys(group);
+        }
+    }
+
+    @Test
+    public void testPrefix() {
+        BundleGroup group = new BundleGroup();
+        group.addBundle(Locale.ENGLISH, PropertiesParser.parse(
+                "a = 1\na.b = 2\na.c = 3\nab = 4\nb = 5\n"));
+        Bundle bundle = group.getBundle(Locale.ENGLISH);
+        Assert.assertEquals(Arrays.asList("a.b", "a.c"),
+                new ArrayList<>(bundle.getKeys("a.")));
+        Assert.assertEquals(Arrays.asList("a", "a.b", "a.c", "ab"),
+                new ArrayList<>(group.getKeys("a")));
+        Assert.assertTrue(bundle.getKeys("c").isEmpty());
+
+        SortedSet<String> view = bundle.getKeys("a.");
+        group.addBundleEntry(Locale.ENGLISH, new BundleEntry("a.d", "6", null));
+        Assert.assertEquals("a.d", view.last());
+    }
+
+    private static void assertSameKeys(BundleGroup group) {
+        SortedSet<String> expected = new TreeSet<>();
+        for (Iterator<Bundle> iter = group.iterator(); iter.hasNext();) {
+            expected.addAll(iter.next().getKeys());
+        }
+        Assert.assertEquals(expected, group.getKeys());
+        Assert.assertEquals(expected.size(), group.getKeyPool().size());
+        for (String key : expected) {
+            int count = 0;
+            for (Locale locale : LOCALES) {
+                if (group.getBundleEntry(locale, key) != null) {
+                    count++;
+                }
+            }
+            Assert.assertTrue(group.containsKey(key));
+            Assert.assertEquals(key, count, group.getKeyBundleCount(key));
+        }
+        Assert.assertFalse(group.isKey("missing"));
+
+        for (Locale locale : LOCALES) {
+            Bundle bundle = group.getBundle(locale);
+            List<String> missing = new ArrayList<>();
+            List<String> commented = new ArrayList<>();
+            List<String> duplicates = new ArrayList<>();
+            for (String key : expected) {
+                BundleEntry entry = bundle.getEntry(key);
+                if (entry == null) {
+                    missing.add(key);
+                    continue;
+                }
+                if (entry.isCommented()) {
+                    commented.add(key);
+                }
+                for (Iterator<BundleEntry> iter = bundle.iterator();
+                        iter.hasNext();) {
+                    BundleEntry other = iter.next();
+                    if (other != entry
+                            && other.getValue().equals(entry.getValue())) {
+                        duplicates.add(key);
+                        break;
+                    }
+                }
+            }
+            List<String> actual = new ArrayList<>();
+            for (String key = group.getNextMissingKey(locale, null);
+                    key != null; key = group.getNextMissingKey(locale, key)) {
+                actual.add(key);
+            }
+            Assert.assertEquals(missing, actual);
+            actual.clear();
+            for (String key = group.getNextCommentedKey(locale, null);
+                    key != null;
+                    key = group.getNextCommentedKey(locale, key)) {
+                actual.add(key);
+            }
+            Assert.assertEquals(commented, actual);
+            actual.clear();
+            for (String key = group.getPreviousDuplicateKey(locale, null);
+                    key != null;
+                    key = group.getPreviousDuplicateKey(locale, key)) {
+                actual.add(0, key);
+            }
+            Assert.assertEquals(duplicates, actual);
+        }
+        if (!expected.isEmpty()) {
+            List<String> actual = new ArrayList<>();
+            for (String key = expected.first(); key != null;
+                    key = group.getNextKey(key)) {
+                actual.add(key);
+            }
+            Assert.assertEquals(new ArrayList<>(expected), actual);
+            Assert.assertNull(group.getPreviousKey(expected.first()));
+        }
+    }
+}
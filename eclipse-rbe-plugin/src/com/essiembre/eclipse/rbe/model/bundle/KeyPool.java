@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Arrays;
+
+/**
+ * Pool of canonical key instances, shared by all bundles of a group.  Each
+ * properties file being parsed on its own, the same key would otherwise be
+ * held once per locale.  Each pooled key also gets a small integer id,
+ * reused once the key is removed, by which bundles can index columns.
+ * @author Pascal Essiembre
+ * @see BundleGroup#getKeyPool()
+ */
+public class KeyPool {
+
+    /** Ids of pooled keys (key=canonical instance; value=id). */
+    private SegmentedMap<String, Integer> ids;
+    /** Pooled keys by id, <code>null</code> for free ids. */
+    private ChunkedArray<String> keys;
+    /** Ids of removed keys, to be reused. */
+    private int[] freeIds = new int[16];
+    /** Number of free ids. */
+    private int freeIdCount;
+    /** Lowest id never used. */
+    private int nextId;
+    /** Snapshot sharing ids and keys, <code>null</code> if not shared. */
+    private KeyPool snapshot;
+
+    /**
+     * Constructor.
+     */
+    public KeyPool() {
+        this(new SegmentedMap<String, Integer>(),
+                new ChunkedArray<String>(16));
+    }
+
+    private KeyPool(
+            SegmentedMap<String, Integer> ids, ChunkedArray<String> keys) {
+        super();
+        this.ids = ids;
+        this.keys = keys;
+    }
+
+    /**
+     * Gets the canonical instance of a key, pooling the given key if it
+     * is not already.
+     * @param key a key
+     * @return canonical key instance
+     */
+    public String intern(String key) {
+        Integer id = ids.get(key);
+        if (id != null) {
+            return keys.get(id);
+        }
+        unshare();
+        int newId;
+        if (freeIdCount > 0) {
+            newId = freeIds[--freeIdCount];
+        } else {
+            newId = nextId++;
+            if (newId == keys.length()) {
+                keys.setLength(newId + 1);
+            }
+        }
+        ids.put(key, newId);
+        keys.set(newId, key);
+        return key;
+    }
+
+    /**
+     * Gets the canonical instance of a key, without pooling the given key.
+     * @param key a key
+     * @return canonical key instance, or the given key if not pooled
+     */
+    public String get(String key) {
+        Integer id = ids.get(key);
+        return id != null ? keys.get(id) : key;
+    }
+
+    /**
+     * Gets the number of pooled keys.
+     * @return pooled key count
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Gets the id of a pooled key.
+     * @param key a key
+     * @return key id, or -1 if not pooled
+     */
+    /*default*/ int getId(String key) {
+        Integer id = ids.get(key);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Gets the pooled key having the given id.
+     * @param id key id
+     * @return canonical key instance, or <code>null</code> if none
+     */
+    /*default*/ String getKey(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * Removes a key from this pool, freeing its id.
+     * @param key key to remove
+     */
+    /*default*/ void remove(String key) {
+        if (!ids.containsKey(key)) {
+            return;
+        }
+        unshare();
+        Integer id = ids.remove(key);
+        if (id != null) {
+            keys.set(id, null);
+            if (freeIdCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+            }
+            freeIds[freeIdCount++] = id;
+        }
+    }
+
+    /**
+     * Gets a pool holding the keys and ids as they are now, never modified
+     * afterwards.  They are shared with the snapshot, and the parts of them
+     * this pool next modifies are copied first.
+     * @return read-only key pool
+     */
+    /*default*/ KeyPool snapshot() {
+        if (snapshot == null) {
+            snapshot = new KeyPool(ids.snapshot(), keys.snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forgets the snapshot sharing ids and keys, before modifying them.
+     */
+    private void unshare() {
+        snapshot = null;
+    }
+}
@@ -0,0 +1,64 @@
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that bundles of a group share key instances.
+ */
+public class KeyPoolTest {
+
+    private static final int KEY_COUNT = 2000;
+    private static final int LOCALE_COUNT = 5;
+
+    @Test
+    public void testKeysShared() {
+        BundleGroup group = new BundleGroup();
+        group.addBundle(Locale.ENGLISH, PropertiesParser.parse(
+                "a.b = 1\na.c = 2\n"));
+        group.addBundle(Locale.FRENCH, PropertiesParser.parse(
+                "a.b = 3\nd = 4\n"));
+        assertSameInstance(group, "a.b");
+
+        group.copyKey("a.b", "a.e");
+        group.renameKey("d", "a.c");
+        assertSameInstance(group, "a.e");
+        assertSameInstance(group, "a.c");
+
+        group.removeKey("a.b");
+        Assert.assertEquals(group.getKeys().size(), group.getKeyPool().size());
+    }
+
+    @Test
+    public void testManyBundles() {
+        List<Bundle> bundles = new ArrayList<>();
+        for (int i = 0; i < LOCALE_COUNT; i++) {
+            bundles.add(PropertiesParser.parse(
+                    BundleFixtures.generateGrouped(KEY_COUNT, new Random(i))));
+        }
+        BundleGroup group = new BundleGroup();
+        for (int i = 0; i < bundles.size(); i++) {
+            group.addBundle(new Locale("l" + i), bundles.get(i));
+        }
+        Assert.assertEquals(KEY_COUNT, group.getKeyPool().size());
+        assertSameInstance(group, group.getKeys().first());
+        assertSameInstance(group, group.getKeys().last());
+    }
+
+    private static void assertSameInstance(BundleGroup group, String key) {
+        String pooledKey = group.getKeyPool().get(key);
+        for (Iterator<Bundle> iter = group.iterator(); iter.hasNext();) {
+            BundleEntry entry = iter.next().getEntry(key);
+            if (entry != null) {
+                Assert.assertSame(pooledKey, entry.getKey());
+            }
+        }
+        Assert.assertSame(pooledKey, group.getKeys().tailSet(key).first());
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Stores the entries of a bundle as they are, by key.  Maps are split in
+ * segments, so that modifying a store shared with a snapshot only copies
+ * the segments modified.
+ * @author Pascal Essiembre
+ * @see SegmentedMap
+ */
+/*default*/ final class MapEntryStore implements EntryStore {
+
+    /** Bundle entries (key=key value=BundleEntry). */
+    private SegmentedMap<String, BundleEntry> entries;
+    /**
+     * Keys by non-empty value: the key itself when the value is unique, or
+     * a set of keys when it is shared, since most values are unique.
+     * <code>null</code> until looked up, so that values read from files
+     * are not decoded while loading.  Sets of keys are modified in place,
+     * so they are copied along with the segments holding them.
+     */
+    private SegmentedMap<String, Object> keysByValue;
+    /** Snapshot sharing the maps, <code>null</code> if not shared. */
+    private MapEntryStore snapshot;
+
+    /**
+     * Constructor.
+     */
+    /*default*/ MapEntryStore() {
+        this(new SegmentedMap<String, BundleEntry>(), null);
+    }
+
+    private MapEntryStore(SegmentedMap<String, BundleEntry> entries,
+            SegmentedMap<String, Object> keysByValue) {
+        super();
+        this.entries = entries;
+        this.keysByValue = keysByValue;
+    }
+
+    @Override
+    public BundleEntry get(String key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public void put(BundleEntry entry) {
+        unshare();
+        BundleEntry oldEntry = entries.put(entry.getKey(), entry);
+        if (keysByValue == null) {
+            return;
+        }
+        if (oldEntry != null) {
+            removeValue(oldEntry);
+        }
+        addValue(entry);
+    }
+
+    @Override
+    public void remove(String key) {
+        unshare();
+        BundleEntry oldEntry = entries.remove(key);
+        if (oldEntry != null && keysByValue != null) {
+            removeValue(oldEntry);
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Iterator<BundleEntry> iterator() {
+        return entries.valueIterator();
+    }
+
+    @Override
+    public Iterator<String> keyIterator() {
+        return entries.keyIterator();
+    }
+
+    @Override
+    public int getSameValueCount(String key) {
+        Object keys = getSameValueKeys(key);
+        if (keys instanceof Set) {
+            return toSet(keys).size() - 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public String getSameValueKey(String key) {
+        Object keys = getSameValueKeys(key);
+        if (keys instanceof Set) {
+            for (String sharedKey : toSet(keys)) {
+                if (!sharedKey.equals(key)) {
+                    return sharedKey;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public EntryStore snapshot() {
+        if (snapshot == null) {
+            snapshot = new MapEntryStore(entries.snapshot(),
+                    keysByValue != null ? keysByValue.snapshot() : null);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forgets the snapshot sharing the maps, before modifying them.  Maps
+     * copy the segments they share with it as they are modified.
+     */
+    private void unshare() {
+        snapshot = null;
+    }
+
+    /**
+     * Gets the keys sharing the value of the entry of the given key,
+     * indexing all values the first time.  Synchronized for snapshots,
+     * which may be read from several threads.
+     * @param key entry key
+     * @return the key, a set of keys, or <code>null</code>
+     */
+    private synchronized Object getSameValueKeys(String key) {
+        BundleEntry entry = entries.get(key);
+        if (entry == null || entry.getValue().length() == 0) {
+            return null;
+        }
+        if (keysByValue == null) {
+            keysByValue = new SegmentedMap<String, Object>() {
+                @Override
+                Object copyValue(Object keys) {
+                    if (keys instanceof Set) {
+                        return new HashSet<>(toSet(keys));
+                    }
+                    return keys;
+                }
+            };
+            for (Iterator<BundleEntry> iter = entries.valueIterator();
+                    iter.hasNext();) {
+                addValue(iter.next());
+            }
+        }
+        return keysByValue.get(entry.getValue());
+    }
+
+    /**
+     * Indexes the value of an added entry.
+     * @param entry added entry
+     */
+    private void addValue(BundleEntry entry) {
+        String key = entry.getKey();
+        String value = entry.getValue();
+        if (value.length() == 0) {
+            return;
+        }
+        Object keys = keysByValue.get(value);
+        if (keys == null) {
+            keysByValue.put(value, key);
+        } else if (keys instanceof String) {
+            Set<String> sharedKeys = new HashSet<>();
+            sharedKeys.add((String) keys);
+            sharedKeys.add(key);
+            keysByValue.put(value, sharedKeys);
+        } else {
+            toSet(keysByValue.getWritable(value)).add(key);
+        }
+    }
+
+    /**
+     * Forgets the value of a replaced or removed entry.
+     * @param entry replaced or removed entry
+     */
+    private void removeValue(BundleEntry entry) {
+        String value = entry.getValue();
+        if (value.length() == 0) {
+            return;
+        }
+        Object keys = keysByValue.get(value);
+        if (keys instanceof String) {
+            keysByValue.remove(value);
+        } else if (keys != null) {
+            Set<String> sharedKeys = toSet(keysByValue.getWritable(value));
+            sharedKeys.remove(entry.getKey());
+            if (sharedKeys.size() == 1) {
+                keysByValue.put(value, sharedKeys.iterator().next());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> toSet(Object keys) {
+        return (Set<String>) keys;
+    }
+}
@@ -15,7 +15,21 @@
  */
 package com.essiembre.eclipse.rbe.model.bundle;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.eclipse.core.runtime.Platform;
 
@@ -32,10 +46,8 @@ public final class PropertiesGenerator {
             "#Generated by ResourceBundle Editor "
           + "(http://essiembre.github.io/eclipse-rbe/)";
 
-    /** A table of hex digits */
-    private static final char[] HEX_DIGITS = {
-        '0','1','2','3','4','5','6','7','8','9','A','B','C','D','E','F'
-    };
+    /** Number of characters generated before they get written. */
+    private static final int WRITE_BUFFER_SIZE = 8 * 1024;
 
     /** Special resource bundle characters when persisting any text. */
     private static final String SPECIAL_VALUE_SAVE_CHARS = "\t\f";
@@ -43,16 +55,17 @@ public final class PropertiesGenerator {
     private static final String SPECIAL_KEY_SAVE_CHARS = "=\t\f#!: ";
     
     /** System line separator. */
-	private static final String SYSTEM_LINE_SEP = Platform
-			.getPreferencesService().getString("org.eclipse.core.runtime",
-					"line.separator", System.getProperty("line.separator"),
-					null);
+	private static final String SYSTEM_LINE_SEP = Platform.isRunning()
+			? Platform.getPreferencesService().getString(
+					"org.eclipse.core.runtime", "line.separator",
+					System.getProperty("line.separator"), null)
+			: System.getProperty("line.separator");
     /** Forced line separators. */
     private static final String[] FORCED_LINE_SEP = new String[3];
     static {
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_UNIX] = "\\\\n";
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_WIN] = "\\\\r\\\\n";
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_MAC] = "\\\\r";
+        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_UNIX] = "\\n";
+        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_WIN] = "\\r\\n";
+        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_MAC] = "\\r";
     }
 
     /**
@@ -69,81 +82,539 @@ public final class PropertiesGenerator {
      * @return the generated string
      */
     public static String generate(Bundle bundle) {
-        String lineBreak = SYSTEM_LINE_SEP;
-        int numOfLineBreaks = RBEPreferences.getGroupLineBreaks();
-        StringBuffer text = new StringBuffer();
+        return generate(bundle, RBEPreferences.getPropertiesOptions());
+    }
 
-        // Header comment
-        String headComment = bundle.getComment();
-        if (headComment != null && headComment.length() > 0) {
-            if (RBEPreferences.getShowGenerator() 
-                    && !headComment.startsWith(GENERATED_BY)) {
-                text.append(GENERATED_BY);
-                text.append(SYSTEM_LINE_SEP);
+    /**
+     * Generates a formatted string from a given <code>Bundle</code>, using
+     * the given formatting options.
+     * @param bundle the bundle used to generate the string
+     * @param options formatting options
+     * @return the generated string
+     */
+    public static String generate(Bundle bundle, PropertiesOptions options) {
+        StringBuilder text = new StringBuilder();
+        try {
+            generate(bundle, options, text, null);
+        } catch (IOException e) {
+            // should not happen, nothing is written
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Generates a string from a given <code>Bundle</code>, keeping the
+     * layout of the source it was parsed from.  Entries keep their source
+     * order, blank lines, comments and line wrapping, and only entries
+     * modified since parsed are re-formatted.  Removed entries are left
+     * out, and added entries are inserted before the first greater key
+     * when source keys are sorted, or after the last entry otherwise.
+     * The whole string is generated as usual if the source map does not
+     * reflect the source, or if the source has no entries.
+     * @param bundle the bundle used to generate the string
+     * @param source the source the bundle was parsed from
+     * @param sourceMap the map of the source
+     * @param options formatting options, used for re-formatted entries
+     * @return the generated string
+     * @see PropertiesParser#parse(CharSequence, PropertiesSourceMap)
+     */
+    public static String generate(Bundle bundle, CharSequence source,
+            PropertiesSourceMap sourceMap, PropertiesOptions options) {
+        int entryCount = sourceMap.getEntryCount();
+        if (!sourceMap.isValid() || entryCount == 0
+                || sourceMap.getLength() != source.length()) {
+            return generate(bundle, options);
+        }
+
+        // keys not found in source, and where to insert them
+        Set<String> sourceKeys = new HashSet<>(entryCount * 2);
+        boolean sorted = true;
+        String previousKey = null;
+        for (int i = 0; i < entryCount; i++) {
+            String key = sourceMap.getKey(i);
+            if (isBlank(key)) {
+                continue;
             }
-            text.append(headComment);
+            sourceKeys.add(key);
+            if (previousKey != null && previousKey.compareTo(key) >= 0) {
+                sorted = false;
+            }
+            previousKey = key;
         }
-        
-        // Format
-        String group = null;
-        int equalIndex = -1;
-        for (Iterator<String> iter = bundle.getKeys().iterator(); 
-                iter.hasNext();) {
-            BundleEntry bundleEntry = bundle.getEntry(iter.next());
-            String key = bundleEntry.getKey();
-            String value = bundleEntry.getValue(); 
-            String comment = bundleEntry.getComment();    
-            
-            if (value != null){
-                // escape backslashes
-                if (RBEPreferences.getConvertUnicodeToEncoded()) {
-                    value = value.replaceAll("\\\\", "\\\\\\\\");
+        List<String> addedKeys = new ArrayList<>();
+        for (String key : bundle.getKeys()) {
+            if (!sourceKeys.contains(key)) {
+                addedKeys.add(key);
+            }
+        }
+        Iterator<String> addedIterator = addedKeys.iterator();
+        String addedKey = addedIterator.hasNext()
+                ? addedIterator.next() : null;
+
+        StringBuilder text = new StringBuilder(source.length());
+        ValueEncoder valueEncoder = new ValueEncoder(options);
+        int spanStart = 0;
+        for (int i = 0; i < entryCount; i++) {
+            String key = sourceMap.getKey(i);
+            int commentStart = sourceMap.getCommentStart(i);
+            int start = sourceMap.getEntryStart(i);
+            int end = sourceMap.getEntryEnd(i);
+            boolean blank = isBlank(key);
+
+            // added entries preceding this one, after the file comment
+            while (sorted && !blank && addedKey != null
+                    && addedKey.compareTo(key) < 0) {
+                if (i == 0 && spanStart < commentStart) {
+                    text.append(source, spanStart, commentStart);
+                    spanStart = commentStart;
                 }
-                
-                // handle new lines in value
-                if (RBEPreferences.getForceNewLineType()) {
-                    value = value.replaceAll(
-                            "\r\n|\r|\n", FORCED_LINE_SEP[
-                                    RBEPreferences.getNewLineType()]);
+                appendAddedEntry(text, bundle.getEntry(addedKey),
+                        valueEncoder, options);
+                addedKey = addedIterator.hasNext()
+                        ? addedIterator.next() : null;
+            }
+
+            // blank keys are not in bundles and are kept as they are
+            BundleEntry entry = blank ? null : bundle.getEntry(key);
+            BundleEntry original = entry == null
+                    ? null : sourceMap.parseEntry(source, i);
+            if (blank || entry != null && entry.equals(original)) {
+                text.append(source, spanStart, end);
+            } else if (entry == null || !isWritten(entry, options)) {
+                // keep blank lines and comments not belonging to the entry
+                text.append(source, spanStart, commentStart);
+            } else {
+                if (isSameComment(entry, original)) {
+                    text.append(source, spanStart, start);
                 } else {
-                    value = value.replaceAll("\r", "\\\\r");
-                    value = value.replaceAll("\n", "\\\\n");
+                    text.append(source, spanStart, commentStart);
+                    appendComment(text, entry);
+                }
+                appendEntry(text, entry, valueEncoder, options);
+                if (end > start && !isLineBreak(source.charAt(end - 1))) {
+                    // entry had no line break, being last
+                    text.setLength(text.length() - SYSTEM_LINE_SEP.length());
                 }
+            }
+            spanStart = end;
+        }
+
+        // remaining added entries go after the last entry
+        while (addedKey != null) {
+            appendAddedEntry(text, bundle.getEntry(addedKey),
+                    valueEncoder, options);
+            addedKey = addedIterator.hasNext() ? addedIterator.next() : null;
+        }
+        text.append(source, spanStart, source.length());
+        return text.toString();
+    }
+
+    /**
+     * Generates the replacements of the source ranges of modified entries,
+     * keeping the layout of the source they were parsed from.  Applying
+     * the replacements to the source, in the returned order, gives the
+     * same string as {@link #generate(Bundle, CharSequence,
+     * PropertiesSourceMap, PropertiesOptions)}, without generating nor
+     * reading entries other than the modified ones.  Modified entries
+     * not found in the source need to be inserted, in which case
+     * <code>null</code> is returned, as it is if the source map does not
+     * reflect the source, or if the source has no entries.
+     * @param bundle the bundle used to generate entries
+     * @param source the source the bundle was parsed from
+     * @param sourceMap the map of the source
+     * @param keys keys of the entries added, modified or removed since the
+     *        source was parsed
+     * @param options formatting options, used for re-formatted entries
+     * @return replacements in descending source order, or <code>null</code>
+     *         if the whole source has to be generated
+     */
+    public static List<Replacement> generateReplacements(Bundle bundle,
+            CharSequence source, PropertiesSourceMap sourceMap,
+            Collection<String> keys, PropertiesOptions options) {
+        if (!sourceMap.isValid() || sourceMap.getEntryCount() == 0
+                || sourceMap.getLength() != source.length()) {
+            return null;
+        }
+        int[] indexes = new int[keys.size()];
+        int count = 0;
+        for (String key : keys) {
+            int index = sourceMap.indexOf(key);
+            if (index >= 0) {
+                indexes[count++] = index;
             } else {
-                value = "";
+                BundleEntry entry = bundle.getEntry(key);
+                if (entry != null && isWritten(entry, options)) {
+                    return null;
+                }
             }
-            
-            if (RBEPreferences.getKeepEmptyFields() || value.length() > 0) {
-                // handle group equal align and line break options
-                if (RBEPreferences.getGroupKeys()) {
-                    String newGroup = getKeyGroup(key);
-                    if (newGroup == null || !newGroup.equals(group)) {
-                        group = newGroup;
-                        equalIndex = getEqualIndex(key, group, bundle);
-                        for (int i = 0; i < numOfLineBreaks; i++) {
-                            text.append(lineBreak);
-                        }
-                    }
+        }
+        Arrays.sort(indexes, 0, count);
+
+        List<Replacement> replacements = new ArrayList<>();
+        ValueEncoder valueEncoder = new ValueEncoder(options);
+        StringBuilder text = new StringBuilder();
+        for (int n = count - 1; n >= 0; n--) {
+            int i = indexes[n];
+            BundleEntry entry = bundle.getEntry(sourceMap.getKey(i));
+            BundleEntry original = sourceMap.parseEntry(source, i);
+            if (original.equals(entry)) {
+                continue;
+            }
+            int commentStart = sourceMap.getCommentStart(i);
+            int start = sourceMap.getEntryStart(i);
+            int end = sourceMap.getEntryEnd(i);
+            text.setLength(0);
+            int offset = commentStart;
+            if (entry != null && isWritten(entry, options)) {
+                if (isSameComment(entry, original)) {
+                    offset = start;
                 } else {
-                    equalIndex = getEqualIndex(key, null, bundle);
+                    appendComment(text, entry);
+                }
+                appendEntry(text, entry, valueEncoder, options);
+                if (end > start && !isLineBreak(source.charAt(end - 1))) {
+                    // entry had no line break, being last
+                    text.setLength(text.length() - SYSTEM_LINE_SEP.length());
+                }
+            }
+            replacements.add(new Replacement(
+                    offset, end - offset, text.toString()));
+        }
+        return replacements;
+    }
+
+    /**
+     * Whether a source map maps the entries written when generating a
+     * bundle, one for one, in the same order and from where each of them
+     * starts being generated, as it does once the source generated from
+     * the bundle is parsed.  Only then can {@link #regenerateReplacements(
+     * Bundle, CharSequence, PropertiesSourceMap, Collection,
+     * PropertiesOptions)} be used on the source.  It is not the case when
+     * a generated line is continued on the next one, as values ending with
+     * a backslash are.
+     * @param bundle the bundle the source was generated from
+     * @param source the source
+     * @param sourceMap the map of the source
+     * @param options formatting options the source was generated with
+     * @return <code>true</code> if the source map matches
+     */
+    public static boolean isGeneratedLayout(Bundle bundle,
+            CharSequence source, PropertiesSourceMap sourceMap,
+            PropertiesOptions options) {
+        int entryCount = sourceMap.getEntryCount();
+        if (!sourceMap.isValid() || entryCount == 0
+                || sourceMap.getLength() != source.length()
+                || sourceMap.getEntryEnd(entryCount - 1) != source.length()) {
+            return false;
+        }
+        StringBuilder text = new StringBuilder();
+        appendHeader(text, bundle, options);
+        int index = 0;
+        String previousKey = null;
+        for (String key : bundle.getKeys()) {
+            BundleEntry entry = bundle.getEntry(key);
+            if (!isWritten(entry, options)) {
+                continue;
+            }
+            if (index == entryCount || !key.equals(sourceMap.getKey(index))) {
+                return false;
+            }
+            String writtenKey = appendEntryStart(text, entry,
+                    options.isGroupKeys()
+                            && isGroupStart(key, previousKey, options),
+                    options);
+            if (entry.isCommented()) {
+                text.append("##");
+            }
+            saveKey(text, writtenKey);
+            int start = index == 0 ? 0 : sourceMap.getEntryEnd(index - 1);
+            if (!startsWith(source.subSequence(start,
+                    sourceMap.getEntryEnd(index)), text)) {
+                return false;
+            }
+            text.setLength(0);
+            previousKey = key;
+            index++;
+        }
+        return index == entryCount;
+    }
+
+    /**
+     * Generates the replacements turning a source generated from a bundle
+     * into the source generated from the same bundle once some of its
+     * entries are added, modified or removed, as given by
+     * {@link #generate(Bundle, PropertiesOptions)}.  Only the modified
+     * entries, and the entries following them (which may start a key
+     * group), are generated, their equal signs located as in the source
+     * when possible.  <code>null</code> is returned if adding or removing
+     * a key may move the equal signs of other entries, as when it is the
+     * longest key of its group, or if the source map does not reflect
+     * the source.
+     * @param bundle the bundle used to generate entries
+     * @param source the source generated from the bundle before the
+     *        entries were modified, with the same options
+     * @param sourceMap the map of the source
+     * @param keys keys of the entries added, modified or removed since the
+     *        source was generated
+     * @param options formatting options
+     * @return replacements in descending source order, or <code>null</code>
+     *         if the whole source has to be generated
+     * @see #isGeneratedLayout(Bundle, CharSequence, PropertiesSourceMap,
+     *      PropertiesOptions)
+     */
+    public static List<Replacement> regenerateReplacements(Bundle bundle,
+            CharSequence source, PropertiesSourceMap sourceMap,
+            Collection<String> keys, PropertiesOptions options) {
+        int entryCount = sourceMap.getEntryCount();
+        if (!sourceMap.isValid() || entryCount == 0
+                || sourceMap.getLength() != source.length()) {
+            return null;
+        }
+
+        // keys which may be added or removed, unless they are not longer
+        // than other keys of their group, equal signs do not move
+        Set<String> varyingKeys = new HashSet<>();
+        for (String key : keys) {
+            boolean mapped = sourceMap.indexOf(key) >= 0;
+            if (mapped != (bundle.getEntry(key) != null)
+                    || !mapped && !options.isKeepEmptyFields()) {
+                varyingKeys.add(key);
+            }
+        }
+        if (options.isAlignEqualSigns() && (!options.isGroupKeys()
+                || options.isGroupAlignEqualSigns())) {
+            for (String key : varyingKeys) {
+                if (!hasLongerKey(bundle, getGroupBound(key, options),
+                        key.length(), varyingKeys)) {
+                    return null;
+                }
+            }
+        }
+
+        // mapped entries to regenerate, along with the entries inserted
+        // before them (the entry count standing for the source end), and
+        // entries following written or unwritten keys, which group may
+        // start elsewhere
+        NavigableSet<Integer> indexes = new TreeSet<>();
+        Set<String> followingKeys = new HashSet<>();
+        for (String key : keys) {
+            int index = sourceMap.indexOf(key);
+            indexes.add(Integer.valueOf(
+                    index >= 0 ? index : findInsertionIndex(sourceMap, key)));
+            String nextKey = getNextWrittenKey(bundle, key, options);
+            int nextIndex = nextKey == null ? -1 : sourceMap.indexOf(nextKey);
+            if (nextIndex == -1) {
+                continue;
+            }
+            indexes.add(Integer.valueOf(nextIndex));
+            BundleEntry entry = bundle.getEntry(key);
+            if ((index >= 0) == (entry != null && isWritten(entry, options))) {
+                continue;
+            }
+            followingKeys.add(nextKey);
+            if (isStartAligned(options) && !isSameGroupStartLength(
+                    bundle, sourceMap, nextKey, nextIndex, options)) {
+                return null;
+            }
+        }
+
+        List<Replacement> replacements = new ArrayList<>();
+        ValueEncoder valueEncoder = new ValueEncoder(options);
+        StringBuilder text = new StringBuilder();
+        for (Integer indexObject : indexes.descendingSet()) {
+            int index = indexObject.intValue();
+            text.setLength(0);
+            if (index == 0) {
+                appendHeader(text, bundle, options);
+                if (!startsWith(source, text)) {
+                    return null;
+                }
+            }
+            String fromKey = index == 0 ? null : sourceMap.getKey(index - 1);
+            String toKey = index == entryCount
+                    ? null : sourceMap.getKey(index);
+            String previousKey = null;
+            if (options.isGroupKeys() && fromKey != null) {
+                BundleEntry fromEntry = bundle.getEntry(fromKey);
+                previousKey = fromEntry != null && isWritten(fromEntry, options)
+                        ? fromKey
+                        : getPreviousWrittenKey(bundle, fromKey, options);
+            }
+            SortedSet<String> rangeKeys = fromKey == null
+                    ? bundle.getKeys() : bundle.getKeys().tailSet(fromKey);
+            for (String key : rangeKeys) {
+                if (key.equals(fromKey)) {
+                    continue;
                 }
-                
-                // Build line
-                if (RBEPreferences.getConvertUnicodeToEncoded()) {
-                    key = PropertiesGenerator.convertUnicodeToEncoded(key);
-                    value = PropertiesGenerator.convertUnicodeToEncoded(value);
+                if (toKey != null && key.compareTo(toKey) > 0) {
+                    break;
                 }
-                if (comment != null && comment.length() > 0) {
-                    text.append(comment);
+                BundleEntry entry = bundle.getEntry(key);
+                if (!isWritten(entry, options)) {
+                    continue;
                 }
-                appendKey(text, key, equalIndex, bundleEntry.isCommented());
-                appendValue(text, value, equalIndex, bundleEntry.isCommented());
-                text.append(lineBreak);
+                boolean groupStart = options.isGroupKeys()
+                        && isGroupStart(key, previousKey, options);
+                appendLaidOutEntry(text, entry, getEqualIndex(bundle, key,
+                        groupStart, source, sourceMap, index, followingKeys,
+                        options), groupStart, valueEncoder, options);
+                previousKey = key;
+            }
+            int offset = index == 0 ? 0 : sourceMap.getEntryEnd(index - 1);
+            int end = index == entryCount
+                    ? source.length() : sourceMap.getEntryEnd(index);
+            if (end - offset != text.length()
+                    || !startsWith(source.subSequence(offset, end), text)) {
+                replacements.add(new Replacement(
+                        offset, end - offset, text.toString()));
             }
         }
-        return text.toString();
+        return replacements;
+    }
+
+    /**
+     * Generates a properties file from a given <code>Bundle</code>, writing
+     * it as it gets generated.  Only a small buffer is held in memory,
+     * whatever the file size.  The writer is not flushed nor closed.
+     * @param bundle the bundle used to generate the properties file
+     * @param options formatting options
+     * @param writer where to write the properties file
+     * @throws IOException problem writing
+     */
+    public static void generate(Bundle bundle, PropertiesOptions options,
+            Writer writer) throws IOException {
+        generate(bundle, options,
+                new StringBuilder(WRITE_BUFFER_SIZE * 2), writer);
     }
+
+    /**
+     * Generates a properties file from a given <code>Bundle</code>, encoding
+     * and writing it to a channel as it gets generated.  Only small buffers
+     * are held in memory, whatever the file size.  The channel is not
+     * closed.
+     * @param bundle the bundle used to generate the properties file
+     * @param options formatting options
+     * @param channel where to write the properties file
+     * @param charset character set used to encode the properties file
+     * @throws IOException problem writing, or a character cannot be
+     *         encoded with the given character set
+     */
+    public static void generate(Bundle bundle, PropertiesOptions options,
+            WritableByteChannel channel, Charset charset) throws IOException {
+        Writer writer = Channels.newWriter(
+                channel, charset.newEncoder(), WRITE_BUFFER_SIZE);
+        generate(bundle, options, writer);
+        writer.flush();
+    }
+
+    /**
+     * Generates a properties file from a given <code>Bundle</code>.
+     * @param bundle the bundle used to generate the properties file
+     * @param options formatting options
+     * @param text buffer receiving generated text
+     * @param writer writer the buffer is written to and emptied when
+     *        it gets big, or <code>null</code> to keep it all in the buffer
+     * @throws IOException problem writing
+     */
+    private static void generate(Bundle bundle, PropertiesOptions options,
+            StringBuilder text, Writer writer) throws IOException {
+        appendHeader(text, bundle, options);
+        
+        // Format: lay out all entries first, then write them
+        Layout layout = new Layout(bundle, options);
+        ValueEncoder valueEncoder = new ValueEncoder(options);
+        for (int n = 0; n < layout.size(); n++) {
+            int equalIndex = layout.getEqualIndex(n);
+            if (equalIndex == -1) {
+                continue;
+            }
+            appendLaidOutEntry(text, layout.getEntry(n), equalIndex,
+                    layout.isGroupStart(n), valueEncoder, options);
+            if (writer != null && text.length() >= WRITE_BUFFER_SIZE) {
+                writer.append(text);
+                text.setLength(0);
+            }
+        }
+        if (writer != null) {
+            writer.append(text);
+            text.setLength(0);
+        }
+    }
+        
+    /**
+     * Appends the header comment of a bundle to resource bundle content,
+     * if any.
+     * @param text the resource bundle content so far
+     * @param bundle the bundle which header to add
+     * @param options formatting options
+     */
+    private static void appendHeader(StringBuilder text, Bundle bundle,
+            PropertiesOptions options) {
+        String headComment = bundle.getComment();
+        if (headComment != null && headComment.length() > 0) {
+            if (options.isShowGenerator() 
+                    && !headComment.startsWith(GENERATED_BY)) {
+                text.append(GENERATED_BY);
+                text.append(SYSTEM_LINE_SEP);
+            }
+            text.append(headComment);
+        }
+    }
+
+    /**
+     * Appends what precedes the line of an entry laid out with the other
+     * entries of its bundle: group line breaks and comment.
+     * @param text the resource bundle content so far
+     * @param entry the entry to add
+     * @param groupStart whether a key group starts at the entry
+     * @param options formatting options
+     * @return the entry key, as it is written before being escaped
+     */
+    private static String appendEntryStart(StringBuilder text,
+            BundleEntry entry, boolean groupStart,
+            PropertiesOptions options) {
+        String key = entry.getKey();
+        String comment = entry.getComment();    
         
+        // handle group line break options
+        if (groupStart) {
+            for (int i = 0; i < options.getGroupLineBreaks(); i++) {
+                text.append(SYSTEM_LINE_SEP);
+            }
+        }
+
+        // Build line
+        if (options.isConvertUnicodeToEncoded()) {
+            key = convertUnicodeToEncoded(
+                    key, options.isConvertUnicodeToEncodedUpper());
+        }
+        if (comment != null && comment.length() > 0) {
+            text.append(comment);
+        }
+        return key;
+    }
+
+    /**
+     * Appends an entry laid out with the other entries of its bundle,
+     * followed by a line break.
+     * @param text the resource bundle content so far
+     * @param entry the entry to add
+     * @param equalIndex the equal sign position
+     * @param groupStart whether a key group starts at the entry
+     * @param valueEncoder value encoder
+     * @param options formatting options
+     */
+    private static void appendLaidOutEntry(StringBuilder text,
+            BundleEntry entry, int equalIndex, boolean groupStart,
+            ValueEncoder valueEncoder, PropertiesOptions options) {
+        String key = appendEntryStart(text, entry, groupStart, options);
+        appendKey(text, key, equalIndex, entry.isCommented(), options);
+        valueEncoder.append(text, entry.getValue(), equalIndex,
+                entry.isCommented());
+        text.append(SYSTEM_LINE_SEP);
+    }
+
     /**
      * Converts unicodes to encoded &#92;uxxxx.
      * @param str string to convert
@@ -151,110 +622,439 @@ public final class PropertiesGenerator {
      * @see java.util.Properties
      */
     public static String convertUnicodeToEncoded(String str) {
-        int len = str.length();
-        StringBuffer outBuffer = new StringBuffer(len * 2);
+        return convertUnicodeToEncoded(str, RBEPreferences
+                .getPropertiesOptions().isConvertUnicodeToEncodedUpper());
+    }
 
-        for (int x = 0; x < len; x++) {
-            char aChar = str.charAt(x);
-            if ((aChar < 0x0020) || (aChar > 0x007e)) {
-                outBuffer.append('\\');
-                outBuffer.append('u');
-                outBuffer.append(toHex((aChar >> 12) & 0xF));
-                outBuffer.append(toHex((aChar >> 8) & 0xF));
-                outBuffer.append(toHex((aChar >> 4) & 0xF));
-                outBuffer.append(toHex(aChar & 0xF));
-            } else {
-                outBuffer.append(aChar);
-            }
+    /**
+     * Converts unicodes to encoded &#92;uxxxx.
+     * @param str string to convert
+     * @param upperCase whether to use upper case hexadecimal digits
+     * @return converted string
+     * @see java.util.Properties
+     */
+    public static String convertUnicodeToEncoded(
+            String str, boolean upperCase) {
+        return UnicodeCodec.encode(str, upperCase);
+    }
+
+    /**
+     * Appends an entry added to a bundle, if it is written at all, on a
+     * line of its own.
+     * @param text the resource bundle content so far
+     * @param entry the entry to add
+     * @param valueEncoder value encoder
+     * @param options formatting options
+     */
+    private static void appendAddedEntry(StringBuilder text,
+            BundleEntry entry, ValueEncoder valueEncoder,
+            PropertiesOptions options) {
+        if (!isWritten(entry, options)) {
+            return;
+        }
+        int length = text.length();
+        if (length > 0 && !isLineBreak(text.charAt(length - 1))) {
+            text.append(SYSTEM_LINE_SEP);
         }
-        return outBuffer.toString();
+        appendComment(text, entry);
+        appendEntry(text, entry, valueEncoder, options);
     }
-    
+
     /**
-     * Converts a nibble to a hex character
-     * @param nibble  the nibble to convert.
-     * @return a converted character
+     * Appends an entry comment to resource bundle content, if any.
+     * @param text the resource bundle content so far
+     * @param entry the entry which comment to add
      */
-    private static char toHex(int nibble) {
-        char hexChar = HEX_DIGITS[(nibble & 0xF)];
-        if (!RBEPreferences.getConvertUnicodeToEncodedUpper()) {
-            return Character.toLowerCase(hexChar);
+    private static void appendComment(StringBuilder text, BundleEntry entry) {
+        String comment = entry.getComment();
+        if (comment != null && comment.length() > 0) {
+            text.append(comment);
         }
-        return hexChar;
     }
 
     /**
-     * Appends a value to resource bundle content.
+     * Appends an entry formatted on its own, without aligning it with other
+     * entries, followed by a line break.
      * @param text the resource bundle content so far
-     * @param value the value to add
-     * @param equalIndex the equal sign position
-     * @param commented is the value commented
+     * @param entry the entry to add
+     * @param valueEncoder value encoder
+     * @param options formatting options
      */
-    private static void appendValue(
-            StringBuffer text, String value, 
-            int equalIndex, boolean commented) {
-        if (value != null) {
-            // Escape potential leading spaces.
-            if (value.startsWith(" ")) {
-                value = "\\" + value;
+    private static void appendEntry(StringBuilder text, BundleEntry entry,
+            ValueEncoder valueEncoder, PropertiesOptions options) {
+        String key = entry.getKey();
+        if (options.isConvertUnicodeToEncoded()) {
+            key = convertUnicodeToEncoded(
+                    key, options.isConvertUnicodeToEncodedUpper());
+        }
+        appendKey(text, key, key.length(), entry.isCommented(), options);
+        valueEncoder.append(text, entry.getValue(), key.length(),
+                entry.isCommented());
+        text.append(SYSTEM_LINE_SEP);
+    }
+
+    /**
+     * Whether an entry is written to resource bundle content.
+     * @param entry a bundle entry
+     * @param options formatting options
+     * @return <code>true</code> if written
+     */
+    private static boolean isWritten(
+            BundleEntry entry, PropertiesOptions options) {
+        return options.isKeepEmptyFields() || !entry.hasEmptyValue();
+    }
+
+    /**
+     * Whether two entries have the same comment, no comment being the same
+     * as an empty one.
+     * @param entry a bundle entry
+     * @param otherEntry another bundle entry
+     * @return <code>true</code> if same comment
+     */
+    private static boolean isSameComment(
+            BundleEntry entry, BundleEntry otherEntry) {
+        String comment = entry.getComment();
+        String otherComment = otherEntry.getComment();
+        return (comment == null ? "" : comment).equals(
+                otherComment == null ? "" : otherComment);
+    }
+
+    /**
+     * Whether a character ends a line.
+     * @param aChar a character
+     * @return <code>true</code> if a line break character
+     */
+    private static boolean isLineBreak(char aChar) {
+        return aChar == '\n' || aChar == '\r';
+    }
+
+    /**
+     * Whether a key is ignored when added to a bundle.
+     * @param key entry key
+     * @return <code>true</code> if blank
+     */
+    private static boolean isBlank(String key) {
+        return key.trim().length() == 0;
+    }
+
+    /**
+     * Whether a character sequence starts with another one.
+     * @param text a character sequence
+     * @param prefix the prefix to look for
+     * @return <code>true</code> if the sequence starts with the prefix
+     */
+    private static boolean startsWith(CharSequence text, CharSequence prefix) {
+        int length = prefix.length();
+        if (text.length() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != prefix.charAt(i)) {
+                return false;
             }
-            int lineLength = RBEPreferences.getWrapCharLimit() - 1;
-            int valueStartPos = equalIndex;
-            if (RBEPreferences.getSpacesAroundEqualSigns()) {
-                valueStartPos += 3;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the next key of a bundle, which entry is written.
+     * @param bundle a bundle
+     * @param key the key to start from, not necessarily in the bundle
+     * @param options formatting options
+     * @return the key following the given one, or <code>null</code>
+     */
+    private static String getNextWrittenKey(
+            Bundle bundle, String key, PropertiesOptions options) {
+        for (String nextKey : bundle.getKeys().tailSet(key)) {
+            if (!nextKey.equals(key)
+                    && isWritten(bundle.getEntry(nextKey), options)) {
+                return nextKey;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the previous key of a bundle, which entry is written.
+     * @param bundle a bundle
+     * @param key the key to start from, not necessarily in the bundle
+     * @param options formatting options
+     * @return the key preceding the given one, or <code>null</code>
+     */
+    private static String getPreviousWrittenKey(
+            Bundle bundle, String key, PropertiesOptions options) {
+        SortedSet<String> previousKeys = bundle.getKeys().headSet(key);
+        while (!previousKeys.isEmpty()) {
+            String previousKey = previousKeys.last();
+            if (isWritten(bundle.getEntry(previousKey), options)) {
+                return previousKey;
+            }
+            previousKeys = previousKeys.headSet(previousKey);
+        }
+        return null;
+    }
+
+    /**
+     * Finds where an entry missing from a generated source is inserted,
+     * mapped entries being sorted by key.
+     * @param sourceMap the map of the source
+     * @param key key of the entry to insert
+     * @return index of the first entry with a greater key, or the entry
+     *         count if none
+     */
+    private static int findInsertionIndex(
+            PropertiesSourceMap sourceMap, String key) {
+        int low = 0;
+        int high = sourceMap.getEntryCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sourceMap.getKey(mid).compareTo(key) < 0) {
+                low = mid + 1;
             } else {
-                valueStartPos += 1;
+                high = mid;
             }
-            
-            // Break line after escaped new line
-            if (RBEPreferences.getNewLineNice()) {
-                value = value.replaceAll(
-                        "(\\\\r\\\\n|\\\\r|\\\\n)",
-                        "$1\\\\" + SYSTEM_LINE_SEP);
-            }
-            // Wrap lines
-            if (RBEPreferences.getWrapLines() && valueStartPos < lineLength) {
-                StringBuffer valueBuf = new StringBuffer(value);
-                while (valueBuf.length() + valueStartPos > lineLength
-                        || valueBuf.indexOf("\n") != -1) {
-                    int endPos = Math.min(
-                            valueBuf.length(), lineLength - valueStartPos);
-                    String line = valueBuf.substring(0, endPos);
-                    int breakPos = line.indexOf(SYSTEM_LINE_SEP);
-                    if (breakPos != -1) {
-                        endPos = breakPos + SYSTEM_LINE_SEP.length();
-                        saveValue(text, valueBuf.substring(0, endPos));
-                        //text.append(valueBuf.substring(0, endPos));
-                    } else {
-                        breakPos = line.lastIndexOf(' ');
-                        if (breakPos != -1) {
-                            endPos = breakPos + 1;
-                            saveValue(text, valueBuf.substring(0, endPos));
-                            //text.append(valueBuf.substring(0, endPos));
-                            text.append("\\");
-                            text.append(SYSTEM_LINE_SEP);
-                        }
-                    }
-                    valueBuf.delete(0, endPos);
-                    // Figure out starting position for next line
-                    if (!RBEPreferences.getWrapAlignEqualSigns()) {
-                        valueStartPos = RBEPreferences.getWrapIndentSpaces();
-                    }
+        }
+        return low;
+    }
 
-                    if (commented && valueStartPos > 0) {
-                        text.append("##");
-                    }
+    /**
+     * Whether a key group starts at a written entry, as laid out when
+     * generating its bundle.
+     * @param key key of the entry
+     * @param previousKey key of the previous written entry, or
+     *        <code>null</code> if none
+     * @param options formatting options
+     * @return <code>true</code> if a group starts
+     */
+    private static boolean isGroupStart(
+            String key, String previousKey, PropertiesOptions options) {
+        String group = getKeyGroup(key, options);
+        return group == null || previousKey == null
+                || !group.equals(getKeyGroup(previousKey, options));
+    }
 
-                    for (int i = 0; i < valueStartPos; i++) {
-                        text.append(' ');
-                    }
+    /**
+     * Gets the longest prefix of a key any key group it is aligned with
+     * can be.  Groups are made of the first levels of keys, or of whole
+     * keys having less levels, so that only separators found in keys
+     * bound them.
+     * @param key a bundle key
+     * @param options formatting options
+     * @return the key prefix, empty if keys are not grouped
+     */
+    private static String getGroupBound(
+            String key, PropertiesOptions options) {
+        if (!options.isGroupKeys()) {
+            return "";
+        }
+        String sep = options.getKeyGroupSeparator();
+        if (sep.length() != 1) {
+            // overlapping separators, any prefix may be a group
+            return key;
+        }
+        int end = -1;
+        for (int i = 0; i < options.getGroupLevelDepth(); i++) {
+            end = key.indexOf(sep, end + 1);
+            if (end == -1) {
+                return key;
+            }
+        }
+        return end == -1 ? key : key.substring(0, end);
+    }
+
+    /**
+     * Whether a bundle has a key starting with a prefix which is at least
+     * as long as a given length, other than the given keys.
+     * @param bundle a bundle
+     * @param prefix key prefix
+     * @param length key length
+     * @param excludedKeys keys not to look at
+     * @return <code>true</code> if such a key exists
+     */
+    private static boolean hasLongerKey(Bundle bundle, String prefix,
+            int length, Set<String> excludedKeys) {
+        for (String key : bundle.getKeys(prefix)) {
+            if (key.length() >= length && !excludedKeys.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether equal signs of grouped entries are located after the key
+     * starting their group, rather than after the longest key of their
+     * group.
+     * @param options formatting options
+     * @return <code>true</code> if located after the group start
+     */
+    private static boolean isStartAligned(PropertiesOptions options) {
+        return options.isGroupKeys() && (!options.isAlignEqualSigns()
+                || !options.isGroupAlignEqualSigns());
+    }
+
+    /**
+     * Gets the key of the written entry starting the group of another
+     * written entry.
+     * @param bundle the bundle of the entry
+     * @param key key of the entry, which group is not <code>null</code>
+     * @param options formatting options
+     * @return the group start key
+     */
+    private static String getGroupStartKey(
+            Bundle bundle, String key, PropertiesOptions options) {
+        String group = getKeyGroup(key, options);
+        String startKey = key;
+        String previousKey = getPreviousWrittenKey(bundle, key, options);
+        while (previousKey != null
+                && group.equals(getKeyGroup(previousKey, options))) {
+            startKey = previousKey;
+            previousKey = getPreviousWrittenKey(bundle, previousKey, options);
+        }
+        return startKey;
+    }
+
+    /**
+     * Whether the group of a mapped entry, when followed by other entries
+     * than the given one, starts with a key as long as when the source
+     * was generated.  Otherwise, equal signs of these entries move.
+     * @param bundle the bundle of the entry
+     * @param sourceMap the map of the generated source
+     * @param key key of the entry
+     * @param index index of the mapped entry
+     * @param options formatting options
+     * @return <code>true</code> if equal signs stay where they are
+     */
+    private static boolean isSameGroupStartLength(Bundle bundle,
+            PropertiesSourceMap sourceMap, String key, int index,
+            PropertiesOptions options) {
+        String group = getKeyGroup(key, options);
+        String nextKey = getNextWrittenKey(bundle, key, options);
+        if (group == null || nextKey == null
+                || !group.equals(getKeyGroup(nextKey, options))) {
+            return true;
+        }
+        int startIndex = index;
+        while (startIndex > 0 && group.equals(
+                getKeyGroup(sourceMap.getKey(startIndex - 1), options))) {
+            startIndex--;
+        }
+        return sourceMap.getKey(startIndex).length()
+                == getGroupStartKey(bundle, key, options).length();
+    }
+
+    /**
+     * Gets where the equal sign of a written entry is located, as laid out
+     * when generating its bundle.  When entries are aligned, it is read
+     * from the generated source when possible: from the entry itself, or
+     * from the mapped entries next to where it is generated if in the same
+     * key group.  Otherwise it is computed from bundle keys.
+     * @param bundle the bundle of the entry
+     * @param key key of the entry
+     * @param groupStart whether a key group starts at the entry
+     * @param source the source generated from the bundle
+     * @param sourceMap the map of the source
+     * @param index index of the mapped entry the entry is generated with
+     * @param followingKeys keys of mapped entries following written or
+     *        unwritten entries, which group may start elsewhere
+     * @param options formatting options
+     * @return equal sign position
+     */
+    private static int getEqualIndex(Bundle bundle, String key,
+            boolean groupStart, CharSequence source,
+            PropertiesSourceMap sourceMap, int index,
+            Set<String> followingKeys, PropertiesOptions options) {
+        if (isStartAligned(options)) {
+            if (groupStart) {
+                return key.length();
+            }
+            int keyIndex = sourceMap.indexOf(key);
+            if (keyIndex != -1 && !followingKeys.contains(key)) {
+                // padded keys tell where the equal sign is
+                int equalIndex = readEqualIndex(source,
+                        sourceMap.getEntryStart(keyIndex), key, options);
+                if (equalIndex > key.length()) {
+                    return equalIndex;
                 }
-                text.append(valueBuf);
-            } else {
-                saveValue(text, value);
-                //text.append(value);
             }
+            return getGroupStartKey(bundle, key, options).length();
+        }
+        if (!options.isAlignEqualSigns()) {
+            return key.length();
+        }
+        String group = "";
+        if (options.isGroupKeys()) {
+            group = getKeyGroup(key, options);
+            if (group == null) {
+                return key.length();
+            }
+        }
+        int to = Math.min(index, sourceMap.getEntryCount() - 1);
+        for (int i = Math.max(index - 1, 0); i <= to; i++) {
+            String mappedKey = sourceMap.getKey(i);
+            if (!options.isGroupKeys()
+                    || group.equals(getKeyGroup(mappedKey, options))) {
+                int equalIndex = readEqualIndex(source,
+                        sourceMap.getEntryStart(i), mappedKey, options);
+                if (equalIndex != -1) {
+                    return equalIndex;
+                }
+            }
+        }
+        int maxLength = -1;
+        for (String groupKey : bundle.getKeys(group)) {
+            maxLength = Math.max(maxLength, groupKey.length());
+        }
+        return maxLength;
+    }
+
+    /**
+     * Reads where the equal sign of a generated entry is located, from the
+     * padding following its key.
+     * @param source the generated source
+     * @param start where the entry first line starts
+     * @param key key of the entry
+     * @param options formatting options
+     * @return equal sign position, or -1 if it cannot be told
+     */
+    private static int readEqualIndex(CharSequence source, int start,
+            String key, PropertiesOptions options) {
+        String writtenKey = key;
+        if (options.isConvertUnicodeToEncoded()) {
+            writtenKey = convertUnicodeToEncoded(
+                    key, options.isConvertUnicodeToEncodedUpper());
+        }
+        if (writtenKey.length() != key.length()) {
+            // padding is based on the key length, not the written one
+            return -1;
+        }
+        int length = source.length();
+        int position = start;
+        if (position + 1 < length && source.charAt(position) == '#'
+                && source.charAt(position + 1) == '#') {
+            position += 2;
+        }
+        for (int i = 0; i < writtenKey.length(); i++) {
+            position++;
+            if (SPECIAL_KEY_SAVE_CHARS.indexOf(writtenKey.charAt(i)) != -1) {
+                position++;
+            }
+        }
+        int padding = 0;
+        while (position < length && source.charAt(position) == ' ') {
+            padding++;
+            position++;
         }
+        if (position == length || source.charAt(position) != '=') {
+            return -1;
+        }
+        if (options.isSpacesAroundEqualSigns()) {
+            if (padding == 0) {
+                return -1;
+            }
+            padding--;
+        }
+        return key.length() + padding;
     }
 
     /**
@@ -263,9 +1063,10 @@ public final class PropertiesGenerator {
      * @param key the key to add
      * @param equalIndex the equal sign position
      * @param commented is the key commented out
+     * @param options formatting options
      */
-    private static void appendKey(
-            StringBuffer text, String key, int equalIndex, boolean commented) {
+    private static void appendKey(StringBuilder text, String key,
+            int equalIndex, boolean commented, PropertiesOptions options) {
 
         if (commented) {
             text.append("##");
@@ -277,7 +1078,7 @@ public final class PropertiesGenerator {
         for (int i = 0; i < equalIndex - key.length(); i++) {
             text.append(' ');
         }
-        if (RBEPreferences.getSpacesAroundEqualSigns()) {
+        if (options.isSpacesAroundEqualSigns()) {
             text.append(" = ");
         } else {
             text.append("=");
@@ -285,23 +1086,21 @@ public final class PropertiesGenerator {
     }
     
     
-    private static void saveKey(StringBuffer buf, String str) {
-        saveText(buf, str, SPECIAL_KEY_SAVE_CHARS);
-    }
-    private static void saveValue(StringBuffer buf, String str) {
-        saveText(buf, str, SPECIAL_VALUE_SAVE_CHARS);
+    private static void saveKey(StringBuilder buf, String str) {
+        saveText(buf, str, 0, str.length(), SPECIAL_KEY_SAVE_CHARS);
     }
     
     /**
      * Saves some text in a given buffer after converting special characters.
      * @param buf the buffer to store the text into
      * @param str the value to save
+     * @param from index of the first character to save
+     * @param to index following the last character to save
      * @param escapeChars characters to escape
      */
-    private static void saveText(
-            StringBuffer buf, String str, String escapeChars) {
-        int len = str.length();
-        for(int x = 0; x < len; x++) {
+    private static void saveText(StringBuilder buf, CharSequence str,
+            int from, int to, String escapeChars) {
+        for(int x = from; x < to; x++) {
             char aChar = str.charAt(x);
             if (escapeChars.indexOf(aChar) != -1) {
                 buf.append('\\');
@@ -313,11 +1112,12 @@ public final class PropertiesGenerator {
     /**
      * Gets the group from a resource bundle key.
      * @param key the key to get a group from
+     * @param options formatting options
      * @return key group
      */
-    private static String getKeyGroup(String key) {
-        String sep = RBEPreferences.getKeyGroupSeparator();
-        int deepness = RBEPreferences.getGroupLevelDepth();
+    private static String getKeyGroup(String key, PropertiesOptions options) {
+        String sep = options.getKeyGroupSeparator();
+        int deepness = options.getGroupLevelDepth();
         int endIndex = 0;
         int levelFound = 0;
         
@@ -338,36 +1138,385 @@ public final class PropertiesGenerator {
     }
     
     /**
-     * Gets the position where the equal sign should be located for
-     * the given group.
-     * @param key resource bundle key
-     * @param group resource bundle key group
-     * @param bundle resource bundle
-     * @return position
-     */
-    private static int getEqualIndex(String key, String group, Bundle bundle) {
-        int equalIndex = -1;
-        boolean alignEquals = RBEPreferences.getAlignEqualSigns();
-        boolean groupKeys = RBEPreferences.getGroupKeys();
-        boolean groupAlignEquals = RBEPreferences.getGroupAlignEqualSigns();
-
-        // Exit now if we are not aligning equals
-        if (!alignEquals || groupKeys && !groupAlignEquals 
-                         || groupKeys && group == null) {
-            return key.length();
+     * Encodes and appends values to resource bundle content.  Escaping,
+     * new line conversion and unicode encoding are done in one pass over
+     * value characters, followed by the insertion of line breaks after
+     * escaped new lines (if needed), and by wrapping with special
+     * characters escaped.  Buffers are reused from one value to the next.
+     */
+    private static final class ValueEncoder {
+        private final PropertiesOptions options;
+        /** Escaped new line all new lines are converted to, if forced. */
+        private final String forcedLineSep;
+        /** Value being encoded. */
+        private StringBuilder value = new StringBuilder();
+        /** Value with line breaks inserted after escaped new lines. */
+        private StringBuilder brokenValue = new StringBuilder();
+
+        /**
+         * Constructor.
+         * @param options formatting options
+         */
+        ValueEncoder(PropertiesOptions options) {
+            super();
+            this.options = options;
+            this.forcedLineSep = options.isForceNewLineType()
+                    ? FORCED_LINE_SEP[options.getNewLineType()] : null;
         }
-        
-        // Get equal index
-        for (Iterator<String> iter = bundle.getKeys().iterator(); 
-                iter.hasNext();) {
-            String iterKey = iter.next();
-            if (!groupKeys || groupAlignEquals && iterKey.startsWith(group)) {
-                int index = iterKey.length();
-                if (index > equalIndex) {
-                    equalIndex = index;
+
+        /**
+         * Appends a value to resource bundle content.
+         * @param text the resource bundle content so far
+         * @param rawValue the value to add, may be <code>null</code>
+         * @param equalIndex the equal sign position
+         * @param commented is the value commented
+         */
+        void append(StringBuilder text, String rawValue,
+                int equalIndex, boolean commented) {
+            encode(rawValue);
+            if (options.isNewLineNice()) {
+                breakAfterNewLines();
+            }
+            int lineLength = options.getWrapCharLimit() - 1;
+            int valueStartPos = equalIndex;
+            if (options.isSpacesAroundEqualSigns()) {
+                valueStartPos += 3;
+            } else {
+                valueStartPos += 1;
+            }
+            if (options.isWrapLines() && valueStartPos < lineLength) {
+                wrap(text, valueStartPos, lineLength, commented);
+            } else {
+                saveText(text, value, 0, value.length(),
+                        SPECIAL_VALUE_SAVE_CHARS);
+            }
+        }
+
+        /**
+         * Escapes backslashes and new lines, and encodes unicodes, of a
+         * value.
+         * @param rawValue the value to encode, may be <code>null</code>
+         */
+        private void encode(String rawValue) {
+            value.setLength(0);
+            if (rawValue == null) {
+                return;
+            }
+            boolean convertUnicode = options.isConvertUnicodeToEncoded();
+            boolean upperCase = options.isConvertUnicodeToEncodedUpper();
+            int len = rawValue.length();
+            // Escape potential leading spaces.
+            if (len > 0 && rawValue.charAt(0) == ' ') {
+                value.append('\\');
+            }
+            for (int i = 0; i < len; i++) {
+                char aChar = rawValue.charAt(i);
+                if (aChar == '\r' || aChar == '\n') {
+                    if (forcedLineSep == null) {
+                        value.append('\\');
+                        value.append(aChar == '\r' ? 'r' : 'n');
+                    } else {
+                        if (aChar == '\r' && i + 1 < len
+                                && rawValue.charAt(i + 1) == '\n') {
+                            i++;
+                        }
+                        value.append(forcedLineSep);
+                    }
+                } else if (!convertUnicode) {
+                    value.append(aChar);
+                } else if (aChar == '\\') {
+                    value.append("\\\\");
+                } else {
+                    UnicodeCodec.appendEncoded(value, aChar, upperCase);
+                }
+            }
+        }
+
+        /**
+         * Inserts a line break after each escaped new line of the value.
+         */
+        private void breakAfterNewLines() {
+            int len = value.length();
+            StringBuilder out = brokenValue;
+            out.setLength(0);
+            int i = 0;
+            while (i < len) {
+                char aChar = value.charAt(i);
+                if (aChar == '\\' && i + 1 < len
+                        && (value.charAt(i + 1) == 'r'
+                                || value.charAt(i + 1) == 'n')) {
+                    int end = i + 2;
+                    if (value.charAt(i + 1) == 'r' && i + 3 < len
+                            && value.charAt(i + 2) == '\\'
+                            && value.charAt(i + 3) == 'n') {
+                        end = i + 4;
+                    }
+                    out.append(value, i, end);
+                    out.append('\\');
+                    out.append(SYSTEM_LINE_SEP);
+                    i = end;
+                } else {
+                    out.append(aChar);
+                    i++;
+                }
+            }
+            brokenValue = value;
+            value = out;
+        }
+
+        /**
+         * Appends the value wrapped on several lines.  Lines are broken
+         * after line breaks, or else after their last space.
+         * @param text the resource bundle content so far
+         * @param valueStartPos where the value starts on its first line
+         * @param lineLength maximum line length
+         * @param commented is the value commented
+         */
+        private void wrap(StringBuilder text, int valueStartPos,
+                int lineLength, boolean commented) {
+            int len = value.length();
+            int start = 0;
+            int nextNewLine = value.indexOf("\n");
+            int nextLineSep = value.indexOf(SYSTEM_LINE_SEP);
+            while (len - start + valueStartPos > lineLength
+                    || nextNewLine != -1) {
+                int endPos = Math.min(
+                        len - start, lineLength - valueStartPos);
+                if (endPos <= 0) {
+                    // indentation leaves no room for text
+                    break;
+                }
+                int lineEnd = start + endPos;
+                if (nextLineSep != -1 && nextLineSep
+                        + SYSTEM_LINE_SEP.length() <= lineEnd) {
+                    endPos = nextLineSep - start + SYSTEM_LINE_SEP.length();
+                    saveText(text, value, start, start + endPos,
+                            SPECIAL_VALUE_SAVE_CHARS);
+                } else {
+                    int breakPos = lineEnd - 1;
+                    while (breakPos >= start && value.charAt(breakPos) != ' ') {
+                        breakPos--;
+                    }
+                    if (breakPos >= start) {
+                        endPos = breakPos - start + 1;
+                        saveText(text, value, start, start + endPos,
+                                SPECIAL_VALUE_SAVE_CHARS);
+                        text.append("\\");
+                        text.append(SYSTEM_LINE_SEP);
+                    }
+                }
+                start += endPos;
+                if (nextNewLine != -1 && nextNewLine < start) {
+                    nextNewLine = value.indexOf("\n", start);
+                }
+                if (nextLineSep != -1 && nextLineSep < start) {
+                    nextLineSep = value.indexOf(SYSTEM_LINE_SEP, start);
+                }
+                // Figure out starting position for next line
+                if (!options.isWrapAlignEqualSigns()) {
+                    valueStartPos = options.getWrapIndentSpaces();
+                }
+
+                if (commented && valueStartPos > 0) {
+                    text.append("##");
+                }
+
+                for (int i = 0; i < valueStartPos; i++) {
+                    text.append(' ');
+                }
+            }
+            text.append(value, start, len);
+        }
+    }
+
+    /**
+     * Layout of the entries of a bundle, computed in a single pass over
+     * sorted keys before anything gets written: which entries are written,
+     * where key groups start and where equal signs are located.
+     */
+    private static final class Layout {
+        /** Bundle keys, sorted. */
+        private final String[] keys;
+        /** Bundle entries, matching keys. */
+        private final BundleEntry[] entries;
+        /** Whether a key group starts at each entry. */
+        private final boolean[] groupStarts;
+        /** Equal sign positions, -1 for entries not written. */
+        private final int[] equalIndexes;
+        /** Key lengths as a range maximum tree, built on demand. */
+        private int[] lengthTree;
+
+        /**
+         * Constructor.
+         * @param bundle bundle to lay out
+         * @param options formatting options
+         */
+        Layout(Bundle bundle, PropertiesOptions options) {
+            super();
+            Set<String> keySet = bundle.getKeys();
+            keys = keySet.toArray(new String[keySet.size()]);
+            entries = new BundleEntry[keys.length];
+            groupStarts = new boolean[keys.length];
+            equalIndexes = new int[keys.length];
+
+            boolean alignEquals = options.isAlignEqualSigns();
+            boolean groupKeys = options.isGroupKeys();
+            boolean groupAlignEquals = options.isGroupAlignEqualSigns();
+            String group = null;
+            int equalIndex = -1;
+            for (int i = 0; i < keys.length; i++) {
+                String key = keys[i];
+                entries[i] = bundle.getEntry(key);
+                if (!isWritten(entries[i], options)) {
+                    equalIndexes[i] = -1;
+                    continue;
+                }
+                if (groupKeys) {
+                    String newGroup = getKeyGroup(key, options);
+                    if (newGroup == null || !newGroup.equals(group)) {
+                        group = newGroup;
+                        groupStarts[i] = true;
+                        if (!alignEquals || !groupAlignEquals
+                                || group == null) {
+                            equalIndex = key.length();
+                        } else {
+                            equalIndex = getMaxLength(group);
+                        }
+                    }
+                } else if (!alignEquals) {
+                    equalIndex = key.length();
+                } else if (equalIndex == -1) {
+                    equalIndex = getMaxLength(0, keys.length);
+                }
+                equalIndexes[i] = equalIndex;
+            }
+        }
+
+        /**
+         * Gets the number of entries.
+         * @return entry count
+         */
+        int size() {
+            return entries.length;
+        }
+        /**
+         * Gets an entry.
+         * @param index entry index
+         * @return bundle entry
+         */
+        BundleEntry getEntry(int index) {
+            return entries[index];
+        }
+        /**
+         * Whether a key group starts at an entry.
+         * @param index entry index
+         * @return <code>true</code> if a group starts
+         */
+        boolean isGroupStart(int index) {
+            return groupStarts[index];
+        }
+        /**
+         * Gets where the equal sign of an entry is located.
+         * @param index entry index
+         * @return position, or -1 if the entry is not written
+         */
+        int getEqualIndex(int index) {
+            return equalIndexes[index];
+        }
+
+        /**
+         * Gets the length of the longest key starting with a prefix.  Such
+         * keys are next to each other once sorted.
+         * @param prefix key prefix, which at least one key starts with
+         * @return key length
+         */
+        private int getMaxLength(String prefix) {
+            int from = Arrays.binarySearch(keys, prefix);
+            if (from < 0) {
+                from = -from - 1;
+            }
+            int low = from;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].startsWith(prefix)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return getMaxLength(from, low);
+        }
+
+        /**
+         * Gets the length of the longest key in a range of keys.
+         * @param from index of the first key
+         * @param to index following the last key
+         * @return key length
+         */
+        private int getMaxLength(int from, int to) {
+            int count = keys.length;
+            if (lengthTree == null) {
+                lengthTree = new int[count * 2];
+                for (int i = 0; i < count; i++) {
+                    lengthTree[count + i] = keys[i].length();
+                }
+                for (int i = count - 1; i > 0; i--) {
+                    lengthTree[i] = Math.max(
+                            lengthTree[2 * i], lengthTree[2 * i + 1]);
                 }
             }
-        }        
-        return equalIndex;
+            int max = -1;
+            for (int low = from + count, high = to + count; low < high;
+                    low >>= 1, high >>= 1) {
+                if ((low & 1) == 1) {
+                    max = Math.max(max, lengthTree[low++]);
+                }
+                if ((high & 1) == 1) {
+                    max = Math.max(max, lengthTree[--high]);
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Replacement of a source range by generated text.
+     */
+    public static final class Replacement {
+        private final int offset;
+        private final int length;
+        private final String text;
+
+        private Replacement(int offset, int length, String text) {
+            super();
+            this.offset = offset;
+            this.length = length;
+            this.text = text;
+        }
+
+        /**
+         * Gets where the replaced range starts in the source.
+         * @return character position
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Gets the length of the replaced range.
+         * @return number of replaced characters
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Gets the text replacing the range.
+         * @return replacement text
+         */
+        public String getText() {
+            return text;
+        }
     }
 }
@@ -0,0 +1,668 @@
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.jface.preference.PreferenceStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+
+/**
+ * Checks that generating bundles gives the same output as the generator
+ * it replaced, that keeping the layout of their source leaves untouched
+ * entries as they are, and that patching generated sources gives the same
+ * output as generating them again.
+ */
+public class PropertiesGeneratorTest {
+
+    private static final String SOURCE = "# header\n\n"
+            + "# first comment\n"
+            + "a.first=1\n"
+            + "\n"
+            + "b.second   :   two\\\n"
+            + "      lines\n"
+            + "##b.third = 3\n"
+            + "# last comment\n"
+            + "c.last = end";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String[] HEAD_COMMENTS = {
+        null, "", "# header\n", "# header\n\n",
+        PropertiesGenerator.GENERATED_BY + "\n# header\n",
+    };
+    private static final String[] KEY_PARTS = {
+        "a", "b", "key", "group", "long_key_part", "k:1", "k=2", "k 3", "#k",
+        "!k", "\u00e9t\u00e9", "\u4e2d", "t\tab",
+    };
+    private static final String[] VALUE_FRAGMENTS = {
+        "value", " ", " ", "  ", "word ", "a longer chunk of text ",
+        "unbreakablechunkofcharactersthatislongerthanalineshouldbe",
+        "\\", "\\n", "\n", "\r", "\r\n", "\t", "\f", "=", ":", "#", "!",
+        "\u00e9", "\u4e2d\u6587", "\u0001", "\u007f", "\u2028",
+    };
+
+    @Test
+    public void testUnchanged() {
+        PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+        Bundle bundle = PropertiesParser.parse(SOURCE, sourceMap);
+        Assert.assertEquals(SOURCE, PropertiesGenerator.generate(bundle,
+                SOURCE, sourceMap, RBEPreferences.getPropertiesOptions()));
+    }
+
+    @Test
+    public void testModified() {
+        PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+        BundleGroup group = new BundleGroup();
+        group.addBundle(Locale.ENGLISH,
+                PropertiesParser.parse(SOURCE, sourceMap));
+        group.addBundleEntry(Locale.ENGLISH, new BundleEntry(
+                "b.second", "changed", null));
+        group.addBundleEntry(Locale.ENGLISH, new BundleEntry(
+                "a.added", "new", null));
+        group.removeKey("b.third");
+        String text = PropertiesGenerator.generate(
+                group.getBundle(Locale.ENGLISH), SOURCE, sourceMap,
+                RBEPreferences.getPropertiesOptions());
+        String lineSep = System.getProperty("line.separator");
+        Assert.assertEquals("# header\n\n"
+                + "a.added = new" + lineSep
+                + "# first comment\n"
+                + "a.first=1\n"
+                + "\n"
+                + "b.second = changed" + lineSep
+                + "# last comment\n"
+                + "c.last = end", text);
+    }
+
+    @Test
+    public void testSameAsModel() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            String text = BundleFixtures.generateLayout(random);
+            PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+            BundleGroup group = new BundleGroup();
+            group.addBundle(Locale.ENGLISH,
+                    PropertiesParser.parse(text, sourceMap));
+            for (int j = 0; j < 10; j++) {
+                String key = "key" + random.nextInt(20);
+                switch (random.nextInt(5)) {
+                case 0:
+                    group.removeKey(key);
+                    break;
+                case 1:
+                    group.commentKey(key);
+                    break;
+                case 2:
+                    group.renameKey(key, "key" + random.nextInt(20) + "r");
+                    break;
+                default:
+                    group.addBundleEntry(Locale.ENGLISH, new BundleEntry(
+                            key, "value " + j, random.nextBoolean()
+                                    ? "# new comment\n" : null));
+                }
+                Bundle bundle = group.getBundle(Locale.ENGLISH);
+                String newText = PropertiesGenerator.generate(bundle, text,
+                        sourceMap, RBEPreferences.getPropertiesOptions());
+                BundleFixtures.assertSameValues(newText, bundle,
+                        PropertiesParser.parse(newText));
+
+                // keep the source map up to date, as source editors do
+                int prefix = 0;
+                int maxPrefix = Math.min(text.length(), newText.length());
+                while (prefix < maxPrefix
+                        && text.charAt(prefix) == newText.charAt(prefix)) {
+                    prefix++;
+                }
+                if (sourceMap.reparse(newText, prefix, 0) == null) {
+                    PropertiesParser.parse(newText, sourceMap);
+                }
+                text = newText;
+            }
+        }
+    }
+
+    @Test
+    public void testReplacementsSameAsGenerate() {
+        Random random = new Random(7);
+        PropertiesOptions options = RBEPreferences.getPropertiesOptions();
+        int replaced = 0;
+        for (int i = 0; i < 200; i++) {
+            String text = BundleFixtures.generateLayout(random);
+            PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+            BundleGroup group = new BundleGroup();
+            group.addBundle(Locale.ENGLISH,
+                    PropertiesParser.parse(text, sourceMap));
+            for (int j = 0; j < 10; j++) {
+                String key = "key" + random.nextInt(20);
+                Set<String> keys = new HashSet<>();
+                keys.add(key);
+                switch (random.nextInt(4)) {
+                case 0:
+                    group.removeKey(key);
+                    break;
+                case 1:
+                    group.commentKey(key);
+                    break;
+                default:
+                    group.addBundleEntry(Locale.ENGLISH, new BundleEntry(
+                            key, "value " + j, random.nextBoolean()
+                                    ? "# new comment\n" : null));
+                }
+                Bundle bundle = group.getBundle(Locale.ENGLISH);
+                String newText = PropertiesGenerator.generate(
+                        bundle, text, sourceMap, options);
+                List<PropertiesGenerator.Replacement> replacements =
+                        PropertiesGenerator.generateReplacements(
+                                bundle, text, sourceMap, keys, options);
+                if (replacements == null) {
+                    PropertiesParser.parse(newText, sourceMap);
+                    text = newText;
+                    continue;
+                }
+                StringBuilder patched = new StringBuilder(text);
+                int prefix = patched.length();
+                for (PropertiesGenerator.Replacement replacement
+                        : replacements) {
+                    patched.replace(replacement.getOffset(),
+                            replacement.getOffset() + replacement.getLength(),
+                            replacement.getText());
+                    prefix = Math.min(prefix, replacement.getOffset());
+                    replaced++;
+                }
+                Assert.assertEquals(text, newText, patched.toString());
+                if (sourceMap.reparse(newText, prefix, 0) == null) {
+                    PropertiesParser.parse(newText, sourceMap);
+                }
+                text = newText;
+            }
+        }
+        Assert.assertTrue(replaced > 0);
+    }
+
+    @Test
+    public void testStreamedSameAsGenerated() throws IOException {
+        Bundle bundle = new Bundle();
+        bundle.setComment("# header\n");
+        for (int i = 0; i < 2000; i++) {
+            bundle.addEntry(new BundleEntry("key." + i,
+                    "caf\u00e9 " + i + "\nline", i % 10 == 0
+                            ? "# comment " + i + "\n" : null));
+        }
+        PropertiesOptions options = RBEPreferences.getPropertiesOptions();
+        String text = PropertiesGenerator.generate(bundle, options);
+        for (String charsetName : new String[] {"UTF-8", "ISO-8859-1"}) {
+            Charset charset = Charset.forName(charsetName);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            PropertiesGenerator.generate(bundle, options,
+                    Channels.newChannel(bytes), charset);
+            Assert.assertArrayEquals(charsetName,
+                    text.getBytes(charset), bytes.toByteArray());
+        }
+    }
+
+    @Test
+    public void testSameAsPreviousGenerator() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < 3000; i++) {
+            PropertiesOptions options = generateOptions(random);
+
+            Bundle bundle = generateBundle(random);
+            String expected = generateAsBefore(bundle, options);
+            Assert.assertEquals(expected,
+                    PropertiesGenerator.generate(bundle, options));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            PropertiesGenerator.generate(bundle, options,
+                    Channels.newChannel(bytes), UTF_8);
+            Assert.assertArrayEquals(expected,
+                    expected.getBytes(UTF_8), bytes.toByteArray());
+        }
+    }
+
+    @Test
+    public void testRegeneratedSameAsGenerate() {
+        Random random = new Random(11);
+        int replaced = 0;
+        for (int i = 0; i < 1000; i++) {
+            PropertiesOptions options = generateOptions(random);
+            Bundle bundle = generateBundle(random);
+            String text = PropertiesGenerator.generate(bundle, options);
+            PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+            PropertiesParser.parse(text, sourceMap, options);
+            for (int j = 0; j < 10 && PropertiesGenerator.isGeneratedLayout(
+                    bundle, text, sourceMap, options); j++) {
+                Set<String> keys = new HashSet<>();
+                int changes = 1 + random.nextInt(3);
+                for (int k = 0; k < changes; k++) {
+                    keys.add(modifyBundle(bundle, random));
+                }
+                String newText = PropertiesGenerator.generate(bundle, options);
+                List<PropertiesGenerator.Replacement> replacements =
+                        PropertiesGenerator.regenerateReplacements(
+                                bundle, text, sourceMap, keys, options);
+                if (replacements == null) {
+                    PropertiesParser.parse(newText, sourceMap, options);
+                    text = newText;
+                    continue;
+                }
+                StringBuilder patched = new StringBuilder(text);
+                int prefix = text.length();
+                int suffix = text.length();
+                for (PropertiesGenerator.Replacement replacement
+                        : replacements) {
+                    int offset = replacement.getOffset();
+                    int end = offset + replacement.getLength();
+                    patched.replace(offset, end, replacement.getText());
+                    prefix = Math.min(prefix, offset);
+                    suffix = Math.min(suffix, text.length() - end);
+                }
+                Assert.assertEquals(text, newText, patched.toString());
+                if (!replacements.isEmpty() && sourceMap.reparse(
+                        newText, prefix, suffix) == null) {
+                    PropertiesParser.parse(newText, sourceMap, options);
+                }
+                text = newText;
+                replaced++;
+            }
+        }
+        Assert.assertTrue(replaced > 0);
+    }
+
+    private static PropertiesOptions generateOptions(Random random) {
+        PreferenceStore prefs = new PreferenceStore();
+        RBEPreferences.initializeDefaults(prefs);
+        prefs.setValue(RBEPreferences.CONVERT_UNICODE_TO_ENCODED,
+                random.nextBoolean());
+        prefs.setValue(RBEPreferences.CONVERT_UNICODE_TO_ENCODED_UPPER,
+                random.nextBoolean());
+        prefs.setValue(RBEPreferences.SHOW_GENERATOR,
+                random.nextBoolean());
+        prefs.setValue(RBEPreferences.KEY_GROUP_SEPARATOR,
+                random.nextBoolean() ? "." : "_");
+        prefs.setValue(RBEPreferences.ALIGN_EQUAL_SIGNS,
+                random.nextBoolean());
+        prefs.setValue(RBEPreferences.SPACES_AROUND_EQUAL_SIGNS,
+                random.nextBoolean());
+        prefs.setValue(RBEPreferences.GROUP_KEYS, random.nextBoolean());
+        prefs.setValue(RBEPreferences.GROUP_LEVEL_DEPTH,
+                1 + random.nextInt(3));
+        prefs.setValue(RBEPreferences.GROUP_LINE_BREAKS,
+                random.nextInt(3));
+        prefs.setValue(RBEPreferences.GROUP_ALIGN_EQUAL_SIGNS,
+                random.nextBoolean());
+        prefs.setValue(RBEPreferences.WRAP_LINES, random.nextBoolean());
+        // keys and indentation leave room for values on wrapped lines
+        prefs.setValue(RBEPreferences.WRAP_CHAR_LIMIT,
+                40 + random.nextInt(60));
+        prefs.setValue(RBEPreferences.WRAP_ALIGN_EQUAL_SIGNS,
+                random.nextBoolean());
+        prefs.setValue(RBEPreferences.WRAP_INDENT_SPACES,
+                random.nextInt(12));
+        prefs.setValue(RBEPreferences.FORCE_NEW_LINE_TYPE,
+                random.nextBoolean());
+        prefs.setValue(RBEPreferences.NEW_LINE_TYPE, random.nextInt(3));
+        prefs.setValue(RBEPreferences.NEW_LINE_NICE,
+                random.nextBoolean());
+        prefs.setValue(RBEPreferences.KEEP_EMPTY_FIELDS,
+                random.nextBoolean());
+        return new PropertiesOptions(prefs);
+    }
+
+    private static Bundle generateBundle(Random random) {
+        Bundle bundle = new Bundle();
+        bundle.setComment(HEAD_COMMENTS[random.nextInt(HEAD_COMMENTS.length)]);
+        int count = random.nextInt(30);
+        for (int i = 0; i < count; i++) {
+            String key = generateKey(random);
+            String value = generateValue(random);
+            bundle.addEntry(new BundleEntry(key, value,
+                    random.nextInt(4) == 0 ? "# comment " + i + "\n" : null,
+                    random.nextInt(5) == 0));
+        }
+        return bundle;
+    }
+
+    private static String generateKey(Random random) {
+        StringBuilder key = new StringBuilder();
+        int parts = 1 + random.nextInt(4);
+        for (int j = 0; j < parts; j++) {
+            if (j > 0) {
+                key.append(random.nextBoolean() ? '.' : '_');
+            }
+            key.append(KEY_PARTS[random.nextInt(KEY_PARTS.length)]);
+        }
+        return key.toString();
+    }
+
+    private static String generateValue(Random random) {
+        StringBuilder value = new StringBuilder();
+        int fragments = random.nextInt(4) == 0 ? 0 : random.nextInt(40);
+        for (int j = 0; j < fragments; j++) {
+            int fragment = random.nextInt(VALUE_FRAGMENTS.length);
+            value.append(VALUE_FRAGMENTS[fragment]);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Adds, modifies or removes a random entry.
+     * @return key of the entry
+     */
+    private static String modifyBundle(Bundle bundle, Random random) {
+        String[] keys = bundle.getKeys().toArray(new String[0]);
+        int change = random.nextInt(5);
+        if (keys.length == 0 || change == 0) {
+            String key = generateKey(random);
+            bundle.addEntry(new BundleEntry(
+                    key, generateValue(random), null));
+            return key;
+        }
+        BundleEntry entry = bundle.getEntry(
+                keys[random.nextInt(keys.length)]);
+        switch (change) {
+        case 1:
+            bundle.removeEntry(entry);
+            break;
+        case 2:
+            bundle.addEntry(new BundleEntry(entry.getKey(), entry.getValue(),
+                    entry.getComment(), !entry.isCommented()));
+            break;
+        case 3:
+            bundle.addEntry(new BundleEntry(entry.getKey(), entry.getValue(),
+                    random.nextBoolean() ? "# changed\n" : null,
+                    entry.isCommented()));
+            break;
+        default:
+            bundle.addEntry(new BundleEntry(entry.getKey(),
+                    generateValue(random), entry.getComment(),
+                    entry.isCommented()));
+        }
+        return entry.getKey();
+    }
+
+
+    //--- Generator, as it was before being laid out and single pass --------
+    // Preferences are read from the given options instead of RBEPreferences.
+
+    private static final String SPECIAL_VALUE_SAVE_CHARS = "\t\f";
+    private static final String SPECIAL_KEY_SAVE_CHARS = "=\t\f#!: ";
+    private static final String SYSTEM_LINE_SEP =
+            System.getProperty("line.separator");
+    private static final String[] FORCED_LINE_SEP = new String[3];
+    static {
+        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_UNIX] = "\\\\n";
+        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_WIN] = "\\\\r\\\\n";
+        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_MAC] = "\\\\r";
+    }
+    private static final char[] HEX_DIGITS = {
+        '0','1','2','3','4','5','6','7','8','9','A','B','C','D','E','F'
+    };
+
+    private static String generateAsBefore(
+            Bundle bundle, PropertiesOptions options) {
+        String lineBreak = SYSTEM_LINE_SEP;
+        int numOfLineBreaks = options.getGroupLineBreaks();
+        StringBuffer text = new StringBuffer();
+
+        // Header comment
+        String headComment = bundle.getComment();
+        if (headComment != null && headComment.length() > 0) {
+            if (options.isShowGenerator()
+                    && !headComment.startsWith(
+                            PropertiesGenerator.GENERATED_BY)) {
+                text.append(PropertiesGenerator.GENERATED_BY);
+                text.append(SYSTEM_LINE_SEP);
+            }
+            text.append(headComment);
+        }
+
+        // Format
+        String group = null;
+        int equalIndex = -1;
+        for (Iterator<String> iter = bundle.getKeys().iterator();
+                iter.hasNext();) {
+            BundleEntry bundleEntry = bundle.getEntry(iter.next());
+            String key = bundleEntry.getKey();
+            String value = bundleEntry.getValue();
+            String comment = bundleEntry.getComment();
+
+            if (value != null){
+                // escape backslashes
+                if (options.isConvertUnicodeToEncoded()) {
+                    value = value.replaceAll("\\\\", "\\\\\\\\");
+                }
+
+                // handle new lines in value
+                if (options.isForceNewLineType()) {
+                    value = value.replaceAll(
+                            "\r\n|\r|\n", FORCED_LINE_SEP[
+                                    options.getNewLineType()]);
+                } else {
+                    value = value.replaceAll("\r", "\\\\r");
+                    value = value.replaceAll("\n", "\\\\n");
+                }
+            } else {
+                value = "";
+            }
+
+            if (options.isKeepEmptyFields() || value.length() > 0) {
+                // handle group equal align and line break options
+                if (options.isGroupKeys()) {
+                    String newGroup = getKeyGroup(key, options);
+                    if (newGroup == null || !newGroup.equals(group)) {
+                        group = newGroup;
+                        equalIndex = getEqualIndex(key, group, bundle, options);
+                        for (int i = 0; i < numOfLineBreaks; i++) {
+                            text.append(lineBreak);
+                        }
+                    }
+                } else {
+                    equalIndex = getEqualIndex(key, null, bundle, options);
+                }
+
+                // Build line
+                if (options.isConvertUnicodeToEncoded()) {
+                    key = convertUnicodeToEncoded(key, options);
+                    value = convertUnicodeToEncoded(value, options);
+                }
+                if (comment != null && comment.length() > 0) {
+                    text.append(comment);
+                }
+                appendKey(text, key, equalIndex, bundleEntry.isCommented(),
+                        options);
+                appendValue(text, value, equalIndex,
+                        bundleEntry.isCommented(), options);
+                text.append(lineBreak);
+            }
+        }
+        return text.toString();
+    }
+
+    private static String convertUnicodeToEncoded(
+            String str, PropertiesOptions options) {
+        int len = str.length();
+        StringBuffer outBuffer = new StringBuffer(len * 2);
+
+        for (int x = 0; x < len; x++) {
+            char aChar = str.charAt(x);
+            if ((aChar < 0x0020) || (aChar > 0x007e)) {
+                outBuffer.append('\\');
+                outBuffer.append('u');
+                outBuffer.append(toHex((aChar >> 12) & 0xF, options));
+                outBuffer.append(toHex((aChar >> 8) & 0xF, options));
+                outBuffer.append(toHex((aChar >> 4) & 0xF, options));
+                outBuffer.append(toHex(aChar & 0xF, options));
+            } else {
+                outBuffer.append(aChar);
+            }
+        }
+        return outBuffer.toString();
+    }
+
+    private static char toHex(int nibble, PropertiesOptions options) {
+        char hexChar = HEX_DIGITS[(nibble & 0xF)];
+        if (!options.isConvertUnicodeToEncodedUpper()) {
+            return Character.toLowerCase(hexChar);
+        }
+        return hexChar;
+    }
+
+    private static void appendValue(StringBuffer text, String value,
+            int equalIndex, boolean commented, PropertiesOptions options) {
+        if (value != null) {
+            // Escape potential leading spaces.
+            if (value.startsWith(" ")) {
+                value = "\\" + value;
+            }
+            int lineLength = options.getWrapCharLimit() - 1;
+            int valueStartPos = equalIndex;
+            if (options.isSpacesAroundEqualSigns()) {
+                valueStartPos += 3;
+            } else {
+                valueStartPos += 1;
+            }
+
+            // Break line after escaped new line
+            if (options.isNewLineNice()) {
+                value = value.replaceAll(
+                        "(\\\\r\\\\n|\\\\r|\\\\n)",
+                        "$1\\\\" + SYSTEM_LINE_SEP);
+            }
+            // Wrap lines
+            if (options.isWrapLines() && valueStartPos < lineLength) {
+                StringBuffer valueBuf = new StringBuffer(value);
+                while (valueBuf.length() + valueStartPos > lineLength
+                        || valueBuf.indexOf("\n") != -1) {
+                    int endPos = Math.min(
+                            valueBuf.length(), lineLength - valueStartPos);
+                    String line = valueBuf.substring(0, endPos);
+                    int breakPos = line.indexOf(SYSTEM_LINE_SEP);
+                    if (breakPos != -1) {
+                        endPos = breakPos + SYSTEM_LINE_SEP.length();
+                        saveValue(text, valueBuf.substring(0, endPos));
+                    } else {
+                        breakPos = line.lastIndexOf(' ');
+                        if (breakPos != -1) {
+                            endPos = breakPos + 1;
+                            saveValue(text, valueBuf.substring(0, endPos));
+                            text.append("\\");
+                            text.append(SYSTEM_LINE_SEP);
+                        }
+                    }
+                    valueBuf.delete(0, endPos);
+                    // Figure out starting position for next line
+                    if (!options.isWrapAlignEqualSigns()) {
+                        valueStartPos = options.getWrapIndentSpaces();
+                    }
+
+                    if (commented && valueStartPos > 0) {
+                        text.append("##");
+                    }
+
+                    for (int i = 0; i < valueStartPos; i++) {
+                        text.append(' ');
+                    }
+                }
+                text.append(valueBuf);
+            } else {
+                saveValue(text, value);
+            }
+        }
+    }
+
+    private static void appendKey(StringBuffer text, String key,
+            int equalIndex, boolean commented, PropertiesOptions options) {
+
+        if (commented) {
+            text.append("##");
+        }
+
+        // Escape and persist the rest
+        saveKey(text, key);
+        for (int i = 0; i < equalIndex - key.length(); i++) {
+            text.append(' ');
+        }
+        if (options.isSpacesAroundEqualSigns()) {
+            text.append(" = ");
+        } else {
+            text.append("=");
+        }
+    }
+
+    private static void saveKey(StringBuffer buf, String str) {
+        saveText(buf, str, SPECIAL_KEY_SAVE_CHARS);
+    }
+    private static void saveValue(StringBuffer buf, String str) {
+        saveText(buf, str, SPECIAL_VALUE_SAVE_CHARS);
+    }
+
+    private static void saveText(
+            StringBuffer buf, String str, String escapeChars) {
+        int len = str.length();
+        for(int x = 0; x < len; x++) {
+            char aChar = str.charAt(x);
+            if (escapeChars.indexOf(aChar) != -1) {
+                buf.append('\\');
+            }
+            buf.append(aChar);
+        }
+    }
+
+    private static String getKeyGroup(String key, PropertiesOptions options) {
+        String sep = options.getKeyGroupSeparator();
+        int deepness = options.getGroupLevelDepth();
+        int endIndex = 0;
+        int levelFound = 0;
+
+        for (int i = 0; i < deepness; i++) {
+            int sepIndex = key.indexOf(sep, endIndex);
+            if (sepIndex != -1) {
+                endIndex = sepIndex + 1;
+                levelFound++;
+            }
+        }
+        if (levelFound != 0) {
+            if (levelFound < deepness) {
+                return key;
+            }
+            return key.substring(0, endIndex - 1);
+        }
+        return null;
+    }
+
+    private static int getEqualIndex(String key, String group, Bundle bundle,
+            PropertiesOptions options) {
+        int equalIndex = -1;
+        boolean alignEquals = options.isAlignEqualSigns();
+        boolean groupKeys = options.isGroupKeys();
+        boolean groupAlignEquals = options.isGroupAlignEqualSigns();
+
+        // Exit now if we are not aligning equals
+        if (!alignEquals || groupKeys && !groupAlignEquals
+                         || groupKeys && group == null) {
+            return key.length();
+        }
+
+        // Get equal index
+        for (Iterator<String> iter = bundle.getKeys().iterator();
+                iter.hasNext();) {
+            String iterKey = iter.next();
+            if (!groupKeys || groupAlignEquals && iterKey.startsWith(group)) {
+                int index = iterKey.length();
+                if (index > equalIndex) {
+                    equalIndex = index;
+                }
+            }
+        }
+        return equalIndex;
+    }
+}
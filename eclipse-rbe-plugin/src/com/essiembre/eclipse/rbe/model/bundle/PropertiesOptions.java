@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import org.eclipse.jface.preference.IPreferenceStore;
+
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+
+/**
+ * Immutable snapshot of the preferences used to parse and generate
+ * properties files.  A snapshot is taken once per parse or generation,
+ * instead of looking preferences up for every entry.
+ * @author Pascal Essiembre
+ * @see RBEPreferences#getPropertiesOptions()
+ */
+public final class PropertiesOptions {
+
+    private final boolean convertEncodedToUnicode;
+    private final boolean convertUnicodeToEncoded;
+    private final boolean convertUnicodeToEncodedUpper;
+    private final boolean showGenerator;
+    private final String keyGroupSeparator;
+    private final boolean alignEqualSigns;
+    private final boolean spacesAroundEqualSigns;
+    private final boolean groupKeys;
+    private final int groupLevelDepth;
+    private final int groupLineBreaks;
+    private final boolean groupAlignEqualSigns;
+    private final boolean wrapLines;
+    private final int wrapCharLimit;
+    private final boolean wrapAlignEqualSigns;
+    private final int wrapIndentSpaces;
+    private final boolean forceNewLineType;
+    private final int newLineType;
+    private final boolean newLineNice;
+    private final boolean keepEmptyFields;
+    private final boolean roundTrip;
+
+    /**
+     * Constructor.  Takes a snapshot of the given preference store.
+     * @param prefs preference store holding <code>RBEPreferences</code>
+     *        preferences
+     */
+    public PropertiesOptions(IPreferenceStore prefs) {
+        super();
+        convertEncodedToUnicode = prefs.getBoolean(
+                RBEPreferences.CONVERT_ENCODED_TO_UNICODE);
+        convertUnicodeToEncoded = prefs.getBoolean(
+                RBEPreferences.CONVERT_UNICODE_TO_ENCODED);
+        convertUnicodeToEncodedUpper = prefs.getBoolean(
+                RBEPreferences.CONVERT_UNICODE_TO_ENCODED_UPPER);
+        showGenerator = prefs.getBoolean(RBEPreferences.SHOW_GENERATOR);
+        keyGroupSeparator = prefs.getString(
+                RBEPreferences.KEY_GROUP_SEPARATOR);
+        alignEqualSigns = prefs.getBoolean(RBEPreferences.ALIGN_EQUAL_SIGNS);
+        spacesAroundEqualSigns = prefs.getBoolean(
+                RBEPreferences.SPACES_AROUND_EQUAL_SIGNS);
+        groupKeys = prefs.getBoolean(RBEPreferences.GROUP_KEYS);
+        groupLevelDepth = prefs.getInt(RBEPreferences.GROUP_LEVEL_DEPTH);
+        groupLineBreaks = prefs.getInt(RBEPreferences.GROUP_LINE_BREAKS);
+        groupAlignEqualSigns = prefs.getBoolean(
+                RBEPreferences.GROUP_ALIGN_EQUAL_SIGNS);
+        wrapLines = prefs.getBoolean(RBEPreferences.WRAP_LINES);
+        wrapCharLimit = prefs.getInt(RBEPreferences.WRAP_CHAR_LIMIT);
+        wrapAlignEqualSigns = prefs.getBoolean(
+                RBEPreferences.WRAP_ALIGN_EQUAL_SIGNS);
+        wrapIndentSpaces = prefs.getInt(RBEPreferences.WRAP_INDENT_SPACES);
+        forceNewLineType = prefs.getBoolean(
+                RBEPreferences.FORCE_NEW_LINE_TYPE);
+        newLineType = prefs.getInt(RBEPreferences.NEW_LINE_TYPE);
+        newLineNice = prefs.getBoolean(RBEPreferences.NEW_LINE_NICE);
+        keepEmptyFields = prefs.getBoolean(RBEPreferences.KEEP_EMPTY_FIELDS);
+        roundTrip = prefs.getBoolean(RBEPreferences.ROUND_TRIP);
+    }
+
+    /**
+     * Gets whether to convert encoded strings to unicode characters when
+     * parsing.
+     * @return <code>true</code> if converting
+     */
+    public boolean isConvertEncodedToUnicode() {
+        return convertEncodedToUnicode;
+    }
+    /**
+     * Gets whether to convert unicode characters to encoded strings when
+     * generating.
+     * @return <code>true</code> if converting
+     */
+    public boolean isConvertUnicodeToEncoded() {
+        return convertUnicodeToEncoded;
+    }
+    /**
+     * Gets whether to use upper case hexadecimal digits when converting
+     * unicode characters to encoded strings.
+     * @return <code>true</code> if upper case
+     */
+    public boolean isConvertUnicodeToEncodedUpper() {
+        return convertUnicodeToEncodedUpper;
+    }
+    /**
+     * Gets whether to show the "Generated by" comment.
+     * @return <code>true</code> if showing
+     */
+    public boolean isShowGenerator() {
+        return showGenerator;
+    }
+    /**
+     * Gets the key group separator.
+     * @return key group separator
+     */
+    public String getKeyGroupSeparator() {
+        return keyGroupSeparator;
+    }
+    /**
+     * Gets whether equal signs are aligned.
+     * @return <code>true</code> if aligned
+     */
+    public boolean isAlignEqualSigns() {
+        return alignEqualSigns;
+    }
+    /**
+     * Gets whether spaces are put around equal signs.
+     * @return <code>true</code> if spaces are put
+     */
+    public boolean isSpacesAroundEqualSigns() {
+        return spacesAroundEqualSigns;
+    }
+    /**
+     * Gets whether keys are grouped.
+     * @return <code>true</code> if grouped
+     */
+    public boolean isGroupKeys() {
+        return groupKeys;
+    }
+    /**
+     * Gets how many level deep keys are grouped.
+     * @return level depth
+     */
+    public int getGroupLevelDepth() {
+        return groupLevelDepth;
+    }
+    /**
+     * Gets how many line breaks separate key groups.
+     * @return number of line breaks
+     */
+    public int getGroupLineBreaks() {
+        return groupLineBreaks;
+    }
+    /**
+     * Gets whether equal signs are aligned within groups.
+     * @return <code>true</code> if aligned
+     */
+    public boolean isGroupAlignEqualSigns() {
+        return groupAlignEqualSigns;
+    }
+    /**
+     * Gets whether lines are wrapped.
+     * @return <code>true</code> if wrapped
+     */
+    public boolean isWrapLines() {
+        return wrapLines;
+    }
+    /**
+     * Gets the number of characters after which lines are wrapped.
+     * @return character limit
+     */
+    public int getWrapCharLimit() {
+        return wrapCharLimit;
+    }
+    /**
+     * Gets whether wrapped lines are aligned with equal signs.
+     * @return <code>true</code> if aligned
+     */
+    public boolean isWrapAlignEqualSigns() {
+        return wrapAlignEqualSigns;
+    }
+    /**
+     * Gets the number of spaces wrapped lines are indented with, when not
+     * aligned with equal signs.
+     * @return number of spaces
+     */
+    public int getWrapIndentSpaces() {
+        return wrapIndentSpaces;
+    }
+    /**
+     * Gets whether new lines in values are forced to a given type.
+     * @return <code>true</code> if forced
+     */
+    public boolean isForceNewLineType() {
+        return forceNewLineType;
+    }
+    /**
+     * Gets the type new lines in values are forced to.
+     * @return one of the <code>RBEPreferences.NEW_LINE_*</code> constants
+     */
+    public int getNewLineType() {
+        return newLineType;
+    }
+    /**
+     * Gets whether lines are broken after escaped new lines.
+     * @return <code>true</code> if broken
+     */
+    public boolean isNewLineNice() {
+        return newLineNice;
+    }
+    /**
+     * Gets whether entries with empty values are kept.
+     * @return <code>true</code> if kept
+     */
+    public boolean isKeepEmptyFields() {
+        return keepEmptyFields;
+    }
+    /**
+     * Gets whether files keep their layout when regenerated, with only
+     * modified entries re-formatted.
+     * @return <code>true</code> if layout is kept
+     */
+    public boolean isRoundTrip() {
+        return roundTrip;
+    }
+}
@@ -15,37 +15,32 @@
  */
 package com.essiembre.eclipse.rbe.model.bundle;
 
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.io.Reader;
 
-import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 
 /**
- * Bundle-related utility methods. 
+ * Bundle-related utility methods.
+ * <p>
+ * Parsing is done in a single pass over the characters of the properties
+ * source, one physical line at a time, without regular expressions.
+ * </p>
  * @author Pascal Essiembre
  */
 public final class PropertiesParser {
 
     /** System line separator. */
-    private static final String SYSTEM_LINE_SEPARATOR = 
+    private static final String SYSTEM_LINE_SEPARATOR =
             System.getProperty("line.separator");
-    
+
     /** Characters accepted as key value separators. */
     private static final String KEY_VALUE_SEPARATORS = "=:";
-    
-    private static final Pattern PATTERN_LINE_BREAK = 
-            Pattern.compile("\r\n|\r|\n");
-    private static final Pattern PATTERN_IS_REGULAR_LINE = 
-            Pattern.compile("^[^#!].*");
-    private static final Pattern PATTERN_IS_COMMENTED_LINE = 
-            Pattern.compile("^##[^#].*");
-    private static final Pattern PATTERN_LEADING_SPACE = 
-            Pattern.compile("^\\s*");
-    private static final Pattern PATTERN_COMMENT_START = Pattern.compile("^##");
-    private static final Pattern PATTERN_BACKSLASH_R = Pattern.compile("\\\\r");
-    private static final Pattern PATTERN_BACKSLASH_N = Pattern.compile("\\\\n");
-
-    
+
+    /** Size of the buffer used when parsing from a <code>Reader</code>. */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+
     /**
      * Constructor.
      */
@@ -54,7 +49,7 @@ public final class PropertiesParser {
     }
 
     /**
-     * Parses a string and converts it to a <code>Bundle</code>.  The string is 
+     * Parses a string and converts it to a <code>Bundle</code>.  The string is
      * expected to match the documented structure of a properties file.
      * The returned bundle will have no <code>Locale</code> and no
      * <code>BundleGroup</code> associated to it.
@@ -62,96 +57,152 @@ public final class PropertiesParser {
      * @return a new bundle
      */
     public static Bundle parse(String properties) {
-        Bundle bundle = new Bundle();
-        String[] lines = PATTERN_LINE_BREAK.split(properties);
-        
-        boolean doneWithFileComment = false;
-        StringBuffer fileComment = new StringBuffer();
-        StringBuffer lineComment = new StringBuffer();
-        StringBuffer lineBuf = new StringBuffer();
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            lineBuf.setLength(0);
-            lineBuf.append(line);
-        
-            int equalPosition = findKeyValueSeparator(line);
-            boolean isRegularLine = 
-                    PATTERN_IS_REGULAR_LINE.matcher(line).matches();
-            boolean isCommentedLine = doneWithFileComment 
-                    && PATTERN_IS_COMMENTED_LINE.matcher(line).matches();
-            
-            // parse regular and commented lines
-            if (equalPosition >= 1 && (isRegularLine || isCommentedLine)) {
-                doneWithFileComment = true;
-                String comment = "";
-                if (lineComment.length() > 0) {
-                    comment = lineComment.toString();
-                    lineComment.setLength(0);
-                }
+        return parse((CharSequence) properties);
+    }
 
-                if (isCommentedLine) {
-                    lineBuf.delete(0, 2); // remove ##
-                    equalPosition -= 2;
-                }
-                String backslash = "\\";
-                while (lineBuf.lastIndexOf(backslash) == lineBuf.length() -1) {
-                    int lineBreakPosition = lineBuf.lastIndexOf(backslash);
-                    lineBuf.replace(
-                            lineBreakPosition,
-                            lineBreakPosition + 1, "");
-                    if (++i < lines.length) {
-                        String wrappedLine = PATTERN_LEADING_SPACE.matcher(
-                                lines[i]).replaceFirst("");
-//                        String wrappedLine = lines[i].trim();
-                        if (isCommentedLine) {
-                            lineBuf.append(PATTERN_COMMENT_START.matcher(
-                                    wrappedLine).replaceFirst(""));
-                        } else {
-                            lineBuf.append(wrappedLine);
-                        }
-                    }
-                }
-                String key = lineBuf.substring(0, equalPosition).trim();
-                key = unescapeKey(key);
-                
-                String value = PATTERN_LEADING_SPACE.matcher(
-                        lineBuf.substring(equalPosition + 1)).replaceFirst("");
-//                String value = lineBuf.substring(equalPosition + 1).trim();
-                // Unescape leading spaces
-                if (value.startsWith("\\ ")) {
-                    value = value.substring(1);
-                }
-                
-                if (RBEPreferences.getConvertEncodedToUnicode()) {
-                    key = PropertiesParser.convertEncodedToUnicode(key);
-                    value = PropertiesParser.convertEncodedToUnicode(value);
-                } else {
-                    value = PATTERN_BACKSLASH_R.matcher(value).replaceAll("\r");
-                    value = PATTERN_BACKSLASH_N.matcher(value).replaceAll("\n");
-                }
-                bundle.addEntry(
-                        new BundleEntry(key, value, comment, isCommentedLine));
-            // parse comment line
-            } else if (lineBuf.length()>0 && 
-                    (lineBuf.charAt(0) == '#' || lineBuf.charAt(0) == '!')) {
-               if (!doneWithFileComment) {
-                    fileComment.append(lineBuf);
-                    fileComment.append(SYSTEM_LINE_SEPARATOR);
-                } else {
-                    lineComment.append(lineBuf);
-                    lineComment.append(SYSTEM_LINE_SEPARATOR);
+    /**
+     * Parses a character sequence and converts it to a <code>Bundle</code>.
+     * The characters are expected to match the documented structure of a
+     * properties file.
+     * The returned bundle will have no <code>Locale</code> and no
+     * <code>BundleGroup</code> associated to it.
+     * @param properties the characters containing the properties to parse
+     * @return a new bundle
+     */
+    public static Bundle parse(CharSequence properties) {
+        return parse(properties, RBEPreferences.getPropertiesOptions());
+    }
+
+    /**
+     * Parses a character sequence and converts it to a <code>Bundle</code>,
+     * using the given options.
+     * @param properties the characters containing the properties to parse
+     * @param options parsing options
+     * @return a new bundle
+     */
+    public static Bundle parse(
+            CharSequence properties, PropertiesOptions options) {
+        try {
+            return parse(
+                    new CharSequenceLineReader(properties, 0), options);
+        } catch (IOException e) {
+            // should not happen, character sequences are read in memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parses the characters read from the given reader and converts them to
+     * a <code>Bundle</code>.  The reader is read until its end, but is not
+     * closed.  The returned bundle will have no <code>Locale</code> and no
+     * <code>BundleGroup</code> associated to it.
+     * @param reader the reader providing the properties to parse
+     * @return a new bundle
+     * @throws IOException problem reading from the reader
+     */
+    public static Bundle parse(Reader reader) throws IOException {
+        return parse(reader, RBEPreferences.getPropertiesOptions());
+    }
+
+    /**
+     * Parses the characters read from the given reader and converts them to
+     * a <code>Bundle</code>, using the given options.  The reader is read
+     * until its end, but is not closed.
+     * @param reader the reader providing the properties to parse
+     * @param options parsing options
+     * @return a new bundle
+     * @throws IOException problem reading from the reader
+     */
+    public static Bundle parse(Reader reader, PropertiesOptions options)
+            throws IOException {
+        return parse(new ReaderLineReader(reader), options);
+    }
+
+    /**
+     * Parses a character sequence and converts it to a <code>Bundle</code>,
+     * recording where each entry ends in the given source map so that later
+     * edits can be re-parsed incrementally.
+     * @param properties the characters containing the properties to parse
+     * @param sourceMap source map to reset with the parsed entries
+     * @return a new bundle
+     * @see PropertiesSourceMap#reparse(CharSequence, int, int)
+     */
+    public static Bundle parse(
+            CharSequence properties, PropertiesSourceMap sourceMap) {
+        return parse(properties, sourceMap,
+                RBEPreferences.getPropertiesOptions());
+    }
+
+    /**
+     * Parses a character sequence and converts it to a <code>Bundle</code>,
+     * using the given options and recording where each entry ends in the
+     * given source map.  The source map keeps the options for later
+     * incremental parses.
+     * @param properties the characters containing the properties to parse
+     * @param sourceMap source map to reset with the parsed entries
+     * @param options parsing options
+     * @return a new bundle
+     */
+    public static Bundle parse(CharSequence properties,
+            PropertiesSourceMap sourceMap, PropertiesOptions options) {
+        Bundle bundle = new Bundle();
+        EntryScanner scanner = new EntryScanner(
+                new CharSequenceLineReader(properties, 0), false,
+                options.isConvertEncodedToUnicode());
+        sourceMap.clear(properties.length(), options);
+        try {
+            BundleEntry entry;
+            while ((entry = scanner.nextEntry()) != null) {
+                String key = entry.getKey();
+                if (bundle.getEntry(key) != null) {
+                    sourceMap.invalidate();
                 }
-            // handle blank or unsupported line
-            } else {
-                doneWithFileComment = true;
+                bundle.addEntry(entry);
+                sourceMap.addEntry(key, scanner.getCommentStart(),
+                        scanner.getEntryStart(), scanner.getPosition());
             }
+        } catch (IOException e) {
+            // should not happen, character sequences are read in memory
+            throw new IllegalStateException(e);
+        }
+        bundle.setComment(scanner.getFileComment());
+        return bundle;
+    }
+
+    /**
+     * Parses physical lines obtained from the given line reader.
+     * @param lines line reader
+     * @param options parsing options
+     * @return a new bundle
+     * @throws IOException problem reading lines
+     */
+    private static Bundle parse(LineReader lines, PropertiesOptions options)
+            throws IOException {
+        Bundle bundle = new Bundle();
+        EntryScanner scanner = new EntryScanner(
+                lines, false, options.isConvertEncodedToUnicode());
+        BundleEntry entry;
+        while ((entry = scanner.nextEntry()) != null) {
+            bundle.addEntry(entry);
         }
-        bundle.setComment(fileComment.toString());
-        
+        bundle.setComment(scanner.getFileComment());
         return bundle;
     }
-    
-    
+
+    /**
+     * Creates a scanner reading entries from the given characters, starting
+     * at a line following the end of an entry (or the file comment).
+     * @param text the characters to scan
+     * @param offset where to start scanning
+     * @param options parsing options
+     * @return entry scanner
+     */
+    /*default*/ static EntryScanner scanAfterEntry(
+            CharSequence text, int offset, PropertiesOptions options) {
+        return new EntryScanner(new CharSequenceLineReader(text, offset),
+                true, options.isConvertEncodedToUnicode());
+    }
+
     /**
      * Converts encoded &#92;uxxxx to unicode chars
      * and changes special saved chars to their original forms
@@ -160,66 +211,46 @@ public final class PropertiesParser {
      * @see java.util.Properties
      */
     public static String convertEncodedToUnicode(String str) {
-        char aChar;
+        return UnicodeCodec.decode(str);
+    }
+
+    /**
+     * Converts escaped &#92;r and &#92;n sequences to their line break
+     * characters, leaving any other backslash untouched.
+     * @param str the string to convert
+     * @return converted string
+     */
+    /*default*/ static String convertEscapedLineBreaks(String str) {
+        int index = str.indexOf('\\');
+        if (index == -1) {
+            return str;
+        }
         int len = str.length();
-        StringBuffer outBuffer = new StringBuffer(len);
-
-        for (int x = 0; x < len;) {
-            aChar = str.charAt(x++);
-            if (aChar == '\\' && x + 1 <= len) {
-                aChar = str.charAt(x++);
-                if (aChar == 'u' && x + 4 <= len) {
-                    // Read the xxxx
-                    int value = 0;
-                    for (int i = 0; i < 4; i++) {
-                        aChar = str.charAt(x++);
-                        switch (aChar) {
-                        case '0': case '1': case '2': case '3': case '4':
-                        case '5': case '6': case '7': case '8': case '9':
-                            value = (value << 4) + aChar - '0';
-                            break;
-                        case 'a': case 'b': case 'c':
-                        case 'd': case 'e': case 'f':
-                            value = (value << 4) + 10 + aChar - 'a';
-                            break;
-                        case 'A': case 'B': case 'C':
-                        case 'D': case 'E': case 'F':
-                            value = (value << 4) + 10 + aChar - 'A';
-                            break;
-                        default:
-                            value = aChar;
-                            System.err.println(RBEPlugin.getString(
-                                 "error.init.badencoding") + str);
-                        }
-                    }
-                    outBuffer.append((char) value);
-                } else {
-                    if (aChar == 't') {
-                        aChar = '\t';
-                    } else if (aChar == 'r') {
-                        aChar = '\r';
-                    } else if (aChar == 'n') {
-                        aChar = '\n';
-                    } else if (aChar == 'f') {
-                        aChar = '\f';
-                    } else if (aChar == 'u') {
-                        outBuffer.append("\\");
-                    }
-                    outBuffer.append(aChar);
+        StringBuilder buf = new StringBuilder(len);
+        buf.append(str, 0, index);
+        while (index < len) {
+            char aChar = str.charAt(index++);
+            if (aChar == '\\' && index < len) {
+                char nextChar = str.charAt(index);
+                if (nextChar == 'r') {
+                    aChar = '\r';
+                    index++;
+                } else if (nextChar == 'n') {
+                    aChar = '\n';
+                    index++;
                 }
-            } else {
-                outBuffer.append(aChar);
             }
+            buf.append(aChar);
         }
-        return outBuffer.toString();
+        return buf.toString();
     }
-    
+
     /**
      * Finds the separator symbol that separates keys and values.
      * @param str the string on which to find seperator
      * @return the separator index or -1 if no separator was found
      */
-    private static int findKeyValueSeparator(String str) {
+    private static int findKeyValueSeparator(CharSequence str) {
         int index = -1;
         int length = str.length();
         for (int i = 0; i < length; i++) {
@@ -233,16 +264,406 @@ public final class PropertiesParser {
         }
         return index;
     }
-    
-    private static String unescapeKey(String key) {
-        int length = key.length();
-        StringBuffer buf = new StringBuffer();
-        for (int index = 0; index < length; index++) {
-            char currentChar = key.charAt(index);
+
+    /**
+     * Whether a line can hold a key/value pair (does not start with
+     * <code>#</code> or <code>!</code>).
+     * @param line the line to test
+     * @return <code>true</code> if a regular line
+     */
+    private static boolean isRegularLine(CharSequence line) {
+        if (line.length() == 0) {
+            return false;
+        }
+        char firstChar = line.charAt(0);
+        return firstChar != '#' && firstChar != '!'
+                && !hasLineTerminator(line, 1);
+    }
+
+    /**
+     * Whether a line holds a commented out key/value pair (starts with
+     * exactly two <code>#</code>).
+     * @param line the line to test
+     * @return <code>true</code> if a commented line
+     */
+    private static boolean isCommentedLine(CharSequence line) {
+        return line.length() > 2 && line.charAt(0) == '#'
+                && line.charAt(1) == '#' && line.charAt(2) != '#'
+                && !hasLineTerminator(line, 3);
+    }
+
+    /**
+     * Whether a line holds a unicode line terminator that is not a line
+     * break for properties files (next line, line separator or paragraph
+     * separator).  Such lines were never considered regular nor commented
+     * lines and are kept as unsupported lines.
+     * @param line the line to test
+     * @param fromIndex index where to start looking
+     * @return <code>true</code> if a line terminator was found
+     */
+    private static boolean hasLineTerminator(CharSequence line, int fromIndex) {
+        int length = line.length();
+        for (int i = fromIndex; i < length; i++) {
+            char aChar = line.charAt(i);
+            if (aChar == '\u0085' || aChar == '\u2028' || aChar == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the given line has two <code>#</code> at the given position.
+     * @param line the line to test
+     * @param index position of the first <code>#</code>
+     * @return <code>true</code> if a comment start was found
+     */
+    private static boolean startsWithComment(CharSequence line, int index) {
+        return index + 1 < line.length()
+                && line.charAt(index) == '#' && line.charAt(index + 1) == '#';
+    }
+
+    /**
+     * Skips leading white spaces (space, tab, line feed, vertical tab,
+     * form feed and carriage return).
+     * @param line the line on which to skip white spaces
+     * @param fromIndex index where to start skipping
+     * @return index of the first non white space character
+     */
+    private static int skipLeadingSpaces(CharSequence line, int fromIndex) {
+        int length = line.length();
+        int index = fromIndex;
+        while (index < length) {
+            char aChar = line.charAt(index);
+            if (aChar != ' ' && aChar != '\t' && aChar != '\n'
+                    && aChar != '\u000B' && aChar != '\f' && aChar != '\r') {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Extracts a key from a line, trimming it and removing all its
+     * backslashes.
+     * @param line the line holding the key
+     * @param start key start index
+     * @param end key end index (exclusive)
+     * @return unescaped key
+     */
+    private static String unescapeKey(CharSequence line, int start, int end) {
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        StringBuilder buf = new StringBuilder(end - start);
+        for (int index = start; index < end; index++) {
+            char currentChar = line.charAt(index);
             if (currentChar != '\\') {
                 buf.append(currentChar);
             }
         }
         return buf.toString();
     }
+
+    /**
+     * Reads bundle entries one at a time, collecting the comments found
+     * between them.
+     */
+    /*default*/ static final class EntryScanner {
+        private final LineReader lines;
+        private final boolean convertEncoded;
+        private boolean doneWithFileComment;
+        private final StringBuilder fileComment = new StringBuilder();
+        private final StringBuilder lineComment = new StringBuilder();
+        private final StringBuilder lineBuf = new StringBuilder();
+        private final StringBuilder wrappedBuf = new StringBuilder();
+        /** Where the comment of the last entry starts. */
+        private int commentStart;
+        /** Where the first line of the last entry starts. */
+        private int entryStart;
+
+        /**
+         * Constructor.
+         * @param lines line reader
+         * @param doneWithFileComment whether the file comment was already
+         *        read, which is the case after any entry
+         * @param convertEncoded whether to convert encoded strings to
+         *        unicode characters
+         */
+        EntryScanner(LineReader lines, boolean doneWithFileComment,
+                boolean convertEncoded) {
+            super();
+            this.lines = lines;
+            this.doneWithFileComment = doneWithFileComment;
+            this.convertEncoded = convertEncoded;
+        }
+
+        /**
+         * Gets the file comment read so far.
+         * @return file comment
+         */
+        String getFileComment() {
+            return fileComment.toString();
+        }
+
+        /**
+         * Gets where the comment of the last entry returned by
+         * {@link #nextEntry()} starts, or where the entry starts if it has
+         * no comment.  Blank lines found between a comment and its entry
+         * are part of the comment.
+         * @return character position
+         */
+        int getCommentStart() {
+            return commentStart;
+        }
+
+        /**
+         * Gets where the first line of the last entry returned by
+         * {@link #nextEntry()} starts.
+         * @return character position
+         */
+        int getEntryStart() {
+            return entryStart;
+        }
+
+        /**
+         * Gets the position following the last line read, which is the end
+         * of the last entry returned by {@link #nextEntry()}.
+         * @return character position
+         */
+        int getPosition() {
+            return lines.getPosition();
+        }
+
+        /**
+         * Reads lines until the next entry is complete.
+         * @return the next entry, or <code>null</code> if there are no more
+         * @throws IOException problem reading lines
+         */
+        BundleEntry nextEntry() throws IOException {
+            int lineStart = lines.getPosition();
+            while (lines.readLine(lineBuf)) {
+                int equalPosition = findKeyValueSeparator(lineBuf);
+                boolean isRegularLine = isRegularLine(lineBuf);
+                boolean isCommentedLine =
+                        doneWithFileComment && isCommentedLine(lineBuf);
+
+                // parse regular and commented lines
+                if (equalPosition >= 1
+                        && (isRegularLine || isCommentedLine)) {
+                    doneWithFileComment = true;
+                    entryStart = lineStart;
+                    if (lineComment.length() == 0) {
+                        commentStart = lineStart;
+                    }
+                    return readEntry(equalPosition, isCommentedLine);
+                // parse comment line
+                } else if (lineBuf.length() > 0 && (lineBuf.charAt(0) == '#'
+                        || lineBuf.charAt(0) == '!')) {
+                    if (!doneWithFileComment) {
+                        fileComment.append(lineBuf);
+                        fileComment.append(SYSTEM_LINE_SEPARATOR);
+                    } else {
+                        if (lineComment.length() == 0) {
+                            commentStart = lineStart;
+                        }
+                        lineComment.append(lineBuf);
+                        lineComment.append(SYSTEM_LINE_SEPARATOR);
+                    }
+                // handle blank or unsupported line
+                } else {
+                    doneWithFileComment = true;
+                }
+                lineStart = lines.getPosition();
+            }
+            return null;
+        }
+
+        /**
+         * Builds an entry from the current line, appending wrapped lines.
+         * @param equalPosition key/value separator position
+         * @param isCommentedLine whether the entry is commented out
+         * @return bundle entry
+         * @throws IOException problem reading lines
+         */
+        private BundleEntry readEntry(
+                int equalPosition, boolean isCommentedLine)
+                throws IOException {
+            String comment = "";
+            if (lineComment.length() > 0) {
+                comment = lineComment.toString();
+                lineComment.setLength(0);
+            }
+
+            // skip ##
+            int keyStart = isCommentedLine ? 2 : 0;
+
+            // append wrapped lines
+            while (lineBuf.length() > keyStart
+                    && lineBuf.charAt(lineBuf.length() - 1) == '\\') {
+                lineBuf.setLength(lineBuf.length() - 1);
+                if (lines.readLine(wrappedBuf)) {
+                    int wrappedStart = skipLeadingSpaces(wrappedBuf, 0);
+                    if (isCommentedLine
+                            && startsWithComment(wrappedBuf, wrappedStart)) {
+                        wrappedStart += 2;
+                    }
+                    lineBuf.append(
+                            wrappedBuf, wrappedStart, wrappedBuf.length());
+                }
+            }
+
+            // keys have all their backslashes removed, so there is no
+            // encoded characters left to convert in them
+            String key = unescapeKey(lineBuf, keyStart, equalPosition);
+
+            int valueStart = skipLeadingSpaces(lineBuf, equalPosition + 1);
+            // Unescape leading spaces
+            if (valueStart + 1 < lineBuf.length()
+                    && lineBuf.charAt(valueStart) == '\\'
+                    && lineBuf.charAt(valueStart + 1) == ' ') {
+                valueStart++;
+            }
+            // values are decoded when first requested
+            return new BundleEntry(key, lineBuf.substring(valueStart),
+                    convertEncoded, comment, isCommentedLine);
+        }
+    }
+
+    /**
+     * Reads physical lines, recognizing "\r\n", "\r" and "\n" as line breaks.
+     */
+    private abstract static class LineReader {
+        /**
+         * Reads the next physical line into the given buffer, replacing its
+         * content.  The line break is not included.
+         * @param buf the buffer receiving the line
+         * @return <code>false</code> if there are no more lines
+         * @throws IOException problem reading the line
+         */
+        abstract boolean readLine(StringBuilder buf) throws IOException;
+
+        /**
+         * Gets the number of characters consumed so far, line breaks
+         * included.
+         * @return character position
+         */
+        abstract int getPosition();
+    }
+
+    /**
+     * Reads physical lines from a character sequence.
+     */
+    private static final class CharSequenceLineReader extends LineReader {
+        private final CharSequence text;
+        private final int length;
+        private int position;
+
+        CharSequenceLineReader(CharSequence text, int offset) {
+            super();
+            this.text = text;
+            this.length = text.length();
+            this.position = offset;
+        }
+
+        @Override
+        int getPosition() {
+            return position;
+        }
+
+        @Override
+        boolean readLine(StringBuilder buf) {
+            buf.setLength(0);
+            if (position >= length) {
+                return false;
+            }
+            int start = position;
+            while (position < length) {
+                char aChar = text.charAt(position);
+                if (aChar == '\n' || aChar == '\r') {
+                    buf.append(text, start, position);
+                    position++;
+                    if (aChar == '\r' && position < length
+                            && text.charAt(position) == '\n') {
+                        position++;
+                    }
+                    return true;
+                }
+                position++;
+            }
+            buf.append(text, start, length);
+            return true;
+        }
+    }
+
+    /**
+     * Reads physical lines from a reader, using its own buffer.
+     */
+    private static final class ReaderLineReader extends LineReader {
+        private final Reader reader;
+        private final char[] chars = new char[READ_BUFFER_SIZE];
+        private int position;
+        private int limit;
+        /** Number of characters read before the current buffer. */
+        private int offset;
+
+        ReaderLineReader(Reader reader) {
+            super();
+            this.reader = reader;
+        }
+
+        @Override
+        int getPosition() {
+            return offset + position;
+        }
+
+        @Override
+        boolean readLine(StringBuilder buf) throws IOException {
+            buf.setLength(0);
+            if (!fill()) {
+                return false;
+            }
+            do {
+                int start = position;
+                while (position < limit) {
+                    char aChar = chars[position];
+                    if (aChar == '\n' || aChar == '\r') {
+                        buf.append(chars, start, position - start);
+                        position++;
+                        if (aChar == '\r' && fill()
+                                && chars[position] == '\n') {
+                            position++;
+                        }
+                        return true;
+                    }
+                    position++;
+                }
+                buf.append(chars, start, position - start);
+            } while (fill());
+            return true;
+        }
+
+        /**
+         * Makes sure there are characters available in the buffer.
+         * @return <code>false</code> if the end of the reader was reached
+         * @throws IOException problem reading
+         */
+        private boolean fill() throws IOException {
+            while (position >= limit) {
+                offset += limit;
+                position = 0;
+                limit = 0;
+                int count = reader.read(chars, 0, chars.length);
+                if (count == -1) {
+                    return false;
+                }
+                limit = count;
+            }
+            return true;
+        }
+    }
 }
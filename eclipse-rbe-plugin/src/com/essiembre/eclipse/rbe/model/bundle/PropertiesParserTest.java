@@ -0,0 +1,173 @@
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+
+/**
+ * Checks that the single-pass <code>PropertiesParser</code> gives the same
+ * output as the regular expression based parser it replaced.
+ */
+public class PropertiesParserTest {
+
+    private static final String[] FRAGMENTS = {
+        "key", "a.b.c", "=", ":", " ", "\t", "\\", "\\\\", "\\ ", "\\u00e9",
+        "\\u4e2d\\u6587", "\\uZZ", "\\n", "\\r", "\\t", "#", "##", "###", "!",
+        "value", "\u00e9t\u00e9", "\u2028", "\u0085", "\f", "\r\n", "\n", "\r",
+    };
+
+    @Test
+    public void testSameOutput() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder text = new StringBuilder();
+            int count = random.nextInt(30);
+            for (int j = 0; j < count; j++) {
+                text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertSameOutput(text.toString());
+        }
+        assertSameOutput(BundleFixtures.generateGrouped(2000, random));
+    }
+
+    private static void assertSameOutput(String text) throws IOException {
+        Bundle expected = parseWithRegex(text);
+        BundleFixtures.assertSameBundle(text, expected, PropertiesParser.parse(text));
+        BundleFixtures.assertSameBundle(text, expected,
+                PropertiesParser.parse(new StringReader(text)));
+    }
+
+
+    //--- Regular expression based parser, as it was before the scanner ------
+
+    private static final String SYSTEM_LINE_SEPARATOR =
+            System.getProperty("line.separator");
+    private static final Pattern PATTERN_LINE_BREAK =
+            Pattern.compile("\r\n|\r|\n");
+    private static final Pattern PATTERN_IS_REGULAR_LINE =
+            Pattern.compile("^[^#!].*");
+    private static final Pattern PATTERN_IS_COMMENTED_LINE =
+            Pattern.compile("^##[^#].*");
+    private static final Pattern PATTERN_LEADING_SPACE =
+            Pattern.compile("^\\s*");
+    private static final Pattern PATTERN_COMMENT_START = Pattern.compile("^##");
+    private static final Pattern PATTERN_BACKSLASH_R = Pattern.compile("\\\\r");
+    private static final Pattern PATTERN_BACKSLASH_N = Pattern.compile("\\\\n");
+
+    private static Bundle parseWithRegex(String properties) {
+        Bundle bundle = new Bundle();
+        String[] lines = PATTERN_LINE_BREAK.split(properties);
+
+        boolean doneWithFileComment = false;
+        StringBuffer fileComment = new StringBuffer();
+        StringBuffer lineComment = new StringBuffer();
+        StringBuffer lineBuf = new StringBuffer();
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            lineBuf.setLength(0);
+            lineBuf.append(line);
+
+            int equalPosition = findKeyValueSeparator(line);
+            boolean isRegularLine =
+                    PATTERN_IS_REGULAR_LINE.matcher(line).matches();
+            boolean isCommentedLine = doneWithFileComment
+                    && PATTERN_IS_COMMENTED_LINE.matcher(line).matches();
+
+            if (equalPosition >= 1 && (isRegularLine || isCommentedLine)) {
+                doneWithFileComment = true;
+                String comment = "";
+                if (lineComment.length() > 0) {
+                    comment = lineComment.toString();
+                    lineComment.setLength(0);
+                }
+
+                if (isCommentedLine) {
+                    lineBuf.delete(0, 2); // remove ##
+                    equalPosition -= 2;
+                }
+                String backslash = "\\";
+                while (lineBuf.lastIndexOf(backslash) == lineBuf.length() -1) {
+                    int lineBreakPosition = lineBuf.lastIndexOf(backslash);
+                    lineBuf.replace(
+                            lineBreakPosition,
+                            lineBreakPosition + 1, "");
+                    if (++i < lines.length) {
+                        String wrappedLine = PATTERN_LEADING_SPACE.matcher(
+                                lines[i]).replaceFirst("");
+                        if (isCommentedLine) {
+                            lineBuf.append(PATTERN_COMMENT_START.matcher(
+                                    wrappedLine).replaceFirst(""));
+                        } else {
+                            lineBuf.append(wrappedLine);
+                        }
+                    }
+                }
+                String key = lineBuf.substring(0, equalPosition).trim();
+                key = unescapeKey(key);
+
+                String value = PATTERN_LEADING_SPACE.matcher(
+                        lineBuf.substring(equalPosition + 1)).replaceFirst("");
+                if (value.startsWith("\\ ")) {
+                    value = value.substring(1);
+                }
+
+                if (RBEPreferences.getConvertEncodedToUnicode()) {
+                    key = PropertiesParser.convertEncodedToUnicode(key);
+                    value = PropertiesParser.convertEncodedToUnicode(value);
+                } else {
+                    value = PATTERN_BACKSLASH_R.matcher(value).replaceAll("\r");
+                    value = PATTERN_BACKSLASH_N.matcher(value).replaceAll("\n");
+                }
+                bundle.addEntry(
+                        new BundleEntry(key, value, comment, isCommentedLine));
+            } else if (lineBuf.length()>0 &&
+                    (lineBuf.charAt(0) == '#' || lineBuf.charAt(0) == '!')) {
+               if (!doneWithFileComment) {
+                    fileComment.append(lineBuf);
+                    fileComment.append(SYSTEM_LINE_SEPARATOR);
+                } else {
+                    lineComment.append(lineBuf);
+                    lineComment.append(SYSTEM_LINE_SEPARATOR);
+                }
+            } else {
+                doneWithFileComment = true;
+            }
+        }
+        bundle.setComment(fileComment.toString());
+
+        return bundle;
+    }
+
+    private static int findKeyValueSeparator(String str) {
+        int index = -1;
+        int length = str.length();
+        for (int i = 0; i < length; i++) {
+            char currentChar = str.charAt(i);
+            if (currentChar == '\\') {
+                i++;
+            } else if ("=:".indexOf(currentChar) != -1) {
+                index = i;
+                break;
+            }
+        }
+        return index;
+    }
+
+    private static String unescapeKey(String key) {
+        int length = key.length();
+        StringBuffer buf = new StringBuffer();
+        for (int index = 0; index < length; index++) {
+            char currentChar = key.charAt(index);
+            if (currentChar != '\\') {
+                buf.append(currentChar);
+            }
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers where each entry of a parsed properties source ends, so that
+ * an edit of the source can be re-parsed from the entry preceding the edit
+ * up to the first entry following it, instead of re-parsing everything.
+ * Entry keys are kept along with where their comment and first line
+ * start, so that the source can also be regenerated with only its
+ * modified entries re-formatted.  Entries themselves are not kept, their
+ * values being held by bundles already: they are parsed again from the
+ * source when needed.
+ * <p>
+ * An entry spans from the end of the previous entry (its comment included)
+ * to the line break ending its last wrapped line.  Parser state is the same
+ * after every entry, which is what makes re-parsing from and up to entry
+ * boundaries safe.  The file comment is never re-parsed: edits before the
+ * end of the first entry, or sources with duplicate keys, require a full
+ * parse.
+ * </p>
+ * @author Pascal Essiembre
+ * @see PropertiesParser#parse(CharSequence, PropertiesSourceMap)
+ */
+public class PropertiesSourceMap {
+
+    /** Initial capacity of entry arrays. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Entry end positions, in ascending order. */
+    private int[] entryEnds = new int[INITIAL_CAPACITY];
+    /** Entry comment start positions, matching entry end positions. */
+    private int[] commentStarts = new int[INITIAL_CAPACITY];
+    /** Entry first line start positions, matching entry end positions. */
+    private int[] entryStarts = new int[INITIAL_CAPACITY];
+    /** Keys of parsed entries, matching entry end positions. */
+    private String[] mappedKeys = new String[INITIAL_CAPACITY];
+    /** Number of mapped entries. */
+    private int entryCount;
+    /** Entry indexes by key, <code>null</code> until looked up. */
+    private Map<String, Integer> keyIndexes;
+    /** Length of the mapped source. */
+    private int length;
+    /** Whether this map can be used to re-parse its source. */
+    private boolean valid;
+    /** Options the source was parsed with. */
+    private PropertiesOptions options;
+
+    /**
+     * Constructor.  The map is invalid until it is filled by a parse.
+     */
+    public PropertiesSourceMap() {
+        super();
+    }
+
+    /**
+     * Whether this map reflects its source and can be used to re-parse it.
+     * @return <code>true</code> if valid
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Marks this map as no longer reflecting its source (for instance when
+     * the source was replaced entirely).  Next parse needs to be a full one.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Gets the number of mapped entries.
+     * @return entry count
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Resets this map before a full parse.
+     * @param sourceLength length of the parsed source
+     * @param parseOptions options the source is parsed with
+     */
+    /*default*/ void clear(int sourceLength, PropertiesOptions parseOptions) {
+        Arrays.fill(mappedKeys, 0, entryCount, null);
+        entryCount = 0;
+        keyIndexes = null;
+        length = sourceLength;
+        options = parseOptions;
+        valid = true;
+    }
+
+    /**
+     * Gets the length of the mapped source.
+     * @return source length
+     */
+    /*default*/ int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the options the mapped source was parsed with.
+     * @return parsing options
+     */
+    /*default*/ PropertiesOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Replaces mapped keys with their canonical instance from the given
+     * pool, so that they are not held once more than by bundles.  Keys
+     * not found in the pool are kept as they are.
+     * @param keyPool key pool
+     */
+    public void internKeys(KeyPool keyPool) {
+        for (int i = 0; i < entryCount; i++) {
+            mappedKeys[i] = keyPool.get(mappedKeys[i]);
+        }
+        keyIndexes = null;
+    }
+
+    /**
+     * Parses a mapped entry again from the mapped source.
+     * @param text mapped source
+     * @param index entry index
+     * @return bundle entry, as it was parsed
+     */
+    /*default*/ BundleEntry parseEntry(CharSequence text, int index) {
+        try {
+            return PropertiesParser.scanAfterEntry(
+                    text, commentStarts[index], options).nextEntry();
+        } catch (IOException e) {
+            // should not happen, character sequences are read in memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the key of a mapped entry.
+     * @param index entry index
+     * @return entry key
+     */
+    /*default*/ String getKey(int index) {
+        return mappedKeys[index];
+    }
+
+    /**
+     * Gets where the comment of a mapped entry starts, which is where the
+     * entry starts if it has no comment.
+     * @param index entry index
+     * @return character position
+     */
+    /*default*/ int getCommentStart(int index) {
+        return commentStarts[index];
+    }
+
+    /**
+     * Gets where the first line of a mapped entry starts.
+     * @param index entry index
+     * @return character position
+     */
+    /*default*/ int getEntryStart(int index) {
+        return entryStarts[index];
+    }
+
+    /**
+     * Gets the position following the last line break of a mapped entry.
+     * @param index entry index
+     * @return character position
+     */
+    /*default*/ int getEntryEnd(int index) {
+        return entryEnds[index];
+    }
+
+    /**
+     * Gets the index of the mapped entry having the given key.
+     * @param key entry key
+     * @return entry index, or -1 if no entry has the key
+     */
+    /*default*/ int indexOf(String key) {
+        if (keyIndexes == null) {
+            keyIndexes = new HashMap<>(entryCount * 2);
+            for (int i = 0; i < entryCount; i++) {
+                putKeyIndex(i);
+            }
+        }
+        Integer index = keyIndexes.get(key);
+        return index == null ? -1 : index.intValue();
+    }
+
+    /**
+     * Maps an entry, found after all entries already mapped.  Duplicate
+     * keys overwrite each other, so a source having some cannot be
+     * re-parsed by region: this map must then be invalidated.
+     * @param key parsed entry key
+     * @param commentStart where the entry comment starts
+     * @param start where the entry first line starts
+     * @param end position following the entry last line break
+     */
+    /*default*/ void addEntry(
+            String key, int commentStart, int start, int end) {
+        ensureCapacity(entryCount + 1);
+        entryEnds[entryCount] = end;
+        commentStarts[entryCount] = commentStart;
+        entryStarts[entryCount] = start;
+        mappedKeys[entryCount] = key;
+        entryCount++;
+        keyIndexes = null;
+    }
+
+    /**
+     * Re-parses the part of an edited source affected by its modifications,
+     * and updates this map accordingly.  The edited source is described by
+     * the number of characters left untouched at its start and at its end.
+     * When <code>null</code> is returned, this map is left unchanged and
+     * the source has to be parsed entirely.
+     * @param text edited source
+     * @param unchangedPrefix number of unchanged characters at the
+     *        beginning of the source
+     * @param unchangedSuffix number of unchanged characters at the end
+     *        of the source
+     * @return the re-parsed region, or <code>null</code> if the source
+     *         cannot be re-parsed incrementally
+     */
+    public Region reparse(
+            CharSequence text, int unchangedPrefix, int unchangedSuffix) {
+        if (!valid) {
+            return null;
+        }
+        int newLength = text.length();
+        int delta = newLength - length;
+        int prefix = Math.min(unchangedPrefix, Math.min(length, newLength));
+        int suffix = Math.min(unchangedSuffix,
+                Math.min(length, newLength) - prefix);
+
+        // last entry ending before the edit
+        int first = findLastEntryBefore(prefix);
+        if (first < 0) {
+            return null;
+        }
+
+        // parse up to the first entry ending after the edit at the same
+        // position it ended before the edit
+        int newDirtyEnd = newLength - suffix;
+        int last = entryCount - 1;
+        List<BundleEntry> entries = new ArrayList<>();
+        int[] newCommentStarts = new int[INITIAL_CAPACITY];
+        int[] newStarts = new int[INITIAL_CAPACITY];
+        int[] newEnds = new int[INITIAL_CAPACITY];
+        PropertiesParser.EntryScanner scanner =
+                PropertiesParser.scanAfterEntry(
+                        text, entryEnds[first], options);
+        try {
+            BundleEntry entry;
+            while ((entry = scanner.nextEntry()) != null) {
+                int end = scanner.getPosition();
+                int count = entries.size();
+                if (count == newEnds.length) {
+                    newCommentStarts = Arrays.copyOf(
+                            newCommentStarts, count * 2);
+                    newStarts = Arrays.copyOf(newStarts, count * 2);
+                    newEnds = Arrays.copyOf(newEnds, count * 2);
+                }
+                newCommentStarts[count] = scanner.getCommentStart();
+                newStarts[count] = scanner.getEntryStart();
+                newEnds[count] = end;
+                entries.add(entry);
+                if (end > newDirtyEnd) {
+                    int index = Arrays.binarySearch(
+                            entryEnds, first + 1, entryCount, end - delta);
+                    if (index >= 0) {
+                        last = index;
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // should not happen, character sequences are read in memory
+            throw new IllegalStateException(e);
+        }
+
+        // make sure keys stay unique
+        Set<String> replacedKeys = new HashSet<>();
+        for (int i = first + 1; i <= last; i++) {
+            String key = mappedKeys[i];
+            if (!isBlank(key)) {
+                replacedKeys.add(key);
+            }
+        }
+        Set<String> newKeys = new HashSet<>();
+        for (BundleEntry entry : entries) {
+            String key = entry.getKey();
+            if (!isBlank(key) && (!newKeys.add(key)
+                    || !replacedKeys.contains(key) && indexOf(key) >= 0)) {
+                return null;
+            }
+        }
+
+        replaceEntries(first + 1, last + 1, entries,
+                newCommentStarts, newStarts, newEnds, delta);
+        length = newLength;
+        return new Region(replacedKeys, entries);
+    }
+
+    /**
+     * Replaces a range of mapped entries and shifts the entries following
+     * them.
+     * @param from first entry to replace
+     * @param to index following the last entry to replace
+     * @param entries replacement entries
+     * @param newCommentStarts replacement entry comment start positions
+     * @param newStarts replacement entry start positions
+     * @param newEnds replacement entry end positions
+     * @param delta how much entries following the range are shifted
+     */
+    private void replaceEntries(int from, int to, List<BundleEntry> entries,
+            int[] newCommentStarts, int[] newStarts, int[] newEnds,
+            int delta) {
+        int addedCount = entries.size();
+        boolean keepIndexes = keyIndexes != null && addedCount == to - from;
+        if (keepIndexes) {
+            // following entries keep their index
+            for (int i = from; i < to; i++) {
+                keyIndexes.remove(mappedKeys[i]);
+            }
+        } else {
+            keyIndexes = null;
+        }
+        int tailCount = entryCount - to;
+        int newCount = from + addedCount + tailCount;
+        ensureCapacity(newCount);
+        int tailStart = from + addedCount;
+        System.arraycopy(entryEnds, to, entryEnds, tailStart, tailCount);
+        System.arraycopy(
+                commentStarts, to, commentStarts, tailStart, tailCount);
+        System.arraycopy(entryStarts, to, entryStarts, tailStart, tailCount);
+        System.arraycopy(mappedKeys, to, mappedKeys, tailStart, tailCount);
+        for (int i = 0; i < addedCount; i++) {
+            commentStarts[from + i] = newCommentStarts[i];
+            entryStarts[from + i] = newStarts[i];
+            entryEnds[from + i] = newEnds[i];
+            mappedKeys[from + i] = entries.get(i).getKey();
+            if (keepIndexes) {
+                putKeyIndex(from + i);
+            }
+        }
+        if (delta != 0) {
+            for (int i = tailStart; i < newCount; i++) {
+                commentStarts[i] += delta;
+                entryStarts[i] += delta;
+                entryEnds[i] += delta;
+            }
+        }
+        Arrays.fill(mappedKeys, newCount,
+                Math.max(newCount, entryCount), null);
+        entryCount = newCount;
+    }
+
+    /**
+     * Finds the last entry ending strictly before the given position.
+     * @param position a source position
+     * @return entry index, or -1 if none
+     */
+    private int findLastEntryBefore(int position) {
+        int index = Arrays.binarySearch(entryEnds, 0, entryCount, position);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index - 1;
+    }
+
+    /**
+     * Indexes the key of a mapped entry, unless blank.
+     * @param index entry index
+     */
+    private void putKeyIndex(int index) {
+        String key = mappedKeys[index];
+        if (!isBlank(key)) {
+            keyIndexes.put(key, Integer.valueOf(index));
+        }
+    }
+
+    /**
+     * Makes sure entry arrays can hold the given number of entries.
+     * @param capacity required capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > entryEnds.length) {
+            int newCapacity = Math.max(capacity, entryEnds.length * 2);
+            entryEnds = Arrays.copyOf(entryEnds, newCapacity);
+            commentStarts = Arrays.copyOf(commentStarts, newCapacity);
+            entryStarts = Arrays.copyOf(entryStarts, newCapacity);
+            mappedKeys = Arrays.copyOf(mappedKeys, newCapacity);
+        }
+    }
+
+    /**
+     * Whether a key is ignored when added to a bundle.
+     * @param key entry key
+     * @return <code>true</code> if blank
+     */
+    private static boolean isBlank(String key) {
+        return key.trim().length() == 0;
+    }
+
+    /**
+     * Entries re-parsed from an edited source region.
+     */
+    public static final class Region {
+        private final Collection<String> replacedKeys;
+        private final Collection<BundleEntry> entries;
+
+        private Region(Collection<String> replacedKeys,
+                Collection<BundleEntry> entries) {
+            super();
+            this.replacedKeys = replacedKeys;
+            this.entries = entries;
+        }
+
+        /**
+         * Gets the keys of the entries found in the region before it was
+         * edited.
+         * @return replaced keys
+         */
+        public Collection<String> getReplacedKeys() {
+            return replacedKeys;
+        }
+
+        /**
+         * Gets the entries now found in the region.
+         * @return bundle entries
+         */
+        public Collection<BundleEntry> getEntries() {
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that re-parsing edited regions gives the same bundle as parsing
+ * the whole edited source.
+ */
+public class PropertiesSourceMapTest {
+
+    private static final String[] FRAGMENTS = {
+        "key", "a.b", "=", ":", " ", "\\", "\\\\", "\\n", "#", "##", "!",
+        "value", "\\u00e9", "\n", "\n", "\n", "\r\n", "\r", "x = y\n",
+        "# comment\n", "##c = d\n", "k\\\n  v\n",
+    };
+
+    @Test
+    public void testSameAsFullParse() {
+        Random random = new Random(42);
+        int incremental = 0;
+        int full = 0;
+        for (int i = 0; i < 300; i++) {
+            StringBuilder text = new StringBuilder(BundleFixtures.generateLayout(random));
+            PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+            BundleGroup group = new BundleGroup();
+            group.addBundle(Locale.ENGLISH,
+                    PropertiesParser.parse(text, sourceMap));
+            for (int j = 0; j < 20; j++) {
+                int prefix = Integer.MAX_VALUE;
+                int suffix = Integer.MAX_VALUE;
+                int edits = 1 + random.nextInt(3);
+                for (int k = 0; k < edits; k++) {
+                    int offset = random.nextInt(text.length() + 1);
+                    int length = Math.min(random.nextInt(6),
+                            text.length() - offset);
+                    prefix = Math.min(prefix, offset);
+                    suffix = Math.min(
+                            suffix, text.length() - offset - length);
+                    text.replace(offset, offset + length,
+                            FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                }
+                PropertiesSourceMap.Region region =
+                        sourceMap.reparse(text, prefix, suffix);
+                if (region != null) {
+                    group.updateBundle(Locale.ENGLISH,
+                            region.getReplacedKeys(), region.getEntries());
+                    incremental++;
+                } else {
+                    group.addBundle(Locale.ENGLISH,
+                            PropertiesParser.parse(text, sourceMap));
+                    full++;
+                }
+                Bundle expected = PropertiesParser.parse(text.toString());
+                BundleFixtures.assertSameBundle(text.toString(),
+                        expected, group.getBundle(Locale.ENGLISH));
+                Assert.assertEquals(expected.getKeys(), group.getKeys());
+            }
+        }
+        // both incremental and full parses must have been exercised
+        Assert.assertTrue(incremental > 0 && full > 0);
+    }
+
+    @Test
+    public void testReparseInsertions() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("# comment ").append(i).append('\n');
+            text.append("group").append(i / 10).append(".key").append(i)
+                    .append(" = some value for key ").append(i).append('\n');
+        }
+        PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+        BundleGroup group = new BundleGroup();
+        group.addBundle(Locale.ENGLISH,
+                PropertiesParser.parse(text.toString(), sourceMap));
+        for (int i = 0; i < 50; i++) {
+            int offset = text.length() / 2 + i * 40;
+            text.insert(offset, 'x');
+            PropertiesSourceMap.Region region = sourceMap.reparse(
+                    text, offset, text.length() - offset - 1);
+            Assert.assertNotNull(region);
+            group.updateBundle(Locale.ENGLISH,
+                    region.getReplacedKeys(), region.getEntries());
+        }
+        BundleFixtures.assertSameBundle(null, PropertiesParser.parse(text.toString()),
+                group.getBundle(Locale.ENGLISH));
+    }
+
+    @Test
+    public void testEntriesParsedAgain() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i++) {
+            String text = BundleFixtures.generateLayout(random);
+            PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+            Bundle bundle = PropertiesParser.parse(text, sourceMap);
+            Assert.assertTrue(text, sourceMap.isValid());
+            for (int j = 0; j < sourceMap.getEntryCount(); j++) {
+                String key = sourceMap.getKey(j);
+                Assert.assertEquals(text, bundle.getEntry(key),
+                        sourceMap.parseEntry(text, j));
+            }
+        }
+        PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+        PropertiesParser.parse("a = 1\nb = 2\na = 3\n", sourceMap);
+        Assert.assertFalse(sourceMap.isValid());
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map split in segments by key hash, so that a snapshot of it shares
+ * the segments and only copies their list.  A segment shared with
+ * snapshots is copied the first time one of its mappings is modified,
+ * which costs no more than the segment size whatever the map size.  The
+ * number of segments grows with the map.  Values which are modified in
+ * place are copied along with their segment by {@link #copyValue(Object)}.
+ * Keys and values cannot be <code>null</code>.
+ * @param <K> type of keys
+ * @param <V> type of values
+ * @author Pascal Essiembre
+ * @see ChunkedIntArray
+ */
+/*default*/ class SegmentedMap<K, V> {
+
+    /** Average number of mappings per segment above which segments split. */
+    private static final int SEGMENT_SIZE = 512;
+
+    /** Segments, their number being a power of two. */
+    private Map<K, V>[] segments;
+    /** Whether each segment is shared with snapshots. */
+    private boolean[] shared;
+    /** Number of key hash bits selecting a segment. */
+    private int segmentBits;
+    /** Number of mappings. */
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    /*default*/ SegmentedMap() {
+        super();
+        segments = newSegments(1);
+        shared = new boolean[1];
+    }
+
+    /**
+     * Copies the value of a mapping, when the segment holding it stops
+     * being shared with snapshots.  Values are not copied by default.
+     * @param value value to copy
+     * @return the copy
+     */
+    /*default*/ V copyValue(V value) {
+        return value;
+    }
+
+    /**
+     * Gets the value of a key.
+     * @param key a key
+     * @return value, or <code>null</code> if the key is not mapped
+     */
+    /*default*/ V get(Object key) {
+        return segments[getSegment(key)].get(key);
+    }
+
+    /**
+     * Gets the value of a key, to be modified in place.  Its segment is
+     * copied first if shared, along with the value.
+     * @param key a key
+     * @return value, or <code>null</code> if the key is not mapped
+     */
+    /*default*/ V getWritable(Object key) {
+        return getWritableSegment(getSegment(key)).get(key);
+    }
+
+    /**
+     * Whether a key is mapped.
+     * @param key a key
+     * @return <code>true</code> if mapped
+     */
+    /*default*/ boolean containsKey(Object key) {
+        return segments[getSegment(key)].containsKey(key);
+    }
+
+    /**
+     * Maps a key to a value, copying its segment first if shared.
+     * @param key a key
+     * @param value value
+     * @return previous value, or <code>null</code> if the key was not mapped
+     */
+    /*default*/ V put(K key, V value) {
+        V oldValue = getWritableSegment(getSegment(key)).put(key, value);
+        if (oldValue == null) {
+            size++;
+            if (size > segments.length * SEGMENT_SIZE) {
+                split();
+            }
+        }
+        return oldValue;
+    }
+
+    /**
+     * Removes the mapping of a key, copying its segment first if shared.
+     * @param key a key
+     * @return removed value, or <code>null</code> if the key was not mapped
+     */
+    /*default*/ V remove(Object key) {
+        int segment = getSegment(key);
+        if (!segments[segment].containsKey(key)) {
+            return null;
+        }
+        size--;
+        return getWritableSegment(segment).remove(key);
+    }
+
+    /**
+     * Gets the number of mappings.
+     * @return mapping count
+     */
+    /*default*/ int size() {
+        return size;
+    }
+
+    /**
+     * Iterates through keys, in no particular order.
+     * @return an iterator
+     */
+    /*default*/ Iterator<K> keyIterator() {
+        return new SegmentIterator<K>() {
+            @Override
+            Iterator<K> iterator(Map<K, V> segment) {
+                return segment.keySet().iterator();
+            }
+        };
+    }
+
+    /**
+     * Iterates through values, in no particular order.
+     * @return an iterator
+     */
+    /*default*/ Iterator<V> valueIterator() {
+        return new SegmentIterator<V>() {
+            @Override
+            Iterator<V> iterator(Map<K, V> segment) {
+                return segment.values().iterator();
+            }
+        };
+    }
+
+    /**
+     * Gets a map sharing the segments of this one, never modified
+     * afterwards.  Segments are copied by whichever map is next modified.
+     * @return read-only map
+     */
+    /*default*/ SegmentedMap<K, V> snapshot() {
+        Arrays.fill(shared, true);
+        SegmentedMap<K, V> snapshot = new SegmentedMap<>();
+        snapshot.segments = segments.clone();
+        snapshot.shared = shared.clone();
+        snapshot.segmentBits = segmentBits;
+        snapshot.size = size;
+        return snapshot;
+    }
+
+    /**
+     * Gets the segment of a key, from the high bits of its scrambled hash
+     * so that segments do not only hold keys falling in the same buckets.
+     * @param key a key
+     * @return segment index
+     */
+    private int getSegment(Object key) {
+        if (segmentBits == 0) {
+            return 0;
+        }
+        return (key.hashCode() * 0x9E3779B9) >>> (32 - segmentBits);
+    }
+
+    /**
+     * Gets a segment to modify, copying it first if shared.
+     * @param segment segment index
+     * @return segment
+     */
+    private Map<K, V> getWritableSegment(int segment) {
+        if (shared[segment]) {
+            Map<K, V> copy = new HashMap<>(segments[segment]);
+            for (Map.Entry<K, V> mapping : copy.entrySet()) {
+                mapping.setValue(copyValue(mapping.getValue()));
+            }
+            segments[segment] = copy;
+            shared[segment] = false;
+        }
+        return segments[segment];
+    }
+
+    /**
+     * Doubles the number of segments, moving all mappings to new segments.
+     */
+    private void split() {
+        Map<K, V>[] oldSegments = segments;
+        boolean[] oldShared = shared;
+        segmentBits++;
+        segments = newSegments(oldSegments.length * 2);
+        shared = new boolean[segments.length];
+        for (int i = 0; i < oldSegments.length; i++) {
+            for (Map.Entry<K, V> mapping : oldSegments[i].entrySet()) {
+                V value = mapping.getValue();
+                segments[getSegment(mapping.getKey())].put(mapping.getKey(),
+                        oldShared[i] ? copyValue(value) : value);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Map<K, V>[] newSegments(int count) {
+        Map<K, V>[] segments = new Map[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new HashMap<>();
+        }
+        return segments;
+    }
+
+    /**
+     * Iterates through the mappings of all segments.
+     * @param <T> type of iterated elements
+     */
+    private abstract class SegmentIterator<T> implements Iterator<T> {
+        private final Map<K, V>[] iterated = segments;
+        private int segment;
+        private Iterator<T> iterator = Collections.emptyIterator();
+
+        abstract Iterator<T> iterator(Map<K, V> segment);
+
+        @Override
+        public boolean hasNext() {
+            while (!iterator.hasNext()) {
+                if (segment == iterated.length) {
+                    return false;
+                }
+                iterator = iterator(iterated[segment++]);
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Read-only sorted view of the keys of a bundle, filtering the sorted keys
+ * of its group by those stored in the bundle.  Bundles storing entries in
+ * columns use it so that keys are sorted once per group rather than once
+ * per bundle.
+ * @author Pascal Essiembre
+ * @see ColumnarEntryStore
+ */
+/*default*/ final class StoredKeySet extends AbstractSet<String>
+        implements SortedSet<String> {
+
+    /** Sorted group keys, or a range of them. */
+    private final NavigableSet<String> groupKeys;
+    /** Store of bundle entries. */
+    private final EntryStore store;
+    /** Whether group keys are not restricted to a range. */
+    private final boolean whole;
+
+    /**
+     * Constructor.
+     * @param groupKeys sorted group keys
+     * @param store store of bundle entries
+     */
+    /*default*/ StoredKeySet(NavigableSet<String> groupKeys, EntryStore store) {
+        this(groupKeys, store, true);
+    }
+
+    private StoredKeySet(
+            NavigableSet<String> groupKeys, EntryStore store, boolean whole) {
+        super();
+        this.groupKeys = groupKeys;
+        this.store = store;
+        this.whole = whole;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new StoredKeyIterator(groupKeys.iterator());
+    }
+
+    @Override
+    public int size() {
+        if (whole) {
+            return store.size();
+        }
+        int size = 0;
+        for (Iterator<String> iter = iterator(); iter.hasNext();) {
+            iter.next();
+            size++;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String && store.contains((String) o)
+                && (whole || groupKeys.contains(o));
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+        return null;
+    }
+
+    @Override
+    public SortedSet<String> subSet(String fromElement, String toElement) {
+        return new StoredKeySet(groupKeys.subSet(
+                fromElement, true, toElement, false), store, false);
+    }
+
+    @Override
+    public SortedSet<String> headSet(String toElement) {
+        return new StoredKeySet(
+                groupKeys.headSet(toElement, false), store, false);
+    }
+
+    @Override
+    public SortedSet<String> tailSet(String fromElement) {
+        return new StoredKeySet(
+                groupKeys.tailSet(fromElement, true), store, false);
+    }
+
+    @Override
+    public String first() {
+        Iterator<String> iter = iterator();
+        if (!iter.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return iter.next();
+    }
+
+    @Override
+    public String last() {
+        Iterator<String> iter =
+                new StoredKeyIterator(groupKeys.descendingIterator());
+        if (!iter.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return iter.next();
+    }
+
+    /**
+     * Iterates through group keys stored in the bundle.
+     */
+    private final class StoredKeyIterator implements Iterator<String> {
+        private final Iterator<String> groupIterator;
+        private String next;
+
+        StoredKeyIterator(Iterator<String> groupIterator) {
+            super();
+            this.groupIterator = groupIterator;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && groupIterator.hasNext()) {
+                String key = groupIterator.next();
+                if (store.contains(key)) {
+                    next = key;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            String key = next;
+            advance();
+            return key;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+
+/**
+ * Converts &#92;uxxxx (and other escaped) sequences to unicode characters
+ * and back.  Strings are scanned first and returned as is when there is
+ * nothing to convert, which is the case of most values.  Otherwise,
+ * characters are converted into a buffer reused by each thread, so that
+ * only the resulting string gets allocated.
+ * @author Pascal Essiembre
+ * @see PropertiesParser#convertEncodedToUnicode(String)
+ * @see PropertiesGenerator#convertUnicodeToEncoded(String, boolean)
+ */
+/*default*/ final class UnicodeCodec {
+
+    /** Largest buffer kept by a thread between conversions. */
+    private static final int MAX_KEPT_BUFFER = 8 * 1024;
+
+    /** Upper case hexadecimal digits. */
+    private static final char[] UPPER_DIGITS =
+            "0123456789ABCDEF".toCharArray();
+    /** Lower case hexadecimal digits. */
+    private static final char[] LOWER_DIGITS =
+            "0123456789abcdef".toCharArray();
+    /** Values of hexadecimal digits, indexed by character, -1 if none. */
+    private static final byte[] DIGIT_VALUES = new byte['f' + 1];
+    static {
+        for (int i = 0; i < DIGIT_VALUES.length; i++) {
+            DIGIT_VALUES[i] = -1;
+        }
+        for (int i = 0; i < UPPER_DIGITS.length; i++) {
+            DIGIT_VALUES[UPPER_DIGITS[i]] = (byte) i;
+            DIGIT_VALUES[LOWER_DIGITS[i]] = (byte) i;
+        }
+    }
+
+    /** Conversion buffer of each thread. */
+    private static final ThreadLocal<char[]> BUFFER =
+            new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[256];
+        }
+    };
+
+    /**
+     * Constructor.
+     */
+    private UnicodeCodec() {
+        super();
+    }
+
+    /**
+     * Converts encoded &#92;uxxxx to unicode chars and changes special saved
+     * chars to their original forms.
+     * @param str the string to convert
+     * @return converted string, or <code>str</code> itself when there is
+     *         nothing to convert
+     */
+    /*default*/ static String decode(String str) {
+        int start = str.indexOf('\\');
+        if (start == -1) {
+            return str;
+        }
+        int len = str.length();
+        // decoded strings are never longer
+        char[] out = getBuffer(len);
+        str.getChars(0, start, out, 0);
+        int count = start;
+        int x = start;
+        while (x < len) {
+            char aChar = str.charAt(x++);
+            if (aChar != '\\' || x == len) {
+                out[count++] = aChar;
+                continue;
+            }
+            aChar = str.charAt(x++);
+            if (aChar == 'u' && x + 4 <= len) {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    aChar = str.charAt(x++);
+                    int digit = aChar < DIGIT_VALUES.length
+                            ? DIGIT_VALUES[aChar] : -1;
+                    if (digit != -1) {
+                        value = (value << 4) + digit;
+                    } else {
+                        value = aChar;
+                        System.err.println(RBEPlugin.getString(
+                                "error.init.badencoding") + str);
+                    }
+                }
+                out[count++] = (char) value;
+            } else {
+                if (aChar == 't') {
+                    aChar = '\t';
+                } else if (aChar == 'r') {
+                    aChar = '\r';
+                } else if (aChar == 'n') {
+                    aChar = '\n';
+                } else if (aChar == 'f') {
+                    aChar = '\f';
+                } else if (aChar == 'u') {
+                    out[count++] = '\\';
+                }
+                out[count++] = aChar;
+            }
+        }
+        return new String(out, 0, count);
+    }
+
+    /**
+     * Converts unicodes (and control characters) to encoded &#92;uxxxx.
+     * @param str string to convert
+     * @param upperCase whether to use upper case hexadecimal digits
+     * @return converted string, or <code>str</code> itself when there is
+     *         nothing to convert
+     */
+    /*default*/ static String encode(String str, boolean upperCase) {
+        int len = str.length();
+        int start = -1;
+        int encodedCount = 0;
+        for (int x = 0; x < len; x++) {
+            if (mustEncode(str.charAt(x))) {
+                if (start == -1) {
+                    start = x;
+                }
+                encodedCount++;
+            }
+        }
+        if (encodedCount == 0) {
+            return str;
+        }
+        char[] digits = upperCase ? UPPER_DIGITS : LOWER_DIGITS;
+        // each encoded character takes 5 more characters
+        char[] out = getBuffer(len + encodedCount * 5);
+        str.getChars(0, start, out, 0);
+        int count = start;
+        for (int x = start; x < len; x++) {
+            char aChar = str.charAt(x);
+            if (mustEncode(aChar)) {
+                out[count++] = '\\';
+                out[count++] = 'u';
+                out[count++] = digits[(aChar >> 12) & 0xF];
+                out[count++] = digits[(aChar >> 8) & 0xF];
+                out[count++] = digits[(aChar >> 4) & 0xF];
+                out[count++] = digits[aChar & 0xF];
+            } else {
+                out[count++] = aChar;
+            }
+        }
+        return new String(out, 0, count);
+    }
+
+    /**
+     * Appends a character to a buffer, converted to encoded &#92;uxxxx
+     * if needed.
+     * @param out buffer to append to
+     * @param aChar character to append
+     * @param upperCase whether to use upper case hexadecimal digits
+     */
+    /*default*/ static void appendEncoded(
+            StringBuilder out, char aChar, boolean upperCase) {
+        if (!mustEncode(aChar)) {
+            out.append(aChar);
+            return;
+        }
+        char[] digits = upperCase ? UPPER_DIGITS : LOWER_DIGITS;
+        out.append('\\');
+        out.append('u');
+        out.append(digits[(aChar >> 12) & 0xF]);
+        out.append(digits[(aChar >> 8) & 0xF]);
+        out.append(digits[(aChar >> 4) & 0xF]);
+        out.append(digits[aChar & 0xF]);
+    }
+
+    /**
+     * Whether a character is written as &#92;uxxxx.
+     * @param aChar character
+     * @return <code>true</code> if encoded
+     */
+    private static boolean mustEncode(char aChar) {
+        return aChar < 0x0020 || aChar > 0x007e;
+    }
+
+    /**
+     * Gets the buffer of the current thread, with at least the given
+     * capacity.  Large buffers are not kept, so that an occasional huge
+     * value does not hold memory.
+     * @param capacity required capacity
+     * @return buffer
+     */
+    private static char[] getBuffer(int capacity) {
+        char[] buffer = BUFFER.get();
+        if (buffer.length < capacity) {
+            buffer = new char[Math.max(capacity, buffer.length * 2)];
+            if (buffer.length <= MAX_KEPT_BUFFER) {
+                BUFFER.set(buffer);
+            }
+        }
+        return buffer;
+    }
+}
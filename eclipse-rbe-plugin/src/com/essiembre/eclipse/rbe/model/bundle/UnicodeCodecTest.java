@@ -0,0 +1,57 @@
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks unicode escape conversions, and that strings with nothing to
+ * convert are returned as is.
+ */
+public class UnicodeCodecTest {
+
+    private static final String CHARS =
+            "abc XYZ=:#!\t\n\r\f\u00e9\u00e8\u4e2d\u6587\u0001\u007f\uffff";
+
+    @Test
+    public void testUnchanged() {
+        String plain = "some plain value";
+        Assert.assertSame(plain, UnicodeCodec.decode(plain));
+        Assert.assertSame(plain, UnicodeCodec.encode(plain, true));
+    }
+
+    @Test
+    public void testDecode() {
+        Assert.assertEquals("\u00e9t\u00e9", UnicodeCodec.decode(
+                "\\u00e9t\\u00E9"));
+        Assert.assertEquals("a\tb\rc\nd\fe:f\\", UnicodeCodec.decode(
+                "a\\tb\\rc\\nd\\fe\\:f\\"));
+        // truncated escapes are kept
+        Assert.assertEquals("x\\u00", UnicodeCodec.decode("x\\u00"));
+    }
+
+    @Test
+    public void testEncode() {
+        Assert.assertEquals("\\u00E9t\\u4E2D",
+                UnicodeCodec.encode("\u00e9t\u4e2d", true));
+        Assert.assertEquals("\\u00e9t\\u4e2d\\u000a",
+                UnicodeCodec.encode("\u00e9t\u4e2d\n", false));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            // long enough strings to exceed kept buffers
+            int length = random.nextInt(i % 100 == 0 ? 5000 : 50);
+            StringBuilder buf = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                buf.append(CHARS.charAt(random.nextInt(CHARS.length())));
+            }
+            String str = buf.toString();
+            Assert.assertEquals(str, UnicodeCodec.decode(
+                    UnicodeCodec.encode(str, random.nextBoolean())));
+        }
+    }
+}
@@ -47,9 +47,9 @@ public class DuplicateValuesVisitor extends BundleVisitorAdapter {
     public void visitBundleEntry(BundleEntry entry, Object passAlongArgument) {
         
         BundleEntry entryToMatch = (BundleEntry) passAlongArgument;
-        if (entry != entryToMatch
-                && entry != null && entryToMatch != null
-                && entry.getValue().length() > 0
+        if (entry != null && entryToMatch != null
+                && !entry.isSameEntry(entryToMatch)
+                && !entry.hasEmptyValue()
                 && entry.getValue().equals(entryToMatch.getValue())) {
             duplicates.add(entry);
         }
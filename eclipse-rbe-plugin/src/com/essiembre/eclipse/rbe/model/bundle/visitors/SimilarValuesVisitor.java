@@ -54,9 +54,9 @@ public class SimilarValuesVisitor extends BundleVisitorAdapter {
     public void visitBundleEntry(BundleEntry entry, Object passAlongArgument) {
         
         BundleEntry entryToMatch = (BundleEntry) passAlongArgument;
-        if (entry != entryToMatch
-                && entry != null && entryToMatch != null
-                && entry.getValue().length() > 0
+        if (entry != null && entryToMatch != null
+                && !entry.isSameEntry(entryToMatch)
+                && !entry.hasEmptyValue()
                 && analyzer.analyse(
                         entry.getValue().toLowerCase(), 
                         entryToMatch.getValue().toLowerCase())
@@ -6,9 +6,9 @@
  */
 package com.essiembre.eclipse.rbe.model.tree;
 
-import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -19,8 +19,8 @@ import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.Model;
 import com.essiembre.eclipse.rbe.model.bundle.Bundle;
-import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroupDelta;
 import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
 
 /**
@@ -31,7 +31,7 @@ import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
 public class KeyTree extends Model implements IKeyTreeVisitable {
 
     /** Caching of key tree items (key=ID; value=KeyTreeItem). **/
-    private final Map<String, KeyTreeItem> keyItemsCache = new TreeMap<String, KeyTreeItem>();
+    private final NavigableMap<String, KeyTreeItem> keyItemsCache = new TreeMap<String, KeyTreeItem>();
     /** Items found at root level. */
     private final Set<KeyTreeItem>         rootKeyItems  = new TreeSet<KeyTreeItem>();
     /** Updater responsible for tree changes. */
@@ -57,6 +57,8 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
             @Override
             public void add(DeltaEvent event) {
                 KeyTree.this.initBundle((Bundle) event.receiver());
+                // keys not defined by the new bundle are now missing in it
+                KeyTree.this.updateMissingValues();
             }
 
 
@@ -68,7 +70,9 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
 
             @Override
             public void modify(DeltaEvent event) {
-                // do nothing
+                if (event.receiver() instanceof BundleGroupDelta) {
+                    KeyTree.this.applyDelta((BundleGroupDelta) event.receiver());
+                }
             }
 
 
@@ -94,29 +98,29 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
 
             @Override
             public void add(DeltaEvent event) {
-                // TODO figure out how to filter event that do not add keys.
-                // Probably not necessary with plugin rewrite.
-                String key = ((BundleEntry) event.receiver()).getKey();
-                KeyTree.this.addKey(key);
+                String key = event.key();
+                if (!KeyTree.this.keyItemsCache.containsKey(key)) {
+                    KeyTree.this.addKey(key);
+                } else {
+                    KeyTree.this.modifyKey(key);
+                }
             }
 
 
             @Override
             public void remove(DeltaEvent event) {
-                String key = ((BundleEntry) event.receiver()).getKey();
-                Collection<BundleEntry> entries = KeyTree.this.bundleGroup.getBundleEntries(key);
-                if (entries.size() == 0) {
-                    KeyTree.this.removeKey(((BundleEntry) event.receiver()).getKey());
+                String key = event.key();
+                if (!KeyTree.this.bundleGroup.containsKey(key)) {
+                    KeyTree.this.removeKey(key);
+                } else {
+                    KeyTree.this.modifyKey(key);
                 }
             }
 
 
             @Override
             public void modify(DeltaEvent event) {
-                // TODO figure out how to filter event that do not modify keys.
-                // Probably not necessary with plugin rewrite.
-                String key = ((BundleEntry) event.receiver()).getKey();
-                KeyTree.this.modifyKey(key);
+                KeyTree.this.modifyKey(event.key());
             }
 
 
@@ -170,6 +174,7 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      */
     public void addKey(String key) {
         this.updater.addKey(this, key);
+        this.updateMissingValue(key);
         this.fireAdd(this.keyItemsCache.get(key));
     }
 
@@ -185,16 +190,72 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
     }
 
 
+    /**
+     * Adds and removes the keys changed by a batch of bundle group changes,
+     * refreshing the whole tree once.
+     * @param delta bundle group changes
+     */
+    public void applyDelta(BundleGroupDelta delta) {
+        if (delta.getKeys().isEmpty()) {
+            return;
+        }
+        for (String key : delta.getKeys()) {
+            if (this.bundleGroup.containsKey(key)) {
+                this.updater.addKey(this, key);
+                this.updateMissingValue(key);
+            } else {
+                this.updater.removeKey(this, key);
+            }
+        }
+        if (this.getFilter() != null) {
+            this.filterKeyItems(this.getFilter());
+        }
+        // like on load, adding the tree itself refreshes it entirely
+        this.fireAdd(this);
+    }
+
+
     /**
      * Modifies a key on this tree.
      * @param key key to modify
      */
     public void modifyKey(String key) {
         Object item = this.keyItemsCache.get(key);
+        this.updateMissingValue(key);
         this.fireModify(item);
     }
 
 
+    /**
+     * Updates whether the item of a key is missing a value, from the key status
+     * kept by the bundle group, so that items know whether they or their nested
+     * children are missing a value without looking at bundle entries.
+     * @param key key of the item to update
+     */
+    private void updateMissingValue(String key) {
+        KeyTreeItem item = this.keyItemsCache.get(key);
+        if (item != null) {
+            item.setMissingValue(this.isMissingValue(key));
+        }
+    }
+
+
+    /**
+     * Updates whether each item is missing a value.
+     */
+    private void updateMissingValues() {
+        for (KeyTreeItem item : this.keyItemsCache.values()) {
+            item.setMissingValue(this.isMissingValue(item.getId()));
+        }
+    }
+
+
+    private boolean isMissingValue(String key) {
+        int status = this.bundleGroup.getKeyStatus(key);
+        return (status & (BundleGroup.KEY_MISSING | BundleGroup.KEY_EMPTY)) != 0;
+    }
+
+
     /**
      * Marks a key as selected on this tree.
      * @param key  key to select.
@@ -212,20 +273,12 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
     }
 
 
+    /**
+     * Marks the key following the selected one as selected on this tree.
+     */
     public void selectNextKey() {
         String currentKey = this.getSelectedKey();
-        boolean takeNext = false;
-        String nextKey = null;
-        for (String key : this.keyItemsCache.keySet()) {
-            if (takeNext) {
-                nextKey = key;
-                break;
-            }
-            if (key.equals(currentKey)) {
-                takeNext = true;
-            }
-        }
-
+        String nextKey = currentKey != null ? this.keyItemsCache.higherKey(currentKey) : null;
         if (nextKey != null) {
             this.selectKey(nextKey);
         }
@@ -288,6 +341,7 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
              */
             this.updater.addKey(this, iter.next());
         }
+        this.updateMissingValues();
         if (this.getFilter() != null) {
             this.filterKeyItems(this.getFilter());
         }
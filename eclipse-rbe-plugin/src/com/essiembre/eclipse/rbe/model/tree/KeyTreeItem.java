@@ -37,6 +37,10 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
     private Object parent;
     /** Child items. */
     private final SortedSet<KeyTreeItem> children = new TreeSet<KeyTreeItem>();
+    /** Whether bundle entries of this item key are missing a value. */
+    private boolean missingValue;
+    /** Number of nested children missing a value. */
+    private int missingChildCount;
     
     /**
      * Constructor.
@@ -121,14 +125,87 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
      * @param item child to add
      */
     public void addChildren(KeyTreeItem item) {
-        children.add(item);
+        if (children.add(item)) {
+            addMissingChildCount(item.getMissingCount());
+        }
     }
     /**
      * Removes a child from this item.
      * @param item child to remove
      */
     public void removeChildren(KeyTreeItem item) {
-        children.remove(item);
+        if (children.remove(item)) {
+            addMissingChildCount(-item.getMissingCount());
+        }
+    }
+
+    /**
+     * Checks whether the bundle entries of this item key are missing a
+     * value, as last set by the key tree.
+     * @return <code>true</code> if missing a value
+     */
+    public boolean isMissingValue() {
+        return missingValue;
+    }
+    /**
+     * Sets whether the bundle entries of this item key are missing a value,
+     * counting this item as missing a value in its parents.
+     * @param missingValue <code>true</code> if missing a value
+     */
+    /*default*/ void setMissingValue(boolean missingValue) {
+        if (this.missingValue != missingValue) {
+            this.missingValue = missingValue;
+            KeyTreeItem parentItem = getParentItem();
+            if (parentItem != null) {
+                parentItem.addMissingChildCount(missingValue ? 1 : -1);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a child of this item, from any level, is missing a
+     * value.  Unlike looking at nested children, this does not visit them.
+     * @return <code>true</code> if a nested child is missing a value
+     */
+    public boolean isMissingChildValue() {
+        return missingChildCount > 0;
+    }
+
+    /**
+     * Gets the number of items missing a value, among this item and its
+     * nested children.
+     * @return item count
+     */
+    private int getMissingCount() {
+        return missingChildCount + (missingValue ? 1 : 0);
+    }
+
+    /**
+     * Adds to the number of nested children missing a value of this item
+     * and its parents.
+     * @param count number of items to add, negative to remove some
+     */
+    private void addMissingChildCount(int count) {
+        if (count == 0) {
+            return;
+        }
+        for (KeyTreeItem item = this; item != null;
+                item = item.getParentItem()) {
+            item.missingChildCount += count;
+        }
+    }
+
+    /**
+     * Gets the parent item holding this item as a child.
+     * @return parent item, or <code>null</code> if at root level or
+     *         removed from its parent
+     */
+    private KeyTreeItem getParentItem() {
+        if (parent instanceof KeyTreeItem
+                && ((KeyTreeItem) parent).children.contains(this)) {
+            return (KeyTreeItem) parent;
+        }
+        return null;
     }
     
     /**
@@ -0,0 +1,108 @@
+package com.essiembre.eclipse.rbe.model.tree;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
+
+/**
+ * Checks that the key status kept by a bundle group, and the missing values
+ * kept by key tree items, match the bundle entries as they change.
+ */
+public class KeyTreeTest {
+
+    private static final Locale[] LOCALES = {
+            Locale.ENGLISH, Locale.FRENCH, Locale.GERMAN };
+
+    @Test
+    public void testStatusFollowsChanges() {
+        Random random = new Random(42);
+        BundleGroup group = new BundleGroup();
+        group.addBundle(Locale.ENGLISH, PropertiesParser.parse(
+                "g1 = a\ng1.k1 = b\ng2.k1 =\n"));
+        group.addBundle(Locale.FRENCH, PropertiesParser.parse(
+                "g1 = a\ng1.k1 = b\n"));
+        KeyTree tree = new KeyTree(group, new GroupedKeyTreeUpdater("."));
+        assertStatus(tree);
+        Assert.assertTrue(tree.getKeyTreeItem("g2.k1").isMissingValue());
+        Assert.assertTrue(tree.getKeyTreeItem("g2").isMissingChildValue());
+        Assert.assertFalse(tree.getKeyTreeItem("g1").isMissingChildValue());
+
+        for (int i = 0; i < 2000; i++) {
+            String key = "g" + random.nextInt(4);
+            if (random.nextBoolean()) {
+                key += ".k" + random.nextInt(4);
+            }
+            Locale locale = LOCALES[random.nextInt(2)];
+            switch (random.nextInt(6)) {
+            case 0:
+                group.removeKey(key);
+                break;
+            case 1:
+                group.commentKey(key);
+                break;
+            case 2:
+                group.uncommentKey(key);
+                break;
+            default:
+                group.addBundleEntry(locale, new BundleEntry(key,
+                        random.nextInt(4) == 0 ? "" : "v", null,
+                        random.nextInt(4) == 0));
+            }
+            if (i == 1000) {
+                group.addBundle(Locale.GERMAN, PropertiesParser.parse(
+                        "g1 = a\n"));
+            }
+            assertStatus(tree);
+        }
+    }
+
+    private static void assertStatus(KeyTree tree) {
+        BundleGroup group = tree.getBundleGroup();
+        for (KeyTreeItem item : tree.getKeyItemsCache().values()) {
+            String key = item.getId();
+            Assert.assertEquals(key, isMissingValue(group, key),
+                    item.isMissingValue());
+            boolean missingChild = false;
+            for (KeyTreeItem child : item.getNestedChildren()) {
+                missingChild |= isMissingValue(group, child.getId());
+            }
+            Assert.assertEquals(key, missingChild, item.isMissingChildValue());
+
+            int commented = 0;
+            Collection<BundleEntry> entries = group.getBundleEntries(key);
+            for (BundleEntry entry : entries) {
+                commented += entry.isCommented() ? 1 : 0;
+            }
+            int status = group.getKeyStatus(key);
+            Assert.assertEquals(key, commented > 0,
+                    (status & BundleGroup.KEY_COMMENTED) != 0);
+            Assert.assertEquals(key, commented > 0
+                    && commented < entries.size(),
+                    (status & BundleGroup.KEY_PARTIALLY_COMMENTED) != 0);
+        }
+    }
+
+    private static boolean isMissingValue(BundleGroup group, String key) {
+        if (!group.isKey(key)) {
+            return false;
+        }
+        Collection<BundleEntry> entries = group.getBundleEntries(key);
+        if (entries.size() != group.getSize()) {
+            return true;
+        }
+        for (BundleEntry entry : entries) {
+            if (entry.getValue().length() == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -52,7 +52,9 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
                     idBuf.append(separator);
                 }
                 idBuf.append(name);
-                String id = idBuf.toString();
+                // share key instances with bundles
+                String id = keyTree.getBundleGroup().getKeyPool().get(
+                        idBuf.toString());
                 if (!keyCache.containsKey(id)) {
                     KeyTreeItem item = new KeyTreeItem(keyTree, id, name);
                     item.setParent(parent);
@@ -16,13 +16,9 @@
 package com.essiembre.eclipse.rbe.model.tree.updater;
 
 
-import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 
-import java.util.Collection;
-import java.util.Iterator;
-
 /**
  * An update which filters entries where at least one isn't available.
  */
@@ -47,18 +43,9 @@ public class IncompletionUpdater extends KeyTreeUpdater {
 
     @Override
     public void addKey(KeyTree keytree, String key) {
-        Collection<BundleEntry> entries  = bundlegroup.getBundleEntries(key);
-        int        count    = 0;
-        Iterator<BundleEntry>   iterator = entries.iterator();
-        while(iterator.hasNext()) {
-            BundleEntry entry = iterator.next();
-            String      value = entry.getValue();
-            if((value != null) && (value.length() > 0)) {
-                count++;
-            }
-        }
+        int status = bundlegroup.getKeyStatus(key);
         // we only delegate entries in case there are some incomplete ones
-        if (count < bundlegroup.getBundleCount()) {
+        if ((status & (BundleGroup.KEY_MISSING | BundleGroup.KEY_EMPTY)) != 0) {
             delegation.addKey(keytree, key);
         }
     }
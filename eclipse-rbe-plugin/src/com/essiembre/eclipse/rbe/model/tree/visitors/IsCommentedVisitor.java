@@ -15,9 +15,6 @@
  */
 package com.essiembre.eclipse.rbe.model.tree.visitors;
 
-import java.util.Collection;
-
-import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeVisitorAdapter;
@@ -45,16 +42,10 @@ public class IsCommentedVisitor extends KeyTreeVisitorAdapter {
     public void visitKeyTreeItem(KeyTreeItem item, Object passAlongArgument) {
         String key = item.getId();
         BundleGroup bundleGroup = item.getKeyTree().getBundleGroup();
-        if (bundleGroup.isKey(key)) {
-            Collection<BundleEntry> entries = bundleGroup.getBundleEntries(key);
-            int commentedCount = 0;
-            for (BundleEntry entry : entries) {
-                if (entry != null && entry.isCommented()) {
-                    hasOneCommented = true;
-                    commentedCount++;
-                }
-            }
-            if (commentedCount == entries.size()) {
+        int status = bundleGroup.getKeyStatus(key);
+        if ((status & BundleGroup.KEY_COMMENTED) != 0) {
+            hasOneCommented = true;
+            if ((status & BundleGroup.KEY_PARTIALLY_COMMENTED) == 0) {
                 areAllCommented = true;
             }
         }
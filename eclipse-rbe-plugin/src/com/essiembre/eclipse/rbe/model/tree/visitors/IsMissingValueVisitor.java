@@ -15,10 +15,6 @@
  */
 package com.essiembre.eclipse.rbe.model.tree.visitors;
 
-import java.util.Collection;
-
-import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
-import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeVisitorAdapter;
 
@@ -44,17 +40,11 @@ public class IsMissingValueVisitor extends KeyTreeVisitorAdapter {
     @Override
     public void visitKeyTreeItem(KeyTreeItem item, Object passAlongArgument) {
         // passed item
-        isMissingValue = isItemMissingValue(item);
+        isMissingValue = item.isMissingValue();
         
         // chidren items
-        if (!isMissingValue) {
-            for (KeyTreeItem childItem : item.getNestedChildren()) {
-                isMissingChildValueOnly = isItemMissingValue(childItem);
-                if (isMissingChildValueOnly) {
-                    return;
-                }
-            }
-        }
+        isMissingChildValueOnly =
+                !isMissingValue && item.isMissingChildValue();
     }
 
     /**
@@ -88,26 +78,4 @@ public class IsMissingValueVisitor extends KeyTreeVisitorAdapter {
     public void setMissingValue(boolean isMissingValue) {
         this.isMissingValue = isMissingValue;
     }
-    
-    /**
-     * Checks if the given item is missing a value.
-     * @param item the item to check
-     * @return <code>true</code> if item is missing a value
-     */
-    private boolean isItemMissingValue(KeyTreeItem item) {
-        String key = item.getId();
-        BundleGroup bundleGroup = item.getKeyTree().getBundleGroup();
-        if (bundleGroup.isKey(key)) {
-            Collection<BundleEntry> entries = bundleGroup.getBundleEntries(key);
-            if (entries.size() != bundleGroup.getSize()) {
-                return true;
-            }
-            for (BundleEntry entry : entries) {
-                if (entry == null || entry.getValue().length() == 0) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
 }
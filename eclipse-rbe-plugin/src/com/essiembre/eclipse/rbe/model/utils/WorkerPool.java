@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.model.utils;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Holds the fork/join pool used to parse or generate bundles concurrently.
+ * The pool is bounded to the number of available processors and its
+ * threads do not prevent the virtual machine from exiting.
+ * @author Pascal Essiembre
+ */
+public final class WorkerPool {
+
+    /** Shared pool, created when first used. */
+    private static ForkJoinPool pool;
+
+    /**
+     * Constructor.
+     */
+    private WorkerPool() {
+        super();
+    }
+
+    /**
+     * Gets the shared pool.
+     * @return fork/join pool
+     */
+    public static synchronized ForkJoinPool getDefault() {
+        if (pool == null) {
+            pool = new ForkJoinPool(
+                    Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+}
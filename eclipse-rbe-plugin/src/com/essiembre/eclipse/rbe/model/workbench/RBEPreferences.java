@@ -15,9 +15,14 @@
  */
 package com.essiembre.eclipse.rbe.model.workbench;
 
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.preference.PreferenceStore;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesOptions;
 
 /**
  * Application preferences, relevant to the resource bundle editor plugin.
@@ -131,6 +136,12 @@ public final class RBEPreferences {
 
     /** Keep empty fields. */
     public static final String KEEP_EMPTY_FIELDS = "keepEmptyFields";
+
+    /** Keep file layout, re-formatting modified entries only. */
+    public static final String ROUND_TRIP = "roundTrip";
+
+    /** Store bundle entries in columns, holding less memory. */
+    public static final String COMPACT_STORAGE = "compactStorage";
     
     public static final String MIN_HEIGHT = "minHeight";
 //    public static final String AUTO_ADJUST = "autoAdjust";                               
@@ -139,8 +150,16 @@ public final class RBEPreferences {
     public static final String PREFERENCE_ID = "eclipse-rbe-preferences";
     
     /** RBEPreferences. */
-    private static final IPreferenceStore PREFS = 
-            RBEPlugin.getDefault().getPreferenceStore();
+    private static final IPreferenceStore PREFS = createPreferenceStore();
+    /** Snapshot of parsing and formatting preferences, built on demand. */
+    private static volatile PropertiesOptions propertiesOptions;
+    static {
+        PREFS.addPropertyChangeListener(new IPropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent event) {
+                propertiesOptions = null;
+            }
+        });
+    }
     
     /**
      * Constructor.
@@ -149,6 +168,86 @@ public final class RBEPreferences {
         super();
     }
 
+    /**
+     * Gets the plugin preference store, or an in-memory store holding
+     * default preferences when the plugin is not running (i.e. when
+     * the model is used outside Eclipse, as in benchmarks).
+     * @return preference store
+     */
+    private static IPreferenceStore createPreferenceStore() {
+        // plugin classes cannot even be loaded without the UI libraries
+        if (Platform.isRunning() && RBEPlugin.getDefault() != null) {
+            return RBEPlugin.getDefault().getPreferenceStore();
+        }
+        IPreferenceStore store = new PreferenceStore();
+        initializeDefaults(store);
+        return store;
+    }
+
+    /**
+     * Sets default preferences on the given preference store.
+     * @param prefs preference store
+     */
+    public static void initializeDefaults(IPreferenceStore prefs) {
+        // General
+        prefs.setDefault(CONVERT_ENCODED_TO_UNICODE, true);
+        prefs.setDefault(FIELD_TAB_INSERTS, false);
+        prefs.setDefault(KEY_TREE_HIERARCHICAL, true);
+        prefs.setDefault(KEY_TREE_EXPANDED, true);
+        prefs.setDefault(SUPPORT_FRAGMENTS, true);
+        prefs.setDefault(LOAD_ONLY_FRAGMENT_RESOURCES, false);
+
+        // Formatting
+        prefs.setDefault(CONVERT_UNICODE_TO_ENCODED, true);
+        prefs.setDefault(CONVERT_UNICODE_TO_ENCODED_UPPER, true);
+
+        prefs.setDefault(SPACES_AROUND_EQUAL_SIGNS, true);
+
+        prefs.setDefault(KEY_GROUP_SEPARATOR, ".");
+        prefs.setDefault(ALIGN_EQUAL_SIGNS, true);
+        prefs.setDefault(SHOW_GENERATOR, true);
+        prefs.setDefault(KEY_TREE_HIERARCHICAL, true);
+
+        prefs.setDefault(GROUP_KEYS, true);
+        prefs.setDefault(GROUP_LEVEL_DEPTH, 1);
+        prefs.setDefault(GROUP_LINE_BREAKS, 1);
+        prefs.setDefault(GROUP_ALIGN_EQUAL_SIGNS, true);
+
+        prefs.setDefault(WRAP_CHAR_LIMIT, 80);
+        prefs.setDefault(WRAP_INDENT_SPACES, 8);
+
+        prefs.setDefault(NEW_LINE_TYPE, NEW_LINE_UNIX);
+
+        prefs.setDefault(KEEP_EMPTY_FIELDS, false);
+        prefs.setDefault(ROUND_TRIP, false);
+
+        // Reporting/Performance
+        prefs.setDefault(REPORT_MISSING_VALUES, true);
+        prefs.setDefault(REPORT_DUPL_VALUES, true);
+        prefs.setDefault(REPORT_SIM_VALUES_WORD_COMPARE, true);
+        prefs.setDefault(REPORT_SIM_VALUES_PRECISION, 0.75d);
+
+        prefs.setDefault(NO_TREE_IN_EDITOR, false);
+        prefs.setDefault(COMPACT_STORAGE, false);
+
+        prefs.setDefault(MIN_HEIGHT, 80);
+//        prefs.setDefault(AUTO_ADJUST, true);
+    }
+
+    /**
+     * Gets an immutable snapshot of the preferences used to parse and
+     * generate properties files.  The same snapshot is returned until
+     * a preference changes.
+     * @return properties options
+     */
+    public static PropertiesOptions getPropertiesOptions() {
+        PropertiesOptions options = propertiesOptions;
+        if (options == null) {
+            options = new PropertiesOptions(PREFS);
+            propertiesOptions = options;
+        }
+        return options;
+    }
     
     //--- General --------------------------------------------------------------
     /**
@@ -201,6 +300,14 @@ public final class RBEPreferences {
     public static boolean getNoTreeInEditor() {
         return PREFS.getBoolean(NO_TREE_IN_EDITOR);
     }
+    /**
+     * Gets whether bundle entries are stored in columns, holding much less
+     * memory for large bundles.
+     * @return <code>true</code> if entries are stored in columns
+     */
+    public static boolean getCompactStorage() {
+        return PREFS.getBoolean(COMPACT_STORAGE);
+    }
 //    public static boolean getAutoAdjust() {
 //        return PREFS.getBoolean(AUTO_ADJUST);
 //    }
@@ -347,6 +454,14 @@ public final class RBEPreferences {
     public static boolean getKeepEmptyFields() {
         return PREFS.getBoolean(KEEP_EMPTY_FIELDS);
     }
+    /**
+     * Gets whether to keep the layout of files when generating them,
+     * re-formatting modified entries only.
+     * @return <code>true</code> if layout is kept
+     */
+    public static boolean getRoundTrip() {
+        return PREFS.getBoolean(ROUND_TRIP);
+    }
 
     /**
      * Gets whether we want to overwrite system (or Eclipse) default new line
@@ -20,8 +20,11 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.dialogs.ErrorDialog;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
@@ -30,12 +33,16 @@ import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.IFileEditorInput;
 import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.PartInitException;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.ide.IDE;
 import org.eclipse.ui.ide.IGotoMarker;
 import org.eclipse.ui.part.MultiPageEditorPart;
+import org.eclipse.ui.texteditor.ITextEditor;
 import org.eclipse.ui.views.contentoutline.IContentOutlinePage;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.DeltaEvent;
+import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.I18nPage;
@@ -65,6 +72,8 @@ public class ResourceBundleEditor extends MultiPageEditorPart implements IGotoMa
     private ResourceChangeListener resourceChangeListener = new ResourceChangeListener();
     private List<IPath>            paths                  = new ArrayList<>();
     private SourceEditor           lastEditor;
+    /** Whether a source page is being replaced by its text editor. */
+    private boolean                openingSourcePage;
 
     /**
      * Creates a multi-page editor example.
@@ -84,13 +93,41 @@ public class ResourceBundleEditor extends MultiPageEditorPart implements IGotoMa
         if (editorInput instanceof IFileEditorInput) {
             IFile file = ((IFileEditorInput) editorInput).getFile();
             try {
-                this.resourceMediator = new ResourceManager(site, file);
+                this.resourceMediator = new ResourceManager(site, file, PlatformUI.getWorkbench().getProgressService());
             } catch (CoreException e) {
                 UIUtils.showErrorDialog(site.getShell(), e, "error.init.ui");
                 return;
+            } catch (OperationCanceledException e) {
+                throw new PartInitException(Status.CANCEL_STATUS);
             }
 
             ResourcesPlugin.getWorkspace().addResourceChangeListener(this.resourceChangeListener, IResourceChangeEvent.POST_CHANGE);
+            // source editors without text editor do not report dirty state
+            this.resourceMediator.getBundleGroup().addListener(new IDeltaListener() {
+
+                @Override
+                public void add(DeltaEvent event) {
+                    ResourceBundleEditor.this.fireDirtyChangeLater();
+                }
+
+
+                @Override
+                public void remove(DeltaEvent event) {
+                    ResourceBundleEditor.this.fireDirtyChangeLater();
+                }
+
+
+                @Override
+                public void modify(DeltaEvent event) {
+                    ResourceBundleEditor.this.fireDirtyChangeLater();
+                }
+
+
+                @Override
+                public void select(DeltaEvent event) {
+                    // do nothing
+                }
+            });
 
             this.setPartName(this.resourceMediator.getEditorDisplayName());
             this.setContentDescription(RBEPlugin.getString("editor.content.desc") + this.resourceMediator.getEditorDisplayName() + ".");
@@ -128,22 +165,18 @@ public class ResourceBundleEditor extends MultiPageEditorPart implements IGotoMa
             ErrorDialog.openError(this.getSite().getShell(), "Error creating i18PageEditor page.", null, argh.getStatus());
         }
 
-        // Create text editor pages for each locales
-        try {
-            SourceEditor[] sourceEditors = this.resourceMediator.getSourceEditors();
-            for (int i = 0; i < sourceEditors.length; i++) {
-                SourceEditor sourceEditor = sourceEditors[i];
-                index = this.addPage(sourceEditor.getEditor(), sourceEditor.getEditor().getEditorInput());
-                this.setPageText(index, UIUtils.getDisplayName(sourceEditor.getLocale()));
-                this.setPageImage(index, UIUtils.getImage(UIUtils.IMAGE_PROPERTIES_FILE));
-
-                this.paths.add(sourceEditor.getFile().getFullPath());
-            }
-            this.outline = new ResourceBundleOutline(this.resourceMediator.getKeyTree());
+        // Create source pages for each locales (text editors are created
+        // when first shown)
+        SourceEditor[] sourceEditors = this.resourceMediator.getSourceEditors();
+        for (int i = 0; i < sourceEditors.length; i++) {
+            SourceEditor sourceEditor = sourceEditors[i];
+            index = this.addPage(new Composite(this.getContainer(), SWT.NONE));
+            this.setPageText(index, UIUtils.getDisplayName(sourceEditor.getLocale()));
+            this.setPageImage(index, UIUtils.getImage(UIUtils.IMAGE_PROPERTIES_FILE));
 
-        } catch (PartInitException e) {
-            ErrorDialog.openError(this.getSite().getShell(), "Error creating text editor page.", null, e.getStatus());
+            this.paths.add(sourceEditor.getFile().getFullPath());
         }
+        this.outline = new ResourceBundleOutline(this.resourceMediator.getKeyTree());
 
         // Add "new locale" page
         this.newLocalePage = new NewLocalePage(this.getContainer(), this.resourceMediator, this);
@@ -157,13 +190,14 @@ public class ResourceBundleEditor extends MultiPageEditorPart implements IGotoMa
         try {
             SourceEditor sourceEditor = this.resourceMediator.addSourceEditor(resource, locale);
             int index = this.getPageCount() - 1;
-            this.addPage(index, sourceEditor.getEditor(), sourceEditor.getEditor().getEditorInput());
+            this.addPage(index, new Composite(this.getContainer(), SWT.NONE));
             this.setPageText(index, UIUtils.getDisplayName(sourceEditor.getLocale()));
             this.setPageImage(index, UIUtils.getImage(UIUtils.IMAGE_PROPERTIES_FILE));
             this.i18nPage.refreshPage();
             this.setActivePage(0);
-            // re-set the content to trigger dirty state
-            sourceEditor.setContent(sourceEditor.getContent());
+            // trigger dirty state
+            sourceEditor.markDirty();
+            this.firePropertyChange(PROP_DIRTY);
         } catch (PartInitException e) {
             ErrorDialog.openError(this.getSite().getShell(), "Error creating resource mediator.", null, e.getStatus());
         }
@@ -201,6 +235,32 @@ public class ResourceBundleEditor extends MultiPageEditorPart implements IGotoMa
         if (key != null) {
             keyTree.selectKey(key);
         }
+        this.firePropertyChange(PROP_DIRTY);
+    }
+
+
+    /**
+     * Checks whether source editors, including those not shown yet, have
+     * unsaved modifications.
+     */
+    @Override
+    public boolean isDirty() {
+        return super.isDirty() || this.resourceMediator != null && this.resourceMediator.isDirty();
+    }
+
+
+    /**
+     * Notifies dirty state change once the current model change is
+     * propagated to source editors.
+     */
+    private void fireDirtyChangeLater() {
+        Display.getDefault().asyncExec(new Runnable() {
+
+            @Override
+            public void run() {
+                ResourceBundleEditor.this.firePropertyChange(PROP_DIRTY);
+            }
+        });
     }
 
 
@@ -247,7 +307,9 @@ public class ResourceBundleEditor extends MultiPageEditorPart implements IGotoMa
             IPath editorPath = editor.getFile().getProjectRelativePath();
             if (markerPath.equals(editorPath)) {
                 this.setActivePage(editor.getLocale());
-                IDE.gotoMarker(editor.getEditor(), marker);
+                if (editor.getEditor() != null) {
+                    IDE.gotoMarker(editor.getEditor(), marker);
+                }
                 break;
             }
         }
@@ -260,6 +322,19 @@ public class ResourceBundleEditor extends MultiPageEditorPart implements IGotoMa
      */
     @Override
     protected void pageChange(int newPageIndex) {
+        if (this.openingSourcePage) {
+            return;
+        }
+        // pages about to be shown read source editors
+        this.resourceMediator.flush();
+        int sourceIndex = newPageIndex - 1; // first page is tree page
+        SourceEditor[] sourceEditors = this.resourceMediator.getSourceEditors();
+        if (sourceIndex >= 0 && sourceIndex < sourceEditors.length && sourceEditors[sourceIndex].getEditor() == null) {
+            if (this.openSourcePage(newPageIndex, sourceEditors[sourceIndex])) {
+                // page change handled once the text editor is shown
+                return;
+            }
+        }
         super.pageChange(newPageIndex);
         KeyTree keyTree = this.resourceMediator.getKeyTree();
 
@@ -291,6 +366,33 @@ public class ResourceBundleEditor extends MultiPageEditorPart implements IGotoMa
     }
 
 
+    /**
+     * Replaces a source page placeholder with the text editor of its source
+     * editor, and shows it.
+     * @param pageIndex source page index
+     * @param sourceEditor source editor
+     * @return <code>true</code> if the text editor was created
+     */
+    private boolean openSourcePage(int pageIndex, SourceEditor sourceEditor) {
+        ITextEditor textEditor = sourceEditor.createEditor();
+        this.openingSourcePage = true;
+        try {
+            this.addPage(pageIndex, textEditor, sourceEditor.getEditorInput());
+            this.setPageText(pageIndex, UIUtils.getDisplayName(sourceEditor.getLocale()));
+            this.setPageImage(pageIndex, UIUtils.getImage(UIUtils.IMAGE_PROPERTIES_FILE));
+            this.removePage(pageIndex + 1);
+            sourceEditor.setEditor(textEditor);
+        } catch (PartInitException e) {
+            ErrorDialog.openError(this.getSite().getShell(), "Error creating text editor page.", null, e.getStatus());
+            return false;
+        } finally {
+            this.openingSourcePage = false;
+        }
+        this.setActivePage(pageIndex);
+        return true;
+    }
+
+
     /**
      * Is the given file a member of this resource bundle.
      * @param file file to test
@@ -341,10 +443,14 @@ public class ResourceBundleEditor extends MultiPageEditorPart implements IGotoMa
          * fix for a weird memory leak: unless we remove the selectionProvider from our editor, nothing get's GCed.
          */
         this.getSite().setSelectionProvider(null);
+        this.resourceMediator.dispose();
         SourceEditor[] sourceEditors = this.resourceMediator.getSourceEditors();
         for (int i = 0; i < sourceEditors.length; i++) {
             SourceEditor editor = sourceEditors[i];
-            editor.getEditor().getSite().setSelectionProvider(null);
+            if (editor.getEditor() != null) {
+                editor.getEditor().getSite().setSelectionProvider(null);
+            }
+            editor.dispose();
         }
 
         ResourcesPlugin.getWorkspace().removeResourceChangeListener(this.resourceChangeListener);
@@ -47,7 +47,6 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.ui.PlatformUI;
-import org.eclipse.ui.texteditor.ITextEditor;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
@@ -464,7 +463,7 @@ public class BundleEntryComposite extends Composite {
 
             @Override
             public void widgetSelected(SelectionEvent event) {
-                ITextEditor editor = BundleEntryComposite.this.resourceManager.getSourceEditor(BundleEntryComposite.this.locale).getEditor();
+                SourceEditor editor = BundleEntryComposite.this.resourceManager.getSourceEditor(BundleEntryComposite.this.locale);
                 Object activeEditor = editor.getSite().getPage().getActiveEditor();
                 if (activeEditor instanceof ResourceBundleEditor) {
                     ((ResourceBundleEditor) activeEditor).setActivePage(BundleEntryComposite.this.locale);
@@ -654,6 +653,30 @@ public class BundleEntryComposite extends Composite {
                     event.doit = true;
                     event.detail = SWT.TRAVERSE_NONE;
                     BundleEntryComposite.this.page.selectPreviousTreeEntry();
+                } else if (event.keyCode == SWT.ARROW_DOWN && event.stateMask == (SWT.CTRL | SWT.SHIFT)) {
+                    event.doit = true;
+                    event.detail = SWT.TRAVERSE_NONE;
+                    BundleEntryComposite.this.page.selectNextMissingTreeEntry();
+                } else if (event.keyCode == SWT.ARROW_UP && event.stateMask == (SWT.CTRL | SWT.SHIFT)) {
+                    event.doit = true;
+                    event.detail = SWT.TRAVERSE_NONE;
+                    BundleEntryComposite.this.page.selectPreviousMissingTreeEntry();
+                } else if (event.keyCode == SWT.ARROW_DOWN && event.stateMask == (SWT.CTRL | SWT.ALT)) {
+                    event.doit = true;
+                    event.detail = SWT.TRAVERSE_NONE;
+                    BundleEntryComposite.this.page.selectNextCommentedTreeEntry();
+                } else if (event.keyCode == SWT.ARROW_UP && event.stateMask == (SWT.CTRL | SWT.ALT)) {
+                    event.doit = true;
+                    event.detail = SWT.TRAVERSE_NONE;
+                    BundleEntryComposite.this.page.selectPreviousCommentedTreeEntry();
+                } else if (event.keyCode == SWT.ARROW_DOWN && event.stateMask == (SWT.ALT | SWT.SHIFT)) {
+                    event.doit = true;
+                    event.detail = SWT.TRAVERSE_NONE;
+                    BundleEntryComposite.this.page.selectNextDuplicateTreeEntry();
+                } else if (event.keyCode == SWT.ARROW_UP && event.stateMask == (SWT.ALT | SWT.SHIFT)) {
+                    event.doit = true;
+                    event.detail = SWT.TRAVERSE_NONE;
+                    BundleEntryComposite.this.page.selectPreviousDuplicateTreeEntry();
                 }
             }
         });
@@ -670,7 +693,7 @@ public class BundleEntryComposite extends Composite {
                     BundleEntryComposite.this.textViewer.setSelectedRange(0, BundleEntryComposite.this.textViewer.getDocument().getLength());
                 } else {
                     StyledText eventBox = (StyledText) event.widget;
-                    final ITextEditor editor = BundleEntryComposite.this.resourceManager.getSourceEditor(BundleEntryComposite.this.locale).getEditor();
+                    final SourceEditor editor = BundleEntryComposite.this.resourceManager.getSourceEditor(BundleEntryComposite.this.locale);
                     // Text field has changed: make editor dirty if not already
                     if (BundleEntryComposite.this.textBeforeUpdate != null && !BundleEntryComposite.this.textBeforeUpdate.equals(eventBox.getText())) {
                         // Make the editor dirty if not already. If it is,
@@ -49,6 +49,12 @@ import com.essiembre.eclipse.rbe.ui.editor.resources.ResourceManager;
  * Internationalization page where one can edit all resource bundle entries at
  * once for all supported locales.
  *
+ * From entry text boxes, Ctrl+Down/Up selects the next/previous key, with
+ * Shift added the next/previous key missing in the entry locale, with Alt
+ * added the next/previous key commented in the entry locale, and Alt+Shift
+ * selects the next/previous key whose value is duplicated in the entry
+ * locale.
+ *
  * @author Pascal Essiembre
  * @author cuhiodtick
  */
@@ -112,7 +118,8 @@ public class I18nPage extends ScrolledComposite {
         this.setMinWidth(400);
         // setMinHeight(600);
 
-        resourceMediator.getKeyTree().addListener(this.localBehaviour);
+        // held weakly, the page being disposed without removing it
+        resourceMediator.getKeyTree().addWeakListener(this.localBehaviour);
 
         this._autoMouseWheelAdapter = new AutoMouseWheelAdapter(parent);
 
@@ -278,14 +285,7 @@ public class I18nPage extends ScrolledComposite {
      */
     public void selectNextTreeEntry() {
         this.activeEntry.updateBundleOnChanges();
-        String nextKey = this.resourceMediator.getBundleGroup().getNextKey(this.getSelectedKey());
-        if (nextKey == null) {
-            return;
-        }
-
-        Locale currentLocale = this.activeEntry.getLocale();
-        this.resourceMediator.getKeyTree().selectKey(nextKey);
-        this.focusBundleEntryComposite(currentLocale);
+        this.selectTreeEntry(this.resourceMediator.getBundleGroup().getNextKey(this.getSelectedKey()));
     }
 
 
@@ -294,13 +294,90 @@ public class I18nPage extends ScrolledComposite {
      */
     public void selectPreviousTreeEntry() {
         this.activeEntry.updateBundleOnChanges();
-        String prevKey = this.resourceMediator.getBundleGroup().getPreviousKey(this.getSelectedKey());
-        if (prevKey == null) {
+        this.selectTreeEntry(this.resourceMediator.getBundleGroup().getPreviousKey(this.getSelectedKey()));
+    }
+
+
+    /**
+     * Selects the next entry in the {@link KeyTree} missing in the locale of
+     * the active entry.
+     */
+    public void selectNextMissingTreeEntry() {
+        this.activeEntry.updateBundleOnChanges();
+        Locale locale = this.activeEntry.getLocale();
+        this.selectTreeEntry(this.resourceMediator.getBundleGroup().getNextMissingKey(locale, this.getSelectedKey()));
+    }
+
+
+    /**
+     * Selects the previous entry in the {@link KeyTree} missing in the locale
+     * of the active entry.
+     */
+    public void selectPreviousMissingTreeEntry() {
+        this.activeEntry.updateBundleOnChanges();
+        Locale locale = this.activeEntry.getLocale();
+        this.selectTreeEntry(this.resourceMediator.getBundleGroup().getPreviousMissingKey(locale, this.getSelectedKey()));
+    }
+
+
+    /**
+     * Selects the next entry in the {@link KeyTree} commented in the locale of
+     * the active entry.
+     */
+    public void selectNextCommentedTreeEntry() {
+        this.activeEntry.updateBundleOnChanges();
+        Locale locale = this.activeEntry.getLocale();
+        this.selectTreeEntry(this.resourceMediator.getBundleGroup().getNextCommentedKey(locale, this.getSelectedKey()));
+    }
+
+
+    /**
+     * Selects the previous entry in the {@link KeyTree} commented in the
+     * locale of the active entry.
+     */
+    public void selectPreviousCommentedTreeEntry() {
+        this.activeEntry.updateBundleOnChanges();
+        Locale locale = this.activeEntry.getLocale();
+        this.selectTreeEntry(this.resourceMediator.getBundleGroup().getPreviousCommentedKey(locale, this.getSelectedKey()));
+    }
+
+
+    /**
+     * Selects the next entry in the {@link KeyTree} whose value is also the
+     * value of other entries in the locale of the active entry.
+     */
+    public void selectNextDuplicateTreeEntry() {
+        this.activeEntry.updateBundleOnChanges();
+        Locale locale = this.activeEntry.getLocale();
+        this.selectTreeEntry(this.resourceMediator.getBundleGroup().getNextDuplicateKey(locale, this.getSelectedKey()));
+    }
+
+
+    /**
+     * Selects the previous entry in the {@link KeyTree} whose value is also
+     * the value of other entries in the locale of the active entry.
+     */
+    public void selectPreviousDuplicateTreeEntry() {
+        this.activeEntry.updateBundleOnChanges();
+        Locale locale = this.activeEntry.getLocale();
+        this.selectTreeEntry(this.resourceMediator.getBundleGroup().getPreviousDuplicateKey(locale, this.getSelectedKey()));
+    }
+
+
+    /**
+     * Selects the given entry in the {@link KeyTree}, keeping the focus on the
+     * locale of the active entry.
+     *
+     * @param key
+     *            key to select, or <code>null</code> to do nothing
+     */
+    private void selectTreeEntry(String key) {
+        if (key == null) {
             return;
         }
 
         Locale currentLocale = this.activeEntry.getLocale();
-        this.resourceMediator.getKeyTree().selectKey(prevKey);
+        this.resourceMediator.getKeyTree().selectKey(key);
         this.focusBundleEntryComposite(currentLocale);
     }
 
@@ -197,9 +197,14 @@ public class KeyTreeComposite extends Composite {
             Collection<KeyTreeItem> items = new ArrayList<>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
-                KeyTreeItem item = iter.next();
-                bundleGroup.removeKey(item.getId());
+            bundleGroup.beginBatch();
+            try {
+                for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
+                    KeyTreeItem item = iter.next();
+                    bundleGroup.removeKey(item.getId());
+                }
+            } finally {
+                bundleGroup.endBatch();
             }
         }
     }
@@ -26,9 +26,8 @@ import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.Image;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
-import com.essiembre.eclipse.rbe.model.tree.visitors.IsCommentedVisitor;
-import com.essiembre.eclipse.rbe.model.tree.visitors.IsMissingValueVisitor;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 import com.essiembre.eclipse.rbe.ui.OverlayImageIcon;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
@@ -49,6 +48,8 @@ public class KeyTreeLabelProvider
 
     /** Registry instead of UIUtils one for image not keyed by file name. */
     private static ImageRegistry imageRegistry = new ImageRegistry();
+    /** Generated images by icon flags, owned by the image registry. */
+    private static Image[] images = new Image[WARNING_GREY << 1];
     
 //    private Color colorInactive = UIUtils.getSystemColor(SWT.COLOR_GRAY);
     private Color colorCommented = UIUtils.getSystemColor(SWT.COLOR_GRAY);
@@ -67,11 +68,10 @@ public class KeyTreeLabelProvider
         
         int iconFlags = 0;
 
-        // Figure out background icon
-        if (treeItem.getKeyTree().getBundleGroup().isKey(treeItem.getId())) {
-            IsCommentedVisitor commentedVisitor = new IsCommentedVisitor();
-            treeItem.accept(commentedVisitor, null);
-            if (commentedVisitor.hasOneCommented()) {
+        // Figure out background icon, from the key status kept by the bundle group
+        BundleGroup bundleGroup = treeItem.getKeyTree().getBundleGroup();
+        if (bundleGroup.isKey(treeItem.getId())) {
+            if (isCommented(treeItem)) {
                 iconFlags += KEY_COMMENTED;
             } else {
                 iconFlags += KEY_DEFAULT;
@@ -80,13 +80,11 @@ public class KeyTreeLabelProvider
             iconFlags += KEY_NOT;
         }
         
-        // Maybe add warning icon        
+        // Maybe add warning icon, from the missing values kept by tree items
         if (RBEPreferences.getReportMissingValues()) {
-            IsMissingValueVisitor misValVisitor = new IsMissingValueVisitor();
-            treeItem.accept(misValVisitor, null);
-            if (misValVisitor.isMissingValue()) {
+            if (treeItem.isMissingValue()) {
                 iconFlags += WARNING;
-            } else if (misValVisitor.isMissingChildValueOnly()) {
+            } else if (treeItem.isMissingChildValue()) {
                 iconFlags += WARNING_GREY;
             }
         }
@@ -94,6 +92,11 @@ public class KeyTreeLabelProvider
         return generateImage(iconFlags);
     }
 
+    private boolean isCommented(KeyTreeItem treeItem) {
+        int status = treeItem.getKeyTree().getBundleGroup().getKeyStatus(treeItem.getId());
+        return (status & BundleGroup.KEY_COMMENTED) != 0;
+    }
+
     @Override
     public String getText(Object element) {
         return ((KeyTreeItem) element).getName(); 
@@ -128,9 +131,7 @@ public class KeyTreeLabelProvider
 //        }
 
         // Commented
-        IsCommentedVisitor commentedVisitor = new IsCommentedVisitor();
-        treeItem.accept(commentedVisitor, null);
-        if (commentedVisitor.hasOneCommented()) {
+        if (isCommented(treeItem)) {
             return colorCommented;
         }
 
@@ -149,7 +150,7 @@ public class KeyTreeLabelProvider
      * @return generated image
      */
     private Image generateImage(int iconFlags) {
-        Image image = imageRegistry.get("" + iconFlags);
+        Image image = images[iconFlags];
         if (image == null) {
             // Figure background image
             if ((iconFlags & KEY_COMMENTED) != 0) {
@@ -168,6 +169,7 @@ public class KeyTreeLabelProvider
                 image = overlayImage(image, "warningGrey.gif",
                         OverlayImageIcon.BOTTOM_RIGHT, iconFlags);
             }
+            images[iconFlags] = image;
         }
         return image;
     }
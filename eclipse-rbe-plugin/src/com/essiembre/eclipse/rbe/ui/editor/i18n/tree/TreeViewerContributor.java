@@ -58,7 +58,9 @@ public class TreeViewerContributor {
     public static final int  MENU_EXPAND     = 6;
     public static final int  MENU_COLLAPSE   = 7;
     public static final int  MENU_GETKEY     = 8;
-    private static final int MENU_COUNT      = 9;
+    public static final int  MENU_UNDO       = 9;
+    public static final int  MENU_REDO       = 10;
+    private static final int MENU_COUNT      = 11;
 
     /** the tree which is controlled through this manager.    */
     private KeyTree          tree;
@@ -188,11 +190,35 @@ public class TreeViewerContributor {
         };
         this.actions[TreeViewerContributor.MENU_GETKEY].setText(RBEPlugin.getString("key.getkey"));
 
+        this.actions[TreeViewerContributor.MENU_UNDO] = new Action() {
+
+            @Override
+            public void run() {
+                TreeViewerContributor.this.tree.getBundleGroup().undo();
+            }
+        };
+        this.actions[TreeViewerContributor.MENU_UNDO].setText(RBEPlugin.getString("key.undo"));
+
+        this.actions[TreeViewerContributor.MENU_REDO] = new Action() {
+
+            @Override
+            public void run() {
+                TreeViewerContributor.this.tree.getBundleGroup().redo();
+            }
+        };
+        this.actions[TreeViewerContributor.MENU_REDO].setText(RBEPlugin.getString("key.redo"));
+
     }
 
 
     private void fillMenu(IMenuManager manager) {
         KeyTreeItem selectedItem = this.getSelection();
+        BundleGroup bundleGroup = this.tree.getBundleGroup();
+        manager.add(this.actions[TreeViewerContributor.MENU_UNDO]);
+        this.actions[TreeViewerContributor.MENU_UNDO].setEnabled(bundleGroup.canUndo());
+        manager.add(this.actions[TreeViewerContributor.MENU_REDO]);
+        this.actions[TreeViewerContributor.MENU_REDO].setEnabled(bundleGroup.canRedo());
+        manager.add(new Separator());
         manager.add(this.actions[TreeViewerContributor.MENU_NEW]);
         manager.add(this.actions[TreeViewerContributor.MENU_RENAME]);
         this.actions[TreeViewerContributor.MENU_RENAME].setEnabled(selectedItem != null);
@@ -290,13 +316,18 @@ public class TreeViewerContributor {
             Collection<KeyTreeItem> items = new ArrayList<>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
-                KeyTreeItem item = iter.next();
-                String oldItemKey = item.getId();
-                if (oldItemKey.startsWith(key)) {
-                    String newItemKey = newKey + oldItemKey.substring(key.length());
-                    bundleGroup.renameKey(oldItemKey, newItemKey);
+            bundleGroup.beginBatch();
+            try {
+                for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
+                    KeyTreeItem item = iter.next();
+                    String oldItemKey = item.getId();
+                    if (oldItemKey.startsWith(key)) {
+                        String newItemKey = newKey + oldItemKey.substring(key.length());
+                        bundleGroup.renameKey(oldItemKey, newItemKey);
+                    }
                 }
+            } finally {
+                bundleGroup.endBatch();
             }
         }
     }
@@ -311,9 +342,14 @@ public class TreeViewerContributor {
         Collection<KeyTreeItem> items = new ArrayList<>();
         items.add(selectedItem);
         items.addAll(selectedItem.getNestedChildren());
-        for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
-            KeyTreeItem item = iter.next();
-            bundleGroup.uncommentKey(item.getId());
+        bundleGroup.beginBatch();
+        try {
+            for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
+                KeyTreeItem item = iter.next();
+                bundleGroup.uncommentKey(item.getId());
+            }
+        } finally {
+            bundleGroup.endBatch();
         }
     }
 
@@ -341,9 +377,14 @@ public class TreeViewerContributor {
             Collection<KeyTreeItem> items = new ArrayList<>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
-                KeyTreeItem item = iter.next();
-                bundleGroup.removeKey(item.getId());
+            bundleGroup.beginBatch();
+            try {
+                for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
+                    KeyTreeItem item = iter.next();
+                    bundleGroup.removeKey(item.getId());
+                }
+            } finally {
+                bundleGroup.endBatch();
             }
         }
     }
@@ -358,9 +399,14 @@ public class TreeViewerContributor {
         Collection<KeyTreeItem> items = new ArrayList<>();
         items.add(selectedItem);
         items.addAll(selectedItem.getNestedChildren());
-        for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
-            KeyTreeItem item = iter.next();
-            bundleGroup.commentKey(item.getId());
+        bundleGroup.beginBatch();
+        try {
+            for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
+                KeyTreeItem item = iter.next();
+                bundleGroup.commentKey(item.getId());
+            }
+        } finally {
+            bundleGroup.endBatch();
         }
 
     }
@@ -390,13 +436,18 @@ public class TreeViewerContributor {
             Collection<KeyTreeItem> items = new ArrayList<>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
-                KeyTreeItem item = iter.next();
-                String origItemKey = item.getId();
-                if (origItemKey.startsWith(key)) {
-                    String newItemKey = newKey + origItemKey.substring(key.length());
-                    bundleGroup.copyKey(origItemKey, newItemKey);
+            bundleGroup.beginBatch();
+            try {
+                for (Iterator<KeyTreeItem> iter = items.iterator(); iter.hasNext();) {
+                    KeyTreeItem item = iter.next();
+                    String origItemKey = item.getId();
+                    if (origItemKey.startsWith(key)) {
+                        String newItemKey = newKey + origItemKey.substring(key.length());
+                        bundleGroup.copyKey(origItemKey, newItemKey);
+                    }
                 }
+            } finally {
+                bundleGroup.endBatch();
             }
         }
     }
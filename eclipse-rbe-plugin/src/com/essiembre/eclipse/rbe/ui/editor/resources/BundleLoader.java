@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.resources;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesOptions;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.utils.WorkerPool;
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+
+/**
+ * Loads the bundles of several source editors, reading and parsing each of
+ * them concurrently before adding them all to their bundle group.
+ * @author Pascal Essiembre
+ */
+public final class BundleLoader {
+
+    /** How often cancellation is checked while waiting, in milliseconds. */
+    private static final long CANCEL_CHECK_INTERVAL = 100;
+
+    /**
+     * Constructor.
+     */
+    private BundleLoader() {
+        super();
+    }
+
+    /**
+     * Reads and parses the content of the given source editors on the shared
+     * worker pool, and adds the resulting bundles to the given bundle group once
+     * they are all parsed.  Nothing is added if loading is canceled.
+     * @param bundleGroup bundle group receiving the bundles
+     * @param editors source editors to load
+     * @param monitor progress monitor, checked for cancellation
+     * @throws CoreException problem reading a file
+     * @throws OperationCanceledException if the monitor was canceled
+     */
+    public static void load(BundleGroup bundleGroup, SourceEditor[] editors,
+            IProgressMonitor monitor) throws CoreException {
+        monitor.beginTask(RBEPlugin.getString("editor.loading"),
+                editors.length);
+        List<ForkJoinTask<Bundle>> tasks = new ArrayList<>(editors.length);
+        // all files are parsed with the same preferences
+        PropertiesOptions options = RBEPreferences.getPropertiesOptions();
+        try {
+            for (int i = 0; i < editors.length; i++) {
+                tasks.add(WorkerPool.getDefault().submit(
+                        new ParseTask(editors[i], options)));
+            }
+            Map<Locale, Bundle> bundles = new LinkedHashMap<>();
+            for (int i = 0; i < editors.length; i++) {
+                bundles.put(editors[i].getLocale(),
+                        waitFor(tasks.get(i), monitor));
+                monitor.worked(1);
+            }
+            bundleGroup.addBundles(bundles);
+            for (int i = 0; i < editors.length; i++) {
+                editors[i].getSourceMap().internKeys(
+                        bundleGroup.getKeyPool());
+            }
+        } finally {
+            for (ForkJoinTask<Bundle> task : tasks) {
+                task.cancel(false);
+            }
+            monitor.done();
+        }
+    }
+
+    /**
+     * Waits for a parsing task to complete, checking for cancellation.
+     * @param task parsing task
+     * @param monitor progress monitor
+     * @return parsed bundle
+     * @throws CoreException problem reading a file
+     */
+    private static Bundle waitFor(ForkJoinTask<Bundle> task,
+            IProgressMonitor monitor) throws CoreException {
+        while (true) {
+            if (monitor.isCanceled()) {
+                throw new OperationCanceledException();
+            }
+            try {
+                return task.get(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // check for cancellation again
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OperationCanceledException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof CoreException) {
+                    throw (CoreException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    /**
+     * Reads and parses the content of a source editor.  Source editors
+     * being loaded have no text editor yet, so their file is read directly.
+     */
+    private static final class ParseTask implements Callable<Bundle> {
+        private final SourceEditor editor;
+        private final PropertiesOptions options;
+
+        ParseTask(SourceEditor editor, PropertiesOptions options) {
+            super();
+            this.editor = editor;
+            this.options = options;
+        }
+
+        @Override
+        public Bundle call() throws CoreException {
+            return PropertiesParser.parse(
+                    editor.readContent(), editor.getSourceMap(), options);
+        }
+    }
+}
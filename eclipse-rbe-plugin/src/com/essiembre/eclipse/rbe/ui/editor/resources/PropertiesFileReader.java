@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.resources;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+
+/**
+ * Reads the content of properties files without going through text
+ * editors or documents.  Local files are read with a file channel and
+ * decoded using the file charset.
+ * @author Pascal Essiembre
+ */
+public final class PropertiesFileReader {
+
+    /** File size from which files are memory-mapped rather than read. */
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+    /** Byte order mark, as decoded. */
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+    /** Size of the buffer used when reading non-local files. */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * Constructor.
+     */
+    private PropertiesFileReader() {
+        super();
+    }
+
+    /**
+     * Reads the content of a properties file.  Large local files are
+     * memory-mapped, except on Windows where a mapped file cannot be
+     * written to until the mapping is garbage collected.
+     * @param file properties file
+     * @return file content
+     * @throws CoreException problem reading the file
+     */
+    public static CharSequence read(IFile file) throws CoreException {
+        Charset charset = Charset.forName(file.getCharset());
+        try {
+            IPath location = file.getLocation();
+            CharSequence content;
+            if (location == null) {
+                content = readStream(file, charset);
+            } else {
+                content = readChannel(location, charset);
+            }
+            if (content.length() > 0
+                    && content.charAt(0) == BYTE_ORDER_MARK) {
+                content = content.subSequence(1, content.length());
+            }
+            return content;
+        } catch (IOException e) {
+            throw new CoreException(new Status(IStatus.ERROR, RBEPlugin.ID,
+                    "Cannot read " + file.getFullPath(), e));
+        }
+    }
+
+    private static CharSequence readChannel(IPath location, Charset charset)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                location.toFile().toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD
+                    && !Platform.OS_WIN32.equals(Platform.getOS())) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) != -1) {
+                    // keep reading
+                }
+                bytes.flip();
+            }
+            return charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(bytes);
+        }
+    }
+
+    private static CharSequence readStream(IFile file, Charset charset)
+            throws CoreException, IOException {
+        StringBuilder content = new StringBuilder();
+        try (Reader reader = new InputStreamReader(
+                file.getContents(true), charset)) {
+            char[] chars = new char[READ_BUFFER_SIZE];
+            int count;
+            while ((count = reader.read(chars)) != -1) {
+                content.append(chars, 0, count);
+            }
+        }
+        return content;
+    }
+}
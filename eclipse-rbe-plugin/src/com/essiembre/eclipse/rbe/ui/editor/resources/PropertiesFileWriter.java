@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.resources;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesOptions;
+
+/**
+ * Writes bundles to properties files without going through text editors
+ * or documents.  Bundles are encoded using the file charset and written
+ * to a file channel as they get generated.
+ * @author Pascal Essiembre
+ * @see PropertiesFileReader
+ */
+public final class PropertiesFileWriter {
+
+    /**
+     * Constructor.
+     */
+    private PropertiesFileWriter() {
+        super();
+    }
+
+    /**
+     * Writes a bundle to a local properties file.  The bundle is first
+     * written to a temporary file next to it, so that the properties file
+     * is left untouched if the bundle cannot be encoded with the file
+     * charset.  The workspace is not refreshed.
+     * @param file local properties file
+     * @param bundle bundle to write
+     * @param options formatting options
+     * @throws CoreException problem writing the file
+     */
+    public static void write(IFile file, Bundle bundle,
+            PropertiesOptions options) throws CoreException {
+        Charset charset = Charset.forName(file.getCharset());
+        Path path = file.getLocation().toFile().toPath();
+        try {
+            Path tempPath = Files.createTempFile(
+                    path.getParent(), path.getFileName().toString(), null);
+            try {
+                try (FileChannel channel = FileChannel.open(
+                        tempPath, StandardOpenOption.WRITE)) {
+                    PropertiesGenerator.generate(
+                            bundle, options, channel, charset);
+                }
+                // copy rather than move, to keep file attributes
+                try (FileChannel source = FileChannel.open(
+                        tempPath, StandardOpenOption.READ);
+                        FileChannel target = FileChannel.open(path,
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long size = source.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += source.transferTo(
+                                position, size - position, target);
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        } catch (IOException e) {
+            throw new CoreException(new Status(IStatus.ERROR, RBEPlugin.ID,
+                    "Cannot write " + file.getFullPath(), e));
+        }
+    }
+}
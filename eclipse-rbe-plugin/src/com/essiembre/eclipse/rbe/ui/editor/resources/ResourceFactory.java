@@ -15,8 +15,6 @@
  */
 package com.essiembre.eclipse.rbe.ui.editor.resources;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
@@ -30,13 +28,8 @@ import java.util.TreeMap;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.PartInitException;
-import org.eclipse.ui.editors.text.TextEditor;
-import org.eclipse.ui.part.FileEditorInput;
-import org.eclipse.ui.texteditor.AbstractTextEditor;
-import org.eclipse.ui.texteditor.ITextEditor;
 
 import com.essiembre.eclipse.rbe.model.workbench.files.PropertiesFileCreator;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
@@ -270,49 +263,10 @@ public abstract class ResourceFactory implements IResourceFactory {
     }
     
     protected SourceEditor createEditor(
-            IEditorSite site, IResource resource, Locale locale)
-            throws PartInitException {
-        
-        ITextEditor textEditor = null;
+            IEditorSite site, IResource resource, Locale locale) {
+        // text editors are only created when their page is first shown
         if (resource != null && resource instanceof IFile) {
-            IEditorInput newEditorInput = 
-                    new FileEditorInput((IFile) resource);
-            try {
-                // Use PropertiesFileEditor if available
-                textEditor = (TextEditor) Class.forName(
-                        PROPERTIES_EDITOR_CLASS_NAME).newInstance();
-            } catch (Exception e) {
-                // Use default editor otherwise
-                textEditor = new TextEditor();
-            }
-            textEditor.init(site, newEditorInput);
-            
-            try {
-               /* ugly fix for a memory leak: 
-                * ITextEditor.init(.) Javadoc states: 
-                * "Clients must not call this method."
-                * but we do in ResourceFactory.createEditor(.), and the way we 
-                * set-up everything, we have to.
-                * Since duplicate calls to init(.) create a memory leak, due 
-                * to a zombie ActivationListener registered in 
-                * AbstractTextEditor, we dispose the first ActivationListener 
-                * we just unintentionally created */
-               Field field = AbstractTextEditor.class.getDeclaredField(
-                       "fActivationListener");
-               // enable access to the method - ...hackity hack
-               field.setAccessible(true);
-               Object activationListener = field.get(textEditor);
-               Method disposeMethod = 
-                       activationListener.getClass().getMethod("dispose");
-               disposeMethod.setAccessible(true);
-               disposeMethod.invoke(activationListener);
-            }
-            catch(Exception e) {
-               System.err.println("Failed to apply memory leak work around");
-            }
-        }
-        if (textEditor != null) {
-            return new SourceEditor(textEditor, locale, (IFile) resource);
+            return new SourceEditor(site, locale, (IFile) resource);
         }
         return null;
     }
@@ -16,8 +16,12 @@
 package com.essiembre.eclipse.rbe.ui.editor.resources;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -25,15 +29,21 @@ import java.util.Map;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jface.operation.IRunnableContext;
+import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.PartInitException;
 
+import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.bundle.Bundle;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
-import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroupDelta;
 import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesSourceMap;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
 import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
@@ -54,6 +64,11 @@ public class ResourceManager {
     /** key=Locale;value=SourceEditor */
     /*default*/ final Map<Locale, SourceEditor> sourceEditors = new HashMap<>();
     private final List<Locale> locales = new ArrayList<>();
+    /** Source editor being reloaded, which content must not be regenerated. */
+    private SourceEditor reloadingEditor;
+    /** Writes modified bundles back to source editors. */
+    private final WriteBackScheduler writeBackScheduler =
+            new WriteBackScheduler(sourceEditors);
     
     /**
      * Constructor.
@@ -63,31 +78,59 @@ public class ResourceManager {
      */
     public ResourceManager(final IEditorSite site, final IFile file)
             throws CoreException {
+        this(site, file, null);
+    }
+
+    /**
+     * Constructor.  Properties files are parsed concurrently, from a thread
+     * forked by the given context, which keeps the user interface responsive
+     * and lets the user cancel loading.
+     * @param site eclipse editor site
+     * @param file file used to create manager
+     * @param context context running properties files parsing with
+     *        progress, or <code>null</code> to parse them in the calling
+     *        thread
+     * @throws CoreException problem creating resource manager
+     * @throws OperationCanceledException if loading was canceled
+     */
+    public ResourceManager(final IEditorSite site, final IFile file,
+            IRunnableContext context) throws CoreException {
         super();
         resourcesFactory = ResourceFactory.createFactory(site, file);
-        bundleGroup = new BundleGroup();
+        bundleGroup = new BundleGroup(RBEPreferences.getCompactStorage());
         SourceEditor[] editors = resourcesFactory.getSourceEditors();
         for (int i = 0; i < editors.length; i++) {
             SourceEditor sourceEditor = editors[i];
             Locale locale = sourceEditor.getLocale();
             sourceEditors.put(locale, sourceEditor);
             locales.add(locale);
-            bundleGroup.addBundle(
-                    locale, PropertiesParser.parse(sourceEditor.getContent()));            
         }
+        load(editors, context);
         bundleGroup.addListener(new IDeltaListener() {
-            public void add(DeltaEvent event) {}    // do nothing
+            public void add(DeltaEvent event) {
+                initBundle((Bundle) event.receiver());
+            }
             public void remove(DeltaEvent event) {} // do nothing
             public void modify(DeltaEvent event) {
-                final Bundle bundle = (Bundle) event.receiver();
-                final SourceEditor editor = 
-                        (SourceEditor) sourceEditors.get(bundle.getLocale());
-                String editorContent = PropertiesGenerator.generate(bundle);
-                editor.setContent(editorContent);
+                if (event.receiver() instanceof BundleGroupDelta) {
+                    BundleGroupDelta delta =
+                            (BundleGroupDelta) event.receiver();
+                    for (Locale locale : delta.getLocales()) {
+                        bundleModified(bundleGroup.getBundle(locale),
+                                delta.getKeys());
+                    }
+                } else {
+                    // modified entries were notified by the bundle itself
+                    bundleModified((Bundle) event.receiver(),
+                            Collections.<String>emptySet());
+                }
             }
             public void select(DeltaEvent event) {
             }
         });
+        for (Iterator<Bundle> iter = bundleGroup.iterator(); iter.hasNext();) {
+            initBundle(iter.next());
+        }
         
         KeyTreeUpdater treeUpdater = null;
         if (RBEPreferences.getKeyTreeHierarchical()) {
@@ -99,6 +142,85 @@ public class ResourceManager {
         this.keyTree = new KeyTree(bundleGroup, treeUpdater);
     }
 
+    /**
+     * Loads the bundles of the given source editors.  Listeners are only
+     * added to the bundle group once loaded, so that it is not accessed
+     * from other threads.
+     * @param editors source editors to load
+     * @param context context running the loading, or <code>null</code>
+     * @throws CoreException problem reading a file
+     * @throws OperationCanceledException if loading was canceled
+     */
+    private void load(final SourceEditor[] editors, IRunnableContext context)
+            throws CoreException {
+        if (context == null) {
+            BundleLoader.load(bundleGroup, editors, new NullProgressMonitor());
+            return;
+        }
+        try {
+            context.run(true, true, new IRunnableWithProgress() {
+                public void run(IProgressMonitor monitor)
+                        throws InvocationTargetException {
+                    try {
+                        BundleLoader.load(bundleGroup, editors, monitor);
+                    } catch (CoreException e) {
+                        throw new InvocationTargetException(e);
+                    }
+                }
+            });
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CoreException) {
+                throw (CoreException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            // canceled, the context turns cancellation into an interruption
+            throw new OperationCanceledException();
+        }
+    }
+
+    /**
+     * Listens to the entries of a bundle being modified, outside batches.
+     * @param bundle the bundle to listen to
+     */
+    private void initBundle(final Bundle bundle) {
+        bundle.addListener(new IDeltaListener() {
+            public void add(DeltaEvent event) {
+                bundleModified(bundle, Collections.singleton(event.key()));
+            }
+            public void remove(DeltaEvent event) {
+                bundleModified(bundle, Collections.singleton(event.key()));
+            }
+            public void modify(DeltaEvent event) {
+                bundleModified(bundle, Collections.singleton(event.key()));
+            }
+            public void select(DeltaEvent event) {
+            }
+        });
+    }
+
+    /**
+     * Schedules a modified bundle to be written to its source editor.
+     * @param bundle modified bundle
+     * @param keys keys of the added, modified or removed entries
+     */
+    private void bundleModified(Bundle bundle, Collection<String> keys) {
+        SourceEditor editor = 
+                (SourceEditor) sourceEditors.get(bundle.getLocale());
+        if (editor == reloadingEditor) {
+            // bundle was just read from this editor
+            return;
+        }
+        writeBackScheduler.markDirty(bundle, keys);
+    }
+
     /**
      * Gets a bundle group.
      * @return bundle group
@@ -129,16 +251,56 @@ public class ResourceManager {
     }
     
     /**
-     * Save all dirty editors.
+     * Save all dirty editors.  Modified bundles whose file was never read
+     * in a document are saved straight to their file.
      * @param monitor progress monitor
      */
     public void save(IProgressMonitor monitor) {
+        writeBackScheduler.save(monitor);
         SourceEditor[] editors = resourcesFactory.getSourceEditors();
         for (int i = 0; i < editors.length; i++) {
-            editors[i].getEditor().doSave(monitor);
+            try {
+                editors[i].save(monitor);
+            } catch (CoreException e) {
+                RBEPlugin.getDefault().getLog().log(e.getStatus());
+            }
+        }
+    }
+
+    /**
+     * Checks whether any source editor has unsaved modifications.
+     * @return <code>true</code> if dirty
+     */
+    public boolean isDirty() {
+        if (writeBackScheduler.isPending()) {
+            return true;
+        }
+        SourceEditor[] editors = resourcesFactory.getSourceEditors();
+        for (int i = 0; i < editors.length; i++) {
+            if (editors[i].isDirty()) {
+                return true;
+            }
         }
+        return false;
     }
         
+    /**
+     * Writes modified bundles to their source editors now, rather than
+     * when the UI event loop gets to it.
+     */
+    public void flush() {
+        writeBackScheduler.flush();
+    }
+
+    /**
+     * Stops writing modified bundles to source editors, dropping
+     * modifications not written yet.  To be called before source editors
+     * are disposed.
+     */
+    public void dispose() {
+        writeBackScheduler.dispose();
+    }
+
     /**
      * Gets the multi-editor display name.
      * @return display name
@@ -191,24 +353,53 @@ public class ResourceManager {
                 resource, locale);
         sourceEditors.put(sourceEditor.getLocale(), sourceEditor);
         locales.add(locale);
-        bundleGroup.addBundle(
-                locale, PropertiesParser.parse(sourceEditor.getContent())); 
+        try {
+            bundleGroup.addBundle(locale, PropertiesParser.parse(
+                    sourceEditor.readContent(),
+                    sourceEditor.getSourceMap()));
+            sourceEditor.getSourceMap().internKeys(bundleGroup.getKeyPool());
+        } catch (CoreException e) {
+            throw new PartInitException(e.getStatus());
+        }
         return sourceEditor;
     }
     /**
-     * Reloads the properties files (parse them).
+     * Reloads the properties files (parse them).  Only the regions of
+     * source editors modified since they were last parsed are re-parsed,
+     * unless a full parse is required.
      */
     public void reloadProperties() {
+        writeBackScheduler.flush();
         SourceEditor[] editors = resourcesFactory.getSourceEditors();
         for (int i = 0; i < editors.length; i++) {
             SourceEditor editor = editors[i];
             if (editor.isCacheDirty()) {
-                bundleGroup.addBundle(
-                        editor.getLocale(),
-                        PropertiesParser.parse(editor.getContent()));
+                reloadingEditor = editor;
+                try {
+                    reloadProperties(editor);
+                } catch (CoreException e) {
+                    RBEPlugin.getDefault().getLog().log(e.getStatus());
+                } finally {
+                    reloadingEditor = null;
+                }
                 editor.resetCache();
             }
         }
     }
 
+    private void reloadProperties(SourceEditor editor) throws CoreException {
+        CharSequence content = editor.readContent();
+        PropertiesSourceMap.Region region = editor.getSourceMap().reparse(
+                content, editor.getUnchangedPrefix(),
+                editor.getUnchangedSuffix());
+        if (region != null) {
+            bundleGroup.updateBundle(editor.getLocale(),
+                    region.getReplacedKeys(), region.getEntries());
+        } else {
+            bundleGroup.addBundle(editor.getLocale(),
+                    PropertiesParser.parse(content, editor.getSourceMap()));
+            editor.getSourceMap().internKeys(bundleGroup.getKeyPool());
+        }
+    }
+
 }
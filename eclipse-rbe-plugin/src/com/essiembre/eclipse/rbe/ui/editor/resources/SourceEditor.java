@@ -15,39 +15,103 @@
  */
 package com.essiembre.eclipse.rbe.ui.editor.resources;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.filebuffers.LocationKind;
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourceAttributes;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.content.IContentDescription;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.TextSelection;
+import org.eclipse.ui.IEditorInput;
+import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.editors.text.TextEditor;
+import org.eclipse.ui.part.FileEditorInput;
 import org.eclipse.ui.texteditor.ITextEditor;
 
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator.Replacement;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesOptions;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesSourceMap;
+
 /**
  * Wrapper around a properties file text editor providing extra founctionality.
+ * <p>
+ * The text editor is only created when the user first shows it.  Until
+ * then, the file content is read directly from the file, and modifications
+ * are made through the file buffer shared with text editors.
+ * </p>
  * @author Pascal Essiembre
  * @author Tobias Langner
  */
 public class SourceEditor {
 
+    private final IEditorSite site;
     private final Locale locale;
     private final IFile file;
-    private final ITextEditor editor;
-    private String contentCache;
+    private final IEditorInput editorInput;
+    /** Text editor, <code>null</code> until shown. */
+    private ITextEditor editor;
+    /** File buffer connected by this source editor, if any. */
+    private ITextFileBuffer fileBuffer;
+    /** Document listened to, <code>null</code> until content is edited. */
+    private IDocument document;
+    /** File modification stamp when the file was last read. */
+    private long readStamp = IResource.NULL_STAMP;
+    private final PropertiesSourceMap sourceMap = new PropertiesSourceMap();
+    /** Whether the document changed since the cache was last reset. */
+    private boolean cacheDirty;
+    /** Number of characters left untouched at the document start. */
+    private int unchangedPrefix = Integer.MAX_VALUE;
+    /** Number of characters left untouched at the document end. */
+    private int unchangedSuffix = Integer.MAX_VALUE;
+    /**
+     * Options the document content was generated with from its bundle,
+     * <code>null</code> unless it was not modified otherwise since.
+     */
+    private PropertiesOptions generatedOptions;
+    private final IDocumentListener documentListener =
+            new IDocumentListener() {
+        public void documentAboutToBeChanged(DocumentEvent event) {
+            int oldLength = event.getDocument().getLength();
+            unchangedPrefix = Math.min(unchangedPrefix, event.getOffset());
+            unchangedSuffix = Math.min(unchangedSuffix,
+                    oldLength - event.getOffset() - event.getLength());
+            cacheDirty = true;
+            generatedOptions = null;
+        }
+        public void documentChanged(DocumentEvent event) {
+            // do nothing
+        }
+    };
     
     /**
      * Constructor.
-     * @param editor text editor
+     * @param site site of the resource bundle editor
      * @param locale a locale
      * @param file properties file
      */
-    public SourceEditor(ITextEditor editor, Locale locale, IFile file) {
+    public SourceEditor(IEditorSite site, Locale locale, IFile file) {
         super();
-        this.editor = editor;
+        this.site = site;
         this.locale = locale;
         this.file = file;
-        contentCache = getContent();
+        this.editorInput = new FileEditorInput(file);
     }
 
     /**
@@ -64,28 +128,213 @@ public class SourceEditor {
     public IFile getFile() {
         return file;
     }
+    /**
+     * Gets the site of the resource bundle editor this source editor is
+     * part of.
+     * @return editor site
+     */
+    public IEditorSite getSite() {
+        return site;
+    }
+    /**
+     * Gets the text editor input.
+     * @return editor input
+     */
+    public IEditorInput getEditorInput() {
+        return editorInput;
+    }
     /**
      * Gets the text editor associated with this source editor.
-     * @return text editor
+     * @return text editor, or <code>null</code> if not created yet
      */
     public ITextEditor getEditor() {
         return editor;
     }
+
+    /**
+     * Creates a text editor suited for this source editor file.  The
+     * text editor is not initialized.  Once it is, it must be associated
+     * with this source editor using {@link #setEditor(ITextEditor)}.
+     * @return a new text editor
+     */
+    public ITextEditor createEditor() {
+        try {
+            // Use PropertiesFileEditor if available
+            return (TextEditor) Class.forName(
+                    ResourceFactory.PROPERTIES_EDITOR_CLASS_NAME)
+                            .newInstance();
+        } catch (Exception e) {
+            // Use default editor otherwise
+            return new TextEditor();
+        }
+    }
+
+    /**
+     * Associates an initialized text editor with this source editor.
+     * @param editor text editor
+     */
+    public void setEditor(ITextEditor editor) {
+        this.editor = editor;
+        attachDocument(editor.getDocumentProvider().getDocument(
+                editor.getEditorInput()));
+    }
+
+    /**
+     * Checks whether the content of this source editor was modified and
+     * not saved.
+     * @return <code>true</code> if dirty
+     */
+    public boolean isDirty() {
+        if (editor != null) {
+            return editor.isDirty();
+        }
+        return fileBuffer != null && fileBuffer.isDirty();
+    }
+
+    /**
+     * Saves the content of this source editor.
+     * @param monitor progress monitor
+     * @throws CoreException problem saving the file
+     */
+    public void save(IProgressMonitor monitor) throws CoreException {
+        if (editor != null) {
+            editor.doSave(monitor);
+        } else if (fileBuffer != null && fileBuffer.isDirty()) {
+            fileBuffer.commit(monitor, false);
+        }
+    }
+
+    /**
+     * Whether the content of this source editor was ever read in a
+     * document, by a text editor or to be edited.
+     * @return <code>true</code> if in a document
+     */
+    public boolean hasDocument() {
+        return document != null;
+    }
+
+    /**
+     * Saves a bundle straight to the file of this source editor, encoding
+     * it as it gets generated, rather than reading the file in a document
+     * only to replace its content and save it.  Nothing is written if the
+     * content is in a document (of this source editor or of another
+     * editor), or if the file is not a local file in sync with the
+     * workspace, is read-only, or starts with a byte order mark.
+     * @param bundle bundle to save
+     * @param options formatting options
+     * @param monitor progress monitor
+     * @return <code>true</code> if saved
+     * @throws CoreException problem writing the file
+     */
+    public boolean saveBundle(Bundle bundle, PropertiesOptions options,
+            IProgressMonitor monitor) throws CoreException {
+        if (document != null || file.getLocation() == null
+                || !file.isSynchronized(IResource.DEPTH_ZERO)
+                || isReadOnly()
+                || FileBuffers.getTextFileBufferManager().getTextFileBuffer(
+                        file.getFullPath(), LocationKind.IFILE) != null) {
+            return false;
+        }
+        IContentDescription description = file.getContentDescription();
+        if (description != null && description.getProperty(
+                IContentDescription.BYTE_ORDER_MARK) != null) {
+            return false;
+        }
+        PropertiesFileWriter.write(file, bundle, options);
+        // the file no longer matches the source map, nor what was read
+        sourceMap.invalidate();
+        file.refreshLocal(IResource.DEPTH_ZERO, monitor);
+        return true;
+    }
+
+    /**
+     * Releases the file buffer this source editor may have connected.
+     * The text editor is disposed with the page holding it.
+     */
+    public void dispose() {
+        if (document != null) {
+            document.removeDocumentListener(documentListener);
+            document = null;
+        }
+        if (fileBuffer != null) {
+            fileBuffer = null;
+            try {
+                FileBuffers.getTextFileBufferManager().disconnect(
+                        file.getFullPath(), LocationKind.IFILE, null);
+            } catch (CoreException e) {
+                // nothing left to release
+            }
+        }
+    }
+    
+    /**
+     * Gets the source map of the content of this source editor, used to
+     * re-parse only the edited parts of it.
+     * @return source map
+     */
+    public PropertiesSourceMap getSourceMap() {
+        return sourceMap;
+    }
     
     /**
-     * Checks whether the underlying file content differs from the cached
-     * source editor content.
+     * Checks whether the underlying file content was modified since the
+     * source editor cache was last reset.
      * @return <code>true</code> if dirty
      */
     public boolean isCacheDirty() {
-        return !getContent().equals(contentCache);
+        if (document == null) {
+            return readStamp != file.getModificationStamp();
+        }
+        return cacheDirty;
+    }
+    
+    /**
+     * Gets the number of characters left untouched at the beginning of the
+     * content since the source editor cache was last reset.
+     * @return unchanged character count
+     */
+    public int getUnchangedPrefix() {
+        return document == null ? 0 : unchangedPrefix;
+    }
+    
+    /**
+     * Gets the number of characters left untouched at the end of the
+     * content since the source editor cache was last reset.
+     * @return unchanged character count
+     */
+    public int getUnchangedSuffix() {
+        return document == null ? 0 : unchangedSuffix;
     }
     
     /**
      * Resets the source editor cache.
      */
     public void resetCache() {
-        contentCache = getContent();
+        cacheDirty = false;
+        unchangedPrefix = Integer.MAX_VALUE;
+        unchangedSuffix = Integer.MAX_VALUE;
+    }
+    
+    /**
+     * Reads the content of this source editor.  Until content is edited,
+     * it is read straight from the file (or from the document of another
+     * editor having the file opened).  May be called from any thread
+     * as long as content is not edited.
+     * @return content
+     * @throws CoreException problem reading the file
+     */
+    public CharSequence readContent() throws CoreException {
+        if (document != null) {
+            return new DocumentCharSequence(document);
+        }
+        ITextFileBuffer buffer = FileBuffers.getTextFileBufferManager()
+                .getTextFileBuffer(file.getFullPath(), LocationKind.IFILE);
+        if (buffer != null) {
+            readStamp = IResource.NULL_STAMP;
+            return buffer.getDocument().get();
+        }
+        readStamp = file.getModificationStamp();
+        return PropertiesFileReader.read(file);
     }
     
     /**
@@ -93,18 +342,141 @@ public class SourceEditor {
      * @return content
      */
     public String getContent() {
-        return editor.getDocumentProvider().getDocument(
-                editor.getEditorInput()).get();
+        return getDocument().get();
     }
     
     /**
      * Sets the content of this source editor (replacing existing content).
+     * Only the range of existing content differing from the new one is
+     * replaced, so that document changes (and their undo) are no bigger
+     * than the modification, and the source map is kept up to date by
+     * re-parsing that range.
      * @param content new content
      */
     public void setContent(String content) {
-        editor.getDocumentProvider().getDocument(
-                editor.getEditorInput()).set(content);
-        contentCache = content;
+        IDocument doc = getDocument();
+        String oldContent = doc.get();
+        int oldLength = oldContent.length();
+        int newLength = content.length();
+        int maxPrefix = Math.min(oldLength, newLength);
+        int prefix = 0;
+        while (prefix < maxPrefix
+                && oldContent.charAt(prefix) == content.charAt(prefix)) {
+            prefix++;
+        }
+        int maxSuffix = maxPrefix - prefix;
+        int suffix = 0;
+        while (suffix < maxSuffix && oldContent.charAt(oldLength - suffix - 1)
+                == content.charAt(newLength - suffix - 1)) {
+            suffix++;
+        }
+        if (prefix < oldLength || prefix < newLength) {
+            try {
+                doc.replace(prefix, oldLength - prefix - suffix,
+                        content.substring(prefix, newLength - suffix));
+            } catch (BadLocationException e) {
+                // should not happen, the range is within the document
+                doc.set(content);
+            }
+        }
+        updateSourceMap(doc);
+    }
+
+    /**
+     * Sets the content of this source editor to the content generated from
+     * a bundle, as with {@link #setContent(String)}.  Until the content is
+     * modified otherwise, later modifications of the bundle can then be
+     * written with {@link #setEntries(Bundle, Collection,
+     * PropertiesOptions)} when files do not keep their layout.
+     * @param bundle the bundle the content was generated from
+     * @param content content generated from the bundle
+     * @param options formatting options the content was generated with
+     */
+    public void setGeneratedContent(Bundle bundle, String content,
+            PropertiesOptions options) {
+        setContent(content);
+        if (!sourceMap.isValid()) {
+            PropertiesParser.parse(content, sourceMap, options);
+            if (bundle.getBundleGroup() != null) {
+                sourceMap.internKeys(bundle.getBundleGroup().getKeyPool());
+            }
+        }
+        if (PropertiesGenerator.isGeneratedLayout(
+                bundle, content, sourceMap, options)) {
+            generatedOptions = options;
+        }
+    }
+
+    /**
+     * Writes modified entries of a bundle to the content of this source
+     * editor.  Only the source ranges of the given entries are generated
+     * and replaced, using the source map, so that the cost of an edit does
+     * not depend on the file size.  When files keep their layout, entries
+     * are written in place of the source ranges they were parsed from.
+     * Otherwise, the content must have been generated from the bundle
+     * with the same options, and the entries are written as the whole
+     * bundle would be generated.  Nothing is written if the content was
+     * edited since last parsed or generated, if an entry is not found in
+     * the content, or if the layout of other entries changes: the whole
+     * content needs to be set instead.
+     * @param bundle modified bundle
+     * @param keys keys of the entries added, modified or removed since
+     *        the content was last parsed or written
+     * @param options formatting options
+     * @return <code>true</code> if entries were written
+     * @see #setContent(String)
+     * @see #setGeneratedContent(Bundle, String, PropertiesOptions)
+     */
+    public boolean setEntries(Bundle bundle, Collection<String> keys,
+            PropertiesOptions options) {
+        boolean generated = !options.isRoundTrip();
+        if (generated && options != generatedOptions) {
+            return false;
+        }
+        IDocument doc = getDocument();
+        if (cacheDirty) {
+            return false;
+        }
+        DocumentCharSequence source = new DocumentCharSequence(doc);
+        List<Replacement> replacements;
+        if (generated) {
+            replacements = PropertiesGenerator.regenerateReplacements(
+                    bundle, source, sourceMap, keys, options);
+        } else {
+            replacements = PropertiesGenerator.generateReplacements(
+                    bundle, source, sourceMap, keys, options);
+        }
+        if (replacements == null) {
+            return false;
+        }
+        try {
+            for (Replacement replacement : replacements) {
+                doc.replace(replacement.getOffset(),
+                        replacement.getLength(), replacement.getText());
+            }
+        } catch (BadLocationException e) {
+            // should not happen, the source map matches the document
+            sourceMap.invalidate();
+            return false;
+        }
+        updateSourceMap(doc);
+        if (generated) {
+            generatedOptions = options;
+        }
+        return true;
+    }
+    
+    /**
+     * Marks the content of this source editor as modified, so that it
+     * gets saved along with the resource bundle.
+     */
+    public void markDirty() {
+        getDocument();
+        ITextFileBuffer buffer = FileBuffers.getTextFileBufferManager()
+                .getTextFileBuffer(file.getFullPath(), LocationKind.IFILE);
+        if (buffer != null) {
+            buffer.setDirty(true);
+        }
     }
     
     /**
@@ -112,11 +484,15 @@ public class SourceEditor {
      * @return <code>true</code> if read-only.
      */
     public boolean isReadOnly() {
-        return ((TextEditor) editor).isEditorInputReadOnly();
+        if (editor != null) {
+            return ((TextEditor) editor).isEditorInputReadOnly();
+        }
+        ResourceAttributes attributes = file.getResourceAttributes();
+        return attributes != null && attributes.isReadOnly();
     }
     
     public void selectKey(String key) {
-        if (key != null) {                
+        if (key != null && editor != null) {
             ITextEditor textEditor = getEditor();
             String editorContent = getContent();
             Pattern pattern = Pattern.compile("^" + Pattern.quote(key) 
@@ -131,7 +507,8 @@ public class SourceEditor {
     
     public String getCurrentKey() {
         ITextEditor textEditor = getEditor();
-        if (textEditor.getSelectionProvider().getSelection() 
+        if (textEditor != null
+                && textEditor.getSelectionProvider().getSelection() 
                 instanceof TextSelection) {
             TextSelection selection = (TextSelection) 
                     textEditor.getSelectionProvider().getSelection();
@@ -151,5 +528,106 @@ public class SourceEditor {
         return null;
     }
 
+    /**
+     * Gets the document holding the content of this source editor,
+     * connecting the file buffer if there is no text editor yet.
+     * @return document
+     */
+    private IDocument getDocument() {
+        if (document == null) {
+            ITextFileBufferManager manager =
+                    FileBuffers.getTextFileBufferManager();
+            try {
+                manager.connect(file.getFullPath(), LocationKind.IFILE, null);
+            } catch (CoreException e) {
+                throw new IllegalStateException(e);
+            }
+            fileBuffer = manager.getTextFileBuffer(
+                    file.getFullPath(), LocationKind.IFILE);
+            attachDocument(fileBuffer.getDocument());
+        }
+        return document;
+    }
+
+    /**
+     * Re-parses what changed in a document since the source map was last
+     * updated, including edits not reloaded yet, if any, and resets the
+     * cache.
+     * @param doc document holding this source editor content
+     */
+    private void updateSourceMap(IDocument doc) {
+        if (cacheDirty && sourceMap.reparse(new DocumentCharSequence(doc),
+                unchangedPrefix, unchangedSuffix) == null) {
+            sourceMap.invalidate();
+        }
+        resetCache();
+    }
+
+    /**
+     * Starts listening to modifications of a document.  Unless the
+     * document content is known to be the one last read from the file,
+     * it will be entirely parsed on next reload.
+     * @param newDocument document holding this source editor content
+     */
+    private void attachDocument(IDocument newDocument) {
+        if (newDocument == document) {
+            return;
+        }
+        boolean unchanged = document == null
+                && readStamp != IResource.NULL_STAMP
+                && readStamp == file.getModificationStamp()
+                && !FileBuffers.getTextFileBufferManager().getTextFileBuffer(
+                        file.getFullPath(), LocationKind.IFILE).isDirty();
+        if (document != null) {
+            document.removeDocumentListener(documentListener);
+        }
+        document = newDocument;
+        document.addDocumentListener(documentListener);
+        generatedOptions = null;
+        resetCache();
+        if (!unchanged) {
+            cacheDirty = true;
+            unchangedPrefix = 0;
+            unchangedSuffix = 0;
+        }
+    }
+
     //TODO add save and revertToSave here (spawning a thread)
+
+    /**
+     * Character sequence reading straight from a document.
+     */
+    private static final class DocumentCharSequence implements CharSequence {
+        private final IDocument document;
+
+        DocumentCharSequence(IDocument document) {
+            super();
+            this.document = document;
+        }
+
+        public int length() {
+            return document.getLength();
+        }
+
+        public char charAt(int index) {
+            try {
+                return document.getChar(index);
+            } catch (BadLocationException e) {
+                throw new IndexOutOfBoundsException(e.getMessage());
+            }
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            try {
+                return document.get(start, end - start);
+            } catch (BadLocationException e) {
+                throw new IndexOutOfBoundsException(e.getMessage());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return document.get();
+        }
+    }
 }
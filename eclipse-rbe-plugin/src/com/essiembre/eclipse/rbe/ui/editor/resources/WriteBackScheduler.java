@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2003-2014  Pascal Essiembre
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.essiembre.eclipse.rbe.ui.editor.resources;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.swt.widgets.Display;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesOptions;
+import com.essiembre.eclipse.rbe.model.utils.WorkerPool;
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+
+/**
+ * Writes modified bundles back to their source editors.  Bundles are
+ * marked dirty as they are modified and each of them is regenerated at
+ * most once, when the UI event loop gets to the flush scheduled by the
+ * first modification.  Bundle group batches already notify all their
+ * modifications at once, when they end.
+ * When files keep their layout, only the source ranges of the modified
+ * entries of a bundle are regenerated and replaced, as long as all of them
+ * are found in the source.  When they do not, the same goes for sources
+ * last generated by this scheduler, as long as equal signs of other
+ * entries do not move.  Otherwise, when several bundles are flushed
+ * together, as after group-wide operations, they are generated
+ * concurrently on the shared worker pool and only their documents are
+ * updated from the UI thread.  When files do not keep their layout,
+ * bundles whose file was never read in a document are not written to
+ * one by the scheduled flush: they are saved straight to their file, or
+ * written to their source editor when flushed explicitly.
+ * Methods are meant to be called from the UI thread.
+ * @author Pascal Essiembre
+ */
+/*default*/ final class WriteBackScheduler {
+
+    /** Source editors of bundles, by locale. */
+    private final Map<Locale, SourceEditor> sourceEditors;
+    /**
+     * Bundles modified since last flushed, in modification order, with
+     * the keys of their modified entries.
+     */
+    private final Map<Bundle, Set<String>> dirtyBundles =
+            new LinkedHashMap<>();
+    /** Flushes dirty bundles. */
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            flush(true);
+        }
+    };
+    /** Whether a flush is pending in the UI event loop. */
+    private boolean flushScheduled;
+    /** Whether source editors are gone, and nothing is written anymore. */
+    private boolean disposed;
+
+    /**
+     * Constructor.
+     * @param sourceEditors source editors of bundles, by locale
+     */
+    /*default*/ WriteBackScheduler(Map<Locale, SourceEditor> sourceEditors) {
+        super();
+        this.sourceEditors = sourceEditors;
+    }
+
+    /**
+     * Marks a bundle as modified, scheduling it to be written to its
+     * source editor.
+     * @param bundle modified bundle
+     * @param keys keys of the added, modified or removed entries
+     */
+    /*default*/ void markDirty(Bundle bundle, Collection<String> keys) {
+        if (disposed) {
+            return;
+        }
+        Set<String> dirtyKeys = dirtyBundles.get(bundle);
+        if (dirtyKeys != null) {
+            dirtyKeys.addAll(keys);
+            return;
+        }
+        dirtyBundles.put(bundle, new HashSet<>(keys));
+        if (!flushScheduled) {
+            flushScheduled = true;
+            Display.getDefault().asyncExec(flushRunnable);
+        }
+    }
+
+    /**
+     * Whether some modified bundles are not written yet.
+     * @return <code>true</code> if flushing is pending
+     */
+    /*default*/ boolean isPending() {
+        return !dirtyBundles.isEmpty();
+    }
+
+    /**
+     * Writes modified bundles to their source editors now.  Modified
+     * entries are written in place when possible.  Other bundles are generated first, with the same
+     * preferences and without touching source editors, before the
+     * resulting contents are set.  When files keep their layout, they are
+     * generated from the current content of their source editors, unless
+     * edited since last parsed.
+     */
+    /*default*/ void flush() {
+        flush(false);
+    }
+
+    /**
+     * Saves modified bundles not written to their source editors yet
+     * straight to their files, as long as files do not keep their layout
+     * and were never read in a document.  Other modified bundles are
+     * written to their source editors, to be saved with them.
+     * @param monitor progress monitor
+     */
+    /*default*/ void save(IProgressMonitor monitor) {
+        if (disposed) {
+            return;
+        }
+        PropertiesOptions options = RBEPreferences.getPropertiesOptions();
+        if (!options.isRoundTrip()) {
+            // saving refreshes files, which may flush bundles meanwhile
+            for (Bundle bundle : new ArrayList<>(dirtyBundles.keySet())) {
+                SourceEditor editor = sourceEditors.get(bundle.getLocale());
+                try {
+                    if (editor != null && dirtyBundles.containsKey(bundle)
+                            && editor.saveBundle(bundle, options, monitor)) {
+                        dirtyBundles.remove(bundle);
+                    }
+                } catch (CoreException e) {
+                    RBEPlugin.getDefault().getLog().log(e.getStatus());
+                }
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Writes modified bundles to their source editors.
+     * @param deferUnread whether to leave bundles whose file was never
+     *        read in a document unwritten, when files do not keep their
+     *        layout
+     * @see #flush()
+     */
+    private void flush(boolean deferUnread) {
+        if (disposed || dirtyBundles.isEmpty()) {
+            return;
+        }
+        Map<Bundle, Set<String>> flushed = new LinkedHashMap<>(dirtyBundles);
+        dirtyBundles.clear();
+        PropertiesOptions options = RBEPreferences.getPropertiesOptions();
+        List<Bundle> bundles = new ArrayList<>(flushed.size());
+        for (Map.Entry<Bundle, Set<String>> dirty : flushed.entrySet()) {
+            Bundle bundle = dirty.getKey();
+            SourceEditor editor = sourceEditors.get(bundle.getLocale());
+            if (editor == null
+                    || editor.setEntries(bundle, dirty.getValue(), options)) {
+                continue;
+            }
+            if (deferUnread && !options.isRoundTrip()
+                    && !editor.hasDocument()) {
+                // saved straight to its file, unless flushed meanwhile
+                dirtyBundles.put(bundle, dirty.getValue());
+                continue;
+            }
+            bundles.add(bundle);
+        }
+        if (bundles.isEmpty()) {
+            return;
+        }
+        SourceEditor[] editors = new SourceEditor[bundles.size()];
+        String[] sources = new String[editors.length];
+        for (int i = 0; i < editors.length; i++) {
+            editors[i] = sourceEditors.get(bundles.get(i).getLocale());
+            if (options.isRoundTrip() && !editors[i].isCacheDirty()) {
+                sources[i] = editors[i].getContent();
+            }
+        }
+        String[] contents = generate(bundles, editors, sources, options);
+        for (int i = 0; i < contents.length; i++) {
+            if (sources[i] == null) {
+                editors[i].setGeneratedContent(
+                        bundles.get(i), contents[i], options);
+            } else {
+                editors[i].setContent(contents[i]);
+            }
+        }
+    }
+
+    /**
+     * Forgets modified bundles without writing them, and stops writing
+     * bundles.  To be called when source editors are disposed.
+     */
+    /*default*/ void dispose() {
+        disposed = true;
+        dirtyBundles.clear();
+    }
+
+    /**
+     * Generates the content of bundles, concurrently if there are several
+     * of them.  Only bundles, sources and source maps are read, while the
+     * calling thread waits, so that they cannot be modified meanwhile.
+     * @param bundles bundles to generate
+     * @param editors source editors of bundles, whose source map
+     *        describes their source, if any
+     * @param sources sources whose layout is kept, or <code>null</code>
+     *        elements to generate bundles entirely
+     * @param options formatting options
+     * @return generated contents, in the same order as bundles
+     */
+    private static String[] generate(List<Bundle> bundles,
+            SourceEditor[] editors, String[] sources,
+            PropertiesOptions options) {
+        String[] contents = new String[bundles.size()];
+        if (contents.length == 1) {
+            contents[0] = new GenerateTask(
+                    bundles.get(0), editors[0], sources[0], options).call();
+            return contents;
+        }
+        List<ForkJoinTask<String>> tasks = new ArrayList<>(contents.length);
+        try {
+            for (int i = 0; i < contents.length; i++) {
+                tasks.add(WorkerPool.getDefault().submit(new GenerateTask(
+                        bundles.get(i), editors[i], sources[i], options)));
+            }
+            for (int i = 0; i < contents.length; i++) {
+                contents[i] = tasks.get(i).join();
+            }
+        } finally {
+            for (ForkJoinTask<String> task : tasks) {
+                task.cancel(false);
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Generates the content of a bundle, keeping the layout of its source
+     * if any.
+     */
+    private static final class GenerateTask implements Callable<String> {
+        private final Bundle bundle;
+        private final SourceEditor editor;
+        private final String source;
+        private final PropertiesOptions options;
+
+        GenerateTask(Bundle bundle, SourceEditor editor, String source,
+                PropertiesOptions options) {
+            super();
+            this.bundle = bundle;
+            this.editor = editor;
+            this.source = source;
+            this.options = options;
+        }
+
+        @Override
+        public String call() {
+            if (source != null) {
+                return PropertiesGenerator.generate(
+                        bundle, source, editor.getSourceMap(), options);
+            }
+            return PropertiesGenerator.generate(bundle, options);
+        }
+    }
+}
@@ -60,6 +60,7 @@ public class RBEFormattingPrefPage extends AbstractRBEPrefPage {
     private Button[] newLineTypes = new Button[3];
 
     private Button keepEmptyFields;
+    private Button roundTrip;
     
     /**
      * Constructor.
@@ -267,6 +268,13 @@ public class RBEFormattingPrefPage extends AbstractRBEPrefPage {
                 RBEPreferences.KEEP_EMPTY_FIELDS));
         new Label(field, SWT.NONE).setText(
                 RBEPlugin.getString("prefs.keepEmptyFields"));
+
+        // Keep file layout?
+        field = createFieldComposite(composite);
+        roundTrip = new Button(field, SWT.CHECK);
+        roundTrip.setSelection(prefs.getBoolean(RBEPreferences.ROUND_TRIP));
+        new Label(field, SWT.NONE).setText(
+                RBEPlugin.getString("prefs.roundTrip"));
         
         refreshEnabledStatuses();
         
@@ -314,6 +322,7 @@ public class RBEFormattingPrefPage extends AbstractRBEPrefPage {
         }
         prefs.setValue(RBEPreferences.KEEP_EMPTY_FIELDS,
                 keepEmptyFields.getSelection());
+        prefs.setValue(RBEPreferences.ROUND_TRIP, roundTrip.getSelection());
         refreshEnabledStatuses();
         return super.performOk();
     }
@@ -356,6 +365,8 @@ public class RBEFormattingPrefPage extends AbstractRBEPrefPage {
                 RBEPreferences.NEW_LINE_TYPE)].setSelection(true);
         keepEmptyFields.setSelection(
                 prefs.getDefaultBoolean(RBEPreferences.KEEP_EMPTY_FIELDS));
+        roundTrip.setSelection(
+                prefs.getDefaultBoolean(RBEPreferences.ROUND_TRIP));
         refreshEnabledStatuses();
         super.performDefaults();
     }
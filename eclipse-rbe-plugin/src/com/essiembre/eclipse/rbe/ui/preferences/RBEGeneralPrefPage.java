@@ -53,6 +53,8 @@ public class RBEGeneralPrefPage extends AbstractRBEPrefPage {
 
    private Button noTreeInEditor;
 
+   private Button compactStorage;
+
    private Text minHeight;
 
    /**
@@ -85,6 +87,8 @@ public class RBEGeneralPrefPage extends AbstractRBEPrefPage {
               fieldTabInserts.getSelection());
       prefs.setValue(RBEPreferences.NO_TREE_IN_EDITOR, 
               noTreeInEditor.getSelection());
+      prefs.setValue(RBEPreferences.COMPACT_STORAGE, 
+              compactStorage.getSelection());
       prefs.setValue(RBEPreferences.MIN_HEIGHT, minHeight.getText());
 
       return super.performOk();
@@ -170,6 +174,13 @@ public class RBEGeneralPrefPage extends AbstractRBEPrefPage {
       new Label(field, SWT.NONE).setText(
               RBEPlugin.getString("prefs.noTreeInEditor"));
 
+      field = createFieldComposite(composite);
+      compactStorage = new Button(field, SWT.CHECK);
+      compactStorage.setSelection(
+              prefs.getBoolean(RBEPreferences.COMPACT_STORAGE));
+      new Label(field, SWT.NONE).setText(
+              RBEPlugin.getString("prefs.compactStorage"));
+
       field = createFieldComposite(composite);
       new Label(field, SWT.NONE).setText(
               RBEPlugin.getString("prefs.minHeight"));
@@ -199,6 +210,8 @@ public class RBEGeneralPrefPage extends AbstractRBEPrefPage {
               prefs.getDefaultBoolean(RBEPreferences.KEY_TREE_EXPANDED));
       fieldTabInserts.setSelection(
               prefs.getDefaultBoolean(RBEPreferences.FIELD_TAB_INSERTS));
+      compactStorage.setSelection(
+              prefs.getDefaultBoolean(RBEPreferences.COMPACT_STORAGE));
       minHeight.setText(
               prefs.getDefaultString(RBEPreferences.MIN_HEIGHT));
 
@@ -16,7 +16,6 @@
 package com.essiembre.eclipse.rbe.ui.preferences;
 
 import org.eclipse.core.runtime.preferences.AbstractPreferenceInitializer;
-import org.eclipse.jface.preference.IPreferenceStore;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
@@ -38,51 +37,8 @@ public class RBEPreferenceInitializer extends AbstractPreferenceInitializer {
 
     @Override
     public void initializeDefaultPreferences() {
-        IPreferenceStore prefs = RBEPlugin.getDefault().getPreferenceStore();
-
-        // General
-        prefs.setDefault(RBEPreferences.CONVERT_ENCODED_TO_UNICODE, true);
-        prefs.setDefault(RBEPreferences.FIELD_TAB_INSERTS, false);
-        prefs.setDefault(RBEPreferences.KEY_TREE_HIERARCHICAL, true);
-        prefs.setDefault(RBEPreferences.KEY_TREE_EXPANDED, true);
-        prefs.setDefault(RBEPreferences.SUPPORT_FRAGMENTS, true);
-        prefs.setDefault(RBEPreferences.LOAD_ONLY_FRAGMENT_RESOURCES, false);
-
-        // Formatting
-        prefs.setDefault(RBEPreferences.CONVERT_UNICODE_TO_ENCODED, true);
-        prefs.setDefault(RBEPreferences.CONVERT_UNICODE_TO_ENCODED_UPPER, true);
-
-        prefs.setDefault(RBEPreferences.SPACES_AROUND_EQUAL_SIGNS, true);
-
-        prefs.setDefault(RBEPreferences.KEY_GROUP_SEPARATOR, ".");
-        prefs.setDefault(RBEPreferences.ALIGN_EQUAL_SIGNS, true);
-        prefs.setDefault(RBEPreferences.SHOW_GENERATOR, true);
-        prefs.setDefault(RBEPreferences.KEY_TREE_HIERARCHICAL, true);
-
-        prefs.setDefault(RBEPreferences.GROUP_KEYS, true);
-        prefs.setDefault(RBEPreferences.GROUP_LEVEL_DEPTH, 1);
-        prefs.setDefault(RBEPreferences.GROUP_LINE_BREAKS, 1);
-        prefs.setDefault(RBEPreferences.GROUP_ALIGN_EQUAL_SIGNS, true);
-
-        prefs.setDefault(RBEPreferences.WRAP_CHAR_LIMIT, 80);
-        prefs.setDefault(RBEPreferences.WRAP_INDENT_SPACES, 8);
-
-        prefs.setDefault(RBEPreferences.NEW_LINE_TYPE,
-                RBEPreferences.NEW_LINE_UNIX);
-
-        prefs.setDefault(RBEPreferences.KEEP_EMPTY_FIELDS, false);
-
-        // Reporting/Performance
-        prefs.setDefault(RBEPreferences.REPORT_MISSING_VALUES, true);
-        prefs.setDefault(RBEPreferences.REPORT_DUPL_VALUES, true);
-        prefs.setDefault(RBEPreferences.REPORT_SIM_VALUES_WORD_COMPARE, true);
-        prefs.setDefault(RBEPreferences.REPORT_SIM_VALUES_PRECISION, 0.75d);
-
-        prefs.setDefault(RBEPreferences.NO_TREE_IN_EDITOR, false);
-
-        prefs.setDefault(RBEPreferences.MIN_HEIGHT, 80);
-//        prefs.setDefault(RBEPreferences.AUTO_ADJUST, true);
-
+        RBEPreferences.initializeDefaults(
+                RBEPlugin.getDefault().getPreferenceStore());
     }
 
 }